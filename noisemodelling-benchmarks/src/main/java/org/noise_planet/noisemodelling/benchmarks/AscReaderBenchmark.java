@@ -0,0 +1,131 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.noise_planet.noisemodelling.jdbc.utils.AscReaderDriver;
+import org.noise_planet.noisemodelling.jdbc.utils.AsciiGridTokenizer;
+import org.noise_planet.noisemodelling.pathfinder.ElevationGrid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of a synthetic ESRI ASCII grid of {@code size} x {@code size} cells, with the {@link Scanner} previously
+ * used by {@link AscReaderDriver} and with the {@link AsciiGridTokenizer}, and conversion of the file into an
+ * elevation grid.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AscReaderBenchmark {
+    private static final int HEADER_WORDS = 12;
+
+    /** Number of rows and columns of the grid */
+    @Param({"500", "2000"})
+    public int size;
+
+    private File ascFile;
+    private File gridFile;
+
+    @Setup
+    public void setup() throws IOException {
+        ascFile = File.createTempFile("dem", ".asc");
+        gridFile = File.createTempFile("dem", ".grid");
+        Random random = new Random(42);
+        try (Writer writer = Files.newBufferedWriter(ascFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(String.format(Locale.ROOT, "ncols %d\nnrows %d\nxllcorner 0\nyllcorner 0\ncellsize 5\n" +
+                    "NODATA_value -9999\n", size, size));
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    writer.write(String.format(Locale.ROOT, j == 0 ? "%.2f" : " %.2f",
+                            100 + 50 * Math.sin(i / 50.0) * Math.cos(j / 50.0) + random.nextDouble()));
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ascFile.delete();
+        gridFile.delete();
+    }
+
+    /**
+     * Reference, words read with a Scanner and parsed with Double.parseDouble
+     */
+    @Benchmark
+    public double scanner() throws IOException {
+        double sum = 0;
+        try (Scanner scanner = new Scanner(new BufferedReader(new InputStreamReader(
+                new BufferedInputStream(new FileInputStream(ascFile), 16384), StandardCharsets.UTF_8)))) {
+            for (int i = 0; i < HEADER_WORDS; i++) {
+                scanner.next();
+            }
+            for (int i = 0; i < size * size; i++) {
+                sum += Double.parseDouble(scanner.next());
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Values parsed from the bytes of the file channel
+     */
+    @Benchmark
+    public double tokenizer() throws IOException {
+        double sum = 0;
+        try (AsciiGridTokenizer tokenizer = AsciiGridTokenizer.open(ascFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < HEADER_WORDS; i++) {
+                tokenizer.skipWord();
+            }
+            for (int i = 0; i < size * size; i++) {
+                sum += tokenizer.nextDouble();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Conversion of the asc file into an elevation grid file
+     */
+    @Benchmark
+    public ElevationGrid elevationGrid() throws IOException {
+        return new AscReaderDriver().readElevationGrid(ascFile, gridFile);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.propagation.AttenuationCnossosEvaluator;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of the attenuation of the propagation paths of a scene, without the path finding. The paths are
+ * computed once by trial, the score is the time needed to evaluate one path.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttenuationBenchmark {
+
+    @Param({"URBAN", "RURAL_DEM", "RAILWAY"})
+    public BenchmarkScenes.Scene scene;
+
+    @Param({"1"})
+    public int reflectionOrder;
+
+    @Param({"false", "true"})
+    public boolean thirdOctave;
+
+    private List<PropagationPath> paths;
+    private AttenuationCnossosEvaluator evaluator;
+    private double[] attenuation;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        CnossosPropagationData data = BenchmarkScenes.createPropagationData(scene, reflectionOrder, thirdOctave);
+        PropagationProcessPathData pathData = BenchmarkScenes.createPathData(thirdOctave);
+        ComputeRaysOutAttenuation out = new ComputeRaysOutAttenuation(true, pathData, data);
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(1);
+        computeRays.run(out);
+        paths = out.getPropagationPaths();
+        if(paths.isEmpty()) {
+            throw new IllegalStateException("No propagation path in the scene " + scene);
+        }
+        evaluator = new AttenuationCnossosEvaluator(pathData);
+        attenuation = new double[evaluator.getFrequencyCount()];
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        PropagationPath path = paths.get(index);
+        index = (index + 1) % paths.size();
+        blackhole.consume(evaluator.evaluate(path, attenuation));
+    }
+}
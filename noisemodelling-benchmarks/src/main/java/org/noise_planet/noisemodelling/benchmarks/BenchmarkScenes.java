@@ -0,0 +1,234 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ElevationGrid;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic scenes used by the benchmarks. The scenes are generated with a fixed seed so that two runs of the
+ * benchmarks always compute the same propagation paths and can be compared.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public final class BenchmarkScenes {
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+    private static final long SEED = 42;
+
+    /**
+     * Available scenes
+     */
+    public enum Scene {
+        /** Dense urban block, grid of buildings crossed by streets with point sources */
+        URBAN,
+        /** Rural area with an undulating digital elevation model, a few farm buildings and a road */
+        RURAL_DEM,
+        /** Railway line source with a noise barrier, computed with the rail body barrier effect */
+        RAILWAY
+    }
+
+    private BenchmarkScenes() {
+    }
+
+    /**
+     * @param scene Scene to generate
+     * @param bandCount Number of frequency bands of the walls absorption coefficients
+     * @return Scene geometry, {@link ProfileBuilder#finishFeeding()} has been called
+     */
+    public static ProfileBuilder createProfileBuilder(Scene scene, int bandCount) {
+        return createProfileBuilder(scene, bandCount, false);
+    }
+
+    /**
+     * @param scene Scene to generate
+     * @param bandCount Number of frequency bands of the walls absorption coefficients
+     * @param wallGrid True to find the walls of the cut profiles with a uniform grid instead of the rtree
+     * @return Scene geometry, {@link ProfileBuilder#finishFeeding()} has been called
+     */
+    public static ProfileBuilder createProfileBuilder(Scene scene, int bandCount, boolean wallGrid) {
+        ProfileBuilder profileBuilder = new ProfileBuilder().setWallGrid(wallGrid);
+        switch (scene) {
+            case URBAN:
+                return feedUrbanScene(profileBuilder, bandCount);
+            case RURAL_DEM:
+                return feedRuralScene(profileBuilder, false);
+            default:
+                return feedRailwayScene(profileBuilder, bandCount);
+        }
+    }
+
+    /**
+     * @param scene Scene to generate
+     * @param reflectionOrder Reflection order
+     * @param thirdOctave True to compute third octave bands, false for octave bands
+     * @return Propagation input data with sources and receivers
+     */
+    public static CnossosPropagationData createPropagationData(Scene scene, int reflectionOrder, boolean thirdOctave) {
+        List<Integer> frequencies = createPathData(thirdOctave).freq_lvl;
+        CnossosPropagationData data = new CnossosPropagationData(createProfileBuilder(scene, frequencies.size()),
+                frequencies);
+        data.setReflexionOrder(reflectionOrder);
+        data.maxSrcDist = 500;
+        data.maxRefDist = 50;
+        data.setComputeHorizontalDiffraction(true);
+        data.setComputeVerticalDiffraction(true);
+        data.setGs(0.5);
+        switch (scene) {
+            case URBAN:
+                // sources in the middle of the streets, receivers 3 m in front of the facades
+                for (int i = 0; i < 4; i++) {
+                    for (int j = 0; j < 5; j++) {
+                        data.addSource(FACTORY.createPoint(new Coordinate(78.5 + 70 * i, 30 + 100 * j, 0.05)));
+                    }
+                }
+                for (int i = 0; i < 4; i++) {
+                    for (int j = 0; j < 4; j++) {
+                        data.addReceiver(new Coordinate(70 + 70 * i, 55 + 70 * j, 4));
+                    }
+                }
+                break;
+            case RURAL_DEM:
+                for (int i = 0; i < 20; i++) {
+                    data.addSource(FACTORY.createPoint(new Coordinate(50 * i, 500 + 20 * Math.sin(i), 0.05)));
+                }
+                for (int i = 0; i < 4; i++) {
+                    for (int j = 0; j < 4; j++) {
+                        data.addReceiver(new Coordinate(200 + 200 * i, 150 + 230 * j, 4));
+                    }
+                }
+                break;
+            default:
+                data.setBodyBarrier(true);
+                data.addSource(FACTORY.createLineString(new Coordinate[]{new Coordinate(-200, 0, 0.5),
+                        new Coordinate(200, 0, 0.5)}));
+                for (int i = 0; i < 4; i++) {
+                    for (int j = 0; j < 4; j++) {
+                        data.addReceiver(new Coordinate(-150 + 100 * i, 10 + 50 * j, 4));
+                    }
+                }
+        }
+        return data;
+    }
+
+    /**
+     * @param thirdOctave True to compute third octave bands, false for octave bands
+     * @return Default meteorological parameters
+     */
+    public static PropagationProcessPathData createPathData(boolean thirdOctave) {
+        return new PropagationProcessPathData(thirdOctave);
+    }
+
+    /**
+     * @param profileBuilder Scene geometry
+     * @param count Number of segments
+     * @return Random segments inside the scene extent, [c0, c1, c0, c1..]
+     */
+    public static Coordinate[] createProfileSegments(ProfileBuilder profileBuilder, int count) {
+        Envelope extent = profileBuilder.getMeshEnvelope();
+        Random random = new Random(SEED);
+        Coordinate[] segments = new Coordinate[count * 2];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Coordinate(extent.getMinX() + random.nextDouble() * extent.getWidth(),
+                    extent.getMinY() + random.nextDouble() * extent.getHeight(), 4);
+        }
+        return segments;
+    }
+
+    private static ProfileBuilder feedUrbanScene(ProfileBuilder profileBuilder, int bandCount) {
+        Random random = new Random(SEED);
+        List<Double> alphas = Collections.nCopies(bandCount, 0.1);
+        // 7x7 blocks of 4 buildings separated by 20 m wide streets
+        for (int i = 0; i < 7; i++) {
+            for (int j = 0; j < 7; j++) {
+                double x = 20 + 70 * i;
+                double y = 20 + 70 * j;
+                for (int b = 0; b < 4; b++) {
+                    double bx = x + (b % 2) * 25;
+                    double by = y + (b / 2) * 25;
+                    double height = 6 + random.nextInt(8) * 2;
+                    profileBuilder.addBuilding(new Coordinate[]{new Coordinate(bx, by), new Coordinate(bx + 22, by),
+                            new Coordinate(bx + 22, by + 22), new Coordinate(bx, by + 22), new Coordinate(bx, by)},
+                            height, alphas);
+                }
+            }
+        }
+        profileBuilder.addGroundEffect(0, 510, 0, 510, 0.2);
+        profileBuilder.finishFeeding();
+        return profileBuilder;
+    }
+
+    /**
+     * @param elevationGrid True to use a regular elevation grid as DEM, false to triangulate the DEM points
+     * @return Geometry of the {@link Scene#RURAL_DEM} scene, {@link ProfileBuilder#finishFeeding()} has been called
+     */
+    public static ProfileBuilder createRuralProfileBuilder(boolean elevationGrid) {
+        return feedRuralScene(new ProfileBuilder(), elevationGrid);
+    }
+
+    private static ProfileBuilder feedRuralScene(ProfileBuilder profileBuilder, boolean elevationGrid) {
+        // 1 km² DEM with a 20 m step
+        if (elevationGrid) {
+            float[] values = new float[51 * 51];
+            for (int row = 0; row < 51; row++) {
+                for (int column = 0; column < 51; column++) {
+                    values[row * 51 + column] = (float) ruralElevation(column * 20, 1000 - row * 20);
+                }
+            }
+            profileBuilder.setElevationGrid(new ElevationGrid(0, 1000, 20, 51, 51, values));
+        } else {
+            for (int i = 0; i <= 50; i++) {
+                for (int j = 0; j <= 50; j++) {
+                    profileBuilder.addTopographicPoint(new Coordinate(i * 20, j * 20, ruralElevation(i * 20, j * 20)));
+                }
+            }
+        }
+        List<Coordinate[]> farms = new ArrayList<>();
+        farms.add(new Coordinate[]{new Coordinate(300, 300), new Coordinate(340, 300), new Coordinate(340, 320),
+                new Coordinate(300, 320), new Coordinate(300, 300)});
+        farms.add(new Coordinate[]{new Coordinate(650, 620), new Coordinate(680, 620), new Coordinate(680, 660),
+                new Coordinate(650, 660), new Coordinate(650, 620)});
+        for (Coordinate[] farm : farms) {
+            profileBuilder.addBuilding(farm, 8);
+        }
+        profileBuilder.addGroundEffect(0, 1000, 0, 480, 1.0);
+        profileBuilder.addGroundEffect(0, 1000, 520, 1000, 0.7);
+        profileBuilder.finishFeeding();
+        return profileBuilder;
+    }
+
+    private static double ruralElevation(double x, double y) {
+        return 10 * Math.sin(x / 80) + 8 * Math.cos(y / 60) + y / 50;
+    }
+
+    private static ProfileBuilder feedRailwayScene(ProfileBuilder profileBuilder, int bandCount) {
+        List<Double> alphas = Collections.nCopies(bandCount, 0.5);
+        profileBuilder.addWall(new Coordinate[]{new Coordinate(-150, 4, 0), new Coordinate(150, 4, 0)}, 2.5,
+                alphas, 1);
+        // flat ground with an embankment along the track
+        for (int i = -25; i <= 25; i++) {
+            profileBuilder.addTopographicPoint(new Coordinate(i * 10, -20, 0));
+            profileBuilder.addTopographicPoint(new Coordinate(i * 10, -2, 1));
+            profileBuilder.addTopographicPoint(new Coordinate(i * 10, 2, 1));
+            profileBuilder.addTopographicPoint(new Coordinate(i * 10, 250, 0));
+        }
+        profileBuilder.addGroundEffect(-250, 250, -20, 250, 0.8);
+        profileBuilder.finishFeeding();
+        return profileBuilder;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.noise_planet.noisemodelling.jdbc.LDENComputeRaysOut;
+import org.noise_planet.noisemodelling.jdbc.LDENConfig;
+import org.noise_planet.noisemodelling.jdbc.LDENPropagationProcessData;
+import org.noise_planet.noisemodelling.jdbc.ReceiverLevelsBlock;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+
+/**
+ * Levels of one receiver in {@link LDENComputeRaysOut.ThreadComputeRaysOut}: attenuation of the day, evening and
+ * night periods added for each source, then {@link LDENComputeRaysOut.ThreadComputeRaysOut#finalizeReceiver(long)}
+ * computing the LDEN and handing the levels blocks to the writer queue. The queue is emptied after each receiver,
+ * no database is used.
+ * The attenuation of each source is given by {@link LDENComputeRaysOut#computeAttenuation} instead of being
+ * evaluated from propagation paths, so only the accumulation of the levels is measured.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FinalizeReceiverBenchmark {
+
+    /** Number of sources seen by the receiver */
+    @Param({"10", "500"})
+    public int sourceCount;
+
+    /** True to output one level by receiver, false one level by receiver and source */
+    @Param({"true", "false"})
+    public boolean mergeSources;
+
+    @Param({"false", "true"})
+    public boolean thirdOctave;
+
+    private LDENComputeRaysOut.LdenData ldenData;
+    private LDENComputeRaysOut.ThreadComputeRaysOut threadOut;
+    private final List<PropagationPath> noPath = Collections.emptyList();
+    private long receiverId = 0;
+
+    @Setup
+    public void setup() {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setMergeSources(mergeSources);
+        PropagationProcessPathData pathData = BenchmarkScenes.createPathData(thirdOctave);
+        for (LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
+            ldenConfig.setPropagationProcessPathData(timePeriod, pathData);
+        }
+        int bandCount = pathData.freq_lvl.size();
+        LDENPropagationProcessData data = new LDENPropagationProcessData(new ProfileBuilder(), ldenConfig);
+        Random random = new Random(42);
+        final double[][] attenuations = new double[sourceCount][bandCount];
+        for (int idSource = 0; idSource < sourceCount; idSource++) {
+            double[] power = new double[bandCount];
+            Arrays.fill(power, dbaToW(80 + random.nextDouble() * 20));
+            data.wjSourcesD.add(power);
+            data.wjSourcesE.add(power);
+            data.wjSourcesN.add(power);
+            for (int idFrequency = 0; idFrequency < bandCount; idFrequency++) {
+                attenuations[idSource][idFrequency] = -30 - random.nextDouble() * 40;
+            }
+        }
+        ldenData = new LDENComputeRaysOut.LdenData();
+        LDENComputeRaysOut computeRaysOut = new LDENComputeRaysOut(pathData, pathData, pathData, data, ldenData,
+                ldenConfig) {
+            @Override
+            public double[] computeAttenuation(PropagationProcessPathData data, long sourceId, double sourceLi,
+                                               long receiverId, List<PropagationPath> propagationPath) {
+                return attenuations[(int) sourceId];
+            }
+        };
+        threadOut = (LDENComputeRaysOut.ThreadComputeRaysOut) computeRaysOut.subProcess();
+    }
+
+    private void drain(ConcurrentLinkedDeque<ReceiverLevelsBlock> stack) {
+        ReceiverLevelsBlock block;
+        while ((block = stack.poll()) != null) {
+            ldenData.popped(block.size(), LDENComputeRaysOut.LdenData.estimateSize(block));
+            ldenData.recycle(block);
+        }
+    }
+
+    @Benchmark
+    public void finalizeReceiver() {
+        for (int idSource = 0; idSource < sourceCount; idSource++) {
+            threadOut.addPropagationPaths(idSource, 1.0, receiverId, noPath);
+        }
+        threadOut.finalizeReceiver(receiverId++);
+        drain(ldenData.lDayLevels);
+        drain(ldenData.lEveningLevels);
+        drain(ldenData.lNightLevels);
+        drain(ldenData.lDenLevels);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProfileBuilder#finishFeeding()} of a large computation cell: 2 km² DEM, 20 000 buildings and 1 600 ground
+ * effect areas.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FinishFeedingBenchmark {
+    private static final long SEED = 42;
+
+    /** True to process the items with parallel streams */
+    @Param({"false", "true"})
+    public boolean parallelFeeding;
+
+    private ProfileBuilder profileBuilder;
+
+    /**
+     * A new builder is fed before each call, only finishFeeding is measured
+     */
+    @Setup(Level.Invocation)
+    public void setup() {
+        profileBuilder = new ProfileBuilder().setParallelFeeding(parallelFeeding);
+        Random random = new Random(SEED);
+        // DEM with a 20 m step
+        for (int i = 0; i <= 100; i++) {
+            for (int j = 0; j <= 100; j++) {
+                double x = i * 20;
+                double y = j * 20;
+                profileBuilder.addTopographicPoint(new Coordinate(x, y, 10 * Math.sin(x / 80) + 8 * Math.cos(y / 60)));
+            }
+        }
+        // 200x100 buildings of 8 m x 6 m
+        List<Double> alphas = Collections.nCopies(8, 0.1);
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < 100; j++) {
+                double x = 2 + i * 10;
+                double y = 2 + j * 20;
+                profileBuilder.addBuilding(new Coordinate[]{new Coordinate(x, y), new Coordinate(x + 8, y),
+                        new Coordinate(x + 8, y + 6), new Coordinate(x, y + 6), new Coordinate(x, y)},
+                        6 + random.nextInt(12), alphas);
+            }
+        }
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 40; j++) {
+                profileBuilder.addGroundEffect(i * 50, i * 50 + 50, j * 50, j * 50 + 50, random.nextInt(3) / 2.0);
+            }
+        }
+    }
+
+    @Benchmark
+    public ProfileBuilder finishFeeding() {
+        return profileBuilder.finishFeeding();
+    }
+}
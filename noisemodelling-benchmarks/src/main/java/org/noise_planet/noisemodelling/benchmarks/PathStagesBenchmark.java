@@ -0,0 +1,121 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverResultIndex;
+import org.noise_planet.noisemodelling.pathfinder.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages of the path finding between one source and one receiver of the scene, each benchmark iterates over the
+ * source-receiver pairs: diffraction over the horizontal edges of an already computed cut profile, diffraction
+ * around the vertical edges (left and right side) and reflection paths with an already built mirror receiver index.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathStagesBenchmark {
+
+    @Param({"URBAN", "RURAL_DEM", "RAILWAY"})
+    public BenchmarkScenes.Scene scene;
+
+    @Param({"1", "2"})
+    public int reflectionOrder;
+
+    private CnossosPropagationData data;
+    private ComputeCnossosRays computeRays;
+    private final Orientation orientation = new Orientation();
+    private final List<Coordinate> sources = new ArrayList<>();
+    private final List<Coordinate> receivers = new ArrayList<>();
+    private final List<ProfileBuilder.CutProfile> cutProfiles = new ArrayList<>();
+    private final List<MirrorReceiverResultIndex> mirrorIndexes = new ArrayList<>();
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        data = BenchmarkScenes.createPropagationData(scene, reflectionOrder, false);
+        computeRays = new ComputeCnossosRays(data);
+        for (Coordinate receiver : data.receivers) {
+            Envelope envelope = new Envelope(receiver);
+            envelope.expandBy(data.maxSrcDist);
+            MirrorReceiverResultIndex mirrorIndex = new MirrorReceiverResultIndex(
+                    data.profileBuilder.getWallsIn(envelope), receiver, data.reflexionOrder, data.maxSrcDist,
+                    data.maxRefDist);
+            for (int idSource = 0; idSource < data.sourceGeometries.size(); idSource++) {
+                // line sources are represented by their middle point
+                Coordinate source = data.sourceGeometries.get(idSource).getCentroid().getCoordinate();
+                source.z = data.sourceGeometries.get(idSource).getCoordinate().z;
+                if (source.distance(receiver) > data.maxSrcDist) {
+                    continue;
+                }
+                ProfileBuilder.CutProfile cutProfile = data.profileBuilder.getProfile(source, receiver, data.gS);
+                cutProfile.setSrcOrientation(orientation);
+                sources.add(source);
+                receivers.add(receiver);
+                cutProfiles.add(cutProfile);
+                mirrorIndexes.add(mirrorIndex);
+            }
+        }
+    }
+
+    private int nextPair() {
+        int pair = index;
+        index = (index + 1) % sources.size();
+        return pair;
+    }
+
+    @Benchmark
+    public void computeHEdgeDiffraction(Blackhole blackhole) {
+        int pair = nextPair();
+        ProfileBuilder.CutProfile cutProfile = cutProfiles.get(pair);
+        if (!cutProfile.isFreeField()) {
+            blackhole.consume(computeRays.computeHEdgeDiffraction(cutProfile, data.isBodyBarrier()));
+        }
+    }
+
+    @Benchmark
+    public void computeVEdgeDiffraction(Blackhole blackhole) {
+        int pair = nextPair();
+        Coordinate source = sources.get(pair);
+        Coordinate receiver = receivers.get(pair);
+        blackhole.consume(computeRays.computeVEdgeDiffraction(source, receiver, data, true, orientation));
+        blackhole.consume(computeRays.computeVEdgeDiffraction(source, receiver, data, false, orientation));
+    }
+
+    @Benchmark
+    public void computeReflexion(Blackhole blackhole) {
+        int pair = nextPair();
+        blackhole.consume(computeRays.computeReflexion(receivers.get(pair), sources.get(pair), false, orientation,
+                mirrorIndexes.get(pair)));
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one cut profile between two random points of the scene (buildings, walls, topography and ground effect
+ * intersections), the walls being found with the rtree or with a uniform grid.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileBuilderBenchmark {
+    private static final int SEGMENT_COUNT = 1024;
+
+    @Param({"URBAN", "RURAL_DEM", "RAILWAY"})
+    public BenchmarkScenes.Scene scene;
+
+    /** True to find the walls with a uniform grid, false with the rtree */
+    @Param({"false", "true"})
+    public boolean wallGrid;
+
+    private ProfileBuilder profileBuilder;
+    private Coordinate[] segments;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        profileBuilder = BenchmarkScenes.createProfileBuilder(scene, 8, wallGrid);
+        segments = BenchmarkScenes.createProfileSegments(profileBuilder, SEGMENT_COUNT);
+    }
+
+    @Benchmark
+    public ProfileBuilder.CutProfile getProfile() {
+        int segment = index;
+        index = (index + 1) % SEGMENT_COUNT;
+        return profileBuilder.getProfile(segments[segment * 2], segments[segment * 2 + 1], 0.5);
+    }
+}
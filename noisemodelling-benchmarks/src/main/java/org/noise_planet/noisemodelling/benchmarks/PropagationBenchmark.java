@@ -0,0 +1,72 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete computation of one scene: path finding with {@link ComputeCnossosRays} and evaluation of the attenuation
+ * of each source-receiver couple. The scene geometry is built once by trial, only the propagation is measured.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PropagationBenchmark {
+
+    @Param({"URBAN", "RURAL_DEM", "RAILWAY"})
+    public BenchmarkScenes.Scene scene;
+
+    @Param({"0", "1", "2"})
+    public int reflectionOrder;
+
+    @Param({"1", "4"})
+    public int threadCount;
+
+    @Param({"false", "true"})
+    public boolean thirdOctave;
+
+    private CnossosPropagationData data;
+    private PropagationProcessPathData pathData;
+
+    @Setup
+    public void setup() {
+        data = BenchmarkScenes.createPropagationData(scene, reflectionOrder, thirdOctave);
+        pathData = BenchmarkScenes.createPathData(thirdOctave);
+    }
+
+    @Benchmark
+    public ComputeRaysOutAttenuation computeRays() {
+        ComputeRaysOutAttenuation out = new ComputeRaysOutAttenuation(false, pathData, data);
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(threadCount);
+        computeRays.run(out);
+        return out;
+    }
+}
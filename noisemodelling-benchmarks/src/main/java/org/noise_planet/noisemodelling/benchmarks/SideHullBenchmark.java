@@ -0,0 +1,65 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Left and right side diffraction paths (convex hull around the buildings) between two random points of the
+ * {@link BenchmarkScenes.Scene#URBAN} scene.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SideHullBenchmark {
+    private static final int SEGMENT_COUNT = 1024;
+
+    private ProfileBuilder profileBuilder;
+    private ComputeCnossosRays computeRays;
+    private Coordinate[] segments;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        profileBuilder = BenchmarkScenes.createProfileBuilder(BenchmarkScenes.Scene.URBAN, 8);
+        computeRays = new ComputeCnossosRays(new CnossosPropagationData(profileBuilder));
+        segments = BenchmarkScenes.createProfileSegments(profileBuilder, SEGMENT_COUNT);
+    }
+
+    @Benchmark
+    public void computeSideHull(Blackhole blackhole) {
+        int segment = index;
+        index = (index + 1) % SEGMENT_COUNT;
+        Coordinate p1 = segments[segment * 2];
+        Coordinate p2 = segments[segment * 2 + 1];
+        blackhole.consume(computeRays.computeSideHull(true, p1, p2, profileBuilder));
+        blackhole.consume(computeRays.computeSideHull(false, p1, p2, profileBuilder));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.TopographicTin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walk in the digital elevation model along random segments of the {@code RURAL_DEM} scene, and elevation of random
+ * points. The DEM is either triangulated or a regular elevation grid.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopographicProfileBenchmark {
+    private static final int SEGMENT_COUNT = 1024;
+
+    /** True to use a regular elevation grid, false to triangulate the DEM points */
+    @Param({"false", "true"})
+    public boolean elevationGrid;
+
+    private ProfileBuilder profileBuilder;
+    private Coordinate[] segments;
+    private final TopographicTin.WalkBuffer buffer = new TopographicTin.WalkBuffer();
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        profileBuilder = BenchmarkScenes.createRuralProfileBuilder(elevationGrid);
+        segments = BenchmarkScenes.createProfileSegments(profileBuilder, SEGMENT_COUNT);
+    }
+
+    /**
+     * Intersection points returned as a list of coordinates
+     */
+    @Benchmark
+    public List<Coordinate> topographicProfile() {
+        int segment = nextSegment();
+        return profileBuilder.getTopographicProfile(segments[segment * 2], segments[segment * 2 + 1]);
+    }
+
+    /**
+     * Intersection points written into a buffer reused by all the walks
+     */
+    @Benchmark
+    public TopographicTin.WalkBuffer walk() {
+        int segment = nextSegment();
+        profileBuilder.walkTopographicProfile(segments[segment * 2], segments[segment * 2 + 1], buffer);
+        return buffer;
+    }
+
+    /**
+     * Intersection points filtered and added to a cut profile
+     */
+    @Benchmark
+    public ProfileBuilder.CutProfile topographicCutPoints() {
+        int segment = nextSegment();
+        ProfileBuilder.CutProfile profile = new ProfileBuilder.CutProfile();
+        profileBuilder.addTopoCutPts(segments[segment * 2], segments[segment * 2 + 1], profile);
+        return profile;
+    }
+
+    /**
+     * Location of one point in the triangulation or in the grid and interpolation of its elevation
+     */
+    @Benchmark
+    public double groundElevation() {
+        return profileBuilder.getZGround(segments[nextSegment() * 2]);
+    }
+
+    private int nextSegment() {
+        int segment = index;
+        index = (index + 1) % SEGMENT_COUNT;
+        return segment;
+    }
+}
@@ -0,0 +1,29 @@
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.junit.Test;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+
+import static org.junit.Assert.*;
+
+public class BenchmarkScenesTest {
+
+    /**
+     * Each scene must produce propagation paths for all receivers, otherwise the benchmarks would measure nothing
+     */
+    @Test
+    public void testScenesHavePaths() {
+        for (BenchmarkScenes.Scene scene : BenchmarkScenes.Scene.values()) {
+            CnossosPropagationData data = BenchmarkScenes.createPropagationData(scene, 0, false);
+            ComputeRaysOutAttenuation out = new ComputeRaysOutAttenuation(false,
+                    BenchmarkScenes.createPathData(false), data);
+            ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+            computeRays.setThreadCount(1);
+            computeRays.run(out);
+            assertTrue(scene.name(), out.rayCount.get() > 0);
+            assertEquals(scene.name(), data.receivers.size(),
+                    out.getVerticesSoundLevel().stream().mapToLong(v -> v.receiverId).distinct().count());
+        }
+    }
+}
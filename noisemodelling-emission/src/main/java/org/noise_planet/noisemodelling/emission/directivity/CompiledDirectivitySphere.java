@@ -0,0 +1,171 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.emission.directivity;
+
+import org.noise_planet.noisemodelling.emission.utils.Utils;
+
+import java.util.Arrays;
+
+/**
+ * Directivity sphere resampled into a regular (theta, phi) grid for the given frequency bands.
+ * The attenuation of a direction is bilinearly interpolated (in energy, as {@link DiscreteDirectivitySphere}) from the
+ * four surrounding grid nodes, without allocation when the result array is provided.
+ * Phi is sampled from -π to 2π as the ray directions are given from -π to π while the spheres are defined from 0 to
+ * 2π, so the grid reproduces the behavior of the sphere for both conventions. Angles out of range are clamped.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class CompiledDirectivitySphere implements DirectivitySphere {
+    /** Default angular step of the grid, one degree */
+    public static final double DEFAULT_ANGULAR_RESOLUTION = Math.toRadians(1);
+    private static final double PHI_MIN = -Math.PI;
+    private static final double PHI_MAX = 2 * Math.PI;
+
+    private final double[] frequencies;
+    private final int bandCount;
+    private final int thetaCount;
+    private final int phiCount;
+    private final double thetaStep;
+    private final double phiStep;
+    /** Attenuation in energy [(thetaIndex * phiCount + phiIndex) * bandCount + band] */
+    private final float[] table;
+
+    /**
+     * Sample the directivity sphere
+     * @param sphere Directivity sphere to resample
+     * @param frequencies Frequency bands in Hertz
+     * @param angularResolution Maximum angular step of the grid in radians
+     */
+    public CompiledDirectivitySphere(DirectivitySphere sphere, double[] frequencies, double angularResolution) {
+        if(!(angularResolution > 0)) {
+            throw new IllegalArgumentException("The angular resolution must be greater than zero");
+        }
+        this.frequencies = frequencies.clone();
+        this.bandCount = frequencies.length;
+        thetaCount = Math.max(2, (int) Math.ceil(Math.PI / angularResolution) + 1);
+        phiCount = Math.max(2, (int) Math.ceil((PHI_MAX - PHI_MIN) / angularResolution) + 1);
+        thetaStep = Math.PI / (thetaCount - 1);
+        phiStep = (PHI_MAX - PHI_MIN) / (phiCount - 1);
+        table = new float[thetaCount * phiCount * bandCount];
+        for(int thetaIndex = 0; thetaIndex < thetaCount; thetaIndex++) {
+            double theta = -Math.PI / 2 + thetaIndex * thetaStep;
+            for(int phiIndex = 0; phiIndex < phiCount; phiIndex++) {
+                double[] attenuation = sphere.getAttenuationArray(this.frequencies, PHI_MIN + phiIndex * phiStep,
+                        theta);
+                int offset = (thetaIndex * phiCount + phiIndex) * bandCount;
+                for(int band = 0; band < bandCount; band++) {
+                    table[offset + band] = (float) Utils.dbToW(attenuation[band]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Frequency bands of the grid in Hertz
+     */
+    public double[] getFrequencies() {
+        return frequencies.clone();
+    }
+
+    /**
+     * @return Angular step of the grid along theta in radians
+     */
+    public double getThetaStep() {
+        return thetaStep;
+    }
+
+    /**
+     * @return Angular step of the grid along phi in radians
+     */
+    public double getPhiStep() {
+        return phiStep;
+    }
+
+    /**
+     * @param frequency Frequency in Hertz
+     * @return Index of the closest band
+     */
+    private int getBandIndex(double frequency) {
+        int index = Arrays.binarySearch(frequencies, frequency);
+        if(index >= 0) {
+            return index;
+        }
+        int last = Math.min(-index - 1, bandCount - 1);
+        int first = Math.max(last - 1, 0);
+        return Math.abs(frequencies[first] - frequency) < Math.abs(frequencies[last] - frequency) ? first : last;
+    }
+
+    /**
+     * Interpolate the attenuation of the bands [firstBand, firstBand + count[ into the destination array
+     */
+    private void interpolate(double phi, double theta, int firstBand, int count, double[] attenuation,
+                             int destination) {
+        double u = (Math.max(PHI_MIN, Math.min(PHI_MAX, phi)) - PHI_MIN) / phiStep;
+        int phi0 = Math.min(phiCount - 2, (int) u);
+        int phi1 = phi0 + 1;
+        double x = Math.min(1, u - phi0);
+        double v = (Math.max(-Math.PI / 2, Math.min(Math.PI / 2, theta)) + Math.PI / 2) / thetaStep;
+        int theta0 = Math.min(thetaCount - 2, (int) v);
+        double y = Math.min(1, v - theta0);
+        int o00 = (theta0 * phiCount + phi0) * bandCount + firstBand;
+        int o01 = (theta0 * phiCount + phi1) * bandCount + firstBand;
+        int o10 = ((theta0 + 1) * phiCount + phi0) * bandCount + firstBand;
+        int o11 = ((theta0 + 1) * phiCount + phi1) * bandCount + firstBand;
+        double w00 = (1 - x) * (1 - y);
+        double w01 = x * (1 - y);
+        double w10 = (1 - x) * y;
+        double w11 = x * y;
+        for(int band = 0; band < count; band++) {
+            attenuation[destination + band] = Utils.wToDb(table[o00 + band] * w00 + table[o01 + band] * w01
+                    + table[o10 + band] * w10 + table[o11 + band] * w11);
+        }
+    }
+
+    /**
+     * Returns the attenuation in dB of all the bands of the grid at a given angle (phi, theta)
+     * @param phi (0 2π) 0 is front
+     * @param theta (-π/2 π/2) 0 is horizontal π is top
+     * @param attenuation Destination array of {@link #getFrequencies()} length
+     */
+    public void getAttenuationArray(double phi, double theta, double[] attenuation) {
+        interpolate(phi, theta, 0, bandCount, attenuation, 0);
+    }
+
+    @Override
+    public double getAttenuation(double frequency, double phi, double theta) {
+        double u = (Math.max(PHI_MIN, Math.min(PHI_MAX, phi)) - PHI_MIN) / phiStep;
+        int phi0 = Math.min(phiCount - 2, (int) u);
+        double x = Math.min(1, u - phi0);
+        double v = (Math.max(-Math.PI / 2, Math.min(Math.PI / 2, theta)) + Math.PI / 2) / thetaStep;
+        int theta0 = Math.min(thetaCount - 2, (int) v);
+        double y = Math.min(1, v - theta0);
+        int o00 = (theta0 * phiCount + phi0) * bandCount + getBandIndex(frequency);
+        int o10 = o00 + phiCount * bandCount;
+        return Utils.wToDb(table[o00] * ((1 - x) * (1 - y)) + table[o00 + bandCount] * (x * (1 - y))
+                + table[o10] * ((1 - x) * y) + table[o10 + bandCount] * (x * y));
+    }
+
+    @Override
+    public double[] getAttenuationArray(double[] frequencies, double phi, double theta) {
+        double[] attenuation = new double[frequencies.length];
+        getAttenuationArray(frequencies, phi, theta, attenuation);
+        return attenuation;
+    }
+
+    @Override
+    public void getAttenuationArray(double[] frequencies, double phi, double theta, double[] attenuation) {
+        if(Arrays.equals(frequencies, this.frequencies)) {
+            interpolate(phi, theta, 0, bandCount, attenuation, 0);
+        } else {
+            for(int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+                interpolate(phi, theta, getBandIndex(frequencies[idFrequency]), 1, attenuation, idFrequency);
+            }
+        }
+    }
+}
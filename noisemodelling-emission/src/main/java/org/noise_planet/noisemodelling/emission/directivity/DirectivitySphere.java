@@ -33,4 +33,17 @@ public interface DirectivitySphere {
      * @return Attenuation in dB for each frequency
      */
     double[] getAttenuationArray(double[] frequencies, double phi, double theta);
+
+    /**
+     * Returns the attenuation in dB of the directivity pattern at a given angle (phi, theta).
+     * The default implementation copies the array returned by {@link #getAttenuationArray(double[], double, double)},
+     * implementations override it in order to write directly into the destination array.
+     * @param frequencies Frequency array in Hertz (same order will be returned)
+     * @param phi (0 2π) 0 is front
+     * @param theta (-π/2 π/2) 0 is horizontal π is top
+     * @param attenuation Destination array, attenuation in dB for each frequency
+     */
+    default void getAttenuationArray(double[] frequencies, double phi, double theta, double[] attenuation) {
+        System.arraycopy(getAttenuationArray(frequencies, phi, theta), 0, attenuation, 0, frequencies.length);
+    }
 }
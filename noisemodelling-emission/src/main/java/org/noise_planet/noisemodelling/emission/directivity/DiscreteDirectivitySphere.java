@@ -91,16 +91,10 @@ public class DiscreteDirectivitySphere implements DirectivitySphere {
     }
 
     /**
-     * Returns the attenuation in dB for a particular frequency of the directivity pattern for a certain angle (phi, theta)
      * @param frequency Frequency in Hertz
-     * @param phi (0 2π) with 0 is front
-     * @param theta (-π/2 π/2) with 0 is horizontal; π is top
-     * @return Attenuation level in dB
+     * @return Index of the frequency in the records, or index of the closest frequency
      */
-    @Override
-    public double getAttenuation(double frequency, double phi, double theta) {
-        DirectivityRecord query = new DirectivityRecord(theta, phi, null);
-
+    private int getFrequencyIndex(double frequency) {
         // look for frequency index
         Integer idFreq = frequencyMapping.get(Double.doubleToLongBits(frequency));
         if (idFreq == null) {
@@ -113,7 +107,19 @@ public class DiscreteDirectivitySphere implements DirectivitySphere {
                         first : last;
             }
         }
-        return getRecord(query.theta, query.phi, interpolationMethod).getAttenuation()[idFreq];
+        return idFreq;
+    }
+
+    /**
+     * Returns the attenuation in dB for a particular frequency of the directivity pattern for a certain angle (phi, theta)
+     * @param frequency Frequency in Hertz
+     * @param phi (0 2π) with 0 is front
+     * @param theta (-π/2 π/2) with 0 is horizontal; π is top
+     * @return Attenuation level in dB
+     */
+    @Override
+    public double getAttenuation(double frequency, double phi, double theta) {
+        return getRecord(theta, phi, interpolationMethod).getAttenuation()[getFrequencyIndex(frequency)];
     }
 
     /**
@@ -125,29 +131,25 @@ public class DiscreteDirectivitySphere implements DirectivitySphere {
      */
     @Override
     public double[] getAttenuationArray(double[] frequencies, double phi, double theta) {
-        DirectivityRecord query = new DirectivityRecord(theta, phi, null);
-
-        DirectivityRecord record = getRecord(query.theta, query.phi, interpolationMethod);
-
         double[] returnAttenuation = new double[frequencies.length];
+        getAttenuationArray(frequencies, phi, theta, returnAttenuation);
+        return returnAttenuation;
+    }
 
+    /**
+     * Returns the attenuation in dB of the directivity pattern at a given angle (phi, theta). The interpolated record
+     * is still allocated, use {@link CompiledDirectivitySphere} for lookups without allocation.
+     * @param frequencies Frequency array in Hertz (same order will be returned)
+     * @param phi (0 2π) with 0 is front
+     * @param theta (-π/2 π/2) with 0 is horizontal; π is top
+     * @param attenuation Destination array, attenuation level in dB for each frequency
+     */
+    @Override
+    public void getAttenuationArray(double[] frequencies, double phi, double theta, double[] attenuation) {
+        DirectivityRecord record = getRecord(theta, phi, interpolationMethod);
         for (int frequencyIndex = 0; frequencyIndex < frequencies.length; frequencyIndex++) {
-            double frequency = frequencies[frequencyIndex];
-            // look for frequency index
-            Integer idFreq = frequencyMapping.get(Double.doubleToLongBits(frequency));
-            if (idFreq == null) {
-                // get closest index
-                idFreq = Arrays.binarySearch(frequencies, frequency);
-                if (idFreq < 0) {
-                    int last = Math.min(-idFreq - 1, frequencies.length - 1);
-                    int first = Math.max(last - 1, 0);
-                    idFreq = Math.abs(frequencies[first] - frequency) < Math.abs(frequencies[last] - frequency) ? first : last;
-                }
-            }
-            returnAttenuation[frequencyIndex] = record.attenuation[idFreq];
+            attenuation[frequencyIndex] = record.attenuation[getFrequencyIndex(frequencies[frequencyIndex])];
         }
-
-        return returnAttenuation;
     }
 
     /**
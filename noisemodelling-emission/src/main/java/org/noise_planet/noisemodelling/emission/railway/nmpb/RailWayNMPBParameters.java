@@ -204,10 +204,15 @@ public class RailWayNMPBParameters {
         @Override
         public double[] getAttenuationArray(double[] frequencies, double phi, double theta) {
             double[] ret = new double[frequencies.length];
+            getAttenuationArray(frequencies, phi, theta, ret);
+            return ret;
+        }
+
+        @Override
+        public void getAttenuationArray(double[] frequencies, double phi, double theta, double[] attenuation) {
             for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
-                ret[idFrequency] = getAttenuation(frequencies[idFrequency], phi, theta);
+                attenuation[idFrequency] = getAttenuation(frequencies[idFrequency], phi, theta);
             }
-            return ret;
         }
     }
 }
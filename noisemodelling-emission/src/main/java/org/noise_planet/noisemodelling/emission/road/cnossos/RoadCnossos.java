@@ -15,7 +15,10 @@ import com.fasterxml.jackson.databind.node.NullNode;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
+import static org.noise_planet.noisemodelling.emission.road.cnossos.RoadCnossosCoefficients.Coefficient.*;
+import static org.noise_planet.noisemodelling.emission.road.cnossos.RoadCnossosCoefficients.VehicleCategory.*;
 import static org.noise_planet.noisemodelling.emission.utils.Utils.*;
 
 /**
@@ -29,8 +32,11 @@ import static org.noise_planet.noisemodelling.emission.utils.Utils.*;
  */
 
 public class RoadCnossos {
-    private static JsonNode RoadCnossos_2015 = parse(RoadCnossos.class.getResourceAsStream("RoadCnossos_2015.json")); // old coefficients in 2015 amendments
-    private static JsonNode cnossosData2020 =parse(RoadCnossos.class.getResourceAsStream("RoadCnossos_2020.json")); // new coefficients in 2020 amendments
+    /** Coefficient files, parsed on first use */
+    private static final class CnossosData {
+        static final JsonNode RoadCnossos_2015 = parse(RoadCnossos.class.getResourceAsStream("RoadCnossos_2015.json")); // old coefficients in 2015 amendments
+        static final JsonNode cnossosData2020 = parse(RoadCnossos.class.getResourceAsStream("RoadCnossos_2020.json")); // new coefficients in 2020 amendments
+    }
 
     private static JsonNode parse(InputStream inputStream) {
         try {
@@ -48,9 +54,9 @@ public class RoadCnossos {
      */
     public static JsonNode getCnossosData(int fileVersion) {
         if (fileVersion == 1) {
-            return RoadCnossos_2015; // old coefficients in 2015 amendments
+            return CnossosData.RoadCnossos_2015; // old coefficients in 2015 amendments
         } else {
-            return cnossosData2020; // new coefficients in 2020 amendments
+            return CnossosData.cnossosData2020; // new coefficients in 2020 amendments
         }
     }
 
@@ -64,37 +70,23 @@ public class RoadCnossos {
      * @return a Road Coeff
      */
     public static Double getA_RoadSurfaceCoeff(int Freq, String vehCat, String roadSurface, int fileVersion) throws IOException {
-        int Freq_ind;
-        switch (Freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
-                break;
-            case 500:
-                Freq_ind = 3;
-                break;
-            case 1000:
-                Freq_ind = 4;
-                break;
-            case 2000:
-                Freq_ind = 5;
-                break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
-                break;
-            default:
-                Freq_ind = 0;
+        RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(fileVersion);
+        return coefficients.getSurfaceSpectrum(getSurfaceIndex(coefficients, roadSurface),
+                RoadCnossosCoefficients.VehicleCategory.fromId(vehCat), RoadCnossosCoefficients.getBandIndex(Freq));
+    }
+
+    /**
+     * @param coefficients Coefficients version
+     * @param roadSurface Road surface identifier
+     * @return Index of the road surface in the coefficients
+     * @throws IOException The road surface does not exist
+     */
+    private static int getSurfaceIndex(RoadCnossosCoefficients coefficients, String roadSurface) throws IOException {
+        int surface = coefficients.getSurfaceIndex(roadSurface);
+        if (surface < 0) {
+            throw new IOException("Error : the pavement " + roadSurface + " doesn't exist in the database.");
         }
-        if (getCnossosData(fileVersion).get("roads").get(roadSurface)==null)  throw new IOException("Error : the pavement "+roadSurface + " doesn't exist in the database.");
-        return getCnossosData(fileVersion).get("roads").get(roadSurface).get("ref").get(vehCat).get("spectrum").get(Freq_ind).doubleValue();
+        return surface;
     }
 
     /**
@@ -106,7 +98,12 @@ public class RoadCnossos {
      * @return a Road Coeff
      */
     public static Double getB_RoadSurfaceCoeff(String vehCat, String roadSurface, int fileVersion) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        return getCnossosData(fileVersion).get("roads").get(roadSurface).get("ref").get(vehCat).get("ßm").doubleValue();
+        RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(fileVersion);
+        int surface = coefficients.getSurfaceIndex(roadSurface);
+        if (surface < 0) {
+            throw new IllegalArgumentException("Error : the pavement " + roadSurface + " doesn't exist in the database.");
+        }
+        return coefficients.getSurfaceBeta(surface, RoadCnossosCoefficients.VehicleCategory.fromId(vehCat));
     }
 
     /**
@@ -117,7 +114,7 @@ public class RoadCnossos {
      * @return Cr coefficient
      */
     public static double getCr(String vehCat, int k, int fileVersion) {
-        return getCnossosData(fileVersion).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cr").doubleValue();
+        return RoadCnossosCoefficients.get(fileVersion).getCr(RoadCnossosCoefficients.VehicleCategory.fromId(vehCat), k);
     }
 
     /**
@@ -128,7 +125,7 @@ public class RoadCnossos {
      * @return Cp coefficient
      */
     public static double getCp(String vehCat, int k, int fileVersion) {
-        return getCnossosData(fileVersion).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cp").doubleValue();
+        return RoadCnossosCoefficients.get(fileVersion).getCp(RoadCnossosCoefficients.VehicleCategory.fromId(vehCat), k);
     }
 
     /**
@@ -139,36 +136,31 @@ public class RoadCnossos {
      * @return Vehicle emission values coefficients
      */
     public static Double getCoeff(String coeff, int freq, String vehicleCategory, int coeffVer) {
-        int Freq_ind;
-        switch (freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
+        RoadCnossosCoefficients.Coefficient coefficient;
+        switch (coeff) {
+            case "ar":
+                coefficient = RoadCnossosCoefficients.Coefficient.AR;
                 break;
-            case 250:
-                Freq_ind = 2;
+            case "br":
+                coefficient = RoadCnossosCoefficients.Coefficient.BR;
                 break;
-            case 500:
-                Freq_ind = 3;
+            case "ap":
+                coefficient = RoadCnossosCoefficients.Coefficient.AP;
                 break;
-            case 1000:
-                Freq_ind = 4;
+            case "bp":
+                coefficient = RoadCnossosCoefficients.Coefficient.BP;
                 break;
-            case 2000:
-                Freq_ind = 5;
+            case "a":
+                coefficient = RoadCnossosCoefficients.Coefficient.A;
                 break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
+            case "b":
+                coefficient = RoadCnossosCoefficients.Coefficient.B;
                 break;
             default:
-                Freq_ind = 0;
+                throw new IllegalArgumentException("Unknown coefficient " + coeff);
         }
-        return getCnossosData(coeffVer).get("vehicles").get(vehicleCategory).get(coeff).get(Freq_ind).doubleValue();
+        return RoadCnossosCoefficients.get(coeffVer).getCoefficient(coefficient,
+                RoadCnossosCoefficients.VehicleCategory.fromId(vehicleCategory), RoadCnossosCoefficients.getBandIndex(freq));
     }
 
     /**
@@ -191,17 +183,18 @@ public class RoadCnossos {
      * @param roadCnossosParameters every others parameters linked to RoadCnossosParameters class (e.g. speed on the road segment)
      * @param Pm_stud proportion of vehicle equipped of studded tyres
      * @param Ts_stud number of months they are equipped with studded tires
-     * @param freq Frequency in Hz (octave band)
-     * @param fileVersion
+     * @param coefficients Emission coefficients
+     * @param band Band index
      * @return
      */
-    private static Double getDeltaStuddedTyres(RoadCnossosParameters roadCnossosParameters, double Pm_stud, double Ts_stud,
-                                               int freq, int fileVersion, double vRef) throws IOException {
+    private static double getDeltaStuddedTyres(RoadCnossosParameters roadCnossosParameters, double Pm_stud, double Ts_stud,
+                                               RoadCnossosCoefficients coefficients, int band, double vRef) throws IOException {
         double speed = roadCnossosParameters.getSpeedLv();
         double ps = Pm_stud * Ts_stud / 12;  // Eq. 2.2.7 yearly average proportion of vehicles equipped with studded tyres
         speed = (speed >= 90) ? 90 : speed;
         speed = (speed <= 50) ? 50 : speed;
-        double deltastud = getNoiseLvl(getCoeff("a", freq, "1", fileVersion), getCoeff("b", freq, "1", fileVersion), speed, vRef);
+        double deltastud = getNoiseLvl(coefficients.getCoefficient(A, LIGHT, band),
+                coefficients.getCoefficient(B, LIGHT, band), speed, vRef);
         return 10 * Math.log10((1 - ps) + ps * Math.pow(10, deltastud / 10)); // Eq. 2.2.8
         // Only for light vehicles (Eq.2.2.9)
     }
@@ -284,30 +277,73 @@ public class RoadCnossos {
      * @param roadCnossosParameters every parameters linked to RoadCnossosParameters class (e.g. speed on the road segment)
      * @return Noise level in dB
      */
-
     public static double evaluate(RoadCnossosParameters roadCnossosParameters) throws IOException {
-        final int freqParam = roadCnossosParameters.getFrequency();
+        RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(roadCnossosParameters.getFileVersion());
+        return evaluate(roadCnossosParameters, coefficients,
+                getSurfaceIndex(coefficients, roadCnossosParameters.getRoadSurface()),
+                RoadCnossosCoefficients.getBandIndex(roadCnossosParameters.getFrequency()));
+    }
+
+    /**
+     * Return the noise emission spectrum of a road segment in dB/m. The frequency of the parameters is ignored.
+     * @param roadCnossosParameters every parameters linked to RoadCnossosParameters class (e.g. speed on the road segment)
+     * @param frequencies Frequencies in Hz (octave bands)
+     * @return Noise level in dB of each frequency
+     */
+    public static double[] evaluate(RoadCnossosParameters roadCnossosParameters, int[] frequencies) throws IOException {
+        RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(roadCnossosParameters.getFileVersion());
+        int surface = getSurfaceIndex(coefficients, roadCnossosParameters.getRoadSurface());
+        double[] levels = new double[frequencies.length];
+        for (int idFreq = 0; idFreq < frequencies.length; idFreq++) {
+            levels[idFreq] = evaluate(roadCnossosParameters, coefficients, surface,
+                    RoadCnossosCoefficients.getBandIndex(frequencies[idFreq]));
+        }
+        return levels;
+    }
+
+    /**
+     * Return the noise emission spectrum of road segments in dB/m. The frequency of the parameters is ignored.
+     * @param roadSegments Parameters of each road segment
+     * @param frequencies Frequencies in Hz (octave bands)
+     * @return Noise level in dB [segment][frequency]
+     */
+    public static double[][] evaluate(List<RoadCnossosParameters> roadSegments, int[] frequencies) throws IOException {
+        double[][] levels = new double[roadSegments.size()][];
+        for (int idSegment = 0; idSegment < levels.length; idSegment++) {
+            levels[idSegment] = evaluate(roadSegments.get(idSegment), frequencies);
+        }
+        return levels;
+    }
+
+    /**
+     * Return the noise emission level of a road segment in dB/m for one band
+     * @param roadCnossosParameters every parameters linked to RoadCnossosParameters class (e.g. speed on the road segment)
+     * @param coefficients Emission coefficients of the parameters version
+     * @param surface Road surface index
+     * @param band Band index
+     * @return Noise level in dB
+     */
+    private static double evaluate(RoadCnossosParameters roadCnossosParameters, RoadCnossosCoefficients coefficients,
+                                   int surface, int band) throws IOException {
         final double Temperature = roadCnossosParameters.getTemperature();
         final double Ts_stud = roadCnossosParameters.getTsStud();
         final double Pm_stud = roadCnossosParameters.getqStudRatio();
         final double Junc_dist = roadCnossosParameters.getJunc_dist();
         final int Junc_type = roadCnossosParameters.getJunc_type();
-        final String roadSurface = roadCnossosParameters.getRoadSurface();
-        final int coeffVer = roadCnossosParameters.getFileVersion();
         double vRef = 70.;
 
         /**
          * Rolling Noise
          */
         // Rolling noise level Eq. 2.2.4
-        double lvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "1", coeffVer), getCoeff("br", freqParam, "1", coeffVer), roadCnossosParameters.getSpeedLv(), vRef);
-        double medRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "2", coeffVer), getCoeff("br", freqParam, "2", coeffVer), roadCnossosParameters.getSpeedMv(), vRef);
-        double hgvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "3", coeffVer), getCoeff("br", freqParam, "3", coeffVer), roadCnossosParameters.getSpeedHgv(), vRef);
+        double lvRoadLvl = getNoiseLvl(coefficients.getCoefficient(AR, LIGHT, band), coefficients.getCoefficient(BR, LIGHT, band), roadCnossosParameters.getSpeedLv(), vRef);
+        double medRoadLvl = getNoiseLvl(coefficients.getCoefficient(AR, MEDIUM, band), coefficients.getCoefficient(BR, MEDIUM, band), roadCnossosParameters.getSpeedMv(), vRef);
+        double hgvRoadLvl = getNoiseLvl(coefficients.getCoefficient(AR, HEAVY, band), coefficients.getCoefficient(BR, HEAVY, band), roadCnossosParameters.getSpeedHgv(), vRef);
         // Rolling noise is only for categories 1, 2 and 3
 
         // Correction for studded tyres - Eq. 2.2.6
         if (Pm_stud > 0 && Ts_stud > 0) {
-            lvRoadLvl = lvRoadLvl + getDeltaStuddedTyres(roadCnossosParameters, Pm_stud, Ts_stud, freqParam, coeffVer, vRef);
+            lvRoadLvl = lvRoadLvl + getDeltaStuddedTyres(roadCnossosParameters, Pm_stud, Ts_stud, coefficients, band, vRef);
         }
 
         // Effect of air temperature on rolling noise correction Eq 2.2.10
@@ -319,11 +355,11 @@ public class RoadCnossos {
          * Propulsion Noise
          */
         // General equation - Eq. 2.2.11
-        double lvMotorLvl = getCoeff("ap", freqParam, "1", coeffVer) + getCoeff("bp", freqParam, "1", coeffVer) * (roadCnossosParameters.getSpeedLv() - vRef) / vRef;
-        double medMotorLvl = getCoeff("ap", freqParam, "2", coeffVer) + getCoeff("bp", freqParam, "2", coeffVer) * (roadCnossosParameters.getSpeedMv() - vRef) / vRef;
-        double hgvMotorLvl = getCoeff("ap", freqParam, "3", coeffVer) + getCoeff("bp", freqParam, "3", coeffVer) * (roadCnossosParameters.getSpeedHgv() - vRef) / vRef;
-        double wheelaMotorLvl = getCoeff("ap", freqParam, "4a", coeffVer) + getCoeff("bp", freqParam, "4a", coeffVer) * (roadCnossosParameters.getSpeedWav() - vRef) / vRef;
-        double wheelbMotorLvl = getCoeff("ap", freqParam, "4b", coeffVer) + getCoeff("bp", freqParam, "4b", coeffVer) * (roadCnossosParameters.getSpeedWbv() - vRef) / vRef;
+        double lvMotorLvl = coefficients.getCoefficient(AP, LIGHT, band) + coefficients.getCoefficient(BP, LIGHT, band) * (roadCnossosParameters.getSpeedLv() - vRef) / vRef;
+        double medMotorLvl = coefficients.getCoefficient(AP, MEDIUM, band) + coefficients.getCoefficient(BP, MEDIUM, band) * (roadCnossosParameters.getSpeedMv() - vRef) / vRef;
+        double hgvMotorLvl = coefficients.getCoefficient(AP, HEAVY, band) + coefficients.getCoefficient(BP, HEAVY, band) * (roadCnossosParameters.getSpeedHgv() - vRef) / vRef;
+        double wheelaMotorLvl = coefficients.getCoefficient(AP, TWO_WHEELS_A, band) + coefficients.getCoefficient(BP, TWO_WHEELS_A, band) * (roadCnossosParameters.getSpeedWav() - vRef) / vRef;
+        double wheelbMotorLvl = coefficients.getCoefficient(AP, TWO_WHEELS_B, band) + coefficients.getCoefficient(BP, TWO_WHEELS_B, band) * (roadCnossosParameters.getSpeedWbv() - vRef) / vRef;
 
         // Effect of road gradients
         // This correction implicitly includes the effect of slope on speed.
@@ -352,27 +388,27 @@ public class RoadCnossos {
         // Todo Here, we should get the Junc_dist by another way that we are doing now to be more precise issue #524
         double coefficientJunctionDistance = Math.max(1 - Math.abs(Junc_dist) / 100, 0);
         // Effect of the acceleration and deceleration of vehicles - Rolling Noise Eq 2.2.17
-        lvRoadLvl = lvRoadLvl + getCr("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medRoadLvl = medRoadLvl + getCr("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvRoadLvl = hgvRoadLvl + getCr("3", Junc_type, coeffVer) * coefficientJunctionDistance;
+        lvRoadLvl = lvRoadLvl + coefficients.getCr(LIGHT, Junc_type) * coefficientJunctionDistance;
+        medRoadLvl = medRoadLvl + coefficients.getCr(MEDIUM, Junc_type) * coefficientJunctionDistance;
+        hgvRoadLvl = hgvRoadLvl + coefficients.getCr(HEAVY, Junc_type) * coefficientJunctionDistance;
         // Effect of the acceleration and deceleration of vehicles - Propulsion Noise Eq 2.2.18
-        lvMotorLvl = lvMotorLvl + getCp("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medMotorLvl = medMotorLvl + getCp("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvMotorLvl = hgvMotorLvl + getCp("3", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelaMotorLvl = wheelaMotorLvl + getCp("4a", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelbMotorLvl = wheelbMotorLvl + getCp("4b", Junc_type, coeffVer) * coefficientJunctionDistance;
+        lvMotorLvl = lvMotorLvl + coefficients.getCp(LIGHT, Junc_type) * coefficientJunctionDistance;
+        medMotorLvl = medMotorLvl + coefficients.getCp(MEDIUM, Junc_type) * coefficientJunctionDistance;
+        hgvMotorLvl = hgvMotorLvl + coefficients.getCp(HEAVY, Junc_type) * coefficientJunctionDistance;
+        wheelaMotorLvl = wheelaMotorLvl + coefficients.getCp(TWO_WHEELS_A, Junc_type) * coefficientJunctionDistance;
+        wheelbMotorLvl = wheelbMotorLvl + coefficients.getCp(TWO_WHEELS_B, Junc_type) * coefficientJunctionDistance;
 
         // Effect of the type of road surface - Eq. 2.2.19
-        lvRoadLvl = lvRoadLvl + getNoiseLvl(getA_RoadSurfaceCoeff(freqParam, "1", roadCnossosParameters.getRoadSurface(), coeffVer), getB_RoadSurfaceCoeff("1", roadSurface, coeffVer), roadCnossosParameters.getSpeedLv(), 70.);
-        medRoadLvl = medRoadLvl + getNoiseLvl(getA_RoadSurfaceCoeff(freqParam, "2", roadCnossosParameters.getRoadSurface(), coeffVer), getB_RoadSurfaceCoeff("2", roadSurface, coeffVer), roadCnossosParameters.getSpeedMv(), 70.);
-        hgvRoadLvl = hgvRoadLvl + getNoiseLvl(getA_RoadSurfaceCoeff(freqParam, "3", roadCnossosParameters.getRoadSurface(), coeffVer), getB_RoadSurfaceCoeff("3", roadSurface, coeffVer), roadCnossosParameters.getSpeedHgv(), 70.);
+        lvRoadLvl = lvRoadLvl + getNoiseLvl(coefficients.getSurfaceSpectrum(surface, LIGHT, band), coefficients.getSurfaceBeta(surface, LIGHT), roadCnossosParameters.getSpeedLv(), 70.);
+        medRoadLvl = medRoadLvl + getNoiseLvl(coefficients.getSurfaceSpectrum(surface, MEDIUM, band), coefficients.getSurfaceBeta(surface, MEDIUM), roadCnossosParameters.getSpeedMv(), 70.);
+        hgvRoadLvl = hgvRoadLvl + getNoiseLvl(coefficients.getSurfaceSpectrum(surface, HEAVY, band), coefficients.getSurfaceBeta(surface, HEAVY), roadCnossosParameters.getSpeedHgv(), 70.);
 
         // Correction road on propulsion noise - Eq. 2.2.20
-        lvMotorLvl = lvMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "1", roadSurface, coeffVer), 0.);
-        medMotorLvl = medMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "2", roadSurface, coeffVer), 0.);
-        hgvMotorLvl = hgvMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "3", roadSurface, coeffVer), 0.);
-        wheelaMotorLvl = wheelaMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "4a", roadSurface, coeffVer), 0.);
-        wheelbMotorLvl = wheelbMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "4b", roadSurface, coeffVer), 0.);
+        lvMotorLvl = lvMotorLvl + Math.min(coefficients.getSurfaceSpectrum(surface, LIGHT, band), 0.);
+        medMotorLvl = medMotorLvl + Math.min(coefficients.getSurfaceSpectrum(surface, MEDIUM, band), 0.);
+        hgvMotorLvl = hgvMotorLvl + Math.min(coefficients.getSurfaceSpectrum(surface, HEAVY, band), 0.);
+        wheelaMotorLvl = wheelaMotorLvl + Math.min(coefficients.getSurfaceSpectrum(surface, TWO_WHEELS_A, band), 0.);
+        wheelbMotorLvl = wheelbMotorLvl + Math.min(coefficients.getSurfaceSpectrum(surface, TWO_WHEELS_B, band), 0.);
 
         /**
          * Combine Propulsion and Rolling Noise - Eq. 2.2.2
@@ -407,4 +443,4 @@ public class RoadCnossos {
 
         return sumDb5(lvLvl, medLvl, hgvLvl, wheelaLvl, wheelbLvl);
     }
-}
\ No newline at end of file
+}
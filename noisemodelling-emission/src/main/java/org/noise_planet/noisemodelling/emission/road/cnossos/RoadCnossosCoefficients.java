@@ -0,0 +1,273 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.emission.road.cnossos;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coefficients of a CNOSSOS road emission file (vehicles and road surfaces) compiled into primitive arrays.
+ * The tables are immutable, built the first time a version is requested and shared by all the threads.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public final class RoadCnossosCoefficients {
+    /** Octave bands of the coefficients */
+    public static final int[] FREQUENCIES = new int[]{63, 125, 250, 500, 1000, 2000, 4000, 8000};
+    public static final int BAND_COUNT = FREQUENCIES.length;
+
+    /**
+     * Vehicle categories, Table 2.2.a Directive 2015/Amendments 2020
+     */
+    public enum VehicleCategory {
+        /** Passenger cars, delivery vans ≤ 3.5 tons, SUVs , MPVs including trailers and caravans */
+        LIGHT("1"),
+        /** Medium heavy vehicles, delivery vans &gt; 3.5 tons, buses, touring cars, etc. with two axles */
+        MEDIUM("2"),
+        /** Heavy duty vehicles, touring cars, buses, with three or more axles */
+        HEAVY("3"),
+        /** Mopeds, tricycles or quads ≤ 50 cc */
+        TWO_WHEELS_A("4a"),
+        /** Motorcycles, tricycles or quads &gt; 50 cc */
+        TWO_WHEELS_B("4b");
+
+        private final String id;
+
+        VehicleCategory(String id) {
+            this.id = id;
+        }
+
+        /**
+         * @return Identifier of the category in the coefficient files
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @param id Identifier of the category in the coefficient files (1,2,3,4a,4b)
+         * @return Vehicle category
+         */
+        public static VehicleCategory fromId(String id) {
+            switch (id) {
+                case "1":
+                    return LIGHT;
+                case "2":
+                    return MEDIUM;
+                case "3":
+                    return HEAVY;
+                case "4a":
+                    return TWO_WHEELS_A;
+                case "4b":
+                    return TWO_WHEELS_B;
+                default:
+                    throw new IllegalArgumentException("Unknown vehicle category " + id);
+            }
+        }
+    }
+
+    /**
+     * Vehicle emission coefficients by frequency band
+     */
+    public enum Coefficient {
+        /** Rolling noise */
+        AR("ar"), BR("br"),
+        /** Propulsion noise */
+        AP("ap"), BP("bp"),
+        /** Studded tyres, light vehicles only */
+        A("a"), B("b");
+
+        private final String id;
+
+        Coefficient(String id) {
+            this.id = id;
+        }
+
+        /**
+         * @return Identifier of the coefficient in the coefficient files
+         */
+        public String getId() {
+            return id;
+        }
+    }
+
+    private static final int CATEGORY_COUNT = VehicleCategory.values().length;
+    private static final int COEFFICIENT_COUNT = Coefficient.values().length;
+
+    /** [(category * COEFFICIENT_COUNT + coefficient) * BAND_COUNT + band], NaN if not defined */
+    private final double[] vehicleCoefficients;
+    /** Cr of each category for a crossing with traffic lights then a roundabout [category * 2 + junction] */
+    private final double[] cr;
+    /** Cp of each category for a crossing with traffic lights then a roundabout [category * 2 + junction] */
+    private final double[] cp;
+    private final Map<String, Integer> surfaceIndex;
+    /** Road surface "a" coefficient [(surface * CATEGORY_COUNT + category) * BAND_COUNT + band] */
+    private final double[] surfaceSpectrum;
+    /** Road surface "ßm" coefficient [surface * CATEGORY_COUNT + category] */
+    private final double[] surfaceBeta;
+
+    private static final class Version2015 {
+        static final RoadCnossosCoefficients INSTANCE = new RoadCnossosCoefficients(RoadCnossos.getCnossosData(1));
+    }
+
+    private static final class Version2020 {
+        static final RoadCnossosCoefficients INSTANCE = new RoadCnossosCoefficients(RoadCnossos.getCnossosData(2));
+    }
+
+    /**
+     * @param fileVersion 1 for the 2015 coefficients, other values for the 2020 amendments
+     * @return Coefficients of this version
+     */
+    public static RoadCnossosCoefficients get(int fileVersion) {
+        return fileVersion == 1 ? Version2015.INSTANCE : Version2020.INSTANCE;
+    }
+
+    /**
+     * @param cnossosData Content of a coefficient file
+     */
+    public RoadCnossosCoefficients(JsonNode cnossosData) {
+        vehicleCoefficients = new double[CATEGORY_COUNT * COEFFICIENT_COUNT * BAND_COUNT];
+        Arrays.fill(vehicleCoefficients, Double.NaN);
+        cr = new double[CATEGORY_COUNT * 2];
+        cp = new double[CATEGORY_COUNT * 2];
+        JsonNode vehicles = cnossosData.path("vehicles");
+        for (VehicleCategory category : VehicleCategory.values()) {
+            JsonNode vehicle = vehicles.path(category.getId());
+            for (Coefficient coefficient : Coefficient.values()) {
+                JsonNode values = vehicle.path(coefficient.getId());
+                for (int band = 0; band < BAND_COUNT && band < values.size(); band++) {
+                    vehicleCoefficients[(category.ordinal() * COEFFICIENT_COUNT + coefficient.ordinal()) * BAND_COUNT
+                            + band] = values.get(band).doubleValue();
+                }
+            }
+            cr[category.ordinal() * 2] = vehicle.path("crossing").path("cr").asDouble(Double.NaN);
+            cr[category.ordinal() * 2 + 1] = vehicle.path("roundabout").path("cr").asDouble(Double.NaN);
+            cp[category.ordinal() * 2] = vehicle.path("crossing").path("cp").asDouble(Double.NaN);
+            cp[category.ordinal() * 2 + 1] = vehicle.path("roundabout").path("cp").asDouble(Double.NaN);
+        }
+        JsonNode roads = cnossosData.path("roads");
+        Map<String, Integer> surfaces = new HashMap<>();
+        surfaceSpectrum = new double[roads.size() * CATEGORY_COUNT * BAND_COUNT];
+        surfaceBeta = new double[roads.size() * CATEGORY_COUNT];
+        Arrays.fill(surfaceSpectrum, Double.NaN);
+        Arrays.fill(surfaceBeta, Double.NaN);
+        Iterator<Map.Entry<String, JsonNode>> it = roads.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> road = it.next();
+            int surface = surfaces.size();
+            surfaces.put(road.getKey(), surface);
+            JsonNode ref = road.getValue().path("ref");
+            for (VehicleCategory category : VehicleCategory.values()) {
+                JsonNode coefficients = ref.path(category.getId());
+                JsonNode spectrum = coefficients.path("spectrum");
+                for (int band = 0; band < BAND_COUNT && band < spectrum.size(); band++) {
+                    surfaceSpectrum[(surface * CATEGORY_COUNT + category.ordinal()) * BAND_COUNT + band] =
+                            spectrum.get(band).doubleValue();
+                }
+                surfaceBeta[surface * CATEGORY_COUNT + category.ordinal()] =
+                        coefficients.path("ßm").asDouble(Double.NaN);
+            }
+        }
+        surfaceIndex = Collections.unmodifiableMap(surfaces);
+    }
+
+    /**
+     * @param frequency Frequency in Hz (octave band)
+     * @return Index of the band, the first band for an unknown frequency
+     */
+    public static int getBandIndex(int frequency) {
+        switch (frequency) {
+            case 125:
+                return 1;
+            case 250:
+                return 2;
+            case 500:
+                return 3;
+            case 1000:
+                return 4;
+            case 2000:
+                return 5;
+            case 4000:
+                return 6;
+            case 8000:
+                return 7;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return Identifiers of the road surfaces
+     */
+    public Set<String> getRoadSurfaces() {
+        return surfaceIndex.keySet();
+    }
+
+    /**
+     * @param roadSurface Road surface identifier (NL01, FR_R2..)
+     * @return Index of the road surface, -1 if the surface does not exist
+     */
+    public int getSurfaceIndex(String roadSurface) {
+        Integer index = surfaceIndex.get(roadSurface);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param coefficient Coefficient
+     * @param category Vehicle category
+     * @param band Band index
+     * @return Vehicle emission coefficient, NaN if not defined for this category
+     */
+    public double getCoefficient(Coefficient coefficient, VehicleCategory category, int band) {
+        return vehicleCoefficients[(category.ordinal() * COEFFICIENT_COUNT + coefficient.ordinal()) * BAND_COUNT + band];
+    }
+
+    /**
+     * @param category Vehicle category
+     * @param junctionType k=1 Crossing lights, k=2 roundabout
+     * @return Cr coefficient
+     */
+    public double getCr(VehicleCategory category, int junctionType) {
+        return cr[category.ordinal() * 2 + (junctionType == 1 ? 0 : 1)];
+    }
+
+    /**
+     * @param category Vehicle category
+     * @param junctionType k=1 Crossing lights, k=2 roundabout
+     * @return Cp coefficient
+     */
+    public double getCp(VehicleCategory category, int junctionType) {
+        return cp[category.ordinal() * 2 + (junctionType == 1 ? 0 : 1)];
+    }
+
+    /**
+     * @param surface Road surface index, see {@link #getSurfaceIndex(String)}
+     * @param category Vehicle category
+     * @param band Band index
+     * @return "a" road surface coefficient (spectrum)
+     */
+    public double getSurfaceSpectrum(int surface, VehicleCategory category, int band) {
+        return surfaceSpectrum[(surface * CATEGORY_COUNT + category.ordinal()) * BAND_COUNT + band];
+    }
+
+    /**
+     * @param surface Road surface index, see {@link #getSurfaceIndex(String)}
+     * @param category Vehicle category
+     * @return "b" road surface coefficient (ßm)
+     */
+    public double getSurfaceBeta(int surface, VehicleCategory category) {
+        return surfaceBeta[surface * CATEGORY_COUNT + category.ordinal()];
+    }
+}
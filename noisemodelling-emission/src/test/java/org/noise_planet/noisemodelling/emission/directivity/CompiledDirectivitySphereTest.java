@@ -0,0 +1,101 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.emission.directivity;
+
+import org.junit.Test;
+import org.noise_planet.noisemodelling.emission.LineSource;
+import org.noise_planet.noisemodelling.emission.railway.cnossos.RailWayCnossosParameters;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test the resampled directivity sphere
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+
+public class CompiledDirectivitySphereTest {
+    final static double[] freqTest = new double[]{63, 125, 250, 500, 1000, 2000, 4000, 8000};
+
+    @Test
+    public void testRailwayDirectivity() {
+        for (String sourceType : new String[]{"ROLLING", "TRACTIONB", "AERODYNAMICB", "BRIDGE"}) {
+            RailWayCnossosParameters.RailwayDirectivitySphere sphere =
+                    new RailWayCnossosParameters.RailwayDirectivitySphere(new LineSource(sourceType));
+            CompiledDirectivitySphere compiled = new CompiledDirectivitySphere(sphere, freqTest,
+                    CompiledDirectivitySphere.DEFAULT_ANGULAR_RESOLUTION);
+            Random random = new Random(42);
+            double[] attenuation = new double[freqTest.length];
+            for (int i = 0; i < 1000; i++) {
+                // ray directions are from -π to π
+                double phi = (random.nextDouble() * 3 - 1) * Math.PI;
+                double theta = Math.toRadians(random.nextDouble() * 160 - 80);
+                compiled.getAttenuationArray(phi, theta, attenuation);
+                double[] expected = sphere.getAttenuationArray(freqTest, phi, theta);
+                assertArrayEquals(expected, attenuation, 0.05);
+                assertArrayEquals(attenuation, compiled.getAttenuationArray(freqTest, phi, theta), 0);
+                assertEquals(attenuation[3], compiled.getAttenuation(500, phi, theta), 0);
+                // closest band
+                assertEquals(attenuation[3], compiled.getAttenuation(510, phi, theta), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testSubsetOfFrequencies() {
+        RailWayCnossosParameters.RailwayDirectivitySphere sphere =
+                new RailWayCnossosParameters.RailwayDirectivitySphere(new LineSource("TRACTIONB"));
+        CompiledDirectivitySphere compiled = new CompiledDirectivitySphere(sphere, freqTest, Math.toRadians(2));
+        double[] frequencies = new double[]{1000, 125, 8000};
+        double[] attenuation = compiled.getAttenuationArray(frequencies, 0.3, -0.2);
+        double[] all = new double[freqTest.length];
+        compiled.getAttenuationArray(0.3, -0.2, all);
+        assertArrayEquals(new double[]{all[4], all[1], all[7]}, attenuation, 0);
+        // Poles
+        compiled.getAttenuationArray(1.2, Math.PI / 2, all);
+        assertArrayEquals(sphere.getAttenuationArray(freqTest, 1.2, Math.PI / 2), all, 0.05);
+    }
+
+    /**
+     * A discrete sphere sampled every 5 degrees and its compiled grid (1 degree) give the same attenuation within
+     * 0.01 dB at angles between the records of the discrete sphere
+     */
+    @Test
+    public void testDiscreteDirectivityOffGrid() {
+        RailWayCnossosParameters.RailwayDirectivitySphere railway =
+                new RailWayCnossosParameters.RailwayDirectivitySphere(new LineSource("TRACTIONB"));
+        DiscreteDirectivitySphere discrete = new DiscreteDirectivitySphere(1, freqTest);
+        for (int yaw = 0; yaw < 360; yaw += 5) {
+            double phi = Math.toRadians(yaw);
+            for (int pitch = -85; pitch < 90; pitch += 5) {
+                double theta = Math.toRadians(pitch);
+                discrete.addDirectivityRecord(theta, phi, railway.getAttenuationArray(freqTest, phi, theta));
+            }
+        }
+        CompiledDirectivitySphere compiled = new CompiledDirectivitySphere(discrete, freqTest,
+                CompiledDirectivitySphere.DEFAULT_ANGULAR_RESOLUTION);
+        Random random = new Random(42);
+        double[] attenuation = new double[freqTest.length];
+        double[] expected = new double[freqTest.length];
+        for (int i = 0; i < 1000; i++) {
+            // angles between the 5 degrees records
+            double phi = Math.toRadians(5 * random.nextInt(71) + 0.5 + random.nextDouble() * 4);
+            double theta = Math.toRadians(5 * random.nextInt(34) - 85 + 0.5 + random.nextDouble() * 4);
+            discrete.getAttenuationArray(freqTest, phi, theta, expected);
+            compiled.getAttenuationArray(freqTest, phi, theta, attenuation);
+            assertArrayEquals(expected, attenuation, 0.01);
+            assertArrayEquals(expected, discrete.getAttenuationArray(freqTest, phi, theta), 0);
+            assertEquals(expected[2], discrete.getAttenuation(freqTest[2], phi, theta), 0);
+            assertEquals(attenuation[2], compiled.getAttenuation(freqTest[2], phi, theta), 0);
+        }
+    }
+}
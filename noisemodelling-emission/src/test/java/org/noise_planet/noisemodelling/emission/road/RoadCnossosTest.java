@@ -12,9 +12,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.NullNode;
 import org.junit.Test;
 import org.noise_planet.noisemodelling.emission.road.cnossos.RoadCnossos;
+import org.noise_planet.noisemodelling.emission.road.cnossos.RoadCnossosCoefficients;
 import org.noise_planet.noisemodelling.emission.road.cnossos.RoadCnossosParameters;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -249,4 +252,42 @@ public class RoadCnossosTest {
 
         }
     }
-}
\ No newline at end of file
+
+    /** The spectrum of a road segment is the same as the evaluation of each band **/
+    @Test
+    public void testSpectrum() throws IOException {
+        List<RoadCnossosParameters> segments = new ArrayList<>();
+        for (String surface : new String[]{"NL01", "NL05", "FR_R2", "DEF"}) {
+            RoadCnossosParameters rsParameters = new RoadCnossosParameters(70, 60, 50, 40, 45, 1000, 50, 80, 10, 20,
+                    63, 15, surface, 4, 0.5, 50, 1);
+            rsParameters.setSlopePercentage(5);
+            rsParameters.setWay(3);
+            segments.add(rsParameters);
+        }
+        double[][] spectrums = RoadCnossos.evaluate(segments, FREQUENCIES);
+        assertEquals(segments.size(), spectrums.length);
+        for (int idSegment = 0; idSegment < segments.size(); idSegment++) {
+            RoadCnossosParameters rsParameters = segments.get(idSegment);
+            for (int idFreq = 0; idFreq < FREQUENCIES.length; idFreq++) {
+                rsParameters.setFrequency(FREQUENCIES[idFreq]);
+                assertEquals(RoadCnossos.evaluate(rsParameters), spectrums[idSegment][idFreq], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testCoefficientTables() {
+        RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(2);
+        assertTrue(coefficients.getRoadSurfaces().contains("NL01"));
+        assertEquals(-1, coefficients.getSurfaceIndex("wrongPavement"));
+        int surface = coefficients.getSurfaceIndex("NL01");
+        assertEquals(RoadCnossos.getCnossosData(2).get("roads").get("NL01").get("ref").get("3").get("ßm").doubleValue(),
+                coefficients.getSurfaceBeta(surface, RoadCnossosCoefficients.VehicleCategory.HEAVY), 0);
+        assertEquals(RoadCnossos.getCnossosData(1).get("vehicles").get("4b").get("bp").get(6).doubleValue(),
+                RoadCnossosCoefficients.get(1).getCoefficient(RoadCnossosCoefficients.Coefficient.BP,
+                        RoadCnossosCoefficients.VehicleCategory.TWO_WHEELS_B, RoadCnossosCoefficients.getBandIndex(4000)), 0);
+        // studded tyres coefficients are only defined for light vehicles
+        assertTrue(Double.isNaN(coefficients.getCoefficient(RoadCnossosCoefficients.Coefficient.A,
+                RoadCnossosCoefficients.VehicleCategory.MEDIUM, 0)));
+    }
+}
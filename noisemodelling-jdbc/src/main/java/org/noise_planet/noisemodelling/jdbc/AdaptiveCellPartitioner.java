@@ -0,0 +1,287 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split the computation area into cells of similar computation cost, instead of a uniform grid.
+ * Receivers, sources and buildings are accumulated into a fine histogram grid. The cost of a receiver is estimated
+ * from the source length and the building count located within the maximum propagation distance. The area is then
+ * recursively split (kd-tree) along its longest side at the cost median until each cell is below the maximum cost and
+ * the maximum receiver count.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class AdaptiveCellPartitioner {
+    /** Maximum histogram side cell count */
+    public static final int MAXIMUM_GRID_SIDE = 512;
+    /** Minimum side length of the histogram cells */
+    public static final double MINIMUM_RESOLUTION = 1.0;
+    /** Line sources are counted as one source point every LINE_SOURCE_STEP meters */
+    public static final double LINE_SOURCE_STEP = 10.0;
+
+    private final Envelope envelope;
+    private final double resolution;
+    private final int columns;
+    private final int rows;
+    /** Window half side, in histogram cells, of the propagation area around a receiver */
+    private final int windowRadius;
+    private final int[] receiverCount;
+    private final double[] sourceCount;
+    private final int[] buildingCount;
+    private double sourceWeight = 1.0;
+    private double buildingWeight = 1.0;
+
+    /**
+     * Computation cell
+     */
+    public static class Cell {
+        public final Envelope envelope;
+        public final int receiverCount;
+        public final double cost;
+
+        public Cell(Envelope envelope, int receiverCount, double cost) {
+            this.envelope = envelope;
+            this.receiverCount = receiverCount;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * @param envelope Computation area, receivers must be located in this envelope
+     * @param maximumPropagationDistance Maximum source-receiver distance
+     */
+    public AdaptiveCellPartitioner(Envelope envelope, double maximumPropagationDistance) {
+        this.envelope = new Envelope(envelope);
+        this.resolution = Math.max(MINIMUM_RESOLUTION, envelope.maxExtent() / MAXIMUM_GRID_SIDE);
+        this.columns = Math.max(1, (int) Math.ceil(envelope.getWidth() / resolution));
+        this.rows = Math.max(1, (int) Math.ceil(envelope.getHeight() / resolution));
+        this.windowRadius = (int) Math.ceil(maximumPropagationDistance / resolution);
+        receiverCount = new int[columns * rows];
+        sourceCount = new double[columns * rows];
+        buildingCount = new int[columns * rows];
+    }
+
+    /**
+     * @return Side length of the histogram cells
+     */
+    public double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return Cost of a receiver by source point located within the propagation distance
+     */
+    public double getSourceWeight() {
+        return sourceWeight;
+    }
+
+    /**
+     * @param sourceWeight Cost of a receiver by source point located within the propagation distance
+     */
+    public void setSourceWeight(double sourceWeight) {
+        this.sourceWeight = sourceWeight;
+    }
+
+    /**
+     * @return Cost of a receiver by building located within the propagation distance
+     */
+    public double getBuildingWeight() {
+        return buildingWeight;
+    }
+
+    /**
+     * @param buildingWeight Cost of a receiver by building located within the propagation distance
+     */
+    public void setBuildingWeight(double buildingWeight) {
+        this.buildingWeight = buildingWeight;
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, Math.max(0, (int) ((x - envelope.getMinX()) / resolution)));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, Math.max(0, (int) ((y - envelope.getMinY()) / resolution)));
+    }
+
+    private int index(Coordinate coordinate) {
+        return row(coordinate.y) * columns + column(coordinate.x);
+    }
+
+    /**
+     * @param receiver Receiver location
+     */
+    public void addReceiver(Coordinate receiver) {
+        receiverCount[index(receiver)]++;
+    }
+
+    /**
+     * @param source Point or linear source geometry
+     */
+    public void addSource(Geometry source) {
+        for (int idGeom = 0; idGeom < source.getNumGeometries(); idGeom++) {
+            Geometry geometry = source.getGeometryN(idGeom);
+            if (geometry instanceof Point) {
+                sourceCount[index(geometry.getCoordinate())] += 1;
+            } else if (geometry instanceof LineString) {
+                Coordinate[] coordinates = geometry.getCoordinates();
+                for (int i = 1; i < coordinates.length; i++) {
+                    addSegment(coordinates[i - 1], coordinates[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Distribute the source points of the segment over the histogram cells crossed by the segment
+     */
+    private void addSegment(Coordinate p0, Coordinate p1) {
+        double length = p0.distance(p1);
+        int steps = Math.max(1, (int) Math.ceil(length / (resolution / 2)));
+        double pointsByStep = length / LINE_SOURCE_STEP / steps;
+        for (int step = 0; step < steps; step++) {
+            double t = (step + 0.5) / steps;
+            sourceCount[row(p0.y + (p1.y - p0.y) * t) * columns + column(p0.x + (p1.x - p0.x) * t)] += pointsByStep;
+        }
+    }
+
+    /**
+     * @param building Building footprint
+     */
+    public void addBuilding(Geometry building) {
+        buildingCount[index(building.getEnvelopeInternal().centre())]++;
+    }
+
+    /**
+     * Summed area table with one extra row and column of zeros
+     */
+    private double[] summedArea(double[] values) {
+        double[] table = new double[(columns + 1) * (rows + 1)];
+        for (int j = 0; j < rows; j++) {
+            double rowSum = 0;
+            for (int i = 0; i < columns; i++) {
+                rowSum += values[j * columns + i];
+                table[(j + 1) * (columns + 1) + i + 1] = table[j * (columns + 1) + i + 1] + rowSum;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return Sum of the values in the histogram cells [i0, i1[ x [j0, j1[
+     */
+    private double sum(double[] table, int i0, int j0, int i1, int j1) {
+        return table[j1 * (columns + 1) + i1] - table[j0 * (columns + 1) + i1] - table[j1 * (columns + 1) + i0]
+                + table[j0 * (columns + 1) + i0];
+    }
+
+    /**
+     * @return Estimated cost of each histogram cell
+     */
+    private double[] computeCost() {
+        double[] sources = summedArea(sourceCount);
+        double[] buildingValues = new double[buildingCount.length];
+        for (int i = 0; i < buildingCount.length; i++) {
+            buildingValues[i] = buildingCount[i];
+        }
+        double[] buildings = summedArea(buildingValues);
+        double[] cost = new double[columns * rows];
+        for (int j = 0; j < rows; j++) {
+            for (int i = 0; i < columns; i++) {
+                int receivers = receiverCount[j * columns + i];
+                if (receivers > 0) {
+                    int i0 = Math.max(0, i - windowRadius);
+                    int j0 = Math.max(0, j - windowRadius);
+                    int i1 = Math.min(columns, i + windowRadius + 1);
+                    int j1 = Math.min(rows, j + windowRadius + 1);
+                    cost[j * columns + i] = receivers * (1 + sourceWeight * sum(sources, i0, j0, i1, j1)
+                            + buildingWeight * sum(buildings, i0, j0, i1, j1));
+                }
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * @return Estimated computation cost of all the receivers
+     */
+    public double getTotalCost() {
+        double total = 0;
+        for (double cost : computeCost()) {
+            total += cost;
+        }
+        return total;
+    }
+
+    /**
+     * Split the computation area. A cell is not split when it is a single histogram cell, so the limits may be
+     * exceeded in very dense areas.
+     * @param maximumCost Maximum estimated cost of a cell
+     * @param maximumReceivers Maximum receiver count of a cell
+     * @return Cells containing at least one receiver, in kd-tree order (neighbor cells are computed successively)
+     */
+    public List<Cell> partition(double maximumCost, int maximumReceivers) {
+        double[] costTable = summedArea(computeCost());
+        double[] receiverValues = new double[receiverCount.length];
+        for (int i = 0; i < receiverCount.length; i++) {
+            receiverValues[i] = receiverCount[i];
+        }
+        double[] receiverTable = summedArea(receiverValues);
+        List<Cell> cells = new ArrayList<>();
+        split(costTable, receiverTable, 0, 0, columns, rows, maximumCost, maximumReceivers, cells);
+        return cells;
+    }
+
+    private void split(double[] costTable, double[] receiverTable, int i0, int j0, int i1, int j1,
+                       double maximumCost, int maximumReceivers, List<Cell> cells) {
+        int receivers = (int) Math.round(sum(receiverTable, i0, j0, i1, j1));
+        if (receivers == 0) {
+            return;
+        }
+        double cost = sum(costTable, i0, j0, i1, j1);
+        boolean horizontal = i1 - i0 >= j1 - j0;
+        if ((cost <= maximumCost && receivers <= maximumReceivers) || (i1 - i0 == 1 && j1 - j0 == 1)) {
+            cells.add(new Cell(new Envelope(envelope.getMinX() + i0 * resolution,
+                    envelope.getMinX() + i1 * resolution, envelope.getMinY() + j0 * resolution,
+                    envelope.getMinY() + j1 * resolution), receivers, cost));
+            return;
+        }
+        // Split at the cost median, or at the receiver median if the cost is null
+        double[] table = cost > 0 ? costTable : receiverTable;
+        double half = (cost > 0 ? cost : receivers) / 2;
+        int low = horizontal ? i0 + 1 : j0 + 1;
+        int high = horizontal ? i1 - 1 : j1 - 1;
+        // Smallest split position where the first half holds at least half of the total
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            double firstHalf = horizontal ? sum(table, i0, j0, middle, j1) : sum(table, i0, j0, i1, middle);
+            if (firstHalf < half) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (horizontal) {
+            split(costTable, receiverTable, i0, j0, low, j1, maximumCost, maximumReceivers, cells);
+            split(costTable, receiverTable, low, j0, i1, j1, maximumCost, maximumReceivers, cells);
+        } else {
+            split(costTable, receiverTable, i0, j0, i1, low, maximumCost, maximumReceivers, cells);
+            split(costTable, receiverTable, i0, low, i1, j1, maximumCost, maximumReceivers, cells);
+        }
+    }
+}
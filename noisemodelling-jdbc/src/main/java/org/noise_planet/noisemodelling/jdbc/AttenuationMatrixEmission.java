@@ -0,0 +1,142 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixFile;
+import org.noise_planet.noisemodelling.jdbc.utils.LevelsColumnarFile;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
+
+/**
+ * Compute receivers levels from an attenuation matrix written by {@link LDENPointNoiseMapFactory} (see
+ * {@link LDENConfig#setAttenuationMatrixFile(File)}) and a sound power table. The propagation is not computed again,
+ * so any number of emission scenarios (hourly levels, traffic variants..) can be evaluated quickly.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class AttenuationMatrixEmission {
+
+    private AttenuationMatrixEmission() {
+    }
+
+    /**
+     * Read the sound power of the sources of the matrix. Sources of the table that are not in the matrix are
+     * ignored, sources of the matrix that are not in the table have no power.
+     * @param connection Database connection
+     * @param matrix Attenuation matrix
+     * @param sourcesTable Table with an integer primary key and one sound power column in dB by frequency band
+     * @param lwPrefix Prefix of the sound power columns, the column name is the prefix followed by the frequency
+     *                 (ex: LWD for LWD63, LWD125..)
+     * @return Sources power in W, [sourceIndex * bandCount + band]
+     * @throws SQLException Missing primary key or sound power column
+     */
+    public static double[] fetchSourcesPower(Connection connection, AttenuationMatrixFile.Reader matrix,
+                                             String sourcesTable, String lwPrefix) throws SQLException {
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, TableLocation.parse(sourcesTable));
+        if(pkIndex < 1) {
+            throw new SQLException(String.format("Source table %s does not contain a primary key", sourcesTable));
+        }
+        int[] frequencies = matrix.getFrequencies();
+        double[] sourcesPower = new double[matrix.getSourceIds().length * frequencies.length];
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT * FROM " + sourcesTable)) {
+            int[] lwColumns = new int[frequencies.length];
+            for(int idBand = 0; idBand < frequencies.length; idBand++) {
+                lwColumns[idBand] = rs.findColumn(lwPrefix + frequencies[idBand]);
+            }
+            while (rs.next()) {
+                int sourceIndex = matrix.getSourceIndex(rs.getLong(pkIndex));
+                if(sourceIndex >= 0) {
+                    for(int idBand = 0; idBand < frequencies.length; idBand++) {
+                        sourcesPower[sourceIndex * frequencies.length + idBand] = dbaToW(rs.getDouble(lwColumns[idBand]));
+                    }
+                }
+            }
+        }
+        return sourcesPower;
+    }
+
+    /**
+     * Compute the receivers levels of a time period and write them into a new table with the same columns as the
+     * LDEN result tables (IDRECEIVER, HZ63.., LAEQ, LEQ).
+     * @param connection Database connection
+     * @param matrix Attenuation matrix
+     * @param timePeriod Time period of the attenuation (meteorological conditions)
+     * @param sourcesTable Sound power table, see {@link #fetchSourcesPower(Connection, AttenuationMatrixFile.Reader, String, String)}
+     * @param lwPrefix Prefix of the sound power columns
+     * @param outputTable Table to create (dropped if exists)
+     * @return Number of receivers
+     * @throws SQLException Error while creating or feeding the table
+     * @throws IOException Error while reading the matrix or writing the temporary file
+     */
+    public static long applyEmissions(Connection connection, AttenuationMatrixFile.Reader matrix,
+                                      LDENConfig.TIME_PERIOD timePeriod, String sourcesTable, String lwPrefix,
+                                      String outputTable) throws SQLException, IOException {
+        double[] sourcesPower = fetchSourcesPower(connection, matrix, sourcesTable, lwPrefix);
+        int[] frequencies = matrix.getFrequencies();
+        double[] aWeighting = new double[frequencies.length];
+        List<Integer> allFrequencyValues = Arrays.asList(CnossosPropagationData.DEFAULT_FREQUENCIES_THIRD_OCTAVE);
+        for(int idBand = 0; idBand < frequencies.length; idBand++) {
+            int index = allFrequencyValues.indexOf(frequencies[idBand]);
+            if(index < 0) {
+                throw new IllegalArgumentException("Unsupported frequency band " + frequencies[idBand]);
+            }
+            aWeighting[idBand] = CnossosPropagationData.DEFAULT_FREQUENCIES_A_WEIGHTING_THIRD_OCTAVE[index];
+        }
+        StringBuilder sb = new StringBuilder("CREATE TABLE ");
+        sb.append(outputTable);
+        sb.append(" (IDRECEIVER bigint NOT NULL");
+        for(int frequency : frequencies) {
+            sb.append(", HZ");
+            sb.append(frequency);
+            sb.append(" numeric(5, 2)");
+        }
+        sb.append(", LAEQ numeric(5, 2), LEQ numeric(5, 2))");
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + outputTable);
+            st.execute(sb.toString());
+        }
+        File levelsFile = File.createTempFile("levels", ".bin");
+        try {
+            try (LevelsColumnarFile.Writer writer = new LevelsColumnarFile.Writer(levelsFile, false, false,
+                    frequencies.length)) {
+                final double[] levels = new double[frequencies.length];
+                matrix.applyEmissions(timePeriod.ordinal(), sourcesPower, (receiverId, power) -> {
+                    for(int idBand = 0; idBand < levels.length; idBand++) {
+                        levels[idBand] = power[idBand] > 0 ? wToDba(power[idBand]) : -99.0;
+                    }
+                    double laeq = wToDba(sumArray(dbaToW(sumArray(levels, aWeighting))));
+                    double leq = wToDba(sumArray(power));
+                    writer.write(receiverId, 0, levels, Double.isFinite(laeq) ? laeq : -99,
+                            Double.isFinite(leq) ? leq : -99);
+                });
+            }
+            long rowCount = LevelsColumnarFile.load(connection, levelsFile, outputTable);
+            try (Statement st = connection.createStatement()) {
+                st.execute("ALTER TABLE " + outputTable + " ADD PRIMARY KEY(IDRECEIVER)");
+            }
+            return rowCount;
+        } finally {
+            Files.deleteIfExists(levelsFile.toPath());
+        }
+    }
+}
@@ -9,12 +9,15 @@ import org.h2gis.utilities.dbtypes.DBUtils;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.jts.io.WKTWriter;
+import org.noise_planet.noisemodelling.jdbc.utils.AscReaderDriver;
 import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ElevationGrid;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -47,6 +50,8 @@ public abstract class JdbcNoiseMap {
     protected String soilTableName = "";
     // Digital elevation model table. (Contains points or triangles)
     protected String demTable = "";
+    // Digital elevation model grid, used instead of the demTable if set
+    protected ElevationGrid demGrid = null;
     protected String sound_lvl_field = "DB_M";
     // True if Z of sound source and receivers are relative to the ground
     protected boolean receiverHasAbsoluteZCoordinates = false;
@@ -179,7 +184,9 @@ public abstract class JdbcNoiseMap {
     }
 
     protected void fetchCellDem(Connection connection, Envelope fetchEnvelope, ProfileBuilder mesh) throws SQLException {
-        if(!demTable.isEmpty()) {
+        if(demGrid != null) {
+            mesh.setElevationGrid(demGrid);
+        } else if(!demTable.isEmpty()) {
             List<String> geomFields = getGeometryColumnNames(connection,
                     TableLocation.parse(demTable));
             if(geomFields.isEmpty()) {
@@ -583,6 +590,23 @@ public abstract class JdbcNoiseMap {
         this.demTable = demTable;
     }
 
+    /**
+     * @return Digital Elevation model grid, null if the DEM is read from {@link #getDemTable()}
+     */
+    public ElevationGrid getDemGrid() {
+        return demGrid;
+    }
+
+    /**
+     * Digital Elevation model as a regular grid (see {@link AscReaderDriver#readElevationGrid(File, File)}).
+     * The grid is sampled directly by the profiles, the DEM points are not fetched and triangulated for each cell.
+     * If set, the {@link #getDemTable()} is ignored.
+     * @param demGrid Digital Elevation model grid
+     */
+    public void setDemGrid(ElevationGrid demGrid) {
+        this.demGrid = demGrid;
+    }
+
     /**
      * Field name of the {@link #sourcesTableName}HERTZ. Where HERTZ is a number [100-5000].
      * Without the hertz value.
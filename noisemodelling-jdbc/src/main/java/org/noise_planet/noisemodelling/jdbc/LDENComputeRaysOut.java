@@ -1,23 +1,29 @@
 package org.noise_planet.noisemodelling.jdbc;
 
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixFile;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
-import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
 
 public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LDENComputeRaysOut.class);
     LdenData ldenData;
     LDENPropagationProcessData ldenPropagationProcessData;
     public PropagationProcessPathData dayPathData;
@@ -66,8 +72,10 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             switch (timePeriod) {
                 case DAY:
                     dayLevels = levels;
+                    break;
                 case EVENING:
                     eveningLevels = levels;
+                    break;
                 default:
                     nightLevels = levels;
             }
@@ -80,6 +88,22 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         ThreadRaysOut[] lDENThreadRaysOut = new ThreadRaysOut[3];
         public List<PropagationPath> propagationPaths = new ArrayList<PropagationPath>();
 
+        /** Attenuation by source and time period of the current receiver, if sources are not merged */
+        final ReceiverLevelsBuffer sourceLevels;
+        /** Sum of source power by time period and frequency band of the current receiver, if sources are merged */
+        final double[][] mergedLevels;
+        /** Attenuation by source and time period of the current receiver, if the attenuation matrix is written */
+        final ReceiverLevelsBuffer matrixLevels;
+        /** Number of frequency bands */
+        final int bandCount;
+        /** Levels of the current source or receiver for each time period and for the DEN indicator */
+        final double[] dayLevels;
+        final double[] eveningLevels;
+        final double[] nightLevels;
+        final double[] denLevels;
+        long[] matrixSourceIds = new long[0];
+        float[] matrixFactors = new float[0];
+
         public ThreadComputeRaysOut(LDENComputeRaysOut multiThreadParent) {
             this.ldenComputeRaysOut = multiThreadParent;
             this.ldenConfig = multiThreadParent.ldenPropagationProcessData.ldenConfig;
@@ -89,32 +113,78 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             for (ThreadRaysOut threadRaysOut : lDENThreadRaysOut) {
                 threadRaysOut.keepRays = false;
             }
-
+            int bandCount = multiThreadParent.dayPathData.freq_lvl.size();
+            int periodCount = LDENConfig.TIME_PERIOD.values().length;
+            this.bandCount = bandCount;
+            dayLevels = new double[bandCount];
+            eveningLevels = new double[bandCount];
+            nightLevels = new double[bandCount];
+            denLevels = new double[bandCount];
+            if(ldenConfig.mergeSources) {
+                sourceLevels = null;
+                mergedLevels = new double[periodCount][bandCount];
+            } else {
+                sourceLevels = new ReceiverLevelsBuffer(periodCount, bandCount);
+                mergedLevels = null;
+            }
+            if(ldenConfig.attenuationMatrixFile == null) {
+                matrixLevels = null;
+            } else if(sourceLevels != null) {
+                matrixLevels = sourceLevels;
+            } else {
+                matrixLevels = new ReceiverLevelsBuffer(periodCount, bandCount);
+            }
         }
 
         /**
-         * Energetic sum of VerticeSL attenuation with WJ sources
-         * @param wjSources
-         * @param receiverAttenuationLevels
-         * @return
+         * @param timePeriod Time period
+         * @return True if the levels of this time period are needed for the outputs
          */
-        double[] sumLevels(List<double[]> wjSources,List<VerticeSL> receiverAttenuationLevels) {
-            double[] levels = new double[ldenComputeRaysOut.dayPathData.freq_lvl.size()];
-            for (VerticeSL lvl : receiverAttenuationLevels) {
-                levels = sumArray(levels,
-                        dbaToW(sumArray(wToDba(wjSources.get((int) lvl.sourceId)), lvl.value)));
+        boolean isPeriodComputed(LDENConfig.TIME_PERIOD timePeriod) {
+            switch (timePeriod) {
+                case DAY:
+                    return ldenConfig.computeLDay || ldenConfig.computeLDEN;
+                case EVENING:
+                    return ldenConfig.computeLEvening || ldenConfig.computeLDEN;
+                default:
+                    return ldenConfig.computeLNight || ldenConfig.computeLDEN;
             }
-            return levels;
         }
 
-        double[] processAndPushResult(long receiverPK, List<double[]> wjSources,List<VerticeSL> receiverAttenuationLevels, ConcurrentLinkedDeque<VerticeSL> result, boolean feedStack) {
-            double[] levels = sumLevels(wjSources, receiverAttenuationLevels);
-            if(feedStack) {
-                pushInStack(result, new VerticeSL(receiverPK, -1, wToDba(levels)));
+        List<double[]> getSourcesPower(LDENConfig.TIME_PERIOD timePeriod) {
+            switch (timePeriod) {
+                case DAY:
+                    return ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesD;
+                case EVENING:
+                    return ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesE;
+                default:
+                    return ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesN;
             }
-            return levels;
         }
 
+        /**
+         * Store the attenuation of a source for the current receiver
+         * @param sourceId Source index
+         * @param timePeriod Time period
+         * @param sourceAttenuation Attenuation in dB for each frequency band
+         */
+        void addSourceAttenuation(int sourceId, LDENConfig.TIME_PERIOD timePeriod, double[] sourceAttenuation) {
+            if(mergedLevels != null) {
+                if(isPeriodComputed(timePeriod)) {
+                    // Energetic sum of the source power with attenuation
+                    double[] wj = getSourcesPower(timePeriod).get(sourceId);
+                    double[] levels = mergedLevels[timePeriod.ordinal()];
+                    for (int idFrequency = 0; idFrequency < levels.length; idFrequency++) {
+                        levels[idFrequency] += dbaToW(wToDba(wj[idFrequency]) + sourceAttenuation[idFrequency]);
+                    }
+                }
+                if(matrixLevels != null) {
+                    matrixLevels.add(sourceId, timePeriod.ordinal(), sourceAttenuation);
+                }
+            } else {
+                sourceLevels.add(sourceId, timePeriod.ordinal(), sourceAttenuation);
+            }
+        }
 
         @Override
         public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPathsParameter) {
@@ -135,14 +205,23 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             }
             double[] globalLevel = null;
             for(LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
-                for(PropagationPath propagationPath : propagationPathsParameter) {
+                ThreadRaysOut threadRaysOut = lDENThreadRaysOut[timePeriod.ordinal()];
+                ldenComputeRaysOut.rayCount.addAndGet(propagationPathsParameter.size());
+                double[] attenuation = ldenComputeRaysOut.computeAttenuation(
+                        threadRaysOut.propagationProcessPathData, sourceId, sourceLi, receiverId,
+                        propagationPathsParameter);
+                if(attenuation != null && attenuation.length > 0) {
+                    addSourceAttenuation((int) sourceId, timePeriod, attenuation);
                     if (globalLevel == null) {
-                        globalLevel = lDENThreadRaysOut[timePeriod.ordinal()].addPropagationPaths(sourceId, sourceLi,
-                                receiverId, Collections.singletonList(propagationPath));
+                        globalLevel = attenuation.clone();
                     } else {
-                        globalLevel = PowerUtils.sumDbArray(globalLevel, lDENThreadRaysOut[timePeriod.ordinal()].addPropagationPaths(sourceId, sourceLi,
-                                receiverId, Collections.singletonList(propagationPath)));
+                        for (int idFrequency = 0; idFrequency < globalLevel.length; idFrequency++) {
+                            globalLevel[idFrequency] = wToDba(dbaToW(globalLevel[idFrequency]) +
+                                    dbaToW(attenuation[idFrequency]));
+                        }
                     }
+                }
+                for(PropagationPath propagationPath : propagationPathsParameter) {
                     propagationPath.setTimePeriod(timePeriod.name());
                     if(ldenComputeRaysOut.keepRays && ldenComputeRaysOut.keepAbsorption) {
                         // copy ray for each time period because absorption is different for each period
@@ -158,31 +237,63 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     }
                 }
             }
+            if(globalLevel == null) {
+                globalLevel = new double[0];
+            }
             return globalLevel;
         }
 
         /**
          * @param stack Stack to feed
-         * @param data receiver noise level in dB
+         * @param block receiver noise levels in dB, null if the time period is not written
          */
-        public void pushInStack(ConcurrentLinkedDeque<VerticeSL> stack, VerticeSL data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
-                }
-                if(ldenConfig.aborted) {
-                    if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
-                            this.ldenComputeRaysOut.inputData.cellProg != null) {
-                        this.ldenComputeRaysOut.inputData.cellProg.cancel();
-                    }
-                    return;
-                }
+        public void pushInStack(ConcurrentLinkedDeque<ReceiverLevelsBlock> stack, ReceiverLevelsBlock block) {
+            if(block == null) {
+                return;
+            }
+            LdenData ldenData = ldenComputeRaysOut.ldenData;
+            if(block.size() == 0) {
+                ldenData.recycle(block);
+                return;
+            }
+            if(!ldenData.waitForSpace(ldenConfig)) {
+                ldenData.recycle(block);
+                cancelCell();
+                return;
+            }
+            long bytes = LdenData.estimateSize(block);
+            int rows = block.size();
+            stack.add(block);
+            ldenData.pushed(rows, bytes);
+        }
+
+        /**
+         * @param computed True if the time period is written
+         * @param receiverPK Receiver identifier
+         * @return Empty block for the receiver, null if the time period is not written
+         */
+        private ReceiverLevelsBlock obtainBlock(boolean computed, long receiverPK) {
+            return computed ? ldenComputeRaysOut.ldenData.obtainBlock(receiverPK, bandCount) : null;
+        }
+
+        /**
+         * Compute the DEN indicator of the day, evening and night levels
+         * @param dayLevels Day levels
+         * @param eveningLevels Evening levels
+         * @param nightLevels Night levels
+         */
+        private void computeDen(double[] dayLevels, double[] eveningLevels, double[] nightLevels) {
+            for(int idFrequency = 0; idFrequency < denLevels.length; idFrequency++) {
+                denLevels[idFrequency] = (12 * dayLevels[idFrequency] +
+                        4 * dbaToW(wToDba(eveningLevels[idFrequency]) + 5) +
+                        8 * dbaToW(wToDba(nightLevels[idFrequency]) + 10)) / 24.0;
+            }
+        }
+
+        private void cancelCell() {
+            if(this.ldenComputeRaysOut.inputData != null && this.ldenComputeRaysOut.inputData.cellProg != null) {
+                this.ldenComputeRaysOut.inputData.cellProg.cancel();
             }
-            stack.add(data);
-            ldenComputeRaysOut.ldenData.queueSize.incrementAndGet();
         }
 
         @Override
@@ -195,20 +306,9 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
          * @param data rays
          */
         public void pushInStack(ConcurrentLinkedDeque<PropagationPath> stack, Collection<PropagationPath> data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
-                }
-                if(ldenConfig.aborted) {
-                    if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
-                            this.ldenComputeRaysOut.inputData.cellProg != null) {
-                        this.ldenComputeRaysOut.inputData.cellProg.cancel();
-                    }
-                    return;
-                }
+            if(!ldenComputeRaysOut.ldenData.waitForSpace(ldenConfig)) {
+                cancelCell();
+                return;
             }
             if(ldenConfig.getMaximumRaysOutputCount() == 0 || ldenComputeRaysOut.ldenData.totalRaysInserted.get() < ldenConfig.getMaximumRaysOutputCount()) {
                 long newTotalRays = ldenComputeRaysOut.ldenData.totalRaysInserted.addAndGet(data.size());
@@ -224,8 +324,12 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     }
                     data = subList;
                 }
+                long bytes = 0;
+                for(PropagationPath propagationPath : data) {
+                    bytes += LdenData.estimateSize(propagationPath);
+                }
                 stack.addAll(data);
-                ldenComputeRaysOut.ldenData.queueSize.addAndGet(data.size());
+                ldenComputeRaysOut.ldenData.pushed(data.size(), bytes);
             }
         }
 
@@ -255,110 +359,395 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     receiverPK = ldenComputeRaysOut.inputData.receiversPk.get((int)receiverId);
                 }
             }
-            double[] dayLevels = new double[0], eveningLevels = new double[0], nightLevels = new double[0];
+            if(matrixLevels != null) {
+                addAttenuationMatrixRow(receiverPK);
+            }
+            ReceiverLevelsBlock dayBlock = obtainBlock(ldenConfig.computeLDay, receiverPK);
+            ReceiverLevelsBlock eveningBlock = obtainBlock(ldenConfig.computeLEvening, receiverPK);
+            ReceiverLevelsBlock nightBlock = obtainBlock(ldenConfig.computeLNight, receiverPK);
+            ReceiverLevelsBlock denBlock = obtainBlock(ldenConfig.computeLDEN, receiverPK);
             if (!ldenConfig.mergeSources) {
-                // Aggregate by source id
-                Map<Long, DENAttenuation> levelsPerSourceLines = new HashMap<>();
-                for (LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
-                    ThreadRaysOut threadRaysOut = lDENThreadRaysOut[timePeriod.ordinal()];
-                    for (VerticeSL lvl : threadRaysOut.receiverAttenuationLevels) {
-                        DENAttenuation denAttenuation;
-                        if (!levelsPerSourceLines.containsKey(lvl.sourceId)) {
-                            denAttenuation = new DENAttenuation();
-                            levelsPerSourceLines.put(lvl.sourceId, denAttenuation);
-                        } else {
-                            denAttenuation = levelsPerSourceLines.get(lvl.sourceId);
-                        }
-                        if (denAttenuation.getTimePeriodLevel(timePeriod) == null) {
-                            denAttenuation.setTimePeriodLevel(timePeriod, lvl.value);
-                        } else {
-                            // same receiver, same source already exists, merge attenuation
-                            denAttenuation.setTimePeriodLevel(timePeriod, sumDbArray(
-                                    denAttenuation.getTimePeriodLevel(timePeriod), lvl.value));
-                        }
-                    }
-                }
-                long sourcePK;
-                for (Map.Entry<Long, DENAttenuation> entry : levelsPerSourceLines.entrySet()) {
-                    final long sourceId = entry.getKey();
-                    sourcePK = sourceId;
+                // Output levels by source id
+                sourceLevels.sortBySource();
+                for (int position = 0; position < sourceLevels.size(); position++) {
+                    final int sourceId = sourceLevels.getSource(position);
+                    long sourcePK = sourceId;
                     if (ldenComputeRaysOut.inputData != null) {
                         // Retrieve original source identifier
-                        if (entry.getKey() < ldenComputeRaysOut.inputData.sourcesPk.size()) {
-                            sourcePK = ldenComputeRaysOut.inputData.sourcesPk.get((int) sourceId);
+                        if (sourceId < ldenComputeRaysOut.inputData.sourcesPk.size()) {
+                            sourcePK = ldenComputeRaysOut.inputData.sourcesPk.get(sourceId);
                         }
                     }
                     if (ldenConfig.computeLDay || ldenConfig.computeLDEN) {
-                        dayLevels = sumArray(wToDba(ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesD.get((int) sourceId)), entry.getValue().dayLevels);
-                        if(ldenConfig.computeLDay) {
-                            pushInStack(ldenComputeRaysOut.ldenData.lDayLevels, new VerticeSL(receiverPK, sourcePK, dayLevels));
+                        sourceLevel(position, LDENConfig.TIME_PERIOD.DAY, dayLevels);
+                        if(dayBlock != null) {
+                            dayBlock.add(sourcePK, dayLevels);
                         }
                     }
                     if (ldenConfig.computeLEvening || ldenConfig.computeLDEN) {
-                        eveningLevels = sumArray(wToDba(ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesE.get((int) sourceId)), entry.getValue().eveningLevels);
-                        if(ldenConfig.computeLEvening) {
-                            pushInStack(ldenComputeRaysOut.ldenData.lEveningLevels, new VerticeSL(receiverPK, sourcePK, eveningLevels));
+                        sourceLevel(position, LDENConfig.TIME_PERIOD.EVENING, eveningLevels);
+                        if(eveningBlock != null) {
+                            eveningBlock.add(sourcePK, eveningLevels);
                         }
                     }
                     if (ldenConfig.computeLNight || ldenConfig.computeLDEN) {
-                        nightLevels = sumArray(wToDba(ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesN.get((int) sourceId)), entry.getValue().nightLevels);
-                        if(ldenConfig.computeLNight) {
-                            pushInStack(ldenComputeRaysOut.ldenData.lNightLevels, new VerticeSL(receiverPK, sourcePK, nightLevels));
+                        sourceLevel(position, LDENConfig.TIME_PERIOD.NIGHT, nightLevels);
+                        if(nightBlock != null) {
+                            nightBlock.add(sourcePK, nightLevels);
                         }
                     }
-                    if (ldenConfig.computeLDEN) {
-                        double[] levels = new double[dayLevels.length];
-                        for(int idFrequency = 0; idFrequency < levels.length; idFrequency++) {
-                            levels[idFrequency] = (12 * dayLevels[idFrequency] +
-                                    4 * dbaToW(wToDba(eveningLevels[idFrequency]) + 5) +
-                                    8 * dbaToW(wToDba(nightLevels[idFrequency]) + 10)) / 24.0;
-                        }
-                        pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, new VerticeSL(receiverPK, sourcePK, levels));
+                    if (denBlock != null) {
+                        computeDen(dayLevels, eveningLevels, nightLevels);
+                        denBlock.add(sourcePK, denLevels);
                     }
                 }
+                sourceLevels.clear();
             } else {
                 // Merge all results
-                if (ldenConfig.computeLDay || ldenConfig.computeLDEN) {
-                    dayLevels = processAndPushResult(receiverPK,
-                            ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesD,
-                            lDENThreadRaysOut[0].receiverAttenuationLevels, ldenComputeRaysOut.ldenData.lDayLevels,
-                            ldenConfig.computeLDay);
+                double[] dayPower = mergedLevels[LDENConfig.TIME_PERIOD.DAY.ordinal()];
+                double[] eveningPower = mergedLevels[LDENConfig.TIME_PERIOD.EVENING.ordinal()];
+                double[] nightPower = mergedLevels[LDENConfig.TIME_PERIOD.NIGHT.ordinal()];
+                if(dayBlock != null) {
+                    dayBlock.add(-1, toDba(dayPower, dayLevels));
+                }
+                if(eveningBlock != null) {
+                    eveningBlock.add(-1, toDba(eveningPower, eveningLevels));
+                }
+                if(nightBlock != null) {
+                    nightBlock.add(-1, toDba(nightPower, nightLevels));
                 }
-                if (ldenConfig.computeLEvening || ldenConfig.computeLDEN) {
-                    eveningLevels = processAndPushResult(receiverPK,
-                            ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesE,
-                            lDENThreadRaysOut[1].receiverAttenuationLevels, ldenComputeRaysOut.ldenData.lEveningLevels,
-                            ldenConfig.computeLEvening);
+                if (denBlock != null) {
+                    computeDen(dayPower, eveningPower, nightPower);
+                    denBlock.add(-1, toDba(denLevels, denLevels));
                 }
-                if (ldenConfig.computeLNight || ldenConfig.computeLDEN) {
-                    nightLevels = processAndPushResult(receiverPK,
-                            ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesN,
-                            lDENThreadRaysOut[2].receiverAttenuationLevels, ldenComputeRaysOut.ldenData.lNightLevels,
-                            ldenConfig.computeLNight);
+                for (double[] levels : mergedLevels) {
+                    Arrays.fill(levels, 0);
                 }
-                if (ldenConfig.computeLDEN) {
-                    double[] levels = new double[dayLevels.length];
-                    for(int idFrequency = 0; idFrequency < levels.length; idFrequency++) {
-                        levels[idFrequency] = (12 * dayLevels[idFrequency] +
-                                4 * dbaToW(wToDba(eveningLevels[idFrequency]) + 5) +
-                                8 * dbaToW(wToDba(nightLevels[idFrequency]) + 10)) / 24.0;
+            }
+            pushInStack(ldenComputeRaysOut.ldenData.lDayLevels, dayBlock);
+            pushInStack(ldenComputeRaysOut.ldenData.lEveningLevels, eveningBlock);
+            pushInStack(ldenComputeRaysOut.ldenData.lNightLevels, nightBlock);
+            pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, denBlock);
+            if(matrixLevels != null) {
+                matrixLevels.clear();
+            }
+        }
+
+        /**
+         * Append the attenuation of the sources of the current receiver in the attenuation matrix
+         * @param receiverPK Receiver identifier
+         */
+        void addAttenuationMatrixRow(long receiverPK) {
+            AttenuationMatrixFile.Writer writer = ldenComputeRaysOut.ldenData.attenuationMatrix;
+            if(writer == null) {
+                return;
+            }
+            matrixLevels.sortBySource();
+            final int count = matrixLevels.size();
+            final int stride = writer.getStride();
+            if(matrixSourceIds.length < count) {
+                matrixSourceIds = new long[count];
+                matrixFactors = new float[count * stride];
+            }
+            double[] levels = matrixLevels.getLevels();
+            for (int position = 0; position < count; position++) {
+                final int sourceId = matrixLevels.getSource(position);
+                long sourcePK = sourceId;
+                if (ldenComputeRaysOut.inputData != null && sourceId < ldenComputeRaysOut.inputData.sourcesPk.size()) {
+                    sourcePK = ldenComputeRaysOut.inputData.sourcesPk.get(sourceId);
+                }
+                matrixSourceIds[position] = sourcePK;
+                for(LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
+                    int factorOffset = position * stride + timePeriod.ordinal() * bandCount;
+                    if(matrixLevels.hasLevels(position, timePeriod.ordinal())) {
+                        int offset = matrixLevels.getOffset(position, timePeriod.ordinal());
+                        for (int idFrequency = 0; idFrequency < bandCount; idFrequency++) {
+                            matrixFactors[factorOffset + idFrequency] = (float) dbaToW(levels[offset + idFrequency]);
+                        }
+                    } else {
+                        Arrays.fill(matrixFactors, factorOffset, factorOffset + bandCount, 0);
                     }
-                    pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, new VerticeSL(receiverPK, -1, wToDba(levels)));
                 }
             }
-            for (ThreadRaysOut threadRaysOut : lDENThreadRaysOut) {
-                threadRaysOut.receiverAttenuationLevels.clear();
+            try {
+                writer.addReceiver(receiverPK, count, matrixSourceIds, matrixFactors);
+            } catch (IOException ex) {
+                LOGGER.error("Could not write the attenuation matrix, cancel calculation", ex);
+                ldenConfig.aborted = true;
+                cancelCell();
+            }
+        }
+
+        /**
+         * @param values Power values
+         * @param levels Destination array of the levels in dB, may be the values array
+         * @return The destination array
+         */
+        private static double[] toDba(double[] values, double[] levels) {
+            for (int idFrequency = 0; idFrequency < levels.length; idFrequency++) {
+                levels[idFrequency] = wToDba(values[idFrequency]);
+            }
+            return levels;
+        }
+
+        /**
+         * @param position Source position in {@link #sourceLevels}
+         * @param timePeriod Time period
+         * @param levels Destination array of the source power with attenuation, in dB
+         */
+        void sourceLevel(int position, LDENConfig.TIME_PERIOD timePeriod, double[] levels) {
+            double[] wj = getSourcesPower(timePeriod).get(sourceLevels.getSource(position));
+            if(sourceLevels.hasLevels(position, timePeriod.ordinal())) {
+                double[] sourceAttenuation = sourceLevels.getLevels();
+                int offset = sourceLevels.getOffset(position, timePeriod.ordinal());
+                for (int idFrequency = 0; idFrequency < levels.length; idFrequency++) {
+                    levels[idFrequency] = wToDba(wj[idFrequency]) + sourceAttenuation[offset + idFrequency];
+                }
+            } else {
+                Arrays.fill(levels, Double.NEGATIVE_INFINITY);
             }
         }
     }
 
     public static class LdenData {
+        /** Estimated size of a ReceiverLevelsBlock without its rows, in bytes */
+        public static final long LEVELS_BLOCK_SIZE = 64;
+        /**
+         * @deprecated The stacks do not contain VerticeSL anymore, use {@link #LEVELS_BLOCK_SIZE}
+         */
+        @Deprecated
+        public static final long VERTICE_SL_SIZE = LEVELS_BLOCK_SIZE;
+        /** Estimated size of a PropagationPath without its points, in bytes */
+        public static final long PROPAGATION_PATH_SIZE = 1024;
+        /** Estimated size of a PropagationPath point, in bytes */
+        public static final long PROPAGATION_PATH_POINT_SIZE = 128;
+        // Producers do not rely only on signals in order to see the abort flag
+        static final long ABORT_CHECK_INTERVAL = 100;
+
         public final AtomicLong queueSize = new AtomicLong(0);
+        public final AtomicLong queueBytes = new AtomicLong(0);
         public final AtomicLong totalRaysInserted = new AtomicLong(0);
-        public final ConcurrentLinkedDeque<VerticeSL> lDayLevels = new ConcurrentLinkedDeque<>();
-        public final ConcurrentLinkedDeque<VerticeSL> lEveningLevels = new ConcurrentLinkedDeque<>();
-        public final ConcurrentLinkedDeque<VerticeSL> lNightLevels = new ConcurrentLinkedDeque<>();
-        public final ConcurrentLinkedDeque<VerticeSL> lDenLevels = new ConcurrentLinkedDeque<>();
+        /*
+         * The level stacks hold one ReceiverLevelsBlock per receiver (all sources of the receiver) instead of one
+         * VerticeSL per receiver and source. Consumers that need the former rows can read them with
+         * getDayLevels(), getEveningLevels(), getNightLevels() and getDenLevels().
+         */
+        public final ConcurrentLinkedDeque<ReceiverLevelsBlock> lDayLevels = new ConcurrentLinkedDeque<>();
+        public final ConcurrentLinkedDeque<ReceiverLevelsBlock> lEveningLevels = new ConcurrentLinkedDeque<>();
+        public final ConcurrentLinkedDeque<ReceiverLevelsBlock> lNightLevels = new ConcurrentLinkedDeque<>();
+        public final ConcurrentLinkedDeque<ReceiverLevelsBlock> lDenLevels = new ConcurrentLinkedDeque<>();
+        /** Blocks written by the writer thread, reused by the computation threads */
+        private final ConcurrentLinkedQueue<ReceiverLevelsBlock> freeBlocks = new ConcurrentLinkedQueue<>();
         public final ConcurrentLinkedDeque<PropagationPath> rays = new ConcurrentLinkedDeque<>();
+        /** Attenuation matrix writer, set by the result writer thread if the attenuation matrix is written */
+        public volatile AttenuationMatrixFile.Writer attenuationMatrix = null;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private final Condition notEmpty = lock.newCondition();
+        /** Set by a computation thread waiting for a checkpoint of the writer, guarded by lock */
+        private boolean checkpointRequested = false;
+
+        /**
+         * @param stack One of the level stacks, the blocks are not removed from the stack
+         * @return Rows of the blocks of the stack, one per receiver and source
+         */
+        public static List<VerticeSL> toVerticesSoundLevel(Collection<ReceiverLevelsBlock> stack) {
+            List<VerticeSL> rows = new ArrayList<>();
+            for(ReceiverLevelsBlock block : stack) {
+                for(int row = 0; row < block.size(); row++) {
+                    rows.add(new VerticeSL(block.getReceiverId(), block.getSourceId(row), block.getRowLevels(row)));
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * @return Day levels not yet consumed by the writer, expanded into one VerticeSL per receiver and source
+         * @deprecated Copies every row, read the blocks of {@link #lDayLevels} instead
+         */
+        @Deprecated
+        public List<VerticeSL> getDayLevels() {
+            return toVerticesSoundLevel(lDayLevels);
+        }
+
+        /**
+         * @return Evening levels not yet consumed by the writer, expanded into one VerticeSL per receiver and source
+         * @deprecated Copies every row, read the blocks of {@link #lEveningLevels} instead
+         */
+        @Deprecated
+        public List<VerticeSL> getEveningLevels() {
+            return toVerticesSoundLevel(lEveningLevels);
+        }
+
+        /**
+         * @return Night levels not yet consumed by the writer, expanded into one VerticeSL per receiver and source
+         * @deprecated Copies every row, read the blocks of {@link #lNightLevels} instead
+         */
+        @Deprecated
+        public List<VerticeSL> getNightLevels() {
+            return toVerticesSoundLevel(lNightLevels);
+        }
+
+        /**
+         * @return DEN levels not yet consumed by the writer, expanded into one VerticeSL per receiver and source
+         * @deprecated Copies every row, read the blocks of {@link #lDenLevels} instead
+         */
+        @Deprecated
+        public List<VerticeSL> getDenLevels() {
+            return toVerticesSoundLevel(lDenLevels);
+        }
+
+        /**
+         * @param data Receiver levels
+         * @return Estimated memory usage in bytes
+         */
+        public static long estimateSize(ReceiverLevelsBlock data) {
+            return LEVELS_BLOCK_SIZE + (long) data.size() * (Long.BYTES + (long) data.getBandCount() * Double.BYTES);
+        }
+
+        /**
+         * @param receiverId Receiver identifier
+         * @param bandCount Number of frequency bands
+         * @return An empty block, recycled if available
+         */
+        public ReceiverLevelsBlock obtainBlock(long receiverId, int bandCount) {
+            ReceiverLevelsBlock block = freeBlocks.poll();
+            if(block == null || block.getBandCount() != bandCount) {
+                return new ReceiverLevelsBlock(receiverId, bandCount);
+            }
+            block.reset(receiverId);
+            return block;
+        }
+
+        /**
+         * Called by the writer thread once the block is written, or by a computation thread if the block is
+         * not pushed
+         * @param block Block that will not be read anymore
+         */
+        public void recycle(ReceiverLevelsBlock block) {
+            freeBlocks.offer(block);
+        }
+
+        /**
+         * @param data Propagation path
+         * @return Estimated memory usage in bytes
+         */
+        public static long estimateSize(PropagationPath data) {
+            long pointCount = 0;
+            if(data.getPointList() != null) {
+                pointCount += data.getPointList().size();
+            }
+            if(data.getCutPoints() != null) {
+                pointCount += data.getCutPoints().size();
+            }
+            return PROPAGATION_PATH_SIZE + PROPAGATION_PATH_POINT_SIZE * pointCount;
+        }
+
+        private boolean isFull(LDENConfig ldenConfig) {
+            return queueSize.get() > ldenConfig.outputMaximumQueue ||
+                    (ldenConfig.outputMaximumQueueBytes > 0 && queueBytes.get() > ldenConfig.outputMaximumQueueBytes);
+        }
+
+        /**
+         * Block the calling computation thread until the writer has consumed enough results
+         * @param ldenConfig Queue limits and abort flag
+         * @return False if the computation has been aborted
+         */
+        public boolean waitForSpace(LDENConfig ldenConfig) {
+            if(!isFull(ldenConfig)) {
+                return !ldenConfig.aborted;
+            }
+            lock.lock();
+            try {
+                while (isFull(ldenConfig) && !ldenConfig.aborted) {
+                    notFull.await(ABORT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException ex) {
+                ldenConfig.aborted = true;
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+            return !ldenConfig.aborted;
+        }
+
+        /**
+         * Called by computation threads after adding results in a stack
+         * @param count Number of added elements
+         * @param bytes Estimated size of added elements
+         */
+        public void pushed(long count, long bytes) {
+            queueBytes.addAndGet(bytes);
+            // Wake up the writer only if it may be waiting for data
+            if(queueSize.getAndAdd(count) == 0) {
+                signalAll();
+            }
+        }
+
+        /**
+         * Called by the writer thread after removing results from a stack
+         * @param count Number of removed elements
+         * @param bytes Estimated size of removed elements
+         */
+        public void popped(long count, long bytes) {
+            queueSize.addAndGet(-count);
+            queueBytes.addAndGet(-bytes);
+            signalAll();
+        }
+
+        /**
+         * Block the writer thread until there is results to write, a checkpoint request or the timeout elapsed
+         * @param timeout Maximum waiting time in milliseconds
+         * @throws InterruptedException Thread interrupted
+         */
+        public void waitForData(long timeout) throws InterruptedException {
+            lock.lock();
+            try {
+                if(queueSize.get() == 0 && !checkpointRequested) {
+                    notEmpty.await(timeout, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Called by a computation thread, wake up the writer thread in order to write a checkpoint.
+         * The queue size is not modified.
+         */
+        public void requestCheckpoint() {
+            lock.lock();
+            try {
+                checkpointRequested = true;
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Called by the writer thread before writing the requested checkpoints
+         */
+        public void clearCheckpointRequest() {
+            lock.lock();
+            try {
+                checkpointRequested = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wake up all waiting threads, in order to check queue state or abort/exit flags
+         */
+        public void signalAll() {
+            lock.lock();
+            try {
+                notFull.signalAll();
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
     }
 }
@@ -44,8 +44,8 @@ public class LDENConfig {
     int coefficientVersion = 2;
 
     // Process status
-    boolean exitWhenDone = false;
-    boolean aborted = false;
+    volatile boolean exitWhenDone = false;
+    volatile boolean aborted = false;
 
     // Output config
     boolean computeLDay = true;
@@ -73,6 +73,8 @@ public class LDENConfig {
     // Maximum result stack to be inserted in database
     // if the stack is full, the computation core is waiting
     int outputMaximumQueue = 50000;
+    // Maximum estimated size in bytes of the result stack, 0 for no limit
+    long outputMaximumQueueBytes = 0;
 
     boolean mergeSources = true;
 
@@ -85,6 +87,8 @@ public class LDENConfig {
     String lwFrequencyPrepend = "LW";
 
     File sqlOutputFile;
+    File levelsBinaryFolder;
+    File attenuationMatrixFile;
     Boolean sqlOutputFileCompression = true;
     Boolean dropResultsTable = true;
 
@@ -173,6 +177,42 @@ public class LDENConfig {
         this.sqlOutputFile = sqlOutputFile;
     }
 
+    /**
+     * @return Folder of the temporary binary levels files, null if the levels are inserted in the database directly
+     */
+    public File getLevelsBinaryFolder() {
+        return levelsBinaryFolder;
+    }
+
+    /**
+     * Store the receivers levels into binary files while computing, then bulk load the files into the result
+     * tables when the computation is done. This avoids row by row insert queries while computing.
+     * Ignored if {@link #setSqlOutputFile(File)} is set.
+     * @param levelsBinaryFolder Folder of the temporary binary levels files, null to insert directly in database
+     * @see org.noise_planet.noisemodelling.jdbc.utils.LevelsColumnarFile
+     */
+    public void setLevelsBinaryFolder(File levelsBinaryFolder) {
+        this.levelsBinaryFolder = levelsBinaryFolder;
+    }
+
+    /**
+     * @return Attenuation matrix file, null if the attenuation matrix is not written
+     */
+    public File getAttenuationMatrixFile() {
+        return attenuationMatrixFile;
+    }
+
+    /**
+     * Write the attenuation between each source and receiver (without source power) for each time period into
+     * a sparse matrix file. The levels of other emission scenarios can then be computed from this file without
+     * computing the propagation again.
+     * @param attenuationMatrixFile Matrix file, null to not write the attenuation matrix
+     * @see AttenuationMatrixEmission
+     */
+    public void setAttenuationMatrixFile(File attenuationMatrixFile) {
+        this.attenuationMatrixFile = attenuationMatrixFile;
+    }
+
     public void setComputeLDay(boolean computeLDay) {
         this.computeLDay = computeLDay;
     }
@@ -244,6 +284,22 @@ public class LDENConfig {
         this.outputMaximumQueue = outputMaximumQueue;
     }
 
+    /**
+     * @return Maximum estimated size in bytes of the result stack to be inserted in database, 0 for no limit
+     */
+    public long getOutputMaximumQueueBytes() {
+        return outputMaximumQueueBytes;
+    }
+
+    /**
+     * Maximum estimated size of the result stack to be inserted in database
+     * if the stack is full, the computation core is waiting
+     * @param outputMaximumQueueBytes Maximum estimated size in bytes, 0 for no limit
+     */
+    public void setOutputMaximumQueueBytes(long outputMaximumQueueBytes) {
+        this.outputMaximumQueueBytes = outputMaximumQueueBytes;
+    }
+
     /**
      * @param computeLDEN IF true create LDEN_GEOM table
      */
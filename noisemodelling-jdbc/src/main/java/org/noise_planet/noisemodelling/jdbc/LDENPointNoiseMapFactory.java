@@ -26,23 +26,30 @@ import org.h2gis.utilities.GeometryTableUtilities;
 import org.h2gis.utilities.JDBCUtilities;
 import org.locationtech.jts.geom.LineString;
 import org.noise_planet.noisemodelling.emission.LineSource;
+import org.noise_planet.noisemodelling.emission.directivity.CompiledDirectivitySphere;
 import org.noise_planet.noisemodelling.emission.directivity.DirectivitySphere;
 import org.noise_planet.noisemodelling.emission.railway.cnossos.RailWayCnossosParameters;
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixFile;
+import org.noise_planet.noisemodelling.jdbc.utils.ComputationJournal;
+import org.noise_planet.noisemodelling.jdbc.utils.LevelsColumnarFile;
 import org.noise_planet.noisemodelling.jdbc.utils.StringPreparedStatements;
 import org.noise_planet.noisemodelling.pathfinder.*;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
-import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
 import java.util.zip.GZIPOutputStream;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
@@ -51,14 +58,28 @@ import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
  *
  */
 public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProcessDataFactory, PointNoiseMap.IComputeRaysOutFactory, ProfilerThread.Metric {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LDENPointNoiseMapFactory.class);
     LDENConfig ldenConfig;
     TableWriter tableWriter;
     Thread tableWriterThread;
     Connection connection;
     static final int BATCH_MAX_SIZE = 500;
+    /** Temporary table of the receivers of the interrupted cells, removed from the results when resuming */
+    static final String INTERRUPTED_RECEIVERS_TABLE = "NM_INTERRUPTED_RECEIVERS";
     static final int WRITER_CACHE = 65536;
+    static final long WRITER_IDLE_TIMEOUT = 1000;
+    /** Default maximum number of sources of the emission cache, the cache is disabled unless requested */
+    public static final int DEFAULT_EMISSION_CACHE_SIZE = 0;
     LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
     int srid;
+    ComputationJournal computationJournal;
+    int emissionCacheSize = DEFAULT_EMISSION_CACHE_SIZE;
+    SourceEmissionCache emissionCache;
+    /** Source table of the current computation, part of the emission cache context */
+    String sourcesTableName = "";
+    double directivityResolution = 0;
+    /** Compiled directivity of the current computation, null if directivityResolution is not set */
+    Map<Integer, DirectivitySphere> computeDirectionAttributes;
     List<String> noiseSource = Arrays.asList("ROLLING","TRACTIONA", "TRACTIONB","AERODYNAMICA","AERODYNAMICB","BRIDGE");
 
 
@@ -92,6 +113,48 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         return ldenData;
     }
 
+    /**
+     * @return Maximum number of sources of the emission cache
+     */
+    public int getEmissionCacheSize() {
+        return emissionCacheSize;
+    }
+
+    /**
+     * The emission spectra of a source are computed by the first cell fetching the source, then reused by the
+     * neighboring cells. Must be called before {@link #initialize(Connection, PointNoiseMap)}. The cache takes about
+     * 200 bytes by source for octave bands, 100000 sources is a reasonable size for a city.
+     * @param emissionCacheSize Maximum number of sources of the emission cache, 0 (default) to disable the cache
+     */
+    public void setEmissionCacheSize(int emissionCacheSize) {
+        this.emissionCacheSize = emissionCacheSize;
+    }
+
+    /**
+     * @return Angular step in radians of the directivity grids, 0 if the directivity spheres are not compiled
+     */
+    public double getDirectivityResolution() {
+        return directivityResolution;
+    }
+
+    /**
+     * Resample the directivity spheres into regular grids when the computation is initialized, so the
+     * attenuation of a ray is interpolated from the grid instead of being evaluated from the sphere definition.
+     * Must be called before {@link #initialize(Connection, PointNoiseMap)}.
+     * @param directivityResolution Angular step in radians of the grids
+     * (ex. {@link CompiledDirectivitySphere#DEFAULT_ANGULAR_RESOLUTION}), 0 to use the directivity spheres as is
+     */
+    public void setDirectivityResolution(double directivityResolution) {
+        this.directivityResolution = directivityResolution;
+    }
+
+    /**
+     * @return Emission spectra shared by the cells of the current computation, null if disabled
+     */
+    public SourceEmissionCache getEmissionCache() {
+        return emissionCache;
+    }
+
 
     public void insertTrainDirectivity() {
         directionAttributes.clear();
@@ -105,6 +168,8 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
 
     @Override
     public void initialize(Connection connection, PointNoiseMap pointNoiseMap) throws SQLException {
+        computationJournal = pointNoiseMap.getComputationJournal();
+        sourcesTableName = pointNoiseMap.getSourcesTableName();
         if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN) {
             // Fetch source fields
             List<String> sourceField = JDBCUtilities.getColumnNames(connection, pointNoiseMap.getSourcesTableName());
@@ -169,6 +234,52 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 }
             }
         }
+        if(directivityResolution > 0) {
+            computeDirectionAttributes = compileDirectivity(directionAttributes, directivityResolution,
+                    ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY).freq_lvl);
+        } else {
+            computeDirectionAttributes = null;
+        }
+        if(emissionCacheSize > 0) {
+            emissionCache = new SourceEmissionCache(emissionCacheSize,
+                    ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY).freq_lvl.size());
+            emissionCache.setContext(getEmissionContext());
+        } else {
+            emissionCache = null;
+        }
+    }
+
+    /**
+     * @return Source table and configuration used to compute the emission spectra of the sources, the emission cache
+     * is emptied when this value changes
+     */
+    String getEmissionContext() {
+        return String.format(Locale.ROOT, "%s %s %d %s %s %b %b %b %b", sourcesTableName, ldenConfig.input_mode,
+                ldenConfig.coefficientVersion, ldenConfig.lwFrequencyPrepend,
+                ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY).freq_lvl, ldenConfig.computeLDay,
+                ldenConfig.computeLEvening, ldenConfig.computeLNight, ldenConfig.computeLDEN);
+    }
+
+    /**
+     * @param directionAttributes Directivity spheres
+     * @param directivityResolution Angular step in radians of the grids
+     * @param frequencies Frequency bands of the computation
+     * @return Directivity spheres resampled into regular grids, omnidirectional and already compiled spheres are kept
+     */
+    static Map<Integer, DirectivitySphere> compileDirectivity(Map<Integer, ? extends DirectivitySphere> directionAttributes,
+                                                              double directivityResolution, List<Integer> frequencies) {
+        Map<Integer, DirectivitySphere> compiled = new HashMap<>(directionAttributes);
+        double[] bands = new double[frequencies.size()];
+        for (int idFrequency = 0; idFrequency < bands.length; idFrequency++) {
+            bands[idFrequency] = frequencies.get(idFrequency);
+        }
+        for(Map.Entry<Integer, DirectivitySphere> entry : compiled.entrySet()) {
+            if(!(entry.getValue() instanceof CompiledDirectivitySphere ||
+                    entry.getValue() instanceof LDENPropagationProcessData.OmnidirectionalDirection)) {
+                entry.setValue(new CompiledDirectivitySphere(entry.getValue(), bands, directivityResolution));
+            }
+        }
+        return compiled;
     }
 
     /**
@@ -179,16 +290,22 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             throw new IllegalStateException("start() function must be called after PointNoiseMap initialization call");
         }
         tableWriter = new TableWriter(connection, ldenConfig, ldenData, srid);
+        if(computationJournal != null) {
+            if(ldenConfig.levelsBinaryFolder != null || ldenConfig.attenuationMatrixFile != null) {
+                throw new IllegalStateException("The computation journal cannot be used with the binary levels " +
+                        "files or the attenuation matrix file");
+            }
+            tableWriter.computationJournal = computationJournal;
+            computationJournal.setOutputCheckpoint(tableWriter);
+        }
         ldenConfig.exitWhenDone = false;
         tableWriterThread = new Thread(tableWriter);
         tableWriterThread.start();
-        while (!tableWriter.started && !ldenConfig.aborted) {
-            try {
-                Thread.sleep(150);
-            } catch (InterruptedException e) {
-                // ignore
-                break;
-            }
+        try {
+            // Wait for the creation of tables
+            tableWriter.startedLatch.await();
+        } catch (InterruptedException e) {
+            // ignore
         }
     }
 
@@ -197,14 +314,8 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
      */
     public void stop() {
         ldenConfig.exitWhenDone = true;
-        while (tableWriterThread != null && tableWriterThread.isAlive()) {
-            try {
-                Thread.sleep(150);
-            } catch (InterruptedException e) {
-                // ignore
-                break;
-            }
-        }
+        ldenData.signalAll();
+        joinTableWriter();
     }
 
     /**
@@ -212,12 +323,16 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
      */
     public void cancel() {
         ldenConfig.aborted = true;
-        while (tableWriterThread.isAlive()) {
+        ldenData.signalAll();
+        joinTableWriter();
+    }
+
+    private void joinTableWriter() {
+        if (tableWriterThread != null) {
             try {
-                Thread.sleep(150);
+                tableWriterThread.join();
             } catch (InterruptedException e) {
                 // ignore
-                break;
             }
         }
     }
@@ -225,7 +340,12 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
     @Override
     public LDENPropagationProcessData create(ProfileBuilder builder) {
         LDENPropagationProcessData ldenPropagationProcessData = new LDENPropagationProcessData(builder, ldenConfig);
-        ldenPropagationProcessData.setDirectionAttributes(directionAttributes);
+        ldenPropagationProcessData.setDirectionAttributes(computeDirectionAttributes != null ?
+                computeDirectionAttributes : directionAttributes);
+        if(emissionCache != null && emissionCache.setContext(getEmissionContext())) {
+            LOGGER.info("The source table or the emission parameters have changed, the emission cache is emptied");
+        }
+        ldenPropagationProcessData.setEmissionCache(emissionCache);
         return ldenPropagationProcessData;
     }
 
@@ -236,16 +356,34 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 (LDENPropagationProcessData)threadData, ldenData, ldenConfig);
     }
 
-    private static class TableWriter implements Runnable {
+    private static class TableWriter implements Runnable, ComputationJournal.OutputCheckpoint {
         Logger LOGGER = LoggerFactory.getLogger(TableWriter.class);
         File sqlFilePath;
         private Connection connection;
         LDENConfig ldenConfig;
         LDENComputeRaysOut.LdenData ldenData;
         double[] a_weighting;
+        /** Levels of the row being written */
+        double[] rowLevels;
+        /** LAEQ of the last row read by {@link #readRow(ReceiverLevelsBlock, int)} */
+        double rowLaeq;
+        /** LEQ of the last row read by {@link #readRow(ReceiverLevelsBlock, int)}, 0 if only LAEQ is computed */
+        double rowLeq;
         boolean started = false;
+        final CountDownLatch startedLatch = new CountDownLatch(1);
         Writer o;
+        FileOutputStream fileStream;
+        GZIPOutputStream gzipStream;
         int srid;
+        ComputationJournal computationJournal = null;
+        // Checkpoint requests of the computation thread, guarded by checkpointLock
+        private final Object checkpointLock = new Object();
+        private long checkpointRequests = 0;
+        private long checkpointsDone = 0;
+        private long checkpointOffset = -1;
+        private volatile boolean running = true;
+        Map<String, LevelsColumnarFile.Writer> levelsWriters = null;
+        Map<String, File> levelsFiles = new LinkedHashMap<>();
 
         public TableWriter(Connection connection, LDENConfig ldenConfig, LDENComputeRaysOut.LdenData ldenData, int srid) {
             this.connection = connection;
@@ -256,6 +394,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             for(int idfreq = 0; idfreq < a_weighting.length; idfreq++) {
                 a_weighting[idfreq] = ldenConfig.propagationProcessPathDataDay.freq_lvl_a_weighting.get(idfreq);
             }
+            rowLevels = new double[a_weighting.length];
             this.srid = srid;
         }
 
@@ -284,9 +423,10 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 ps = new StringPreparedStatements(o, query.toString());
             }
             int batchSize = 0;
+            long poppedBytes = 0;
             while(!stack.isEmpty()) {
                 PropagationPath row = stack.pop();
-                ldenData.queueSize.decrementAndGet();
+                poppedBytes += LDENComputeRaysOut.LdenData.estimateSize(row);
                 int parameterIndex = 1;
                 LineString lineString = row.asGeom();
                 lineString.setSRID(srid);
@@ -312,22 +452,54 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 if (batchSize >= BATCH_MAX_SIZE) {
                     ps.executeBatch();
                     ps.clearBatch();
+                    // Written rows release space for the computation threads
+                    ldenData.popped(batchSize, poppedBytes);
                     batchSize = 0;
+                    poppedBytes = 0;
                 }
             }
             if (batchSize > 0) {
                 ps.executeBatch();
+                ldenData.popped(batchSize, poppedBytes);
             }
 
         }
 
+        /**
+         * Copy the levels of one row of the block into {@link #rowLevels} and compute {@link #rowLaeq} and
+         * {@link #rowLeq}. Non finite values are written as -99 dB, the band levels are kept as is when only the
+         * LAEQ is computed as they are not written.
+         * @param block Receiver levels
+         * @param row Row in the block
+         */
+        void readRow(ReceiverLevelsBlock block, int row) {
+            double[] levels = block.getLevels();
+            int offset = block.getOffset(row);
+            for (int idfreq = 0; idfreq < rowLevels.length; idfreq++) {
+                double value = levels[offset + idfreq];
+                if (!ldenConfig.computeLAEQOnly && !Double.isFinite(value)) {
+                    value = -99.0;
+                }
+                rowLevels[idfreq] = value;
+            }
+            rowLaeq = wToDba(sumArray(dbaToW(sumArray(rowLevels, a_weighting))));
+            if(!Double.isFinite(rowLaeq)) {
+                rowLaeq = -99;
+            }
+            rowLeq = ldenConfig.computeLAEQOnly ? 0 : wToDba(sumArray(dbaToW(rowLevels)));
+        }
+
         /**
          * Pop values from stack and insert rows
          * @param tableName Table to feed
          * @param stack Stack to pop from
          * @throws SQLException Got an error
          */
-        void processStack(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack) throws SQLException {
+        void processStack(String tableName, ConcurrentLinkedDeque<ReceiverLevelsBlock> stack) throws SQLException, IOException {
+            if(levelsWriters != null) {
+                processStackToBinary(levelsWriters.get(tableName), stack);
+                return;
+            }
             StringBuilder query = new StringBuilder("INSERT INTO ");
             query.append(tableName);
             query.append(" VALUES (? "); // ID_RECEIVER
@@ -347,49 +519,152 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 ps = new StringPreparedStatements(o, query.toString());
             }
             int batchSize = 0;
+            long poppedRows = 0;
+            long poppedBytes = 0;
             while(!stack.isEmpty()) {
-                ComputeRaysOutAttenuation.VerticeSL row = stack.pop();
-                ldenData.queueSize.decrementAndGet();
-                int parameterIndex = 1;
-                ps.setLong(parameterIndex++, row.receiverId);
-                if(!ldenConfig.mergeSources) {
-                    ps.setLong(parameterIndex++, row.sourceId);
-                }
-
-                if (!ldenConfig.computeLAEQOnly){
-                    for(int idfreq=0;idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
-                        double value = row.value[idfreq];
-                        if(!Double.isFinite(value)) {
-                            value = -99.0;
-                            row.value[idfreq] = value;
+                ReceiverLevelsBlock block = stack.pop();
+                poppedRows += block.size();
+                poppedBytes += LDENComputeRaysOut.LdenData.estimateSize(block);
+                for(int row = 0; row < block.size(); row++) {
+                    readRow(block, row);
+                    int parameterIndex = 1;
+                    ps.setLong(parameterIndex++, block.getReceiverId());
+                    if(!ldenConfig.mergeSources) {
+                        ps.setLong(parameterIndex++, block.getSourceId(row));
+                    }
+                    if (!ldenConfig.computeLAEQOnly) {
+                        for (double value : rowLevels) {
+                            ps.setDouble(parameterIndex++, value);
                         }
-                        ps.setDouble(parameterIndex++, value);
+                    }
+                    ps.setDouble(parameterIndex++, rowLaeq);
+                    if (!ldenConfig.computeLAEQOnly) {
+                        ps.setDouble(parameterIndex++, rowLeq);
                     }
 
+                    ps.addBatch();
+                    batchSize++;
                 }
-                // laeq value
-                double value = wToDba(sumArray(dbaToW(sumArray(row.value, a_weighting))));
-                if(!Double.isFinite(value)) {
-                    value = -99;
-                }
-                ps.setDouble(parameterIndex++, value);
-
-                // leq value
-                if (!ldenConfig.computeLAEQOnly) {
-                    ps.setDouble(parameterIndex++, wToDba(sumArray(dbaToW(row.value))));
-                }
-
-                ps.addBatch();
-                batchSize++;
+                ldenData.recycle(block);
                 if (batchSize >= BATCH_MAX_SIZE) {
                     ps.executeBatch();
                     ps.clearBatch();
+                    // Written rows release space for the computation threads
+                    ldenData.popped(poppedRows, poppedBytes);
                     batchSize = 0;
+                    poppedRows = 0;
+                    poppedBytes = 0;
                 }
             }
             if (batchSize > 0) {
                 ps.executeBatch();
             }
+            if (poppedRows > 0 || poppedBytes > 0) {
+                ldenData.popped(poppedRows, poppedBytes);
+            }
+        }
+
+        /**
+         * Pop values from stack and append rows in the binary levels file
+         * @param writer Levels file of the table
+         * @param stack Stack to pop from
+         * @throws IOException Got an error
+         */
+        void processStackToBinary(LevelsColumnarFile.Writer writer,
+                                  ConcurrentLinkedDeque<ReceiverLevelsBlock> stack) throws IOException {
+            while(!stack.isEmpty()) {
+                ReceiverLevelsBlock block = stack.pop();
+                int rows = block.size();
+                long bytes = LDENComputeRaysOut.LdenData.estimateSize(block);
+                for(int row = 0; row < rows; row++) {
+                    readRow(block, row);
+                    writer.write(block.getReceiverId(), block.getSourceId(row), rowLevels, rowLaeq, rowLeq);
+                }
+                ldenData.recycle(block);
+                ldenData.popped(rows, bytes);
+            }
+        }
+
+        /**
+         * Create one binary levels file for each result table
+         */
+        void openLevelsWriters() throws IOException {
+            levelsWriters = new HashMap<>();
+            File folder = ldenConfig.levelsBinaryFolder;
+            if(!folder.exists() && !folder.mkdirs()) {
+                throw new IOException("Could not create folder " + folder);
+            }
+            int bandCount = ldenConfig.propagationProcessPathDataDay.freq_lvl.size();
+            List<String> tables = new ArrayList<>();
+            if(ldenConfig.computeLDay) {
+                tables.add(ldenConfig.lDayTable);
+            }
+            if(ldenConfig.computeLEvening) {
+                tables.add(ldenConfig.lEveningTable);
+            }
+            if(ldenConfig.computeLNight) {
+                tables.add(ldenConfig.lNightTable);
+            }
+            if(ldenConfig.computeLDEN) {
+                tables.add(ldenConfig.lDenTable);
+            }
+            for(String tableName : tables) {
+                File file = new File(folder, tableName + ".bin");
+                levelsFiles.put(tableName, file);
+                levelsWriters.put(tableName, new LevelsColumnarFile.Writer(file, !ldenConfig.mergeSources,
+                        ldenConfig.computeLAEQOnly, bandCount));
+            }
+        }
+
+        void closeLevelsWriters() throws IOException {
+            for(LevelsColumnarFile.Writer writer : levelsWriters.values()) {
+                writer.close();
+            }
+        }
+
+        /**
+         * Bulk load the binary levels files in the result tables
+         */
+        void loadLevelsFiles() throws SQLException, IOException {
+            if(ldenConfig.aborted) {
+                return;
+            }
+            for(Map.Entry<String, File> entry : levelsFiles.entrySet()) {
+                LOGGER.info("Load " + entry.getKey() + " from " + entry.getValue());
+                LevelsColumnarFile.load(connection, entry.getValue(), entry.getKey());
+                Files.deleteIfExists(entry.getValue().toPath());
+            }
+        }
+
+        /**
+         * Create the attenuation matrix writer used by the computation threads
+         */
+        void openAttenuationMatrix() throws IOException {
+            if(ldenConfig.attenuationMatrixFile != null) {
+                List<Integer> freqLvl = ldenConfig.propagationProcessPathDataDay.freq_lvl;
+                int[] frequencies = new int[freqLvl.size()];
+                for(int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+                    frequencies[idFrequency] = freqLvl.get(idFrequency);
+                }
+                ldenData.attenuationMatrix = new AttenuationMatrixFile.Writer(ldenConfig.attenuationMatrixFile,
+                        LDENConfig.TIME_PERIOD.values().length, frequencies);
+            }
+        }
+
+        /**
+         * Sort and write the attenuation matrix file, or only remove the temporary file if aborted
+         */
+        void closeAttenuationMatrix() throws IOException {
+            AttenuationMatrixFile.Writer writer = ldenData.attenuationMatrix;
+            if(writer != null) {
+                ldenData.attenuationMatrix = null;
+                if(ldenConfig.aborted) {
+                    writer.close();
+                } else {
+                    LOGGER.info("Write attenuation matrix " + ldenConfig.attenuationMatrixFile);
+                    writer.finish();
+                }
+            }
         }
 
         private String forgeCreateTable(String tableName) {
@@ -488,8 +763,9 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         }
 
         void mainLoop() throws SQLException, IOException {
+            started = true;
+            startedLatch.countDown();
             while (!ldenConfig.aborted) {
-                started = true;
                 try {
                     if(!ldenData.lDayLevels.isEmpty()) {
                         processStack(ldenConfig.lDayTable, ldenData.lDayLevels);
@@ -501,11 +777,14 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                         processStack(ldenConfig.lDenTable, ldenData.lDenLevels);
                     } else if(!ldenData.rays.isEmpty()) {
                         processRaysStack(ldenData.rays);
+                    } else if(isCheckpointRequested()) {
+                        writeCheckpoint();
                     } else {
                         if(ldenConfig.exitWhenDone) {
                             break;
                         } else {
-                            Thread.sleep(50);
+                            // Woken up as soon as results are pushed, or by stop/cancel
+                            ldenData.waitForData(WRITER_IDLE_TIMEOUT);
                         }
                     }
                 } catch (InterruptedException ex) {
@@ -532,22 +811,182 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             }
         }
 
-        OutputStreamWriter getStream() throws IOException {
+        /**
+         * @param append Append to the content of the file
+         */
+        OutputStreamWriter getStream(boolean append) throws IOException {
+            fileStream = new FileOutputStream(sqlFilePath, append);
+            return openStream();
+        }
+
+        private OutputStreamWriter openStream() throws IOException {
             if(ldenConfig.sqlOutputFileCompression) {
-                return new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(sqlFilePath), WRITER_CACHE));
+                // A gzip member is written for each checkpoint, the concatenated members form a valid gzip file
+                gzipStream = new GZIPOutputStream(fileStream, WRITER_CACHE);
+                return new OutputStreamWriter(gzipStream);
             } else {
-                return new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(sqlFilePath), WRITER_CACHE));
+                return new OutputStreamWriter(new BufferedOutputStream(fileStream, WRITER_CACHE));
+            }
+        }
+
+        boolean isCheckpointRequested() {
+            synchronized (checkpointLock) {
+                return checkpointRequests > checkpointsDone;
+            }
+        }
+
+        /**
+         * Called by the computation thread, the writer thread writes the checkpoint once the stacks are empty
+         */
+        @Override
+        public long checkpoint() throws IOException {
+            long request;
+            synchronized (checkpointLock) {
+                request = ++checkpointRequests;
+            }
+            ldenData.requestCheckpoint();
+            synchronized (checkpointLock) {
+                try {
+                    while (checkpointsDone < request && running && !ldenConfig.aborted) {
+                        checkpointLock.wait(WRITER_IDLE_TIMEOUT);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the result writer", ex);
+                }
+                if (checkpointsDone < request) {
+                    throw new IOException("The result writer stopped before writing the cell results");
+                }
+                return checkpointOffset;
+            }
+        }
+
+        /**
+         * All the results pushed before the checkpoint requests have been written, make them durable
+         */
+        void writeCheckpoint() throws SQLException, IOException {
+            // A request received after this call sets the flag again, so the writer does not miss it
+            ldenData.clearCheckpointRequest();
+            long requests;
+            synchronized (checkpointLock) {
+                requests = checkpointRequests;
+            }
+            long offset = -1;
+            if(sqlFilePath == null) {
+                if(!connection.getAutoCommit()) {
+                    connection.commit();
+                }
+            } else {
+                o.flush();
+                if(gzipStream != null) {
+                    gzipStream.finish();
+                }
+                fileStream.getFD().sync();
+                offset = fileStream.getChannel().position();
+                if(gzipStream != null) {
+                    // The header of the next gzip member is written after the checkpoint offset
+                    o = openStream();
+                }
+            }
+            synchronized (checkpointLock) {
+                checkpointsDone = requests;
+                checkpointOffset = offset;
+                checkpointLock.notifyAll();
+            }
+        }
+
+        /**
+         * Remove the results of the cells interrupted by the crash of the previous computation
+         */
+        void removeInterruptedResults() throws SQLException {
+            List<String> tables = new ArrayList<>();
+            if(ldenConfig.getExportRaysMethod() == LDENConfig.ExportRaysMethods.TO_RAYS_TABLE) {
+                tables.add(ldenConfig.raysTable);
+            }
+            if(ldenConfig.computeLDay) {
+                tables.add(ldenConfig.lDayTable);
+            }
+            if(ldenConfig.computeLEvening) {
+                tables.add(ldenConfig.lEveningTable);
+            }
+            if(ldenConfig.computeLNight) {
+                tables.add(ldenConfig.lNightTable);
+            }
+            if(ldenConfig.computeLDEN) {
+                tables.add(ldenConfig.lDenTable);
+            }
+            // The result tables have no index yet, so the rows are removed with one scan of each table
+            try (Statement st = connection.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS " + INTERRUPTED_RECEIVERS_TABLE);
+                st.execute("CREATE LOCAL TEMPORARY TABLE " + INTERRUPTED_RECEIVERS_TABLE +
+                        " (IDRECEIVER bigint PRIMARY KEY)");
+            }
+            try {
+                try (PreparedStatement ps = connection.prepareStatement("INSERT INTO " +
+                        INTERRUPTED_RECEIVERS_TABLE + " VALUES (?)")) {
+                    int batchSize = 0;
+                    Set<Long> receiverSet = new HashSet<>();
+                    for(long[] receivers : computationJournal.getInterruptedCells().values()) {
+                        for(long receiver : receivers) {
+                            if(!receiverSet.add(receiver)) {
+                                continue;
+                            }
+                            ps.setLong(1, receiver);
+                            ps.addBatch();
+                            if(++batchSize >= BATCH_MAX_SIZE) {
+                                ps.executeBatch();
+                                batchSize = 0;
+                            }
+                        }
+                    }
+                    if(batchSize > 0) {
+                        ps.executeBatch();
+                    }
+                }
+                try (Statement st = connection.createStatement()) {
+                    for (String table : tables) {
+                        st.executeUpdate("DELETE FROM " + table + " WHERE IDRECEIVER IN (SELECT IDRECEIVER FROM " +
+                                INTERRUPTED_RECEIVERS_TABLE + ")");
+                    }
+                }
+            } finally {
+                try (Statement st = connection.createStatement()) {
+                    st.execute("DROP TABLE IF EXISTS " + INTERRUPTED_RECEIVERS_TABLE);
+                }
             }
         }
 
         @Override
         public void run() {
             // Drop and create tables
+            boolean resume = computationJournal != null && computationJournal.isResumed();
+            if(resume) {
+                LOGGER.info("Resume computation, append results to the existing output");
+            }
             if(sqlFilePath == null) {
                 try {
-                    init();
-                    mainLoop();
-                    createKeys();
+                    if(resume) {
+                        removeInterruptedResults();
+                    } else {
+                        init();
+                    }
+                    openAttenuationMatrix();
+                    if(ldenConfig.levelsBinaryFolder != null) {
+                        openLevelsWriters();
+                        try {
+                            mainLoop();
+                        } finally {
+                            closeLevelsWriters();
+                        }
+                        loadLevelsFiles();
+                    } else {
+                        mainLoop();
+                    }
+                    closeAttenuationMatrix();
+                    if(computationJournal == null || !ldenConfig.aborted) {
+                        // A cancelled computation may be resumed later
+                        createKeys();
+                    }
                 } catch (SQLException e) {
                     LOGGER.error("SQL Writer exception", e);
                     LOGGER.error(e.getLocalizedMessage(), e.getNextException());
@@ -557,11 +996,35 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                     ldenConfig.aborted = true;
                 }
             } else {
-                try(OutputStreamWriter bw = getStream()) {
-                    o = bw;
-                    init();
-                    mainLoop();
-                    createKeys();
+                try {
+                    if(resume && !computationJournal.hasCompletedCells()) {
+                        // Only interrupted cells, the output is written again from the beginning
+                        resume = false;
+                    }
+                    if(resume) {
+                        // Remove the results written after the last completed cell
+                        long offset = computationJournal.getOutputOffset();
+                        if(offset < 0) {
+                            throw new IOException("The computation journal does not contain the output file size");
+                        }
+                        try (FileChannel channel = FileChannel.open(sqlFilePath.toPath(), StandardOpenOption.WRITE)) {
+                            channel.truncate(offset);
+                        }
+                    }
+                    o = getStream(resume);
+                    try {
+                        if(!resume) {
+                            init();
+                        }
+                        openAttenuationMatrix();
+                        mainLoop();
+                        closeAttenuationMatrix();
+                        if(computationJournal == null || !ldenConfig.aborted) {
+                            createKeys();
+                        }
+                    } finally {
+                        o.close();
+                    }
                 } catch (SQLException e) {
                     LOGGER.error("SQL Writer exception", e);
                     LOGGER.error(e.getLocalizedMessage(), e.getNextException());
@@ -571,6 +1034,19 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                     ldenConfig.aborted = true;
                 }
             }
+            try {
+                // Remove the temporary matrix file on failure
+                closeAttenuationMatrix();
+            } catch (IOException e) {
+                LOGGER.error("Could not close attenuation matrix", e);
+            }
+            // Release start() on failure and computation threads waiting for space or for a checkpoint
+            synchronized (checkpointLock) {
+                running = false;
+                checkpointLock.notifyAll();
+            }
+            startedLatch.countDown();
+            ldenData.signalAll();
             // LOGGER.info("Exit TableWriter");
         }
     }
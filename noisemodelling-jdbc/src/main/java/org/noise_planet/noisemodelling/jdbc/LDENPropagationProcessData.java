@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,11 +62,24 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
 
     LDENConfig ldenConfig;
 
+    /**
+     * Emission spectra shared with the other cells, null to compute the emission of each fetched source
+     */
+    SourceEmissionCache emissionCache = null;
+
     public LDENPropagationProcessData(ProfileBuilder builder, LDENConfig ldenConfig) {
         super(builder, ldenConfig.propagationProcessPathDataDay.freq_lvl);
         this.ldenConfig = ldenConfig;
     }
 
+    /**
+     * @param emissionCache Emission spectra shared with the other cells, null to compute the emission of each
+     *                      fetched source
+     */
+    public void setEmissionCache(SourceEmissionCache emissionCache) {
+        this.emissionCache = emissionCache;
+    }
+
     public void setDirectionAttributes(Map<Integer, DirectivitySphere> directionAttributes) {
         this.directionAttributes = directionAttributes;
     }
@@ -73,7 +87,17 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
     @Override
     public void addSource(Long pk, Geometry geom, SpatialResultSet rs) throws SQLException, IOException {
         super.addSource(pk, geom, rs);
-        double[][] res = computeLw(rs);
+        double[][] res;
+        if(emissionCache != null) {
+            double slope = ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW ? computeSlope(rs) : 0;
+            res = emissionCache.get(pk, slope);
+            if(res == null) {
+                res = computeLw(rs, slope);
+                emissionCache.put(pk, slope, res);
+            }
+        } else {
+            res = computeLw(rs);
+        }
         if(ldenConfig.computeLDay || ldenConfig.computeLDEN) {
             wjSourcesD.add(res[0]);
         }
@@ -101,6 +125,18 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         }
     }
 
+    @Override
+    public void getSourceAttenuation(int srcIndex, double[] frequencies, double phi, double theta,
+                                     double[] attenuation) {
+        DirectivitySphere directivitySphere = directionAttributes.get(sourceDirection.get(sourcesPk.get(srcIndex)));
+        if(directivitySphere != null) {
+            directivitySphere.getAttenuationArray(frequencies, phi, theta, attenuation);
+        } else {
+            // This direction identifier has not been found
+            Arrays.fill(attenuation, 0, frequencies.length, 0);
+        }
+    }
+
     @Override
     public double getSourceGs(int srcIndex){
         return sourceGs.get(sourcesPk.get(srcIndex));
@@ -120,7 +156,6 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
                 sourceFields.put(fieldName.toUpperCase(), fieldId++);
             }
         }
-        double[] lvl = new double[ldenConfig.propagationProcessPathDataDay.freq_lvl.size()];
         // Set default values
         double tv = 0; // old format "total vehicles"
         double hv = 0; // old format "heavy vehicles"
@@ -220,21 +255,55 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         if(hv > 0) {
             hgvPerHour = hv;
         }
-        // Compute emission
-        int idFreq = 0;
-        for (int freq : ldenConfig.propagationProcessPathDataDay.freq_lvl) {
-            RoadCnossosParameters rsParametersCnossos = new RoadCnossosParameters(lv_speed, mv_speed, hgv_speed, wav_speed,
-                    wbv_speed,lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, freq, temperature,
-                    roadSurface, tsStud, pmStud, junctionDistance, junctionType);
-            rsParametersCnossos.setSlopePercentage(slope);
-            rsParametersCnossos.setWay(way);
-            rsParametersCnossos.setFileVersion(ldenConfig.coefficientVersion);
-            lvl[idFreq++] = RoadCnossos.evaluate(rsParametersCnossos);
-        }
-        return lvl;
+        // Compute emission, all the bands at once
+        int[] frequencies = new int[ldenConfig.propagationProcessPathDataDay.freq_lvl.size()];
+        for (int idFreq = 0; idFreq < frequencies.length; idFreq++) {
+            frequencies[idFreq] = ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idFreq);
+        }
+        RoadCnossosParameters rsParametersCnossos = new RoadCnossosParameters(lv_speed, mv_speed, hgv_speed, wav_speed,
+                wbv_speed,lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, frequencies[0], temperature,
+                roadSurface, tsStud, pmStud, junctionDistance, junctionType);
+        rsParametersCnossos.setSlopePercentage(slope);
+        rsParametersCnossos.setWay(way);
+        rsParametersCnossos.setFileVersion(ldenConfig.coefficientVersion);
+        return RoadCnossos.evaluate(rsParametersCnossos, frequencies);
+    }
+
+    /**
+     * @param rs result set of source
+     * @return Gradient percentage of the road from its first segment and the digital elevation model of the cell, 0
+     * if the geometry of the source could not be read
+     */
+    public double computeSlope(SpatialResultSet rs) {
+        double slope = 0;
+        try {
+            Geometry g = rs.getGeometry();
+            if(profileBuilder!=null && g != null && !g.isEmpty()) {
+                Coordinate[] c = g.getCoordinates();
+                if(c.length >= 2) {
+                    double z0 = profileBuilder.getZ(c[0]);
+                    double z1 = profileBuilder.getZ(c[1]);
+                    if(!Double.isNaN(z0) && !Double.isNaN(z1)) {
+                        slope = Utils.computeSlope(z0, z1, g.getLength());
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            // ignore
+        }
+        return slope;
     }
 
     public double[][] computeLw(SpatialResultSet rs) throws SQLException, IOException {
+        return computeLw(rs, ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW ? computeSlope(rs) : 0);
+    }
+
+    /**
+     * @param rs result set of source
+     * @param slope Gradient percentage of road, used with the traffic flow input mode
+     * @return Day, evening and night emission spectra in W
+     */
+    public double[][] computeLw(SpatialResultSet rs, double slope) throws SQLException, IOException {
 
         // Compute day average level
         double[] ld = new double[ldenConfig.propagationProcessPathDataDay.freq_lvl.size()];
@@ -266,23 +335,6 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
                 }
             }
         } else if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW) {
-            // Extract road slope
-            double slope = 0;
-            try {
-                Geometry g = rs.getGeometry();
-                if(profileBuilder!=null && g != null && !g.isEmpty()) {
-                    Coordinate[] c = g.getCoordinates();
-                    if(c.length >= 2) {
-                        double z0 = profileBuilder.getZ(c[0]);
-                        double z1 = profileBuilder.getZ(c[1]);
-                        if(!Double.isNaN(z0) && !Double.isNaN(z1)) {
-                            slope = Utils.computeSlope(z0, z1, g.getLength());
-                        }
-                    }
-                }
-            } catch (SQLException ex) {
-                // ignore
-            }
             // Day
             ld = dbaToW(getEmissionFromResultSet(rs, "D", slope));
 
@@ -319,5 +371,10 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         public double[] getAttenuationArray(double[] frequencies, double phi, double theta) {
             return new double[frequencies.length];
         }
+
+        @Override
+        public void getAttenuationArray(double[] frequencies, double phi, double theta, double[] attenuation) {
+            Arrays.fill(attenuation, 0, frequencies.length, 0);
+        }
     }
 }
@@ -23,6 +23,7 @@ import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
 import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.jdbc.utils.ComputationJournal;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
@@ -30,10 +31,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
 
 /**
@@ -41,12 +46,20 @@ import java.util.*;
  * @author Nicolas Fortin
  */
 public class PointNoiseMap extends JdbcNoiseMap {
+    /** Default maximum receiver count of a cell of {@link #searchBalancedCells(Connection, int)} */
+    public static final int DEFAULT_MAXIMUM_CELL_RECEIVERS = 100000;
     private final String receiverTableName;
     private PropagationProcessDataFactory propagationProcessDataFactory;
     private IComputeRaysOutFactory computeRaysOutFactory;
     private Logger logger = LoggerFactory.getLogger(PointNoiseMap.class);
     private int threadCount = 0;
+    private boolean orderReceiversByCost = false;
+    private boolean shareProfileBuilder = false;
+    private ProfileBuilder sharedProfileBuilder = null;
     private ProfilerThread profilerThread;
+    /** Envelopes of the cells computed by {@link #searchBalancedCells}, null when using the uniform grid */
+    private Map<CellIndex, Envelope> balancedCells = null;
+    private ComputationJournal computationJournal = null;
 
     public PointNoiseMap(String buildingsTableName, String sourcesTableName, String receiverTableName) {
         super(buildingsTableName, sourcesTableName);
@@ -88,41 +101,201 @@ public class PointNoiseMap extends JdbcNoiseMap {
     }
 
     /**
-     * Initialisation of data structures needed for sound propagation.
-     * @param connection JDBC Connection
-     * @param cellI Cell I [0-{@link #getGridDim()}]
-     * @param cellJ Cell J [0-{@link #getGridDim()}]
-     * @param progression Progression info
-     * @return Data input for cell evaluation
-     * @throws SQLException
+     * @return True if the receivers of a cell are processed by decreasing estimated computation cost
      */
-    public CnossosPropagationData prepareCell(Connection connection,int cellI, int cellJ,
-                                              ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
-        ProfileBuilder builder = new ProfileBuilder();
-        int ij = cellI * gridDim + cellJ + 1;
-        if(verbose) {
-            logger.info("Begin processing of cell " + ij + " / " + gridDim * gridDim);
+    public boolean isOrderReceiversByCost() {
+        return orderReceiversByCost;
+    }
+
+    /**
+     * @param orderReceiversByCost True to process the receivers of a cell by decreasing estimated computation cost
+     * @see ComputeCnossosRays#setOrderReceiversByCost(boolean)
+     */
+    public void setOrderReceiversByCost(boolean orderReceiversByCost) {
+        this.orderReceiversByCost = orderReceiversByCost;
+    }
+
+    /**
+     * @return Progress journal of the computation, null if the computation cannot be resumed
+     */
+    public ComputationJournal getComputationJournal() {
+        return computationJournal;
+    }
+
+    /**
+     * Record the completed cells in a journal. When the journal already contains completed cells, the
+     * computation is resumed: the completed cells are not returned by {@link #searchPopulatedCells(Connection)}
+     * and {@link #searchBalancedCells(Connection, int, int)}, and the receivers already computed are skipped.
+     * The computation area must be split in the same cells as the journaled computation.
+     * It must be set before calling {@link #initialize(Connection, ProgressVisitor)}, in order to be used by the
+     * output factory.
+     * The journal only supports outputs written in the database or in the sql file:
+     * {@link LDENPointNoiseMapFactory#start()} throws an IllegalStateException if the levels are written in binary
+     * files ({@link LDENConfig#setLevelsBinaryFolder}) or if the attenuation matrix is written
+     * ({@link LDENConfig#setAttenuationMatrixFile}).
+     * @param computationJournal Progress journal, null to disable
+     */
+    public void setComputationJournal(ComputationJournal computationJournal) {
+        this.computationJournal = computationJournal;
+    }
+
+    /**
+     * @param cellIndex Cell index
+     * @return Cell identifier, stored in {@link CnossosPropagationData#cellId} and in the computation journal. For
+     * the balanced cells this is the cell number stored in {@link CellIndex#getLongitudeIndex()}, plus one.
+     */
+    public int getCellId(CellIndex cellIndex) {
+        if(balancedCells != null) {
+            return cellIndex.getLongitudeIndex() + 1;
+        } else {
+            return cellIndex.getLatitudeIndex() * gridDim + cellIndex.getLongitudeIndex() + 1;
         }
-        Envelope cellEnvelope = getCellEnv(mainEnvelope, cellI,
-                cellJ, getCellWidth(), getCellHeight());
+    }
 
+    /**
+     * @param text Text to digest
+     * @return Hexadecimal SHA-256 digest of the UTF-8 text
+     */
+    static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for(byte b : digest) {
+                hex.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is available on every Java platform
+            throw new IllegalStateException(ex);
+        }
+    }
 
-        Envelope expandedCellEnvelop = new Envelope(cellEnvelope);
-        expandedCellEnvelop.expandBy(maximumPropagationDistance);
+    /**
+     * Check or record the current cells in the computation journal, then remove the completed cells
+     * @param cellIndices Populated cells
+     * @param partition Description of the current cells
+     */
+    private void filterCompletedCells(Map<CellIndex, Integer> cellIndices, String partition) throws SQLException {
+        if(computationJournal == null) {
+            return;
+        }
+        try {
+            computationJournal.checkPartition(partition);
+        } catch (IOException ex) {
+            throw new SQLException(ex);
+        }
+        int cellCount = cellIndices.size();
+        cellIndices.keySet().removeIf(cellIndex -> computationJournal.isCellCompleted(getCellId(cellIndex)));
+        if(cellCount > cellIndices.size()) {
+            logger.info(String.format("Resume computation, %d cells of %d are already completed",
+                    cellCount - cellIndices.size(), cellCount));
+        }
+    }
+
+    /**
+     * @return True if all cells share the same ProfileBuilder
+     */
+    public boolean isShareProfileBuilder() {
+        return shareProfileBuilder;
+    }
+
+    /**
+     * @param shareProfileBuilder True to build buildings, DEM and soil areas only once for the whole computation
+     *                            area. Cells query the shared ProfileBuilder in their own envelope instead of
+     *                            fetching and indexing the geometries overlapping the neighbor cells again.
+     *                            This is faster when there is many cells, but the whole area must fit in memory.
+     */
+    public void setShareProfileBuilder(boolean shareProfileBuilder) {
+        this.shareProfileBuilder = shareProfileBuilder;
+        this.sharedProfileBuilder = null;
+    }
 
+    /**
+     * Fetch buildings, DEM and soil areas in the provided envelope
+     * @param connection JDBC Connection
+     * @param fetchEnvelope Geometries intersecting this envelope are fetched
+     * @return Fed ProfileBuilder
+     */
+    private ProfileBuilder buildProfileBuilder(Connection connection, Envelope fetchEnvelope) throws SQLException {
+        ProfileBuilder builder = new ProfileBuilder();
         // //////////////////////////////////////////////////////
         // feed freeFieldFinder for fast intersection query
         // optimization
         // Fetch buildings in extendedEnvelope
-        fetchCellBuildings(connection, expandedCellEnvelop, builder);
+        fetchCellBuildings(connection, fetchEnvelope, builder);
         //if we have topographic points data
-        fetchCellDem(connection, expandedCellEnvelop, builder);
+        fetchCellDem(connection, fetchEnvelope, builder);
 
         // Fetch soil areas
-        fetchCellSoilAreas(connection, expandedCellEnvelop, builder);
+        fetchCellSoilAreas(connection, fetchEnvelope, builder);
 
         builder.finishFeeding();
+        return builder;
+    }
+
+    /**
+     * @param connection JDBC Connection
+     * @return ProfileBuilder of the whole computation area, built on the first call
+     */
+    public synchronized ProfileBuilder getSharedProfileBuilder(Connection connection) throws SQLException {
+        if(sharedProfileBuilder == null) {
+            Envelope expandedEnvelope = new Envelope(mainEnvelope);
+            expandedEnvelope.expandBy(maximumPropagationDistance);
+            sharedProfileBuilder = buildProfileBuilder(connection, expandedEnvelope);
+            if(verbose) {
+                logger.info(String.format("Shared profile builder contains %d buildings",
+                        sharedProfileBuilder.getBuildingCount()));
+            }
+        }
+        return sharedProfileBuilder;
+    }
+
+    /**
+     * @param cellIndex Cell index returned by {@link #searchPopulatedCells(Connection)} or
+     * {@link #searchBalancedCells(Connection, int, int)}
+     * @return Envelope of the cell (without the propagation distance margin)
+     */
+    public Envelope getCellEnvelope(CellIndex cellIndex) {
+        if(balancedCells != null) {
+            Envelope cellEnvelope = balancedCells.get(cellIndex);
+            if(cellEnvelope == null) {
+                throw new IllegalArgumentException("Unknown cell " + cellIndex);
+            }
+            return cellEnvelope;
+        } else {
+            return getCellEnv(mainEnvelope, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(),
+                    getCellWidth(), getCellHeight());
+        }
+    }
 
+    /**
+     * Initialisation of data structures needed for sound propagation.
+     * @param connection JDBC Connection
+     * @param cellI Cell I [0-{@link #getGridDim()}], {@link CellIndex#getLatitudeIndex()}
+     * @param cellJ Cell J [0-{@link #getGridDim()}], {@link CellIndex#getLongitudeIndex()}
+     * @param progression Progression info
+     * @return Data input for cell evaluation
+     * @throws SQLException
+     */
+    public CnossosPropagationData prepareCell(Connection connection,int cellI, int cellJ,
+                                              ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
+        int ij = getCellId(new CellIndex(cellJ, cellI));
+        int cellCount = balancedCells != null ? balancedCells.size() : gridDim * gridDim;
+        Envelope cellEnvelope = getCellEnvelope(new CellIndex(cellJ, cellI));
+        if(verbose) {
+            logger.info("Begin processing of cell " + ij + " / " + cellCount);
+        }
+
+
+        Envelope expandedCellEnvelop = new Envelope(cellEnvelope);
+        expandedCellEnvelop.expandBy(maximumPropagationDistance);
+
+        ProfileBuilder builder;
+        if(shareProfileBuilder) {
+            builder = getSharedProfileBuilder(connection);
+        } else {
+            builder = buildProfileBuilder(connection, expandedCellEnvelop);
+        }
 
         CnossosPropagationData propagationProcessData;
         if(propagationProcessDataFactory != null) {
@@ -164,7 +337,8 @@ public class PointNoiseMap extends JdbcNoiseMap {
             try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
                 while (rs.next()) {
                     long receiverPk = rs.getLong(2);
-                    if(skipReceivers.contains(receiverPk)) {
+                    if(skipReceivers.contains(receiverPk) || (computationJournal != null &&
+                            computationJournal.isReceiverCompleted(receiverPk))) {
                         continue;
                     } else {
                         skipReceivers.add(receiverPk);
@@ -182,6 +356,9 @@ public class PointNoiseMap extends JdbcNoiseMap {
                 }
             }
         }
+        if(computationJournal != null) {
+            computationJournal.cellStarted(ij, propagationProcessData.receiversPk);
+        }
         if(progression != null) {
             propagationProcessData.cellProg = progression.subProcess(propagationProcessData.receivers.size());
         }
@@ -208,6 +385,7 @@ public class PointNoiseMap extends JdbcNoiseMap {
         if(mainEnvelope == null) {
             throw new IllegalStateException("Call initialize before calling searchPopulatedCells");
         }
+        balancedCells = null;
         Map<CellIndex, Integer> cellIndices = new HashMap<>();
         List<String> geometryFields = GeometryTableUtilities.getGeometryColumnNames(connection, TableLocation.parse(receiverTableName));
         String geometryField;
@@ -242,6 +420,100 @@ public class PointNoiseMap extends JdbcNoiseMap {
                 }
             }
         }
+        filterCompletedCells(cellIndices, String.format(Locale.ROOT, "grid %d %s", gridDim, mainEnvelope));
+        return cellIndices;
+    }
+
+    /**
+     * Split the computation area into cells of similar estimated computation cost, with at most
+     * {@link #DEFAULT_MAXIMUM_CELL_RECEIVERS} receivers in each cell.
+     * @param connection JDBC Connection
+     * @param cellCount Wanted cell count
+     * @return Cell index with number of receivers
+     * @throws SQLException
+     * @see #searchBalancedCells(Connection, int, int)
+     */
+    public Map<CellIndex, Integer> searchBalancedCells(Connection connection, int cellCount) throws SQLException {
+        return searchBalancedCells(connection, cellCount, DEFAULT_MAXIMUM_CELL_RECEIVERS);
+    }
+
+    /**
+     * Split the computation area into cells of similar estimated computation cost, instead of the uniform grid.
+     * The cost of a receiver is estimated from the sources and the buildings located within the maximum propagation
+     * distance. The returned cells are then evaluated with {@link #evaluateCell} or {@link #prepareCell}, as the
+     * cells of {@link #searchPopulatedCells(Connection)}, until {@link #setGridDim(int)} or
+     * {@link #initialize(Connection, ProgressVisitor)} is called.
+     * The balanced cells are numbered, the cell number is stored in the longitude index of the returned
+     * {@link CellIndex} and the latitude index is 0.
+     * @param connection JDBC Connection
+     * @param cellCount Wanted cell count, the estimated cost of the cells is lower than the total cost divided by
+     *                  this value
+     * @param maximumCellReceivers Maximum receiver count of a cell, in order to bound the memory usage
+     * @return Cell index with number of receivers
+     * @throws SQLException
+     */
+    public Map<CellIndex, Integer> searchBalancedCells(Connection connection, int cellCount,
+                                                       int maximumCellReceivers) throws SQLException {
+        if(mainEnvelope == null || mainEnvelope.isNull()) {
+            throw new IllegalStateException("Call initialize before calling searchBalancedCells");
+        }
+        AdaptiveCellPartitioner partitioner = new AdaptiveCellPartitioner(mainEnvelope, maximumPropagationDistance);
+        logger.info("Collect receivers, sources and buildings in order to estimate the computation cost");
+        try (Statement st = connection.createStatement()) {
+            String receiverGeomName = GeometryTableUtilities.getGeometryColumnNames(connection,
+                    TableLocation.parse(receiverTableName)).get(0);
+            try (SpatialResultSet rs = st.executeQuery("SELECT " + TableLocation.quoteIdentifier(receiverGeomName,
+                    DBUtils.getDBType(connection)) + " FROM " + receiverTableName).unwrap(SpatialResultSet.class)) {
+                while (rs.next()) {
+                    Geometry pt = rs.getGeometry();
+                    if(pt != null && !pt.isEmpty()) {
+                        partitioner.addReceiver(pt.getCoordinate());
+                    }
+                }
+            }
+            if(!sourcesTableName.isEmpty()) {
+                String sourceGeomName = GeometryTableUtilities.getGeometryColumnNames(connection,
+                        TableLocation.parse(sourcesTableName)).get(0);
+                try (SpatialResultSet rs = st.executeQuery("SELECT " + TableLocation.quoteIdentifier(sourceGeomName,
+                        DBUtils.getDBType(connection)) + " FROM " + sourcesTableName).unwrap(SpatialResultSet.class)) {
+                    while (rs.next()) {
+                        Geometry source = rs.getGeometry();
+                        if(source != null && !source.isEmpty()) {
+                            partitioner.addSource(source);
+                        }
+                    }
+                }
+            }
+            if(!buildingsTableName.isEmpty()) {
+                String buildingGeomName = GeometryTableUtilities.getGeometryColumnNames(connection,
+                        TableLocation.parse(buildingsTableName)).get(0);
+                try (SpatialResultSet rs = st.executeQuery("SELECT " + TableLocation.quoteIdentifier(buildingGeomName,
+                        DBUtils.getDBType(connection)) + " FROM " + buildingsTableName).unwrap(SpatialResultSet.class)) {
+                    while (rs.next()) {
+                        Geometry building = rs.getGeometry();
+                        if(building != null && !building.isEmpty()) {
+                            partitioner.addBuilding(building);
+                        }
+                    }
+                }
+            }
+        }
+        double maximumCost = partitioner.getTotalCost() / Math.max(1, cellCount);
+        List<AdaptiveCellPartitioner.Cell> cells = partitioner.partition(maximumCost, maximumCellReceivers);
+        Map<CellIndex, Integer> cellIndices = new HashMap<>();
+        balancedCells = new HashMap<>();
+        StringBuilder envelopes = new StringBuilder();
+        for(int i = 0; i < cells.size(); i++) {
+            CellIndex cellIndex = new CellIndex(i, 0);
+            balancedCells.put(cellIndex, cells.get(i).envelope);
+            cellIndices.put(cellIndex, cells.get(i).receiverCount);
+            envelopes.append(cells.get(i).envelope);
+        }
+        if(verbose) {
+            logger.info(String.format("Computation area split into %d balanced cells", cells.size()));
+        }
+        filterCompletedCells(cellIndices, String.format(Locale.ROOT, "balanced %d %s", cells.size(),
+                sha256(envelopes.toString())));
         return cellIndices;
     }
 
@@ -257,7 +529,18 @@ public class PointNoiseMap extends JdbcNoiseMap {
     public IComputeRaysOut evaluateCell(Connection connection, int cellI, int cellJ,
                                         ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
         CnossosPropagationData threadData = prepareCell(connection, cellI, cellJ, progression, skipReceivers);
+        return computeCell(threadData);
+    }
 
+    /**
+     * Launch sound propagation on a cell already prepared by
+     * {@link #prepareCell(Connection, int, int, ProgressVisitor, Set)}
+     * This method does not use the JDBC connection, so the next cell can be prepared while this one is computed.
+     * @param threadData Cell data
+     * @return Cell output
+     * @throws IOException Could not write the computation journal
+     */
+    public IComputeRaysOut computeCell(CnossosPropagationData threadData) throws IOException {
         if(verbose) {
             logger.info(String.format("This computation area contains %d receivers %d sound sources and %d buildings",
                     threadData.receivers.size(), threadData.sourceGeometries.size(),
@@ -281,6 +564,8 @@ public class PointNoiseMap extends JdbcNoiseMap {
             computeRays.setThreadCount(threadCount);
         }
 
+        computeRays.setOrderReceiversByCost(orderReceiversByCost);
+
         if(!receiverHasAbsoluteZCoordinates) {
             computeRays.makeReceiverRelativeZToAbsolute();
         }
@@ -291,12 +576,25 @@ public class PointNoiseMap extends JdbcNoiseMap {
 
         computeRays.run(computeRaysOut);
 
+        if(computationJournal != null && (threadData.cellProg == null || !threadData.cellProg.isCanceled())) {
+            // Wait for the results to be written before recording the cell completion
+            computationJournal.cellCompleted(threadData.cellId);
+        }
+
         return computeRaysOut;
     }
 
+    @Override
+    public void setGridDim(int gridDim) {
+        super.setGridDim(gridDim);
+        balancedCells = null;
+    }
+
     @Override
     public void initialize(Connection connection, ProgressVisitor progression) throws SQLException {
         super.initialize(connection, progression);
+        sharedProfileBuilder = null;
+        balancedCells = null;
         if(propagationProcessDataFactory != null) {
             propagationProcessDataFactory.initialize(connection, this);
         }
@@ -314,7 +612,13 @@ public class PointNoiseMap extends JdbcNoiseMap {
     }
 
     /**
-     * Cell metadata computed from receivers table
+     * Cell metadata computed from receivers table. For the uniform grid of {@link #searchPopulatedCells(Connection)}
+     * the indexes are the column and the row of the cell. For the cells of
+     * {@link #searchBalancedCells(Connection, int, int)} the longitude index is the cell number and the latitude index
+     * is 0, the envelope of the cell is then given by {@link #getCellEnvelope(CellIndex)} and not computed from the
+     * indexes. The indexes are only meaningful for the PointNoiseMap that returned them, and until the next call of
+     * searchPopulatedCells, searchBalancedCells, {@link #setGridDim(int)} or
+     * {@link #initialize(Connection, ProgressVisitor)}.
      */
     public static class CellIndex implements Comparable<CellIndex> {
         int longitudeIndex;
@@ -0,0 +1,261 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.locationtech.jts.geom.Geometry;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evaluate the cells of a {@link PointNoiseMap} with a two stages pipeline.
+ * A background thread fetches the input data of the next cells ({@link PointNoiseMap#prepareCell}) while the calling
+ * thread computes the rays of the current cell ({@link PointNoiseMap#computeCell}).
+ * The number of prepared cells waiting for computation is bounded by a memory budget, evaluated with
+ * {@link #estimateMemoryUsage(CnossosPropagationData)}. At least one cell is always prefetched.
+ * Cells are computed in the provided order, so the results are identical to successive calls of
+ * {@link PointNoiseMap#evaluateCell}.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class PointNoiseMapPipeline {
+    /** Default memory budget for prepared cells, in bytes */
+    public static final long DEFAULT_MEMORY_BUDGET = 512L * 1024L * 1024L;
+    // Rough size estimation of the cell data structures, in bytes
+    static final long COORDINATE_SIZE = 48;
+    static final long RECEIVER_SIZE = 120;
+    static final long SOURCE_SIZE = 200;
+    static final long TRIANGLE_SIZE = 120;
+    static final long WALL_SIZE = 300;
+
+    private final Logger logger = LoggerFactory.getLogger(PointNoiseMapPipeline.class);
+    private final PointNoiseMap pointNoiseMap;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    // Shared state between the preparation thread and the computation thread, guarded by this
+    private final ArrayDeque<PreparedCell> preparedCells = new ArrayDeque<>();
+    private long preparedMemory = 0;
+    private boolean preparationDone = false;
+    private boolean aborted = false;
+    private Throwable preparationException = null;
+
+    public PointNoiseMapPipeline(PointNoiseMap pointNoiseMap) {
+        this.pointNoiseMap = pointNoiseMap;
+    }
+
+    /**
+     * @return Maximum estimated memory of the prepared cells waiting for computation, in bytes
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @param memoryBudget Maximum estimated memory of the prepared cells waiting for computation, in bytes.
+     *                     One cell is always prefetched even if it exceeds this budget.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Rough estimation of the memory used by the cell input data
+     * @param cellData Prepared cell
+     * @return Estimated memory usage in bytes
+     */
+    public static long estimateMemoryUsage(CnossosPropagationData cellData) {
+        return estimateMemoryUsage(cellData, true);
+    }
+
+    /**
+     * Rough estimation of the memory used by the cell input data
+     * @param cellData Prepared cell
+     * @param includeProfileBuilder False if the ProfileBuilder is shared between cells
+     * @return Estimated memory usage in bytes
+     */
+    public static long estimateMemoryUsage(CnossosPropagationData cellData, boolean includeProfileBuilder) {
+        long size = cellData.receivers.size() * RECEIVER_SIZE;
+        for (Geometry geometry : cellData.sourceGeometries) {
+            size += SOURCE_SIZE + geometry.getNumPoints() * COORDINATE_SIZE;
+        }
+        ProfileBuilder builder = cellData.profileBuilder;
+        if (builder != null && includeProfileBuilder) {
+            size += builder.getWallCount() * WALL_SIZE;
+            size += builder.getVertices().size() * COORDINATE_SIZE;
+            size += builder.getTriangles().size() * TRIANGLE_SIZE;
+            for (ProfileBuilder.Building building : builder.getBuildings()) {
+                size += building.getGeometry().getNumPoints() * COORDINATE_SIZE;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Evaluate all the provided cells
+     * @param connection JDBC connection, only used by the preparation thread
+     * @param cells Cells to evaluate, in computation order
+     * @param progression Progression info
+     * @param skipReceivers Set of already processed receivers. It is modified by the preparation thread and must not
+     *                      be accessed before the end of this method.
+     * @param listener Called after each cell computation, from the calling thread. May be null.
+     * @throws SQLException Error while fetching cell data
+     * @throws IOException Error while fetching cell data
+     * @throws Error Fatal error of the preparation thread, rethrown by the calling thread
+     */
+    public void run(Connection connection, Collection<PointNoiseMap.CellIndex> cells, ProgressVisitor progression,
+                    Set<Long> skipReceivers, CellComputedListener listener) throws SQLException, IOException {
+        synchronized (this) {
+            preparedCells.clear();
+            preparedMemory = 0;
+            preparationDone = false;
+            aborted = false;
+            preparationException = null;
+        }
+        final List<PointNoiseMap.CellIndex> cellList = new ArrayList<>(cells);
+        Thread preparationThread = new Thread(() -> prepareCells(connection, cellList, progression, skipReceivers),
+                "PointNoiseMap cell preparation");
+        preparationThread.setDaemon(true);
+        preparationThread.start();
+        try {
+            PreparedCell preparedCell;
+            while ((preparedCell = takePreparedCell()) != null) {
+                IComputeRaysOut out = pointNoiseMap.computeCell(preparedCell.cellData);
+                synchronized (this) {
+                    preparedMemory -= preparedCell.memoryUsage;
+                    notifyAll();
+                }
+                if (listener != null) {
+                    listener.cellComputed(preparedCell.cellIndex, out);
+                }
+                if (progression != null && progression.isCanceled()) {
+                    break;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                aborted = true;
+                preparedCells.clear();
+                notifyAll();
+            }
+            try {
+                preparationThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (preparationException instanceof SQLException) {
+                throw (SQLException) preparationException;
+            } else if (preparationException instanceof IOException) {
+                throw (IOException) preparationException;
+            } else if (preparationException instanceof RuntimeException) {
+                throw (RuntimeException) preparationException;
+            } else if (preparationException instanceof Error) {
+                throw (Error) preparationException;
+            } else if (preparationException != null) {
+                throw new SQLException("Error while preparing cell data", preparationException);
+            }
+        }
+    }
+
+    /**
+     * @return Next prepared cell or null if there is no more cells or if the preparation failed
+     */
+    private synchronized PreparedCell takePreparedCell() throws SQLException {
+        while (preparedCells.isEmpty() && !preparationDone) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for cell data", ex);
+            }
+        }
+        if (preparationException != null) {
+            // do not compute the remaining cells, the error is thrown by the run method
+            return null;
+        }
+        PreparedCell preparedCell = preparedCells.poll();
+        if (preparedCell != null) {
+            notifyAll();
+        }
+        return preparedCell;
+    }
+
+    private void prepareCells(Connection connection, List<PointNoiseMap.CellIndex> cells, ProgressVisitor progression,
+                              Set<Long> skipReceivers) {
+        try {
+            for (PointNoiseMap.CellIndex cellIndex : cells) {
+                synchronized (this) {
+                    // Wait for memory release, unless no other cell is waiting for computation
+                    while (!aborted && !preparedCells.isEmpty() && preparedMemory >= memoryBudget) {
+                        wait();
+                    }
+                    if (aborted) {
+                        return;
+                    }
+                }
+                CnossosPropagationData cellData = pointNoiseMap.prepareCell(connection,
+                        cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progression, skipReceivers);
+                long memoryUsage = estimateMemoryUsage(cellData, !pointNoiseMap.isShareProfileBuilder());
+                synchronized (this) {
+                    if (aborted) {
+                        return;
+                    }
+                    preparedCells.add(new PreparedCell(cellIndex, cellData, memoryUsage));
+                    preparedMemory += memoryUsage;
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable ex) {
+            // Any error, including OutOfMemoryError, is given back to the computation thread
+            logger.error(ex.getLocalizedMessage(), ex);
+            synchronized (this) {
+                preparationException = ex;
+            }
+        } finally {
+            synchronized (this) {
+                preparationDone = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Receive the output of each cell computation
+     */
+    public interface CellComputedListener {
+        void cellComputed(PointNoiseMap.CellIndex cellIndex, IComputeRaysOut out) throws SQLException, IOException;
+    }
+
+    private static class PreparedCell {
+        final PointNoiseMap.CellIndex cellIndex;
+        final CnossosPropagationData cellData;
+        final long memoryUsage;
+
+        PreparedCell(PointNoiseMap.CellIndex cellIndex, CnossosPropagationData cellData, long memoryUsage) {
+            this.cellIndex = cellIndex;
+            this.cellData = cellData;
+            this.memoryUsage = memoryUsage;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import java.util.Arrays;
+
+/**
+ * Levels of one receiver and one time period, handed by a computation thread to the result writer.
+ * The block holds one row by source, or a single row with the source identifier -1 if the sources are merged.
+ * The source identifiers and the frequency band levels of all the rows are packed in two arrays.
+ * The writer gives the blocks back to {@link LDENComputeRaysOut.LdenData#recycle(ReceiverLevelsBlock)} so the
+ * computation threads reuse them instead of allocating new arrays for each receiver.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class ReceiverLevelsBlock {
+    private static final int INITIAL_CAPACITY = 16;
+    private final int bandCount;
+    private long receiverId;
+    private long[] sourceIds = new long[INITIAL_CAPACITY];
+    /** Levels in dB, row * bandCount + band */
+    private double[] levels;
+    private int size = 0;
+
+    /**
+     * @param receiverId Receiver identifier
+     * @param bandCount Number of frequency bands
+     */
+    public ReceiverLevelsBlock(long receiverId, int bandCount) {
+        this.receiverId = receiverId;
+        this.bandCount = bandCount;
+        levels = new double[INITIAL_CAPACITY * bandCount];
+    }
+
+    /**
+     * Remove all rows, keep allocated memory
+     * @param receiverId New receiver identifier
+     */
+    public void reset(long receiverId) {
+        this.receiverId = receiverId;
+        size = 0;
+    }
+
+    /**
+     * @param sourceId Source identifier, -1 if the sources are merged
+     * @param values Levels in dB for each frequency band, copied in the block
+     */
+    public void add(long sourceId, double[] values) {
+        if(size == sourceIds.length) {
+            int capacity = sourceIds.length * 2;
+            sourceIds = Arrays.copyOf(sourceIds, capacity);
+            levels = Arrays.copyOf(levels, capacity * bandCount);
+        }
+        sourceIds[size] = sourceId;
+        System.arraycopy(values, 0, levels, size * bandCount, bandCount);
+        size++;
+    }
+
+    /**
+     * @return Receiver identifier
+     */
+    public long getReceiverId() {
+        return receiverId;
+    }
+
+    /**
+     * @return Number of frequency bands
+     */
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    /**
+     * @return Number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param row Row in [0, {@link #size()}[
+     * @return Source identifier, -1 if the sources are merged
+     */
+    public long getSourceId(int row) {
+        return sourceIds[row];
+    }
+
+    /**
+     * @param row Row in [0, {@link #size()}[
+     * @return Offset of the first frequency band of the row in {@link #getLevels()}
+     */
+    public int getOffset(int row) {
+        return row * bandCount;
+    }
+
+    /**
+     * @return Packed levels array, use {@link #getOffset(int)} to read values
+     */
+    public double[] getLevels() {
+        return levels;
+    }
+
+    /**
+     * @param row Row in [0, {@link #size()}[
+     * @return Copy of the levels of the row in dB
+     */
+    public double[] getRowLevels(int row) {
+        return Arrays.copyOfRange(levels, row * bandCount, (row + 1) * bandCount);
+    }
+}
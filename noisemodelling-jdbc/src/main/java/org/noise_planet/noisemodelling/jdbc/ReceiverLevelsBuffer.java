@@ -0,0 +1,151 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import java.util.Arrays;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+/**
+ * Attenuation levels of the sources of one receiver, for each time period, stored in primitive arrays.
+ * Levels of the same source and period are merged with an energetic sum. The buffer is cleared and reused for the
+ * next receiver, so it does not allocate once it has grown to the number of sources seen by one receiver.
+ * This class is not thread safe, each computation thread must have its own instance.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class ReceiverLevelsBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+    private final int periodCount;
+    private final int bandCount;
+    private final int stride;
+    /** source index to slot index + 1, 0 if the source is not in the buffer */
+    private int[] sourceSlot = new int[0];
+    /** source index of each slot */
+    private int[] sources = new int[INITIAL_CAPACITY];
+    /** levels of each slot, slot * periodCount * bandCount + period * bandCount + band */
+    private double[] levels;
+    /** true if the level of this slot and period is set, slot * periodCount + period */
+    private boolean[] levelSet;
+    private int size = 0;
+    private boolean sorted = true;
+
+    /**
+     * @param periodCount Number of time periods
+     * @param bandCount Number of frequency bands
+     */
+    public ReceiverLevelsBuffer(int periodCount, int bandCount) {
+        this.periodCount = periodCount;
+        this.bandCount = bandCount;
+        this.stride = periodCount * bandCount;
+        levels = new double[INITIAL_CAPACITY * stride];
+        levelSet = new boolean[INITIAL_CAPACITY * periodCount];
+    }
+
+    /**
+     * Add attenuation of a path. If the source has already a level for this period the values are merged with
+     * an energetic sum.
+     * @param sourceIndex Source index in the cell
+     * @param period Time period index
+     * @param value Attenuation in dB for each frequency band
+     */
+    public void add(int sourceIndex, int period, double[] value) {
+        if(sourceIndex >= sourceSlot.length) {
+            sourceSlot = Arrays.copyOf(sourceSlot, Math.max(sourceIndex + 1, sourceSlot.length * 2));
+        }
+        int slot = sourceSlot[sourceIndex] - 1;
+        if(slot < 0) {
+            slot = size++;
+            if(slot >= sources.length) {
+                int capacity = sources.length * 2;
+                sources = Arrays.copyOf(sources, capacity);
+                levels = Arrays.copyOf(levels, capacity * stride);
+                levelSet = Arrays.copyOf(levelSet, capacity * periodCount);
+            }
+            if(slot > 0 && sources[slot - 1] > sourceIndex) {
+                sorted = false;
+            }
+            sources[slot] = sourceIndex;
+            sourceSlot[sourceIndex] = slot + 1;
+        }
+        int offset = slot * stride + period * bandCount;
+        if(!levelSet[slot * periodCount + period]) {
+            System.arraycopy(value, 0, levels, offset, bandCount);
+            levelSet[slot * periodCount + period] = true;
+        } else {
+            for(int idBand = 0; idBand < bandCount; idBand++) {
+                levels[offset + idBand] = wToDba(dbaToW(levels[offset + idBand]) + dbaToW(value[idBand]));
+            }
+        }
+    }
+
+    /**
+     * @return Number of sources in the buffer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sort the sources by index, in order to output levels in a stable order
+     */
+    public void sortBySource() {
+        if(!sorted) {
+            Arrays.sort(sources, 0, size);
+            sorted = true;
+        }
+    }
+
+    /**
+     * @param position Position in [0, {@link #size()}[
+     * @return Source index
+     */
+    public int getSource(int position) {
+        return sources[position];
+    }
+
+    /**
+     * @param position Position in [0, {@link #size()}[
+     * @param period Time period index
+     * @return True if at least one path of this period has been added for this source
+     */
+    public boolean hasLevels(int position, int period) {
+        return levelSet[(sourceSlot[sources[position]] - 1) * periodCount + period];
+    }
+
+    /**
+     * @param position Position in [0, {@link #size()}[
+     * @param period Time period index
+     * @return Offset of the first frequency band in {@link #getLevels()}
+     */
+    public int getOffset(int position, int period) {
+        return (sourceSlot[sources[position]] - 1) * stride + period * bandCount;
+    }
+
+    /**
+     * @return Packed levels array, use {@link #getOffset(int, int)} to read values
+     */
+    public double[] getLevels() {
+        return levels;
+    }
+
+    /**
+     * Remove all sources, keep allocated memory
+     */
+    public void clear() {
+        for(int position = 0; position < size; position++) {
+            int slot = sourceSlot[sources[position]] - 1;
+            Arrays.fill(levelSet, slot * periodCount, slot * periodCount + periodCount, false);
+            sourceSlot[sources[position]] = 0;
+        }
+        size = 0;
+        sorted = true;
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Day, evening and night emission spectra of the sources, shared by the computation cells.
+ * The sources are fetched with the propagation distance margin, so a source is read by all the neighboring cells;
+ * the spectra computed by the first cell are reused by the following ones.
+ * The road slope is evaluated with the digital elevation model of each cell, so the spectra are stored with the slope
+ * and reused only for the same slope.
+ * The cache holds at most {@code capacity} sources in primitive arrays, the oldest source is replaced when the cache
+ * is full (cells are computed in spatial order, so the old sources are not fetched anymore).
+ * The spectra are only valid for one source table and one set of emission parameters, described by the context given
+ * to {@link #setContext(String)}; the cache is emptied when the context changes.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class SourceEmissionCache {
+    /** Day, evening and night */
+    public static final int PERIOD_COUNT = 3;
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final int capacity;
+    private final int bandCount;
+    /** Spectra [(slot * PERIOD_COUNT + period) * bandCount + band] */
+    private final double[] values;
+    /** Source primary key of each slot */
+    private final long[] slotKeys;
+    /** Road slope of each slot */
+    private final double[] slotSlopes;
+    /** Open addressing hash table (linear probing) of the primary keys */
+    private final long[] tableKeys;
+    /** Slot + 1 of the table entries, 0 for an empty entry */
+    private final int[] tableSlots;
+    private final int tableMask;
+    private final int tableShift;
+    private int size = 0;
+    /** Next slot to fill or replace */
+    private int nextSlot = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    /** Source table and emission parameters of the stored spectra */
+    private String context = null;
+
+    /**
+     * @param capacity Maximum number of sources
+     * @param bandCount Number of frequency bands of the spectra
+     */
+    public SourceEmissionCache(int capacity, int bandCount) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be greater than zero");
+        }
+        this.capacity = capacity;
+        this.bandCount = bandCount;
+        values = new double[capacity * PERIOD_COUNT * bandCount];
+        slotKeys = new long[capacity];
+        slotSlopes = new double[capacity];
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        tableKeys = new long[tableSize];
+        tableSlots = new int[tableSize];
+        tableMask = tableSize - 1;
+        tableShift = Long.SIZE - Integer.numberOfTrailingZeros(tableSize);
+    }
+
+    /**
+     * @return Maximum number of sources
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Number of frequency bands of the spectra
+     */
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    /**
+     * @return Number of sources in the cache
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of successful {@link #get(long, double)} calls
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of {@link #get(long, double)} calls on a missing source or with another slope
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private int hash(long key) {
+        return (int) ((key * HASH_MULTIPLIER) >>> tableShift);
+    }
+
+    /**
+     * @return Index of the key in the hash table, or of the empty entry where the key would be inserted
+     */
+    private int find(long key) {
+        int index = hash(key);
+        while(tableSlots[index] != 0 && tableKeys[index] != key) {
+            index = (index + 1) & tableMask;
+        }
+        return index;
+    }
+
+    /**
+     * Remove an entry of the hash table, the following entries of the probe sequence are shifted back
+     */
+    private void removeEntry(int index) {
+        int next = index;
+        while(true) {
+            next = (next + 1) & tableMask;
+            if(tableSlots[next] == 0) {
+                break;
+            }
+            int ideal = hash(tableKeys[next]);
+            boolean inPlace = index <= next ? index < ideal && ideal <= next : index < ideal || ideal <= next;
+            if(!inPlace) {
+                tableKeys[index] = tableKeys[next];
+                tableSlots[index] = tableSlots[next];
+                index = next;
+            }
+        }
+        tableSlots[index] = 0;
+    }
+
+    /**
+     * @param sourcePk Source primary key
+     * @param slope Road slope used to compute the emission
+     * @return Copy of the day, evening and night spectra of the source, null if the source is not in the cache or has
+     * been computed with another slope
+     */
+    public synchronized double[][] get(long sourcePk, double slope) {
+        int index = find(sourcePk);
+        if(tableSlots[index] == 0 || Double.compare(slotSlopes[tableSlots[index] - 1], slope) != 0) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        int offset = (tableSlots[index] - 1) * PERIOD_COUNT * bandCount;
+        double[][] spectra = new double[PERIOD_COUNT][];
+        for(int period = 0; period < PERIOD_COUNT; period++) {
+            spectra[period] = Arrays.copyOfRange(values, offset + period * bandCount,
+                    offset + (period + 1) * bandCount);
+        }
+        return spectra;
+    }
+
+    /**
+     * Store the spectra of a source, replacing the oldest source if the cache is full
+     * @param sourcePk Source primary key
+     * @param slope Road slope used to compute the emission
+     * @param spectra Day, evening and night spectra of the source, each array of {@link #getBandCount()} values
+     */
+    public synchronized void put(long sourcePk, double slope, double[][] spectra) {
+        if(spectra.length != PERIOD_COUNT) {
+            throw new IllegalArgumentException("Expected " + PERIOD_COUNT + " spectra, got " + spectra.length);
+        }
+        int index = find(sourcePk);
+        int slot;
+        if(tableSlots[index] != 0) {
+            slot = tableSlots[index] - 1;
+        } else {
+            slot = nextSlot;
+            nextSlot = (nextSlot + 1) % capacity;
+            if(size == capacity) {
+                removeEntry(find(slotKeys[slot]));
+                // the probe sequence may have changed
+                index = find(sourcePk);
+            } else {
+                size++;
+            }
+            slotKeys[slot] = sourcePk;
+            tableKeys[index] = sourcePk;
+            tableSlots[index] = slot + 1;
+        }
+        slotSlopes[slot] = slope;
+        int offset = slot * PERIOD_COUNT * bandCount;
+        for(int period = 0; period < PERIOD_COUNT; period++) {
+            if(spectra[period].length != bandCount) {
+                throw new IllegalArgumentException("Expected " + bandCount + " bands, got " + spectra[period].length);
+            }
+            System.arraycopy(spectra[period], 0, values, offset + period * bandCount, bandCount);
+        }
+    }
+
+    /**
+     * @return Source table and emission parameters of the stored spectra, null if not set
+     */
+    public synchronized String getContext() {
+        return context;
+    }
+
+    /**
+     * Remove all the sources if the stored spectra have been computed with another context
+     * @param context Description of the source table and of the parameters used to compute the emission
+     * @return True if the sources have been removed
+     */
+    public synchronized boolean setContext(String context) {
+        if(Objects.equals(this.context, context)) {
+            return false;
+        }
+        this.context = context;
+        clear();
+        return true;
+    }
+
+    /**
+     * Remove all the sources
+     */
+    public synchronized void clear() {
+        Arrays.fill(tableSlots, 0);
+        size = 0;
+        nextSlot = 0;
+        hitCount = 0;
+        missCount = 0;
+    }
+}
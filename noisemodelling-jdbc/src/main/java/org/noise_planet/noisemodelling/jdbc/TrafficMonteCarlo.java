@@ -0,0 +1,733 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+/**
+ * Probabilistic road traffic: at each iteration the presence of a light and of a heavy vehicle on each source point
+ * is drawn, then the levels of all the receivers are computed from the attenuation between the sources and the
+ * receivers (computed once with {@link ComputeRaysOutAttenuation}).
+ * The attenuation is packed into primitive arrays ordered by receiver. The vehicles of all the sources and iterations
+ * are drawn first (2 bits by source and iteration), then the receivers are evaluated, each one for all the
+ * iterations. {@link #run(int, ProgressVisitor)} keeps only statistics for each receiver (equivalent level and LA10,
+ * LA50, LA90 percentiles), {@link #exportIterationLevels(Connection, String, int, ProgressVisitor)} writes the levels
+ * of each iteration.
+ * The random generator of each iteration is seeded from the seed and the iteration index, so the results do not
+ * depend on the number of threads.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class TrafficMonteCarlo {
+    /** Level (dB) of a receiver without any vehicle in its sources */
+    public static final double NO_LEVEL = -99.0;
+    /** Number of iterations of a word of the drawn vehicles (2 bits by iteration) */
+    private static final int ITERATIONS_PER_WORD = 32;
+    /** Number of receivers evaluated by a parallel task */
+    private static final int RECEIVER_CHUNK_SIZE = 64;
+    /** Number of rows of a multi-row insert statement */
+    private static final int INSERT_ROWS_PER_STATEMENT = 100;
+    /** Number of insert statements of a batch */
+    private static final int INSERT_BATCH_SIZE = 10;
+
+    private final int[] frequencies;
+    private final int bandCount;
+    /** A weighting of each band (linear) */
+    private final double[] aWeighting;
+    private final long[] receiverIds;
+    /** Position in pairSource of the first pair of each receiver, the last value is the number of pairs */
+    private final int[] receiverStart;
+    /** Source index of each source receiver pair */
+    private final int[] pairSource;
+    /** Linear attenuation of each pair, [pair * bandCount + band] */
+    private final double[] pairAttenuation;
+    private final long[] sourceIds;
+    private final Map<Long, Integer> sourceIndex;
+    private final double[] lightVehicleProbability;
+    private final double[] heavyVehicleProbability;
+    /** Sound power (W) of one vehicle of each source, [(source * 2 + heavy) * bandCount + band] */
+    private final double[] vehiclePower;
+    /** Sound power (W) of each source for each drawn state (light vehicle, heavy vehicle, both),
+     * [(source * 3 + state - 1) * bandCount + band] */
+    private final double[] sourcePower;
+    private VehicleCombination vehicleCombination = VehicleCombination.AVERAGE_WITH_ABSENT_VEHICLE;
+    private long seed = 0;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Sound power of a source according to the drawn vehicles
+     */
+    public enum VehicleCombination {
+        /**
+         * Model of the Traffic_Probabilistic_Modelling script: half of the energetic sum of the light vehicle and of
+         * the heavy vehicle levels, where an absent vehicle has a level of 0 dB. A source without vehicle is ignored.
+         */
+        AVERAGE_WITH_ABSENT_VEHICLE,
+        /** Energetic sum of the present vehicles */
+        ENERGETIC_SUM
+    }
+
+    /**
+     * Statistics of the levels of one receiver over all the iterations
+     */
+    public static class ReceiverStatistics {
+        public final long receiverId;
+        /** Equivalent level of each band (dB) */
+        public final double[] leq;
+        /** Equivalent level, A weighted (dB(A)) */
+        public final double laeq;
+        /** Level exceeded during 10 % of the iterations (dB(A)) */
+        public final double la10;
+        /** Median level (dB(A)) */
+        public final double la50;
+        /** Level exceeded during 90 % of the iterations (dB(A)) */
+        public final double la90;
+
+        public ReceiverStatistics(long receiverId, double[] leq, double laeq, double la10, double la50, double la90) {
+            this.receiverId = receiverId;
+            this.leq = leq;
+            this.laeq = laeq;
+            this.la10 = la10;
+            this.la50 = la50;
+            this.la90 = la90;
+        }
+    }
+
+    /**
+     * @param attenuation Level of each source receiver pair for a source power of 0 dB, the pairs with NaN values
+     *                    are ignored
+     * @param frequencies Frequency band of each value of the attenuation
+     */
+    public TrafficMonteCarlo(List<ComputeRaysOutAttenuation.VerticeSL> attenuation, int[] frequencies) {
+        this.frequencies = frequencies.clone();
+        bandCount = frequencies.length;
+        aWeighting = new double[bandCount];
+        List<Integer> allFrequencyValues = Arrays.asList(CnossosPropagationData.DEFAULT_FREQUENCIES_THIRD_OCTAVE);
+        for (int idBand = 0; idBand < bandCount; idBand++) {
+            int index = allFrequencyValues.indexOf(frequencies[idBand]);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unsupported frequency band " + frequencies[idBand]);
+            }
+            aWeighting[idBand] = dbaToW(CnossosPropagationData.DEFAULT_FREQUENCIES_A_WEIGHTING_THIRD_OCTAVE[index]);
+        }
+        // Keep the valid pairs, ordered by receiver
+        List<ComputeRaysOutAttenuation.VerticeSL> pairs = new ArrayList<>(attenuation.size());
+        for (ComputeRaysOutAttenuation.VerticeSL pair : attenuation) {
+            if (pair.value.length != bandCount) {
+                throw new IllegalArgumentException("Expected " + bandCount + " values, got " + pair.value.length);
+            }
+            boolean valid = true;
+            for (double value : pair.value) {
+                if (Double.isNaN(value)) {
+                    valid = false;
+                    break;
+                }
+            }
+            if (valid) {
+                pairs.add(pair);
+            }
+        }
+        pairs.sort((a, b) -> Long.compare(a.receiverId, b.receiverId));
+        int receiverCount = 0;
+        for (int i = 0; i < pairs.size(); i++) {
+            if (i == 0 || pairs.get(i).receiverId != pairs.get(i - 1).receiverId) {
+                receiverCount++;
+            }
+        }
+        receiverIds = new long[receiverCount];
+        receiverStart = new int[receiverCount + 1];
+        pairSource = new int[pairs.size()];
+        pairAttenuation = new double[pairs.size() * bandCount];
+        sourceIndex = new HashMap<>();
+        List<Long> sources = new ArrayList<>();
+        int receiver = -1;
+        for (int i = 0; i < pairs.size(); i++) {
+            ComputeRaysOutAttenuation.VerticeSL pair = pairs.get(i);
+            if (i == 0 || pair.receiverId != pairs.get(i - 1).receiverId) {
+                receiver++;
+                receiverIds[receiver] = pair.receiverId;
+                receiverStart[receiver] = i;
+            }
+            Integer source = sourceIndex.get(pair.sourceId);
+            if (source == null) {
+                source = sources.size();
+                sourceIndex.put(pair.sourceId, source);
+                sources.add(pair.sourceId);
+            }
+            pairSource[i] = source;
+            for (int idBand = 0; idBand < bandCount; idBand++) {
+                pairAttenuation[i * bandCount + idBand] = dbaToW(pair.value[idBand]);
+            }
+        }
+        receiverStart[receiverCount] = pairs.size();
+        sourceIds = new long[sources.size()];
+        for (int i = 0; i < sourceIds.length; i++) {
+            sourceIds[i] = sources.get(i);
+        }
+        lightVehicleProbability = new double[sourceIds.length];
+        heavyVehicleProbability = new double[sourceIds.length];
+        vehiclePower = new double[sourceIds.length * 2 * bandCount];
+        sourcePower = new double[sourceIds.length * 3 * bandCount];
+    }
+
+    /**
+     * @return Number of receivers
+     */
+    public int getReceiverCount() {
+        return receiverIds.length;
+    }
+
+    /**
+     * @return Number of sources found in the attenuation
+     */
+    public int getSourceCount() {
+        return sourceIds.length;
+    }
+
+    /**
+     * @return Seed of the random generator
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed Seed of the random generator, the same seed gives the same results
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return Sound power of a source according to the drawn vehicles
+     */
+    public VehicleCombination getVehicleCombination() {
+        return vehicleCombination;
+    }
+
+    /**
+     * @param vehicleCombination Sound power of a source according to the drawn vehicles
+     */
+    public void setVehicleCombination(VehicleCombination vehicleCombination) {
+        this.vehicleCombination = vehicleCombination;
+    }
+
+    /**
+     * @return Number of threads used to evaluate the receivers
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of threads used to evaluate the receivers
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Set the traffic of a source. At each iteration a single uniform value u is drawn for the source, a light
+     * vehicle is present if u is lower than its probability and a heavy vehicle is present if u is lower than its
+     * probability. The sources that are not set have no vehicle.
+     * @param sourceId Source identifier
+     * @param lightVehicleProbability Probability of presence of a light vehicle
+     * @param lightVehicleLevel Sound power of a light vehicle for each band (dB)
+     * @param heavyVehicleProbability Probability of presence of a heavy vehicle
+     * @param heavyVehicleLevel Sound power of a heavy vehicle for each band (dB)
+     * @return False if the source is not found in the attenuation (no receiver is affected)
+     */
+    public boolean setSource(long sourceId, double lightVehicleProbability, double[] lightVehicleLevel,
+                             double heavyVehicleProbability, double[] heavyVehicleLevel) {
+        Integer source = sourceIndex.get(sourceId);
+        if (source == null) {
+            return false;
+        }
+        if (lightVehicleLevel.length != bandCount || heavyVehicleLevel.length != bandCount) {
+            throw new IllegalArgumentException("Expected " + bandCount + " sound power values");
+        }
+        this.lightVehicleProbability[source] = lightVehicleProbability;
+        this.heavyVehicleProbability[source] = heavyVehicleProbability;
+        for (int idBand = 0; idBand < bandCount; idBand++) {
+            vehiclePower[(source * 2) * bandCount + idBand] = dbaToW(lightVehicleLevel[idBand]);
+            vehiclePower[(source * 2 + 1) * bandCount + idBand] = dbaToW(heavyVehicleLevel[idBand]);
+        }
+        return true;
+    }
+
+    /**
+     * Compute the sound power of each source state according to the vehicle combination
+     */
+    private void computeSourcePower() {
+        // Power of an absent vehicle
+        double absentPower = vehicleCombination == VehicleCombination.AVERAGE_WITH_ABSENT_VEHICLE ? dbaToW(0) : 0;
+        double factor = vehicleCombination == VehicleCombination.AVERAGE_WITH_ABSENT_VEHICLE ? 0.5 : 1;
+        for (int source = 0; source < sourceIds.length; source++) {
+            for (int idBand = 0; idBand < bandCount; idBand++) {
+                double lightPower = vehiclePower[(source * 2) * bandCount + idBand];
+                double heavyPower = vehiclePower[(source * 2 + 1) * bandCount + idBand];
+                sourcePower[(source * 3) * bandCount + idBand] = factor * (lightPower + absentPower);
+                sourcePower[(source * 3 + 1) * bandCount + idBand] = factor * (absentPower + heavyPower);
+                sourcePower[(source * 3 + 2) * bandCount + idBand] = factor * (lightPower + heavyPower);
+            }
+        }
+    }
+
+    /**
+     * Draw the vehicles of all the sources for a group of 32 iterations
+     * @param word Index of the group, the iterations are word * 32 to word * 32 + 31
+     * @param iterations Total number of iterations
+     * @param states State of each source and iteration, 2 bits by iteration (1 light vehicle, 2 heavy vehicle,
+     *               3 both) packed in [source * wordCount + iteration / 32]
+     * @param wordCount Number of words of each source
+     */
+    private void drawVehicles(int word, int iterations, long[] states, int wordCount) {
+        int lastIteration = Math.min(iterations, (word + 1) * ITERATIONS_PER_WORD);
+        for (int it = word * ITERATIONS_PER_WORD; it < lastIteration; it++) {
+            SplittableRandom random = new SplittableRandom(seed ^ mix(it));
+            int shift = (it % ITERATIONS_PER_WORD) * 2;
+            for (int source = 0; source < sourceIds.length; source++) {
+                double u = random.nextDouble();
+                long state = (u < lightVehicleProbability[source] ? 1 : 0)
+                        | (u < heavyVehicleProbability[source] ? 2 : 0);
+                states[source * wordCount + word] |= state << shift;
+            }
+        }
+    }
+
+    /**
+     * Murmur3 finalizer, spread the iteration index over all the bits of the seed
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * Sum the power received by one receiver at each iteration
+     * @param receiver Receiver index
+     * @param states Drawn vehicles, see {@link #drawVehicles(int, int, long[], int)}
+     * @param wordCount Number of words of each source
+     * @param power Destination, power of each iteration and band [iteration * bandCount + band]
+     */
+    private void sumReceiverPower(int receiver, long[] states, int wordCount, double[] power) {
+        Arrays.fill(power, 0);
+        for (int pair = receiverStart[receiver]; pair < receiverStart[receiver + 1]; pair++) {
+            int source = pairSource[pair];
+            int attenuationOffset = pair * bandCount;
+            for (int word = 0; word < wordCount; word++) {
+                long bits = states[source * wordCount + word];
+                while (bits != 0) {
+                    int shift = Long.numberOfTrailingZeros(bits) & ~1;
+                    int state = (int) ((bits >>> shift) & 3);
+                    bits &= ~(3L << shift);
+                    int powerOffset = (source * 3 + state - 1) * bandCount;
+                    int iterationOffset = (word * ITERATIONS_PER_WORD + shift / 2) * bandCount;
+                    for (int idBand = 0; idBand < bandCount; idBand++) {
+                        power[iterationOffset + idBand] += pairAttenuation[attenuationOffset + idBand]
+                                * sourcePower[powerOffset + idBand];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluate one receiver for all the iterations
+     * @param receiver Receiver index
+     * @param iterations Number of iterations
+     * @param states Drawn vehicles, see {@link #drawVehicles(int, int, long[], int)}
+     * @param wordCount Number of words of each source
+     * @param power Buffer of the power of each iteration and band
+     * @param levels Buffer of the A weighted level of each iteration
+     * @return Statistics of the receiver
+     */
+    private ReceiverStatistics evaluateReceiver(int receiver, int iterations, long[] states, int wordCount,
+                                                double[] power, double[] levels) {
+        sumReceiverPower(receiver, states, wordCount, power);
+        double[] powerSum = new double[bandCount];
+        double aWeightedPowerSum = 0;
+        for (int it = 0; it < iterations; it++) {
+            double aWeightedPower = 0;
+            for (int idBand = 0; idBand < bandCount; idBand++) {
+                double value = power[it * bandCount + idBand];
+                powerSum[idBand] += value;
+                aWeightedPower += value * aWeighting[idBand];
+            }
+            aWeightedPowerSum += aWeightedPower;
+            levels[it] = toLevel(aWeightedPower);
+        }
+        double[] leq = new double[bandCount];
+        for (int idBand = 0; idBand < bandCount; idBand++) {
+            leq[idBand] = toLevel(powerSum[idBand] / iterations);
+        }
+        Arrays.sort(levels, 0, iterations);
+        return new ReceiverStatistics(receiverIds[receiver], leq, toLevel(aWeightedPowerSum / iterations),
+                percentile(levels, iterations, 0.9), percentile(levels, iterations, 0.5),
+                percentile(levels, iterations, 0.1));
+    }
+
+    /**
+     * @param sortedValues Values in ascending order
+     * @param count Number of values
+     * @param p Quantile
+     * @return Smallest value greater or equal to the proportion p of the values (nearest rank)
+     */
+    static double percentile(double[] sortedValues, int count, double p) {
+        return sortedValues[Math.max(0, Math.min(count - 1, (int) Math.ceil(p * count) - 1))];
+    }
+
+    /**
+     * Draw the vehicles of all the sources and iterations
+     * @param iterations Number of iterations
+     * @param wordCount Number of words of each source
+     * @return State of each source and iteration, see {@link #drawVehicles(int, int, long[], int)}
+     */
+    private long[] drawAllVehicles(int iterations, int wordCount) {
+        long[] states = new long[sourceIds.length * wordCount];
+        if (threadCount == 1) {
+            for (int word = 0; word < wordCount; word++) {
+                drawVehicles(word, iterations, states, wordCount);
+            }
+        } else {
+            runParallel(wordCount, word -> drawVehicles(word, iterations, states, wordCount));
+        }
+        return states;
+    }
+
+    /**
+     * Run the tasks in a pool of {@link #getThreadCount()} threads
+     * @param taskCount Number of tasks
+     * @param task Task, called with the task index
+     */
+    private void runParallel(int taskCount, IntConsumer task) {
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            pool.submit(() -> IntStream.range(0, taskCount).parallel().forEach(task)).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Run the iterations
+     * @param iterations Number of iterations
+     * @param progressVisitor Progression, may be null
+     * @return Statistics of each receiver, ordered by receiver identifier
+     */
+    public List<ReceiverStatistics> run(int iterations, ProgressVisitor progressVisitor) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("At least one iteration is required");
+        }
+        computeSourcePower();
+        int receiverCount = receiverIds.length;
+        int wordCount = (iterations + ITERATIONS_PER_WORD - 1) / ITERATIONS_PER_WORD;
+        long[] states = drawAllVehicles(iterations, wordCount);
+        ReceiverStatistics[] statistics = new ReceiverStatistics[receiverCount];
+        int chunkCount = (receiverCount + RECEIVER_CHUNK_SIZE - 1) / RECEIVER_CHUNK_SIZE;
+        ProgressVisitor chunkProgress = progressVisitor != null ? progressVisitor.subProcess(chunkCount) : null;
+        // each task evaluates its own receivers, the results are not shared
+        IntConsumer evaluateChunk = chunk -> {
+            if (chunkProgress != null && chunkProgress.isCanceled()) {
+                return;
+            }
+            double[] power = new double[iterations * bandCount];
+            double[] levels = new double[iterations];
+            int lastReceiver = Math.min(receiverCount, (chunk + 1) * RECEIVER_CHUNK_SIZE);
+            for (int receiver = chunk * RECEIVER_CHUNK_SIZE; receiver < lastReceiver; receiver++) {
+                statistics[receiver] = evaluateReceiver(receiver, iterations, states, wordCount, power, levels);
+            }
+            if (chunkProgress != null) {
+                chunkProgress.endStep();
+            }
+        };
+        if (threadCount == 1) {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                evaluateChunk.accept(chunk);
+            }
+        } else {
+            runParallel(chunkCount, evaluateChunk);
+        }
+        List<ReceiverStatistics> result = new ArrayList<>(receiverCount);
+        for (ReceiverStatistics receiverStatistics : statistics) {
+            if (receiverStatistics != null) {
+                result.add(receiverStatistics);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Levels of the iterations of a chunk of receivers where at least one vehicle is received
+     */
+    private static class IterationRows {
+        int rowCount = 0;
+        final int[] iteration;
+        final long[] receiverId;
+        /** Level of each row and band (dB) [row * bandCount + band] */
+        final double[] levels;
+
+        IterationRows(int capacity, int bandCount) {
+            iteration = new int[capacity];
+            receiverId = new long[capacity];
+            levels = new double[capacity * bandCount];
+        }
+
+        void add(IterationRows source, int row, int bandCount) {
+            iteration[rowCount] = source.iteration[row];
+            receiverId[rowCount] = source.receiverId[row];
+            System.arraycopy(source.levels, row * bandCount, levels, rowCount * bandCount, bandCount);
+            rowCount++;
+        }
+    }
+
+    /**
+     * Evaluate the levels of each iteration of a chunk of receivers
+     * @param chunk Chunk index
+     * @param iterations Number of iterations
+     * @param states Drawn vehicles, see {@link #drawVehicles(int, int, long[], int)}
+     * @param wordCount Number of words of each source
+     * @return Rows of the chunk, ordered by receiver and iteration
+     */
+    private IterationRows evaluateIterationRows(int chunk, int iterations, long[] states, int wordCount) {
+        int firstReceiver = chunk * RECEIVER_CHUNK_SIZE;
+        int lastReceiver = Math.min(receiverIds.length, firstReceiver + RECEIVER_CHUNK_SIZE);
+        IterationRows rows = new IterationRows((lastReceiver - firstReceiver) * iterations, bandCount);
+        double[] power = new double[iterations * bandCount];
+        for (int receiver = firstReceiver; receiver < lastReceiver; receiver++) {
+            sumReceiverPower(receiver, states, wordCount, power);
+            for (int it = 0; it < iterations; it++) {
+                int offset = it * bandCount;
+                boolean received = false;
+                for (int idBand = 0; idBand < bandCount && !received; idBand++) {
+                    received = power[offset + idBand] > 0;
+                }
+                if (!received) {
+                    continue;
+                }
+                int row = rows.rowCount++;
+                rows.iteration[row] = it + 1;
+                rows.receiverId[row] = receiverIds[receiver];
+                for (int idBand = 0; idBand < bandCount; idBand++) {
+                    rows.levels[row * bandCount + idBand] = wToDba(power[offset + idBand]);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param outputTable Table name
+     * @param rowCount Number of rows inserted by the statement
+     * @return Insert statement of rowCount rows (IT, IDRECEIVER, HZ63..)
+     */
+    private String iterationLevelsInsert(String outputTable, int rowCount) {
+        StringBuilder insert = new StringBuilder("INSERT INTO ");
+        insert.append(outputTable);
+        insert.append(" VALUES ");
+        for (int row = 0; row < rowCount; row++) {
+            if (row > 0) {
+                insert.append(", ");
+            }
+            insert.append("(?, ?");
+            for (int idBand = 0; idBand < bandCount; idBand++) {
+                insert.append(", ?");
+            }
+            insert.append(")");
+        }
+        return insert.toString();
+    }
+
+    /**
+     * Run the iterations and write the level of each receiver for each iteration into a new table
+     * (IT, IDRECEIVER, HZ63..). As in the Traffic_Probabilistic_Modelling script, a receiver has no row for the
+     * iterations where none of its sources has a vehicle. The iterations are numbered from 1.
+     * The chunks of receivers are evaluated in parallel, {@link #getThreadCount()} chunks at a time, then their rows
+     * are written with multi-row insert statements.
+     * @param connection Database connection
+     * @param outputTable Table to create (dropped if exists)
+     * @param iterations Number of iterations
+     * @param progressVisitor Progression, may be null
+     * @throws SQLException Error while creating or feeding the table
+     */
+    public void exportIterationLevels(Connection connection, String outputTable, int iterations,
+                                      ProgressVisitor progressVisitor) throws SQLException {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("At least one iteration is required");
+        }
+        computeSourcePower();
+        int wordCount = (iterations + ITERATIONS_PER_WORD - 1) / ITERATIONS_PER_WORD;
+        long[] states = drawAllVehicles(iterations, wordCount);
+        StringBuilder sb = new StringBuilder("CREATE TABLE ");
+        sb.append(outputTable);
+        sb.append(" (IT integer, IDRECEIVER integer");
+        for (int frequency : frequencies) {
+            sb.append(", HZ");
+            sb.append(frequency);
+            sb.append(" double precision");
+        }
+        sb.append(")");
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + outputTable);
+            st.execute(sb.toString());
+        }
+        int receiverCount = receiverIds.length;
+        int chunkCount = (receiverCount + RECEIVER_CHUNK_SIZE - 1) / RECEIVER_CHUNK_SIZE;
+        ProgressVisitor chunkProgress = progressVisitor != null ? progressVisitor.subProcess(chunkCount) : null;
+        // the rows of threadCount chunks are kept in memory before being written
+        IterationRows[] group = new IterationRows[Math.min(threadCount, Math.max(1, chunkCount))];
+        // rows of the next insert statement
+        IterationRows statementRows = new IterationRows(INSERT_ROWS_PER_STATEMENT, bandCount);
+        try (PreparedStatement ps = connection.prepareStatement(
+                iterationLevelsInsert(outputTable, INSERT_ROWS_PER_STATEMENT))) {
+            int batchSize = 0;
+            for (int firstChunk = 0; firstChunk < chunkCount; firstChunk += group.length) {
+                if (chunkProgress != null && chunkProgress.isCanceled()) {
+                    break;
+                }
+                int groupFirstChunk = firstChunk;
+                int groupSize = Math.min(group.length, chunkCount - firstChunk);
+                IntConsumer evaluateChunk = index -> group[index] =
+                        evaluateIterationRows(groupFirstChunk + index, iterations, states, wordCount);
+                if (groupSize == 1) {
+                    evaluateChunk.accept(0);
+                } else {
+                    runParallel(groupSize, evaluateChunk);
+                }
+                for (int index = 0; index < groupSize; index++) {
+                    IterationRows rows = group[index];
+                    group[index] = null;
+                    for (int row = 0; row < rows.rowCount; row++) {
+                        statementRows.add(rows, row, bandCount);
+                        if (statementRows.rowCount == INSERT_ROWS_PER_STATEMENT) {
+                            setIterationLevels(ps, statementRows);
+                            ps.addBatch();
+                            statementRows.rowCount = 0;
+                            if (++batchSize >= INSERT_BATCH_SIZE) {
+                                ps.executeBatch();
+                                batchSize = 0;
+                            }
+                        }
+                    }
+                    if (chunkProgress != null) {
+                        chunkProgress.endStep();
+                    }
+                }
+            }
+            if (batchSize > 0) {
+                ps.executeBatch();
+            }
+        }
+        if (statementRows.rowCount > 0) {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    iterationLevelsInsert(outputTable, statementRows.rowCount))) {
+                setIterationLevels(ps, statementRows);
+                ps.execute();
+            }
+        }
+    }
+
+    /**
+     * Set the parameters of a multi-row insert statement, see {@link #iterationLevelsInsert(String, int)}
+     * @param ps Insert statement
+     * @param rows Rows to insert
+     * @throws SQLException Error while setting the parameters
+     */
+    private void setIterationLevels(PreparedStatement ps, IterationRows rows) throws SQLException {
+        int parameterIndex = 1;
+        for (int row = 0; row < rows.rowCount; row++) {
+            ps.setInt(parameterIndex++, rows.iteration[row]);
+            ps.setLong(parameterIndex++, rows.receiverId[row]);
+            for (int idBand = 0; idBand < bandCount; idBand++) {
+                ps.setDouble(parameterIndex++, rows.levels[row * bandCount + idBand]);
+            }
+        }
+    }
+
+    private static double toLevel(double power) {
+        return power > 0 ? Math.max(NO_LEVEL, wToDba(power)) : NO_LEVEL;
+    }
+
+    /**
+     * Write the statistics into a new table (IDRECEIVER, HZ63.., LAEQ, LA10, LA50, LA90)
+     * @param connection Database connection
+     * @param outputTable Table to create (dropped if exists)
+     * @param statistics Statistics of the receivers
+     * @throws SQLException Error while creating or feeding the table
+     */
+    public void exportStatistics(Connection connection, String outputTable, List<ReceiverStatistics> statistics)
+            throws SQLException {
+        StringBuilder sb = new StringBuilder("CREATE TABLE ");
+        sb.append(outputTable);
+        sb.append(" (IDRECEIVER bigint NOT NULL PRIMARY KEY");
+        StringBuilder insert = new StringBuilder("INSERT INTO ");
+        insert.append(outputTable);
+        insert.append(" VALUES (?");
+        for (int frequency : frequencies) {
+            sb.append(", HZ");
+            sb.append(frequency);
+            sb.append(" numeric(5, 2)");
+            insert.append(", ?");
+        }
+        sb.append(", LAEQ numeric(5, 2), LA10 numeric(5, 2), LA50 numeric(5, 2), LA90 numeric(5, 2))");
+        insert.append(", ?, ?, ?, ?)");
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + outputTable);
+            st.execute(sb.toString());
+        }
+        try (PreparedStatement ps = connection.prepareStatement(insert.toString())) {
+            int batchSize = 0;
+            for (ReceiverStatistics receiver : statistics) {
+                int parameterIndex = 1;
+                ps.setLong(parameterIndex++, receiver.receiverId);
+                for (double level : receiver.leq) {
+                    ps.setDouble(parameterIndex++, level);
+                }
+                ps.setDouble(parameterIndex++, receiver.laeq);
+                ps.setDouble(parameterIndex++, receiver.la10);
+                ps.setDouble(parameterIndex++, receiver.la50);
+                ps.setDouble(parameterIndex, receiver.la90);
+                ps.addBatch();
+                if (++batchSize >= 1000) {
+                    ps.executeBatch();
+                    batchSize = 0;
+                }
+            }
+            if (batchSize > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+}
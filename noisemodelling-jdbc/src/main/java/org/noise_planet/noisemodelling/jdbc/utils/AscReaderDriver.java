@@ -26,12 +26,11 @@ import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
 import org.locationtech.jts.geom.*;
+import org.noise_planet.noisemodelling.pathfinder.ElevationGrid;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.sql.*;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Driver to import ESRI ASCII Raster file as polygons
@@ -59,19 +58,16 @@ import java.util.zip.GZIPInputStream;
  */
 public class AscReaderDriver {
 
-    private static final int BATCH_MAX_SIZE = 100;
-    private static final int BUFFER_SIZE = 16384;
+    private static final int BATCH_MAX_SIZE = 1000;
     private boolean as3DPoint = true;
     private Envelope extractEnvelope = null;
     private int downScale = 1;
-    private String lastWord = "";
 
     private int nrows;
     private int ncols;
     private double cellSize;
     private double yValue;
     private double xValue;
-    private boolean readFirst;
     private double noData;
     private int zType = 2;
     private boolean deleteTable = false;
@@ -125,56 +121,57 @@ public class AscReaderDriver {
         this.downScale = downScale;
     }
 
-    private void readHeader(Scanner scanner) throws IOException {
+    private void readHeader(AsciiGridTokenizer tokenizer) throws IOException {
+        String lastWord;
         // NCOLS
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         if (!lastWord.equalsIgnoreCase("NCOLS")) {
             throw new IOException("Unexpected word " + lastWord);
         }
         // XXX
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         ncols = Integer.parseInt(lastWord);
         if (ncols <= 0) {
             throw new IOException("NCOLS <= 0");
         }
         // NROWS
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         if (!lastWord.equalsIgnoreCase("NROWS")) {
             throw new IOException("Unexpected word " + lastWord);
         }
         // XXX
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         nrows = Integer.parseInt(lastWord);
         if (nrows <= 0) {
             throw new IOException("NROWS <= 0");
         }
         // XLLCENTER or XLLCORNER
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         if (!(lastWord.equalsIgnoreCase("XLLCENTER") || lastWord.equalsIgnoreCase("XLLCORNER"))) {
             throw new IOException("Unexpected word " + lastWord);
         }
         boolean isXCenter = lastWord.equalsIgnoreCase("XLLCENTER");
         // XXX
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         xValue = Double.parseDouble(lastWord);
 
         // YLLCENTER or YLLCORNER
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         if (!(lastWord.equalsIgnoreCase("YLLCENTER") || lastWord.equalsIgnoreCase("YLLCORNER"))) {
             throw new IOException("Unexpected word " + lastWord);
         }
         boolean isYCenter = lastWord.equalsIgnoreCase("YLLCENTER");
         // XXX
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         yValue = Double.parseDouble(lastWord);
 
         // CELLSIZE
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         if (!lastWord.equalsIgnoreCase("CELLSIZE")) {
             throw new IOException("Unexpected word " + lastWord);
         }
         // XXX
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         cellSize = Double.parseDouble(lastWord);
         // Compute offsets
         if (isXCenter) {
@@ -186,15 +183,14 @@ public class AscReaderDriver {
             yValue = yValue + cellSize * nrows;
         }
         // Optional NODATA_VALUE
-        lastWord = scanner.next();
-        readFirst = false;
+        lastWord = tokenizer.nextWord();
         noData = -9999;
         if (lastWord.equalsIgnoreCase("NODATA_VALUE")) {
-            readFirst = true;
             // XXX
-            lastWord = scanner.next();
-            noData = Double.parseDouble(lastWord);
-
+            noData = tokenizer.nextDouble();
+        } else {
+            // no NODATA_VALUE, this is the first cell value
+            tokenizer.pushBack(lastWord);
         }
     }
 
@@ -223,8 +219,8 @@ public class AscReaderDriver {
                 stmt.execute("DROP TABLE IF EXISTS " + outputTableName);
                 stmt.close();
             }
-            try (FileInputStream inputStream = new FileInputStream(fileName)) {
-                outputTableName = readAsc(connection, inputStream, progress, outputTableName, srid);
+            try (AsciiGridTokenizer tokenizer = AsciiGridTokenizer.open(fileName, Charset.forName(encoding))) {
+                outputTableName = readAsc(connection, tokenizer, progress, outputTableName, srid);
             }
             return new String[]{outputTableName};
         } else if (fileName != null && fileName.getName().toLowerCase().endsWith(".gz")) {
@@ -239,8 +235,9 @@ public class AscReaderDriver {
                 stmt.execute("DROP TABLE IF EXISTS " + outputTableName);
                 stmt.close();
             }
-            FileInputStream fis = new FileInputStream(fileName);
-            outputTableName = readAsc(connection, new GZIPInputStream(fis), progress, outputTableName, srid);
+            try (AsciiGridTokenizer tokenizer = AsciiGridTokenizer.open(fileName, Charset.forName(encoding))) {
+                outputTableName = readAsc(connection, tokenizer, progress, outputTableName, srid);
+            }
             return new String[]{outputTableName};
         } else {
             throw new SQLException("The asc read driver supports only asc or gz extensions");
@@ -248,25 +245,85 @@ public class AscReaderDriver {
     }
 
     /**
-     * Read the ascii file from inpustream
+     * Convert an asc file into an elevation grid file that can be used directly as the digital elevation model of
+     * the propagation (see {@link org.noise_planet.noisemodelling.jdbc.JdbcNoiseMap#setDemGrid(ElevationGrid)}).
+     * The extract envelope and the down scale coefficient are applied, the no data cells are stored as NaN.
+     *
+     * @param fileName asc or gz file
+     * @param gridFile Elevation grid file to create (overwritten)
+     * @return Memory mapped elevation grid
+     * @throws IOException Error while reading the asc file or writing the grid file
+     */
+    public ElevationGrid readElevationGrid(File fileName, File gridFile) throws IOException {
+        String name = fileName.getName().toLowerCase();
+        if (!name.endsWith(".asc") && !name.endsWith(".gz")) {
+            throw new IOException("The asc read driver supports only asc or gz extensions");
+        }
+        AsciiGridTokenizer tokenizer = AsciiGridTokenizer.open(fileName, Charset.forName(encoding));
+        try {
+            readHeader(tokenizer);
+            int firstRow = 0;
+            int firstCol = 0;
+            int lastRow = nrows - 1;
+            int lastCol = ncols - 1;
+            if (extractEnvelope != null) {
+                firstCol = Math.max(firstCol, (int) Math.floor((extractEnvelope.getMinX() - xValue) / cellSize));
+                lastCol = Math.min(lastCol, (int) Math.ceil((extractEnvelope.getMaxX() - xValue) / cellSize));
+                firstRow = Math.max(firstRow, nrows - (int) Math.ceil((extractEnvelope.getMaxY() - (yValue - cellSize * nrows)) / cellSize));
+                lastRow = Math.min(lastRow, nrows - (int) Math.ceil((extractEnvelope.getMinY() - (yValue - cellSize * nrows)) / cellSize));
+            }
+            // only the rows and columns that are multiple of the down scale coefficient are kept
+            firstCol = (firstCol + downScale - 1) / downScale * downScale;
+            firstRow = (firstRow + downScale - 1) / downScale * downScale;
+            int columns = lastCol < firstCol ? 0 : (lastCol - firstCol) / downScale + 1;
+            int rows = lastRow < firstRow ? 0 : (lastRow - firstRow) / downScale + 1;
+            if (columns < 2 || rows < 2) {
+                throw new IOException("The elevation grid must have at least two rows and two columns");
+            }
+            float[] row = new float[columns];
+            try (ElevationGrid.Writer writer = new ElevationGrid.Writer(gridFile,
+                    xValue + firstCol * cellSize + cellSize / 2, yValue - firstRow * cellSize - cellSize / 2,
+                    cellSize * downScale, columns, rows)) {
+                for (int i = 0; i < nrows && i <= lastRow; i++) {
+                    boolean keepRow = i >= firstRow && (i - firstRow) % downScale == 0;
+                    for (int j = 0; j < ncols; j++) {
+                        if (keepRow && j >= firstCol && j <= lastCol && (j - firstCol) % downScale == 0) {
+                            double z = tokenizer.nextDouble();
+                            row[(j - firstCol) / downScale] = Math.abs(noData - z) != 0 ? (float) z : Float.NaN;
+                        } else {
+                            tokenizer.skipWord();
+                        }
+                    }
+                    if (keepRow) {
+                        writer.writeRow(row);
+                    }
+                }
+            }
+        } catch (EOFException | NumberFormatException ex) {
+            throw new IOException("Unexpected word " + tokenizer.getLastWord(), ex);
+        } finally {
+            tokenizer.close();
+        }
+        return ElevationGrid.map(gridFile);
+    }
+
+    /**
+     * Read the ascii file from the tokenizer
      *
      * @param connection
-     * @param inputStream
+     * @param tokenizer
      * @param progress
      * @param outputTable
      * @param srid
-     * @throws UnsupportedEncodingException
      * @throws SQLException
      * @return output table name
      */
 
-    private String readAsc(Connection connection, InputStream inputStream, ProgressVisitor progress, String outputTable,
-            int srid) throws UnsupportedEncodingException, SQLException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(new BufferedInputStream(inputStream, BUFFER_SIZE), encoding));
+    private String readAsc(Connection connection, AsciiGridTokenizer tokenizer, ProgressVisitor progress,
+            String outputTable, int srid) throws SQLException {
         try {
-            Scanner scanner = new Scanner(reader);
             // Read HEADER
-            readHeader(scanner);
+            readHeader(tokenizer);
             // Read values
             connection.setAutoCommit(false);
             Statement st = connection.createStatement();
@@ -321,15 +378,10 @@ public class AscReaderDriver {
                 cellProgress = progress.subProcess(lastRow);
             }
             for (int i = 0; i < nrows; i++) {
+                boolean keepRow = (downScale == 1 || i % downScale == 0) && (extractEnvelope == null || (i >= firstRow && i <= lastRow));
                 for (int j = 0; j < ncols; j++) {
-                    if (readFirst) {
-                        lastWord = scanner.next();
-                    } else {
-                        readFirst = true;
-                    }
-
-                    if ((downScale == 1 || (i % downScale == 0 && j % downScale == 0)) && (extractEnvelope == null || (i >= firstRow && i <= lastRow && j >= firstCol && j <= lastCol))) {
-                        double z = Double.parseDouble(lastWord);
+                    if (keepRow && (downScale == 1 || j % downScale == 0) && (extractEnvelope == null || (j >= firstCol && j <= lastCol))) {
+                        double z = tokenizer.nextDouble();
                         double x = xValue + j * cellSize;
                         double y = yValue - i * cellSize;
                         if (as3DPoint) {
@@ -371,6 +423,8 @@ public class AscReaderDriver {
                             preparedStatement.clearBatch();
                             batchSize = 0;
                         }
+                    } else {
+                        tokenizer.skipWord();
                     }
                 }
                 cellProgress.endStep();
@@ -384,8 +438,8 @@ public class AscReaderDriver {
             }
             connection.setAutoCommit(true);
             return outputTable;
-        } catch (NoSuchElementException | NumberFormatException | IOException | SQLException ex) {
-            throw new SQLException("Unexpected word " + lastWord, ex);
+        } catch (NumberFormatException | IOException | SQLException ex) {
+            throw new SQLException("Unexpected word " + tokenizer.getLastWord(), ex);
         }
     }
 
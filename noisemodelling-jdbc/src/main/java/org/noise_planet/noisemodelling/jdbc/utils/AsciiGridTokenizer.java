@@ -0,0 +1,283 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Whitespace separated words of an ESRI ASCII grid file, read from the bytes of a channel.
+ * The cell values are parsed directly from the bytes without creating a String: the decimal values of at most 15
+ * significant digits are exactly rounded with a single multiplication or division by a power of ten, the other
+ * values are given to {@link Double#parseDouble(String)}. The skipped cells are not parsed.
+ * The numbers must be written with ASCII characters, the charset is only used to decode the words of the header.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class AsciiGridTokenizer implements Closeable {
+    /** Default size of the read buffer in bytes */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+    /** Greatest mantissa exactly represented by a double */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /** Powers of ten exactly represented by a double */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final ReadableByteChannel channel;
+    private final Charset charset;
+    private final byte[] buffer;
+    private final ByteBuffer byteBuffer;
+    private int position = 0;
+    private int limit = 0;
+    /** Bytes of the last read word */
+    private byte[] word = new byte[32];
+    private int wordLength = 0;
+    /** Word given back with {@link #pushBack(String)} */
+    private String pendingWord = null;
+
+    /**
+     * @param channel Source channel, closed with the tokenizer
+     * @param charset Charset of the header words
+     * @param bufferSize Size of the read buffer in bytes
+     */
+    public AsciiGridTokenizer(ReadableByteChannel channel, Charset charset, int bufferSize) {
+        this.channel = channel;
+        this.charset = charset;
+        this.buffer = new byte[bufferSize];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Open an asc file, or a gzip compressed asc file if the file name ends with .gz
+     * @param file asc or gz file
+     * @param charset Charset of the header words
+     * @return New tokenizer
+     * @throws IOException Error while opening the file
+     */
+    public static AsciiGridTokenizer open(File file, Charset charset) throws IOException {
+        ReadableByteChannel channel;
+        if (file.getName().toLowerCase().endsWith(".gz")) {
+            FileInputStream inputStream = new FileInputStream(file);
+            try {
+                channel = Channels.newChannel(new GZIPInputStream(inputStream, DEFAULT_BUFFER_SIZE));
+            } catch (IOException ex) {
+                inputStream.close();
+                throw ex;
+            }
+        } else {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return new AsciiGridTokenizer(channel, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * @return False if the end of the channel is reached
+     */
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        byteBuffer.clear();
+        int read;
+        do {
+            read = channel.read(byteBuffer);
+        } while (read == 0);
+        position = 0;
+        limit = Math.max(0, read);
+        return read > 0;
+    }
+
+    private void setWord(String value) {
+        byte[] bytes = value.getBytes(charset);
+        if (bytes.length > word.length) {
+            word = new byte[bytes.length];
+        }
+        System.arraycopy(bytes, 0, word, 0, bytes.length);
+        wordLength = bytes.length;
+    }
+
+    /**
+     * Copy the next word into the word buffer
+     * @return False if the next word is the pushed back word
+     */
+    private boolean readWord() throws IOException {
+        if (pendingWord != null) {
+            setWord(pendingWord);
+            pendingWord = null;
+            return false;
+        }
+        // skip the separators
+        while (true) {
+            if (!fill()) {
+                wordLength = 0;
+                throw new EOFException("Unexpected end of file");
+            }
+            while (position < limit && isWhitespace(buffer[position])) {
+                position++;
+            }
+            if (position < limit) {
+                break;
+            }
+        }
+        wordLength = 0;
+        while (fill()) {
+            int start = position;
+            while (position < limit && !isWhitespace(buffer[position])) {
+                position++;
+            }
+            int length = position - start;
+            if (wordLength + length > word.length) {
+                word = Arrays.copyOf(word, Math.max(word.length * 2, wordLength + length));
+            }
+            System.arraycopy(buffer, start, word, wordLength, length);
+            wordLength += length;
+            if (position < limit) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Next word
+     * @throws EOFException The end of the file is reached
+     * @throws IOException Error while reading the channel
+     */
+    public String nextWord() throws IOException {
+        readWord();
+        return getLastWord();
+    }
+
+    /**
+     * Skip the next word without parsing it
+     * @throws EOFException The end of the file is reached
+     * @throws IOException Error while reading the channel
+     */
+    public void skipWord() throws IOException {
+        readWord();
+    }
+
+    /**
+     * @return Next word parsed as a double
+     * @throws EOFException The end of the file is reached
+     * @throws NumberFormatException The word is not a number
+     * @throws IOException Error while reading the channel
+     */
+    public double nextDouble() throws IOException {
+        readWord();
+        return parseWord();
+    }
+
+    /**
+     * The given word will be returned by the next read
+     * @param value Word read in advance
+     */
+    public void pushBack(String value) {
+        pendingWord = value;
+    }
+
+    /**
+     * @return Last read word, used for the error messages
+     */
+    public String getLastWord() {
+        return new String(word, 0, wordLength, charset);
+    }
+
+    private double parseWord() {
+        int index = 0;
+        boolean negative = false;
+        if (wordLength > 0 && (word[0] == '-' || word[0] == '+')) {
+            negative = word[0] == '-';
+            index = 1;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        boolean digits = false;
+        for (; index < wordLength && word[index] >= '0' && word[index] <= '9'; index++) {
+            mantissa = mantissa * 10 + (word[index] - '0');
+            if (mantissa >= MAX_EXACT_MANTISSA) {
+                return parseWordString();
+            }
+            digits = true;
+        }
+        if (index < wordLength && word[index] == '.') {
+            for (index++; index < wordLength && word[index] >= '0' && word[index] <= '9'; index++) {
+                mantissa = mantissa * 10 + (word[index] - '0');
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return parseWordString();
+                }
+                exponent--;
+                digits = true;
+            }
+        }
+        if (!digits) {
+            return parseWordString();
+        }
+        if (index < wordLength && (word[index] == 'e' || word[index] == 'E')) {
+            index++;
+            boolean negativeExponent = false;
+            if (index < wordLength && (word[index] == '-' || word[index] == '+')) {
+                negativeExponent = word[index] == '-';
+                index++;
+            }
+            int explicitExponent = 0;
+            boolean exponentDigits = false;
+            for (; index < wordLength && word[index] >= '0' && word[index] <= '9'; index++) {
+                if (explicitExponent < 10000) {
+                    explicitExponent = explicitExponent * 10 + (word[index] - '0');
+                }
+                exponentDigits = true;
+            }
+            if (!exponentDigits) {
+                return parseWordString();
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (index != wordLength) {
+            // suffix or special value handled by the JDK
+            return parseWordString();
+        }
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return parseWordString();
+        }
+        return negative ? -value : value;
+    }
+
+    private double parseWordString() {
+        return Double.parseDouble(new String(word, 0, wordLength, StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
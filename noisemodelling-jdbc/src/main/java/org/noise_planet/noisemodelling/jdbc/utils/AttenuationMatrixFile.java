@@ -0,0 +1,568 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sparse matrix of the attenuation between sources and receivers, for each time period and frequency band.
+ * The attenuation does not include the source power (but include directivity and meteorological weighting) so the
+ * receivers levels of any emission scenario are obtained with {@link Reader#applyEmissions(int, double[], LevelsConsumer)}
+ * without computing the propagation again.
+ * <p>
+ * Rows are sorted by receiver identifier and entries of a row are sorted by source index. Attenuation are stored as
+ * linear power factors (10^(A/10)) so that applying emissions is only a multiply-add loop.
+ * File layout (little endian):
+ * <pre>
+ * header:  int MAGIC, int VERSION, int periodCount, int bandCount, int[bandCount] frequencies,
+ *          long receiverCount, long sourceCount, long entryCount
+ * index:   long[receiverCount] receiver id (ascending), long[receiverCount + 1] first entry of each row,
+ *          long[sourceCount] source id (ascending)
+ * row:     int[entryCount of row] source index, float[entryCount of row][periodCount][bandCount] factor
+ * </pre>
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class AttenuationMatrixFile {
+    public static final int MAGIC = 0x4E4D414D; // NMAM
+    public static final int VERSION = 1;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    // Rows are mapped by segments, a MappedByteBuffer cannot exceed 2GB
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private AttenuationMatrixFile() {
+    }
+
+    /**
+     * Receive the levels computed for each receiver
+     */
+    public interface LevelsConsumer {
+        /**
+         * @param receiverId Receiver identifier
+         * @param levels Sum of the sources power at the receiver in W, for each frequency band. The array is reused
+         *               for the next receiver.
+         * @throws IOException Error while processing levels
+         */
+        void receiverLevels(long receiverId, double[] levels) throws IOException;
+    }
+
+    /**
+     * Append the rows of the receivers in a temporary file while computing, as rows are not produced in order.
+     * {@link #finish()} sort the rows and write the final file. This class is thread safe.
+     */
+    public static class Writer implements Closeable {
+        private final File file;
+        private final File partFile;
+        private final int periodCount;
+        private final int[] frequencies;
+        private final int stride;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long filePosition = 0;
+        // rows of the temporary file
+        private long[] rowReceiver = new long[1024];
+        private long[] rowPosition = new long[1024];
+        private int[] rowSize = new int[1024];
+        private int rowCount = 0;
+        private long entryCount = 0;
+        private boolean closed = false;
+
+        /**
+         * @param file Final matrix file (overwritten if exists)
+         * @param periodCount Number of time periods
+         * @param frequencies Frequency of each band
+         * @throws IOException Could not create file
+         */
+        public Writer(File file, int periodCount, int[] frequencies) throws IOException {
+            this.file = file;
+            this.partFile = new File(file.getAbsolutePath() + ".part");
+            this.periodCount = periodCount;
+            this.frequencies = frequencies.clone();
+            this.stride = periodCount * frequencies.length;
+            buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /**
+         * @return Number of values of a source, periodCount * bandCount
+         */
+        public int getStride() {
+            return stride;
+        }
+
+        /**
+         * Append the attenuation of all the sources of one receiver
+         * @param receiverId Receiver identifier
+         * @param count Number of sources
+         * @param sourceIds Source identifiers
+         * @param factors Linear attenuation factors, [source * periodCount * bandCount + period * bandCount + band]
+         * @throws IOException Could not write file
+         */
+        public synchronized void addReceiver(long receiverId, int count, long[] sourceIds, float[] factors) throws IOException {
+            if(closed) {
+                throw new IOException("Attenuation matrix writer is closed");
+            }
+            if(rowCount == rowReceiver.length) {
+                int capacity = rowCount * 2;
+                rowReceiver = Arrays.copyOf(rowReceiver, capacity);
+                rowPosition = Arrays.copyOf(rowPosition, capacity);
+                rowSize = Arrays.copyOf(rowSize, capacity);
+            }
+            rowReceiver[rowCount] = receiverId;
+            rowPosition[rowCount] = filePosition;
+            rowSize[rowCount] = count;
+            rowCount++;
+            entryCount += count;
+            for(int idSource = 0; idSource < count; idSource++) {
+                if(buffer.remaining() < Long.BYTES + stride * Float.BYTES) {
+                    flushBuffer();
+                }
+                buffer.putLong(sourceIds[idSource]);
+                int offset = idSource * stride;
+                for(int i = 0; i < stride; i++) {
+                    buffer.putFloat(factors[offset + i]);
+                }
+            }
+            filePosition += (long) count * entrySize();
+        }
+
+        private int entrySize() {
+            return Long.BYTES + stride * Float.BYTES;
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Sort the rows and write the final matrix file, then remove the temporary file
+         * @throws IOException Could not write file
+         */
+        public synchronized void finish() throws IOException {
+            flushBuffer();
+            try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long[] sourceIds = collectSources();
+                Integer[] rowOrder = new Integer[rowCount];
+                for(int i = 0; i < rowCount; i++) {
+                    rowOrder[i] = i;
+                }
+                Arrays.sort(rowOrder, Comparator.comparingLong(row -> rowReceiver[row]));
+                // header and index
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+                buffer.putInt(periodCount);
+                buffer.putInt(frequencies.length);
+                for(int frequency : frequencies) {
+                    buffer.putInt(frequency);
+                }
+                buffer.putLong(rowCount);
+                buffer.putLong(sourceIds.length);
+                buffer.putLong(entryCount);
+                for(int row : rowOrder) {
+                    putLong(out, rowReceiver[row]);
+                }
+                long firstEntry = 0;
+                putLong(out, firstEntry);
+                for(int row : rowOrder) {
+                    firstEntry += rowSize[row];
+                    putLong(out, firstEntry);
+                }
+                for(long sourceId : sourceIds) {
+                    putLong(out, sourceId);
+                }
+                // rows
+                ByteBuffer rowBuffer = ByteBuffer.allocate(0);
+                int[] sourceIndex = new int[0];
+                Integer[] entryOrder = new Integer[0];
+                for(int row : rowOrder) {
+                    int count = rowSize[row];
+                    rowBuffer = readRow(row, rowBuffer);
+                    if(sourceIndex.length < count) {
+                        sourceIndex = new int[count];
+                        entryOrder = new Integer[count];
+                    }
+                    for(int entry = 0; entry < count; entry++) {
+                        sourceIndex[entry] = Arrays.binarySearch(sourceIds, rowBuffer.getLong(entry * entrySize()));
+                        entryOrder[entry] = entry;
+                    }
+                    final int[] rowSourceIndex = sourceIndex;
+                    Arrays.sort(entryOrder, 0, count, Comparator.comparingInt(entry -> rowSourceIndex[entry]));
+                    for(int entry = 0; entry < count; entry++) {
+                        putInt(out, sourceIndex[entryOrder[entry]]);
+                    }
+                    for(int entry = 0; entry < count; entry++) {
+                        int offset = entryOrder[entry] * entrySize() + Long.BYTES;
+                        for(int i = 0; i < stride; i++) {
+                            putFloat(out, rowBuffer.getFloat(offset + i * Float.BYTES));
+                        }
+                    }
+                }
+                buffer.flip();
+                while(buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            } finally {
+                close();
+            }
+        }
+
+        private void putLong(FileChannel out, long value) throws IOException {
+            if(buffer.remaining() < Long.BYTES) {
+                writeTo(out);
+            }
+            buffer.putLong(value);
+        }
+
+        private void putInt(FileChannel out, int value) throws IOException {
+            if(buffer.remaining() < Integer.BYTES) {
+                writeTo(out);
+            }
+            buffer.putInt(value);
+        }
+
+        private void putFloat(FileChannel out, float value) throws IOException {
+            if(buffer.remaining() < Float.BYTES) {
+                writeTo(out);
+            }
+            buffer.putFloat(value);
+        }
+
+        private void writeTo(FileChannel out) throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private ByteBuffer readRow(int row, ByteBuffer rowBuffer) throws IOException {
+            int length = rowSize[row] * entrySize();
+            if(rowBuffer.capacity() < length) {
+                rowBuffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            rowBuffer.clear();
+            rowBuffer.limit(length);
+            long position = rowPosition[row];
+            while(rowBuffer.hasRemaining()) {
+                int read = channel.read(rowBuffer, position);
+                if(read < 0) {
+                    throw new EOFException("Truncated attenuation matrix file");
+                }
+                position += read;
+            }
+            rowBuffer.flip();
+            return rowBuffer;
+        }
+
+        /**
+         * @return Sorted unique source identifiers of the temporary file
+         */
+        private long[] collectSources() throws IOException {
+            long[] sourceIds = new long[1024];
+            int size = 0;
+            ByteBuffer rowBuffer = ByteBuffer.allocate(0);
+            for(int row = 0; row < rowCount; row++) {
+                rowBuffer = readRow(row, rowBuffer);
+                for(int entry = 0; entry < rowSize[row]; entry++) {
+                    if(size == sourceIds.length) {
+                        // remove duplicates before growing the array
+                        size = sortUnique(sourceIds, size);
+                        if(size > sourceIds.length / 2) {
+                            sourceIds = Arrays.copyOf(sourceIds, sourceIds.length * 2);
+                        }
+                    }
+                    sourceIds[size++] = rowBuffer.getLong(entry * entrySize());
+                }
+            }
+            return Arrays.copyOf(sourceIds, sortUnique(sourceIds, size));
+        }
+
+        private static int sortUnique(long[] values, int size) {
+            Arrays.sort(values, 0, size);
+            int unique = 0;
+            for(int i = 0; i < size; i++) {
+                if(unique == 0 || values[unique - 1] != values[i]) {
+                    values[unique++] = values[i];
+                }
+            }
+            return unique;
+        }
+
+        /**
+         * @return Number of receivers added
+         */
+        public synchronized int getReceiverCount() {
+            return rowCount;
+        }
+
+        /**
+         * Close and remove the temporary file. If {@link #finish()} has not been called, the matrix file is not
+         * written.
+         * @throws IOException Could not close file
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if(!closed) {
+                closed = true;
+                try {
+                    channel.close();
+                } finally {
+                    Files.deleteIfExists(partFile.toPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Memory mapped access to the matrix file. This class is not thread safe.
+     */
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final int periodCount;
+        private final int[] frequencies;
+        private final int stride;
+        private final long[] receiverIds;
+        private final long[] rowStart;
+        private final long[] sourceIds;
+        private final long rowsOffset;
+        // mapped rows, a segment contains only complete rows
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+        private int[] rowSegment;
+        private long[] segmentOffset;
+        private int[] rowSourceIndex = new int[0];
+        private float[] rowFactors = new float[0];
+
+        public Reader(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                ByteBuffer header = read(0, 4 * Integer.BYTES);
+                if (header.getInt() != MAGIC) {
+                    throw new IOException("Not an attenuation matrix file " + file);
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException(String.format("Unsupported attenuation matrix file version %d", version));
+                }
+                periodCount = header.getInt();
+                int bandCount = header.getInt();
+                stride = periodCount * bandCount;
+                long position = 4 * Integer.BYTES;
+                ByteBuffer counts = read(position, bandCount * Integer.BYTES + 3 * Long.BYTES);
+                position += counts.limit();
+                frequencies = new int[bandCount];
+                counts.asIntBuffer().get(frequencies);
+                counts.position(bandCount * Integer.BYTES);
+                int receiverCount = Math.toIntExact(counts.getLong());
+                int sourceCount = Math.toIntExact(counts.getLong());
+                counts.getLong(); // entry count, known from the row index
+                receiverIds = new long[receiverCount];
+                read(position, receiverIds.length * Long.BYTES).asLongBuffer().get(receiverIds);
+                position += (long) receiverIds.length * Long.BYTES;
+                rowStart = new long[receiverCount + 1];
+                read(position, rowStart.length * Long.BYTES).asLongBuffer().get(rowStart);
+                position += (long) rowStart.length * Long.BYTES;
+                sourceIds = new long[sourceCount];
+                read(position, sourceIds.length * Long.BYTES).asLongBuffer().get(sourceIds);
+                position += (long) sourceIds.length * Long.BYTES;
+                rowsOffset = position;
+                mapSegments();
+            } catch (IOException | RuntimeException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+
+        private ByteBuffer read(long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            while(buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if(read < 0) {
+                    throw new EOFException("Truncated attenuation matrix file");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        private long rowPosition(int row) {
+            return rowsOffset + rowStart[row] * (Integer.BYTES + (long) stride * Float.BYTES);
+        }
+
+        private void mapSegments() throws IOException {
+            int receiverCount = receiverIds.length;
+            rowSegment = new int[receiverCount];
+            List<Long> offsets = new ArrayList<>();
+            int row = 0;
+            while(row < receiverCount) {
+                long start = rowPosition(row);
+                int end = row;
+                while(end < receiverCount && rowPosition(end + 1) - start <= MAX_SEGMENT_SIZE) {
+                    rowSegment[end] = segments.size();
+                    end++;
+                }
+                if(end == row) {
+                    throw new IOException("Attenuation matrix row is too large to be mapped");
+                }
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        rowPosition(end) - start);
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+                segments.add(segment);
+                offsets.add(start);
+                row = end;
+            }
+            segmentOffset = offsets.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        public int getPeriodCount() {
+            return periodCount;
+        }
+
+        public int getBandCount() {
+            return frequencies.length;
+        }
+
+        /**
+         * @return Frequency of each band
+         */
+        public int[] getFrequencies() {
+            return frequencies.clone();
+        }
+
+        /**
+         * @return Receiver identifiers, in ascending order
+         */
+        public long[] getReceiverIds() {
+            return receiverIds;
+        }
+
+        /**
+         * @return Source identifiers, in ascending order. The position in this array is the source index.
+         */
+        public long[] getSourceIds() {
+            return sourceIds;
+        }
+
+        /**
+         * @param sourceId Source identifier
+         * @return Source index or a negative value if the source is not in the matrix
+         */
+        public int getSourceIndex(long sourceId) {
+            return Arrays.binarySearch(sourceIds, sourceId);
+        }
+
+        /**
+         * @param receiverId Receiver identifier
+         * @return Row index or a negative value if the receiver is not in the matrix
+         */
+        public int getRowIndex(long receiverId) {
+            return Arrays.binarySearch(receiverIds, receiverId);
+        }
+
+        /**
+         * @param row Row index
+         * @return Number of sources of this receiver
+         */
+        public int getRowSize(int row) {
+            return (int) (rowStart[row + 1] - rowStart[row]);
+        }
+
+        /**
+         * Read a row, values are available with {@link #getRowSourceIndex()} and {@link #getRowFactors()}
+         * @param row Row index
+         * @return Number of sources of this receiver
+         */
+        public int readRow(int row) {
+            int count = getRowSize(row);
+            if(rowSourceIndex.length < count) {
+                rowSourceIndex = new int[count];
+                rowFactors = new float[count * stride];
+            }
+            MappedByteBuffer segment = segments.get(rowSegment[row]);
+            segment.position((int) (rowPosition(row) - segmentOffset[rowSegment[row]]));
+            segment.asIntBuffer().get(rowSourceIndex, 0, count);
+            segment.position(segment.position() + count * Integer.BYTES);
+            segment.asFloatBuffer().get(rowFactors, 0, count * stride);
+            return count;
+        }
+
+        /**
+         * @return Source index of the entries of the last read row
+         */
+        public int[] getRowSourceIndex() {
+            return rowSourceIndex;
+        }
+
+        /**
+         * @return Linear attenuation factors of the last read row,
+         * [entry * periodCount * bandCount + period * bandCount + band]
+         */
+        public float[] getRowFactors() {
+            return rowFactors;
+        }
+
+        /**
+         * Compute the levels of all receivers for the given sources power.
+         * @param period Time period index of the attenuation
+         * @param sourcesPower Sources power in W, [sourceIndex * bandCount + band]
+         * @param consumer Receive the levels of each receiver, in ascending receiver identifier order
+         * @throws IOException Error from the consumer
+         */
+        public void applyEmissions(int period, double[] sourcesPower, LevelsConsumer consumer) throws IOException {
+            final int bandCount = frequencies.length;
+            if(period < 0 || period >= periodCount) {
+                throw new IllegalArgumentException("Invalid period index " + period);
+            }
+            if(sourcesPower.length != sourceIds.length * bandCount) {
+                throw new IllegalArgumentException(String.format("Expected %d sources power values, got %d",
+                        sourceIds.length * bandCount, sourcesPower.length));
+            }
+            double[] levels = new double[bandCount];
+            for(int row = 0; row < receiverIds.length; row++) {
+                int count = readRow(row);
+                Arrays.fill(levels, 0);
+                final int[] sourceIndex = rowSourceIndex;
+                final float[] factors = rowFactors;
+                for(int entry = 0; entry < count; entry++) {
+                    final int powerOffset = sourceIndex[entry] * bandCount;
+                    final int factorOffset = entry * stride + period * bandCount;
+                    for(int idBand = 0; idBand < bandCount; idBand++) {
+                        levels[idBand] += sourcesPower[powerOffset + idBand] * factors[factorOffset + idBand];
+                    }
+                }
+                consumer.receiverLevels(receiverIds[row], levels);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            segments.clear();
+            channel.close();
+        }
+    }
+}
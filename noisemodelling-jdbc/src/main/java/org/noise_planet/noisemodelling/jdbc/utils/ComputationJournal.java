@@ -0,0 +1,333 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent progress journal of a noise map computation, used to resume a computation after a crash.
+ * A cell is started when its receivers have been fetched, and completed when all its results have been written in
+ * the result tables or in the SQL output file. Records are appended and synced to the disk one by one, each record
+ * holds a checksum so a record partially written during a crash is discarded when the journal is opened again.
+ * <p>
+ * File layout (little endian):
+ * <pre>
+ * header: int MAGIC, int VERSION
+ * record: int payloadLength, byte type, payload, int CRC32 of type and payload
+ * PARTITION payload: UTF-8 description of the computation cells
+ * CELL_STARTED payload: int cellId, int receiverCount, long[receiverCount] receiver id
+ * CELL_COMPLETED payload: int cellId, long output offset (size of the SQL output file, -1 for database output)
+ * </pre>
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class ComputationJournal implements Closeable {
+    public static final int MAGIC = 0x4E4D4A4C; // NMJL
+    public static final int VERSION = 1;
+    static final byte PARTITION = 1;
+    static final byte CELL_STARTED = 2;
+    static final byte CELL_COMPLETED = 3;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int RECORD_OVERHEAD = Integer.BYTES + 1 + Integer.BYTES;
+
+    /**
+     * Flush the results of the computed cells before the cell is marked as completed
+     */
+    public interface OutputCheckpoint {
+        /**
+         * Block until all the results pushed so far are durably written
+         * @return Size of the output file, -1 if the results are written in database
+         * @throws IOException Could not write the results
+         */
+        long checkpoint() throws IOException;
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private String partition = null;
+    /** Receivers of the started cells that are not completed */
+    private final Map<Integer, long[]> startedCells = new HashMap<>();
+    private final Set<Integer> completedCells = new HashSet<>();
+    /** Sorted receivers of the cells completed before the journal was opened */
+    private final long[] previousReceivers;
+    private final Set<Integer> previousCells;
+    private final Map<Integer, long[]> interruptedCells;
+    private long outputOffset = -1;
+    private OutputCheckpoint outputCheckpoint = null;
+
+    /**
+     * Open or create a journal. The valid records of an existing journal are loaded, a truncated or corrupted last
+     * record is removed.
+     * @param file Journal file
+     * @throws IOException Could not read or create the file
+     */
+    public ComputationJournal(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        List<long[]> completedReceivers = new ArrayList<>();
+        if(channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.flip();
+            channel.truncate(0);
+            writeFully(header, 0);
+            channel.force(false);
+        } else {
+            readRecords(completedReceivers);
+        }
+        int receiverCount = 0;
+        for(long[] receivers : completedReceivers) {
+            receiverCount += receivers.length;
+        }
+        previousReceivers = new long[receiverCount];
+        int offset = 0;
+        for(long[] receivers : completedReceivers) {
+            System.arraycopy(receivers, 0, previousReceivers, offset, receivers.length);
+            offset += receivers.length;
+        }
+        Arrays.sort(previousReceivers);
+        previousCells = Collections.unmodifiableSet(new HashSet<>(completedCells));
+        interruptedCells = Collections.unmodifiableMap(new HashMap<>(startedCells));
+        startedCells.clear();
+    }
+
+    private void readRecords(List<long[]> completedReceivers) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        header.flip();
+        if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a computation journal or unsupported version " + file);
+        }
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while(position + RECORD_OVERHEAD <= size) {
+            lengthBuffer.clear();
+            readFully(lengthBuffer, position);
+            lengthBuffer.flip();
+            int payloadLength = lengthBuffer.getInt();
+            if(payloadLength < 0 || position + RECORD_OVERHEAD + payloadLength > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(1 + payloadLength + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(record, position + Integer.BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 0, 1 + payloadLength);
+            record.flip();
+            if(record.getInt(1 + payloadLength) != (int) crc.getValue()) {
+                break;
+            }
+            byte type = record.get();
+            if(type == PARTITION) {
+                byte[] description = new byte[payloadLength];
+                record.get(description);
+                partition = new String(description, StandardCharsets.UTF_8);
+            } else if(type == CELL_STARTED) {
+                int cellId = record.getInt();
+                long[] receivers = new long[record.getInt()];
+                for(int i = 0; i < receivers.length; i++) {
+                    receivers[i] = record.getLong();
+                }
+                startedCells.put(cellId, receivers);
+            } else if(type == CELL_COMPLETED) {
+                int cellId = record.getInt();
+                long[] receivers = startedCells.remove(cellId);
+                if(receivers != null) {
+                    completedReceivers.add(receivers);
+                }
+                completedCells.add(cellId);
+                outputOffset = record.getLong();
+            } else {
+                break;
+            }
+            position += RECORD_OVERHEAD + payloadLength;
+        }
+        // Remove the incomplete record
+        channel.truncate(position);
+        channel.force(false);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if(read < 0) {
+                throw new IOException("Unexpected end of file " + file);
+            }
+            position += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void appendRecord(byte type, ByteBuffer payload) throws IOException {
+        payload.flip();
+        int payloadLength = payload.remaining();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payloadLength).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(payloadLength);
+        record.put(type);
+        record.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), Integer.BYTES, 1 + payloadLength);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        writeFully(record, channel.size());
+        channel.force(false);
+    }
+
+    /**
+     * @return Journal file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return True if at least one cell has been started before the journal was opened, its results may be in the
+     * output
+     */
+    public boolean isResumed() {
+        return !previousCells.isEmpty() || !interruptedCells.isEmpty();
+    }
+
+    /**
+     * @return True if at least one cell has been completed before the journal was opened
+     */
+    public boolean hasCompletedCells() {
+        return !previousCells.isEmpty();
+    }
+
+    /**
+     * @return Size of the SQL output file when the last cell has been completed, -1 if the results are written in
+     * database or if no cell has been completed
+     */
+    public synchronized long getOutputOffset() {
+        return outputOffset;
+    }
+
+    /**
+     * @param outputCheckpoint Called before writing each cell completion
+     */
+    public synchronized void setOutputCheckpoint(OutputCheckpoint outputCheckpoint) {
+        this.outputCheckpoint = outputCheckpoint;
+    }
+
+    /**
+     * Check that the computation is split in the same cells as the journaled computation, or record the cells
+     * description if the journal is empty
+     * @param description Description of the computation cells
+     * @throws IllegalStateException The journal has been created with another partition of the computation area
+     * @throws IOException Could not write the journal
+     */
+    public synchronized void checkPartition(String description) throws IOException {
+        if(partition == null) {
+            byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer payload = ByteBuffer.allocate(bytes.length);
+            payload.put(bytes);
+            appendRecord(PARTITION, payload);
+            partition = description;
+        } else if(!partition.equals(description)) {
+            throw new IllegalStateException("The computation journal " + file + " has been created with other " +
+                    "computation cells (" + partition + ") than the current ones (" + description + ")");
+        }
+    }
+
+    /**
+     * @param cellId Cell identifier
+     * @return True if the cell has been completed, in this session or before the journal was opened
+     */
+    public synchronized boolean isCellCompleted(int cellId) {
+        return completedCells.contains(cellId);
+    }
+
+    /**
+     * @param receiverId Receiver identifier
+     * @return True if the receiver has been computed before the journal was opened
+     */
+    public boolean isReceiverCompleted(long receiverId) {
+        return Arrays.binarySearch(previousReceivers, receiverId) >= 0;
+    }
+
+    /**
+     * @return Receivers of the cells started but not completed before the journal was opened. Their results may be
+     * partially written in the output.
+     */
+    public Map<Integer, long[]> getInterruptedCells() {
+        return interruptedCells;
+    }
+
+    /**
+     * @param cellId Cell identifier
+     * @param receivers Receivers of the cell
+     * @throws IOException Could not write the journal
+     */
+    public synchronized void cellStarted(int cellId, Collection<Long> receivers) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(2 * Integer.BYTES + receivers.size() * Long.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        payload.putInt(cellId);
+        payload.putInt(receivers.size());
+        long[] receiverIds = new long[receivers.size()];
+        int i = 0;
+        for(long receiver : receivers) {
+            payload.putLong(receiver);
+            receiverIds[i++] = receiver;
+        }
+        appendRecord(CELL_STARTED, payload);
+        startedCells.put(cellId, receiverIds);
+    }
+
+    /**
+     * Wait for the output checkpoint then mark the cell as completed
+     * @param cellId Cell identifier
+     * @throws IOException Could not write the results or the journal
+     */
+    public void cellCompleted(int cellId) throws IOException {
+        OutputCheckpoint checkpoint;
+        synchronized (this) {
+            checkpoint = outputCheckpoint;
+        }
+        long offset = checkpoint == null ? -1 : checkpoint.checkpoint();
+        synchronized (this) {
+            ByteBuffer payload = ByteBuffer.allocate(Integer.BYTES + Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            payload.putInt(cellId);
+            payload.putLong(offset);
+            appendRecord(CELL_COMPLETED, payload);
+            startedCells.remove(cellId);
+            completedCells.add(cellId);
+            outputOffset = offset;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,632 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Compact binary storage of receiver sound levels, written by blocks of rows in columnar layout.
+ * This is used to store the results without issuing database insert queries during the computation; the file is
+ * then bulk loaded into the database with {@link #load(Connection, File, String)}.
+ * <p>
+ * File layout (little endian):
+ * <pre>
+ * header: int MAGIC, int VERSION, int flags, int bandCount
+ * block:  int rowCount, long[rowCount] receiver id, [long[rowCount] source id],
+ *         [float[rowCount] level for each band], float[rowCount] LAEQ, [float[rowCount] LEQ]
+ * </pre>
+ * Source ids are present only if sources are not merged, band levels and LEQ are present only if LAEQ is not the
+ * only output.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class LevelsColumnarFile {
+    public static final int MAGIC = 0x4E4D4C56; // NMLV
+    public static final int VERSION = 1;
+    public static final int FLAG_SOURCE_ID = 1;
+    public static final int FLAG_LAEQ_ONLY = 2;
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    /** Number of rows of a multi-row insert statement */
+    private static final int LOADER_ROWS_PER_STATEMENT = 100;
+    /** Number of multi-row insert statements of a batch */
+    private static final int LOADER_BATCH_SIZE = 50;
+
+    private LevelsColumnarFile() {
+    }
+
+    /**
+     * Fill block column by column, then write it on the file channel when it is full
+     */
+    public static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final boolean hasSourceId;
+        private final boolean laeqOnly;
+        private final int bandCount;
+        private final int blockSize;
+        private final long[] receiverIds;
+        private final long[] sourceIds;
+        private final float[][] bands;
+        private final float[] laeq;
+        private final float[] leq;
+        private final ByteBuffer buffer;
+        private int rowCount = 0;
+        private long writtenRows = 0;
+
+        /**
+         * @param file File to create (overwritten if exists)
+         * @param hasSourceId Store source identifier column
+         * @param laeqOnly Store only the LAEQ column, without frequency bands and LEQ
+         * @param bandCount Number of frequency bands
+         * @throws IOException Could not create file
+         */
+        public Writer(File file, boolean hasSourceId, boolean laeqOnly, int bandCount) throws IOException {
+            this(file, hasSourceId, laeqOnly, bandCount, DEFAULT_BLOCK_SIZE);
+        }
+
+        public Writer(File file, boolean hasSourceId, boolean laeqOnly, int bandCount, int blockSize) throws IOException {
+            this.hasSourceId = hasSourceId;
+            this.laeqOnly = laeqOnly;
+            this.bandCount = laeqOnly ? 0 : bandCount;
+            this.blockSize = blockSize;
+            receiverIds = new long[blockSize];
+            sourceIds = hasSourceId ? new long[blockSize] : null;
+            bands = new float[this.bandCount][blockSize];
+            laeq = new float[blockSize];
+            leq = laeqOnly ? null : new float[blockSize];
+            buffer = ByteBuffer.allocateDirect(Math.max(HEADER_SIZE, Integer.BYTES +
+                    blockSize * rowSize(hasSourceId, laeqOnly, this.bandCount))).order(ByteOrder.LITTLE_ENDIAN);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt((hasSourceId ? FLAG_SOURCE_ID : 0) | (laeqOnly ? FLAG_LAEQ_ONLY : 0));
+            buffer.putInt(this.bandCount);
+            writeBuffer();
+        }
+
+        /**
+         * Append a row
+         * @param receiverId Receiver identifier
+         * @param sourceId Source identifier, ignored if the source column is not stored
+         * @param levels Band levels in dB, ignored if only LAEQ is stored
+         * @param laeqValue LAEQ in dB(A)
+         * @param leqValue LEQ in dB, ignored if only LAEQ is stored
+         * @throws IOException Could not write file
+         */
+        public void write(long receiverId, long sourceId, double[] levels, double laeqValue, double leqValue) throws IOException {
+            receiverIds[rowCount] = receiverId;
+            if(hasSourceId) {
+                sourceIds[rowCount] = sourceId;
+            }
+            for(int idBand = 0; idBand < bandCount; idBand++) {
+                bands[idBand][rowCount] = (float) levels[idBand];
+            }
+            laeq[rowCount] = (float) laeqValue;
+            if(!laeqOnly) {
+                leq[rowCount] = (float) leqValue;
+            }
+            rowCount++;
+            if(rowCount == blockSize) {
+                flush();
+            }
+        }
+
+        /**
+         * Write the pending rows as a block
+         * @throws IOException Could not write file
+         */
+        public void flush() throws IOException {
+            if(rowCount == 0) {
+                return;
+            }
+            buffer.putInt(rowCount);
+            for(int i = 0; i < rowCount; i++) {
+                buffer.putLong(receiverIds[i]);
+            }
+            if(hasSourceId) {
+                for(int i = 0; i < rowCount; i++) {
+                    buffer.putLong(sourceIds[i]);
+                }
+            }
+            for(float[] band : bands) {
+                for(int i = 0; i < rowCount; i++) {
+                    buffer.putFloat(band[i]);
+                }
+            }
+            for(int i = 0; i < rowCount; i++) {
+                buffer.putFloat(laeq[i]);
+            }
+            if(!laeqOnly) {
+                for(int i = 0; i < rowCount; i++) {
+                    buffer.putFloat(leq[i]);
+                }
+            }
+            writtenRows += rowCount;
+            rowCount = 0;
+            writeBuffer();
+        }
+
+        private void writeBuffer() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * @return Number of rows written
+         */
+        public long getRowCount() {
+            return writtenRows + rowCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Read the file block by block. Each block is mapped in memory, the values of the current block are read
+     * directly from the mapped columns.
+     */
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final boolean hasSourceId;
+        private final boolean laeqOnly;
+        private final int bandCount;
+        private final long fileSize;
+        private final ByteBuffer countBuffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long position = HEADER_SIZE;
+        private MappedByteBuffer block = null;
+        private int rowCount = 0;
+        // Offset of each column in the mapped block
+        private int sourceIdOffset;
+        private int bandsOffset;
+        private int laeqOffset;
+        private int leqOffset;
+
+        public Reader(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if(!readFully(header, 0) || header.getInt() != MAGIC) {
+                channel.close();
+                throw new IOException("Not a levels file " + file);
+            }
+            int version = header.getInt();
+            if(version != VERSION) {
+                channel.close();
+                throw new IOException(String.format("Unsupported levels file version %d", version));
+            }
+            int flags = header.getInt();
+            hasSourceId = (flags & FLAG_SOURCE_ID) != 0;
+            laeqOnly = (flags & FLAG_LAEQ_ONLY) != 0;
+            bandCount = header.getInt();
+        }
+
+        /**
+         * @return False if the end of file is reached before filling the buffer
+         */
+        private boolean readFully(ByteBuffer buffer, long offset) throws IOException {
+            buffer.clear();
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer, offset + buffer.position()) < 0) {
+                    return false;
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+
+        /**
+         * Map the next block
+         * @return False if the end of file is reached
+         * @throws IOException Could not read file
+         */
+        public boolean next() throws IOException {
+            if(position >= fileSize) {
+                rowCount = 0;
+                block = null;
+                return false;
+            }
+            if(!readFully(countBuffer, position)) {
+                throw new EOFException("Truncated levels file");
+            }
+            int count = countBuffer.getInt();
+            long blockSize = (long) count * rowSize(hasSourceId, laeqOnly, bandCount);
+            if(position + Integer.BYTES + blockSize > fileSize) {
+                throw new EOFException("Truncated levels file");
+            }
+            block = channel.map(FileChannel.MapMode.READ_ONLY, position + Integer.BYTES, blockSize);
+            block.order(ByteOrder.LITTLE_ENDIAN);
+            position += Integer.BYTES + blockSize;
+            rowCount = count;
+            sourceIdOffset = rowCount * Long.BYTES;
+            bandsOffset = sourceIdOffset + (hasSourceId ? rowCount * Long.BYTES : 0);
+            laeqOffset = bandsOffset + bandCount * rowCount * Float.BYTES;
+            leqOffset = laeqOffset + rowCount * Float.BYTES;
+            return true;
+        }
+
+        /**
+         * @return Number of rows in the current block
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public boolean hasSourceId() {
+            return hasSourceId;
+        }
+
+        public boolean isLaeqOnly() {
+            return laeqOnly;
+        }
+
+        public int getBandCount() {
+            return bandCount;
+        }
+
+        /**
+         * @param row Row index in the current block
+         * @return Receiver identifier
+         */
+        public long getReceiverId(int row) {
+            return block.getLong(row * Long.BYTES);
+        }
+
+        /**
+         * @param row Row index in the current block
+         * @return Source identifier, only if {@link #hasSourceId()}
+         */
+        public long getSourceId(int row) {
+            return block.getLong(sourceIdOffset + row * Long.BYTES);
+        }
+
+        /**
+         * @param idBand Frequency band index
+         * @param row Row index in the current block
+         * @return Level in dB
+         */
+        public float getBandLevel(int idBand, int row) {
+            return block.getFloat(bandsOffset + (idBand * rowCount + row) * Float.BYTES);
+        }
+
+        /**
+         * @param row Row index in the current block
+         * @return LAEQ in dB(A)
+         */
+        public float getLaeq(int row) {
+            return block.getFloat(laeqOffset + row * Float.BYTES);
+        }
+
+        /**
+         * @param row Row index in the current block
+         * @return LEQ in dB, only if not {@link #isLaeqOnly()}
+         */
+        public float getLeq(int row) {
+            return block.getFloat(leqOffset + row * Float.BYTES);
+        }
+
+        /**
+         * @return Copy of the receiver identifiers of the current block
+         */
+        public long[] getReceiverIds() {
+            long[] values = new long[rowCount];
+            for(int row = 0; row < rowCount; row++) {
+                values[row] = getReceiverId(row);
+            }
+            return values;
+        }
+
+        /**
+         * @return Copy of the source identifiers of the current block
+         */
+        public long[] getSourceIds() {
+            long[] values = new long[hasSourceId ? rowCount : 0];
+            for(int row = 0; row < values.length; row++) {
+                values[row] = getSourceId(row);
+            }
+            return values;
+        }
+
+        /**
+         * @param idBand Frequency band index
+         * @return Copy of the levels of the current block for this frequency band
+         */
+        public float[] getBand(int idBand) {
+            float[] values = new float[rowCount];
+            for(int row = 0; row < rowCount; row++) {
+                values[row] = getBandLevel(idBand, row);
+            }
+            return values;
+        }
+
+        /**
+         * @return Copy of the LAEQ of the current block
+         */
+        public float[] getLaeq() {
+            float[] values = new float[rowCount];
+            for(int row = 0; row < rowCount; row++) {
+                values[row] = getLaeq(row);
+            }
+            return values;
+        }
+
+        /**
+         * @return Copy of the LEQ of the current block
+         */
+        public float[] getLeq() {
+            float[] values = new float[laeqOnly ? 0 : rowCount];
+            for(int row = 0; row < values.length; row++) {
+                values[row] = getLeq(row);
+            }
+            return values;
+        }
+
+        @Override
+        public void close() throws IOException {
+            block = null;
+            channel.close();
+        }
+    }
+
+    private static int rowSize(boolean hasSourceId, boolean laeqOnly, int bandCount) {
+        return Long.BYTES + (hasSourceId ? Long.BYTES : 0) + Float.BYTES * (bandCount + (laeqOnly ? 1 : 2));
+    }
+
+    /**
+     * Bulk load the levels file into an existing table. The table columns must follow the file columns order.
+     * The rows are read from the mapped blocks and streamed to the database: with PostgreSQL through
+     * COPY FROM STDIN if the PostgreSQL driver is available, otherwise (H2 included, local or remote) with batched
+     * multi-row insert queries. The rows are inserted in one transaction.
+     * @param connection Database connection
+     * @param file Levels file
+     * @param tableName Destination table
+     * @return Number of inserted rows
+     * @throws SQLException Error while inserting rows
+     * @throws IOException Could not read file
+     */
+    public static long load(Connection connection, File file, String tableName) throws SQLException, IOException {
+        DBTypes dbType = DBUtils.getDBType(connection);
+        if(dbType == DBTypes.POSTGIS || dbType == DBTypes.POSTGRESQL) {
+            Object copyManager = getPostgreSQLCopyManager(connection);
+            if(copyManager != null) {
+                return loadWithCopy(connection, copyManager, file, tableName);
+            }
+        }
+        return loadWithBatch(connection, file, tableName);
+    }
+
+    /**
+     * @return CopyManager of the PostgreSQL driver, null if the connection does not expose it
+     */
+    private static Object getPostgreSQLCopyManager(Connection connection) {
+        try {
+            Class<?> pgConnectionClass = Class.forName("org.postgresql.PGConnection");
+            if(!connection.isWrapperFor(pgConnectionClass)) {
+                return null;
+            }
+            Object pgConnection = connection.unwrap(pgConnectionClass);
+            return pgConnectionClass.getMethod("getCopyAPI").invoke(pgConnection);
+        } catch (ReflectiveOperationException | SQLException ex) {
+            return null;
+        }
+    }
+
+    private static long loadWithCopy(Connection connection, Object copyManager, File file, String tableName)
+            throws SQLException, IOException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Reader reader = new Reader(file)) {
+            Method copyIn = copyManager.getClass().getMethod("copyIn", String.class, java.io.Reader.class);
+            long rowCount = (Long) copyIn.invoke(copyManager, "COPY " + tableName +
+                    " FROM STDIN (FORMAT text)", new CopyRowsReader(reader));
+            connection.commit();
+            return rowCount;
+        } catch (InvocationTargetException ex) {
+            connection.rollback();
+            if(ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            } else if(ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        } catch (ReflectiveOperationException ex) {
+            connection.rollback();
+            throw new SQLException(ex);
+        } catch (SQLException | IOException | RuntimeException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * @param tableName Destination table
+     * @param columnCount Number of columns of a row
+     * @param rowCount Number of rows of the statement
+     * @return Insert query of rowCount rows
+     */
+    private static String multiRowInsert(String tableName, int columnCount, int rowCount) {
+        StringBuilder query = new StringBuilder("INSERT INTO " + tableName + " VALUES ");
+        for(int row = 0; row < rowCount; row++) {
+            if(row > 0) {
+                query.append(", ");
+            }
+            query.append("(?");
+            query.append(", ?".repeat(columnCount - 1));
+            query.append(")");
+        }
+        return query.toString();
+    }
+
+    /**
+     * Set the parameters of one row of a multi-row insert query
+     * @return Next parameter index
+     */
+    private static int setRow(PreparedStatement ps, int parameterIndex, Reader reader, int row) throws SQLException {
+        ps.setLong(parameterIndex++, reader.getReceiverId(row));
+        if(reader.hasSourceId()) {
+            ps.setLong(parameterIndex++, reader.getSourceId(row));
+        }
+        for(int idBand = 0; idBand < reader.getBandCount(); idBand++) {
+            ps.setFloat(parameterIndex++, reader.getBandLevel(idBand, row));
+        }
+        ps.setFloat(parameterIndex++, reader.getLaeq(row));
+        if(!reader.isLaeqOnly()) {
+            ps.setFloat(parameterIndex++, reader.getLeq(row));
+        }
+        return parameterIndex;
+    }
+
+    private static long loadWithBatch(Connection connection, File file, String tableName) throws SQLException, IOException {
+        long rowCount = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Reader reader = new Reader(file)) {
+            int columnCount = 1 + (reader.hasSourceId() ? 1 : 0) + reader.getBandCount() + (reader.isLaeqOnly() ? 1 : 2);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    multiRowInsert(tableName, columnCount, LOADER_ROWS_PER_STATEMENT))) {
+                int batchSize = 0;
+                // the rows of a block that does not fill a statement are inserted by the tail statement
+                while (reader.next()) {
+                    int blockRows = reader.getRowCount();
+                    int fullRows = blockRows - blockRows % LOADER_ROWS_PER_STATEMENT;
+                    int parameterIndex = 1;
+                    for(int i = 0; i < fullRows; i++) {
+                        parameterIndex = setRow(ps, parameterIndex, reader, i);
+                        if(parameterIndex > LOADER_ROWS_PER_STATEMENT * columnCount) {
+                            ps.addBatch();
+                            parameterIndex = 1;
+                            if (++batchSize >= LOADER_BATCH_SIZE) {
+                                ps.executeBatch();
+                                batchSize = 0;
+                            }
+                        }
+                    }
+                    if(fullRows < blockRows) {
+                        if (batchSize > 0) {
+                            ps.executeBatch();
+                            batchSize = 0;
+                        }
+                        try (PreparedStatement tail = connection.prepareStatement(
+                                multiRowInsert(tableName, columnCount, blockRows - fullRows))) {
+                            int tailIndex = 1;
+                            for(int i = fullRows; i < blockRows; i++) {
+                                tailIndex = setRow(tail, tailIndex, reader, i);
+                            }
+                            tail.execute();
+                        }
+                    }
+                    rowCount += blockRows;
+                }
+                if (batchSize > 0) {
+                    ps.executeBatch();
+                }
+            }
+            connection.commit();
+        } catch (SQLException | IOException | RuntimeException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return rowCount;
+    }
+
+    /**
+     * Rows of a levels file in the text format of the PostgreSQL COPY command, generated while the database reads
+     * them
+     */
+    private static class CopyRowsReader extends java.io.Reader {
+        private final Reader reader;
+        private final StringBuilder line = new StringBuilder();
+        private int linePosition = 0;
+        private int row = 0;
+
+        CopyRowsReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return False if there is no more rows
+         */
+        private boolean nextLine() throws IOException {
+            while (row >= reader.getRowCount()) {
+                if(!reader.next()) {
+                    return false;
+                }
+                row = 0;
+            }
+            line.setLength(0);
+            linePosition = 0;
+            line.append(reader.getReceiverId(row));
+            if(reader.hasSourceId()) {
+                line.append('\t').append(reader.getSourceId(row));
+            }
+            for(int idBand = 0; idBand < reader.getBandCount(); idBand++) {
+                line.append('\t').append(reader.getBandLevel(idBand, row));
+            }
+            line.append('\t').append(reader.getLaeq(row));
+            if(!reader.isLaeqOnly()) {
+                line.append('\t').append(reader.getLeq(row));
+            }
+            line.append('\n');
+            row++;
+            return true;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if(length == 0) {
+                return 0;
+            }
+            int read = 0;
+            while (read < length) {
+                if(linePosition == line.length() && !nextLine()) {
+                    break;
+                }
+                int count = Math.min(length - read, line.length() - linePosition);
+                line.getChars(linePosition, linePosition + count, buffer, offset + read);
+                linePosition += count;
+                read += count;
+            }
+            return read == 0 ? -1 : read;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveCellPartitionerTest {
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+
+    /**
+     * Dense city center in the lower left corner, sparse receivers elsewhere
+     */
+    private static AdaptiveCellPartitioner createCity(List<Coordinate> receivers) {
+        Envelope envelope = new Envelope(0, 4000, 0, 4000);
+        AdaptiveCellPartitioner partitioner = new AdaptiveCellPartitioner(envelope, 500);
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            receivers.add(new Coordinate(random.nextDouble() * 800, random.nextDouble() * 800));
+        }
+        for (int i = 0; i < 2000; i++) {
+            receivers.add(new Coordinate(random.nextDouble() * 4000, random.nextDouble() * 4000));
+        }
+        for (Coordinate receiver : receivers) {
+            partitioner.addReceiver(receiver);
+        }
+        for (int i = 0; i < 300; i++) {
+            Coordinate p0 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000);
+            Coordinate p1 = new Coordinate(p0.x + random.nextDouble() * 100, p0.y + random.nextDouble() * 100);
+            partitioner.addSource(FACTORY.createLineString(new Coordinate[]{p0, p1}));
+            partitioner.addBuilding(FACTORY.toGeometry(new Envelope(p0.x, p0.x + 10, p1.y, p1.y + 10)));
+        }
+        partitioner.addSource(FACTORY.createPoint(new Coordinate(3000, 3000)));
+        return partitioner;
+    }
+
+    @Test
+    public void testPartition() {
+        List<Coordinate> receivers = new ArrayList<>();
+        AdaptiveCellPartitioner partitioner = createCity(receivers);
+        double totalCost = partitioner.getTotalCost();
+        assertTrue(totalCost > receivers.size());
+        List<AdaptiveCellPartitioner.Cell> cells = partitioner.partition(totalCost / 16, 4000);
+        assertTrue(cells.size() >= 16);
+        int receiverCount = 0;
+        double cost = 0;
+        double smallestArea = Double.MAX_VALUE;
+        double largestArea = 0;
+        for (int i = 0; i < cells.size(); i++) {
+            AdaptiveCellPartitioner.Cell cell = cells.get(i);
+            assertTrue(cell.receiverCount > 0);
+            assertTrue(cell.receiverCount <= 4000);
+            assertTrue(cell.cost <= totalCost / 16 + 1e-6);
+            receiverCount += cell.receiverCount;
+            cost += cell.cost;
+            smallestArea = Math.min(smallestArea, cell.envelope.getArea());
+            largestArea = Math.max(largestArea, cell.envelope.getArea());
+            // cells do not overlap
+            for (int j = i + 1; j < cells.size(); j++) {
+                Envelope intersection = cell.envelope.intersection(cells.get(j).envelope);
+                assertTrue(intersection.isNull() || intersection.getArea() == 0);
+            }
+        }
+        assertEquals(receivers.size(), receiverCount);
+        assertEquals(totalCost, cost, totalCost * 1e-9);
+        // small cells in the dense area
+        assertTrue(largestArea > 16 * smallestArea);
+        // every receiver is located in a cell
+        for (Coordinate receiver : receivers) {
+            boolean found = false;
+            for (AdaptiveCellPartitioner.Cell cell : cells) {
+                if (cell.envelope.contains(receiver)) {
+                    found = true;
+                    break;
+                }
+            }
+            assertTrue(found);
+        }
+    }
+
+    @Test
+    public void testMaximumReceivers() {
+        List<Coordinate> receivers = new ArrayList<>();
+        AdaptiveCellPartitioner partitioner = createCity(receivers);
+        List<AdaptiveCellPartitioner.Cell> cells = partitioner.partition(Double.MAX_VALUE, 1000);
+        int receiverCount = 0;
+        for (AdaptiveCellPartitioner.Cell cell : cells) {
+            assertTrue(cell.receiverCount <= 1000);
+            receiverCount += cell.receiverCount;
+        }
+        assertEquals(receivers.size(), receiverCount);
+        // a single cell without limits
+        assertEquals(1, partitioner.partition(Double.MAX_VALUE, Integer.MAX_VALUE).size());
+    }
+}
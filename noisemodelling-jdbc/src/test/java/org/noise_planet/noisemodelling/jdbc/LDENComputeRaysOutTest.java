@@ -0,0 +1,170 @@
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.junit.Test;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+
+public class LDENComputeRaysOutTest {
+
+    private static double[] filled(int bandCount, double value) {
+        double[] values = new double[bandCount];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    /**
+     * Levels by source of one receiver: the attenuation of each time period must only be applied to the power of
+     * this time period
+     */
+    @Test
+    public void testTimePeriodLevels() {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setMergeSources(false);
+        PropagationProcessPathData pathData = new PropagationProcessPathData(false);
+        for (LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
+            ldenConfig.setPropagationProcessPathData(timePeriod, pathData);
+        }
+        int bandCount = pathData.freq_lvl.size();
+        LDENPropagationProcessData data = new LDENPropagationProcessData(new ProfileBuilder(), ldenConfig);
+        // Source 0: Lw 90 dB day, 85 dB evening, 80 dB night
+        data.wjSourcesD.add(filled(bandCount, dbaToW(90)));
+        data.wjSourcesE.add(filled(bandCount, dbaToW(85)));
+        data.wjSourcesN.add(filled(bandCount, dbaToW(80)));
+        LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
+        LDENComputeRaysOut computeRaysOut = new LDENComputeRaysOut(pathData, pathData, pathData, data, ldenData,
+                ldenConfig);
+        LDENComputeRaysOut.ThreadComputeRaysOut threadOut =
+                (LDENComputeRaysOut.ThreadComputeRaysOut) computeRaysOut.subProcess();
+        // Day: one path of -30 dB
+        threadOut.addSourceAttenuation(0, LDENConfig.TIME_PERIOD.DAY, filled(bandCount, -30));
+        // Evening: two paths of -30 dB, so -30 + 10 log10(2) dB
+        threadOut.addSourceAttenuation(0, LDENConfig.TIME_PERIOD.EVENING, filled(bandCount, -30));
+        threadOut.addSourceAttenuation(0, LDENConfig.TIME_PERIOD.EVENING, filled(bandCount, -30));
+        // Night: one path of -40 dB
+        threadOut.addSourceAttenuation(0, LDENConfig.TIME_PERIOD.NIGHT, filled(bandCount, -40));
+        threadOut.finalizeReceiver(7);
+
+        ReceiverLevelsBlock day = ldenData.lDayLevels.pop();
+        ReceiverLevelsBlock evening = ldenData.lEveningLevels.pop();
+        ReceiverLevelsBlock night = ldenData.lNightLevels.pop();
+        assertTrue(ldenData.lDayLevels.isEmpty());
+        assertEquals(1, evening.size());
+        assertEquals(7, evening.getReceiverId());
+        assertEquals(0, evening.getSourceId(0));
+        assertEquals(1, night.size());
+        // one row by receiver block
+        assertEquals(4, ldenData.queueSize.get());
+        assertArrayEquals(filled(bandCount, 60), day.getRowLevels(0), 1e-9);
+        assertArrayEquals(filled(bandCount, 58.0103), evening.getRowLevels(0), 1e-4);
+        assertArrayEquals(filled(bandCount, 40), night.getRowLevels(0), 1e-9);
+    }
+
+    /**
+     * The blocks of the level stacks can still be read as VerticeSL rows
+     */
+    @Test
+    public void testVerticesSoundLevelView() {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setMergeSources(false);
+        PropagationProcessPathData pathData = new PropagationProcessPathData(false);
+        for (LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
+            ldenConfig.setPropagationProcessPathData(timePeriod, pathData);
+        }
+        int bandCount = pathData.freq_lvl.size();
+        LDENPropagationProcessData data = new LDENPropagationProcessData(new ProfileBuilder(), ldenConfig);
+        for (int sourceId = 0; sourceId < 2; sourceId++) {
+            data.wjSourcesD.add(filled(bandCount, dbaToW(90)));
+            data.wjSourcesE.add(filled(bandCount, dbaToW(90)));
+            data.wjSourcesN.add(filled(bandCount, dbaToW(90)));
+        }
+        LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
+        LDENComputeRaysOut.ThreadComputeRaysOut threadOut = (LDENComputeRaysOut.ThreadComputeRaysOut)
+                new LDENComputeRaysOut(pathData, pathData, pathData, data, ldenData, ldenConfig).subProcess();
+        threadOut.addSourceAttenuation(1, LDENConfig.TIME_PERIOD.DAY, filled(bandCount, -40));
+        threadOut.addSourceAttenuation(0, LDENConfig.TIME_PERIOD.DAY, filled(bandCount, -30));
+        threadOut.finalizeReceiver(3);
+
+        List<ComputeRaysOutAttenuation.VerticeSL> rows = ldenData.getDayLevels();
+        assertEquals(2, rows.size());
+        assertEquals(3, rows.get(0).receiverId);
+        assertEquals(0, rows.get(0).sourceId);
+        assertArrayEquals(filled(bandCount, 60), rows.get(0).value, 1e-9);
+        assertEquals(1, rows.get(1).sourceId);
+        assertArrayEquals(filled(bandCount, 50), rows.get(1).value, 1e-9);
+        // the view does not consume the blocks
+        assertEquals(1, ldenData.lDayLevels.size());
+    }
+
+    /**
+     * An override of the attenuation hook applies to the LDEN computation
+     */
+    @Test
+    public void testAttenuationHookOverride() {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setMergeSources(false);
+        PropagationProcessPathData pathData = new PropagationProcessPathData(false);
+        for (LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
+            ldenConfig.setPropagationProcessPathData(timePeriod, pathData);
+        }
+        int bandCount = pathData.freq_lvl.size();
+        LDENPropagationProcessData data = new LDENPropagationProcessData(new ProfileBuilder(), ldenConfig);
+        data.wjSourcesD.add(filled(bandCount, dbaToW(90)));
+        data.wjSourcesE.add(filled(bandCount, dbaToW(90)));
+        data.wjSourcesN.add(filled(bandCount, dbaToW(90)));
+        LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
+        LDENComputeRaysOut computeRaysOut = new LDENComputeRaysOut(pathData, pathData, pathData, data, ldenData,
+                ldenConfig) {
+            @Override
+            public double[] computeAttenuation(PropagationProcessPathData data, long sourceId, double sourceLi,
+                                               long receiverId, List<PropagationPath> propagationPath) {
+                return filled(bandCount, -20);
+            }
+        };
+        LDENComputeRaysOut.ThreadComputeRaysOut threadOut =
+                (LDENComputeRaysOut.ThreadComputeRaysOut) computeRaysOut.subProcess();
+        threadOut.addPropagationPaths(0, 1.0, 0, new ArrayList<>());
+        threadOut.finalizeReceiver(0);
+
+        assertArrayEquals(filled(bandCount, 70), ldenData.lNightLevels.pop().getRowLevels(0), 1e-9);
+    }
+
+    @Test
+    public void testDENAttenuationSetLevel() {
+        LDENComputeRaysOut.DENAttenuation denAttenuation = new LDENComputeRaysOut.DENAttenuation();
+        double[] day = new double[]{-30};
+        double[] evening = new double[]{-35};
+        denAttenuation.setTimePeriodLevel(LDENConfig.TIME_PERIOD.DAY, day);
+        assertNull(denAttenuation.getTimePeriodLevel(LDENConfig.TIME_PERIOD.EVENING));
+        assertNull(denAttenuation.getTimePeriodLevel(LDENConfig.TIME_PERIOD.NIGHT));
+        denAttenuation.setTimePeriodLevel(LDENConfig.TIME_PERIOD.EVENING, evening);
+        assertSame(day, denAttenuation.getTimePeriodLevel(LDENConfig.TIME_PERIOD.DAY));
+        assertSame(evening, denAttenuation.getTimePeriodLevel(LDENConfig.TIME_PERIOD.EVENING));
+        assertNull(denAttenuation.getTimePeriodLevel(LDENConfig.TIME_PERIOD.NIGHT));
+    }
+
+    /**
+     * A checkpoint request wakes up the writer without faking a queued result
+     */
+    @Test
+    public void testCheckpointRequest() throws InterruptedException {
+        LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
+        ldenData.requestCheckpoint();
+        long start = System.currentTimeMillis();
+        ldenData.waitForData(60000);
+        assertTrue(System.currentTimeMillis() - start < 30000);
+        assertEquals(0, ldenData.queueSize.get());
+        ldenData.clearCheckpointRequest();
+        start = System.currentTimeMillis();
+        ldenData.waitForData(50);
+        assertTrue(System.currentTimeMillis() - start >= 40);
+    }
+}
@@ -18,7 +18,10 @@ import org.noise_planet.noisemodelling.emission.LineSource;
 import org.noise_planet.noisemodelling.emission.railway.RailWayParameters;
 import org.noise_planet.noisemodelling.emission.railway.cnossos.RailwayCnossos;
 import org.noise_planet.noisemodelling.emission.utils.Utils;
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixFile;
+import org.noise_planet.noisemodelling.jdbc.utils.ComputationJournal;
 import org.noise_planet.noisemodelling.jdbc.utils.MakeLWTable;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
 import org.noise_planet.noisemodelling.pathfinder.RootProgressVisitor;
@@ -37,6 +40,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumArray;
@@ -729,6 +733,220 @@ public class LDENPointNoiseMapFactoryTest {
 
     }
 
+    @Test
+    public void testTableGenerationFromTrafficNightOnlyBinary() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+
+        assertFalse(JDBCUtilities.tableExists(connection, ldenConfig.lDayTable));
+        assertFalse(JDBCUtilities.tableExists(connection, ldenConfig.lEveningTable));
+        assertFalse(JDBCUtilities.tableExists(connection, ldenConfig.lNightTable));
+        assertFalse(JDBCUtilities.tableExists(connection, ldenConfig.lDenTable));
+
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true); // No idsource column
+        // Store levels in binary file then bulk load in the table at the end
+        File levelsFolder = new File("target/levels_binary");
+        ldenConfig.setLevelsBinaryFolder(levelsFolder);
+
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF",
+                "RECEIVERS");
+
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+
+        // Set of already processed receivers
+        Set<Long> receivers = new HashSet<>();
+
+        try {
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+
+            factory.start();
+
+            pointNoiseMap.setGridDim(4); // force grid size
+
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            // Iterate over computation areas
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                // Run ray propagation
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+            }
+        }finally {
+            factory.stop();
+        }
+        connection.commit();
+        // Temporary files are removed
+        assertFalse(new File(levelsFolder, ldenConfig.lNightTable + ".bin").exists());
+
+        // Check table creation
+        assertFalse(JDBCUtilities.tableExists(connection, ldenConfig.lDayTable));
+        assertFalse(JDBCUtilities.tableExists(connection, ldenConfig.lEveningTable));
+        assertTrue(JDBCUtilities.tableExists(connection, ldenConfig.lNightTable));
+        assertFalse(JDBCUtilities.tableExists(connection, ldenConfig.lDenTable));
+
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) CPT FROM " + ldenConfig.lNightTable)) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+        }
+
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT MAX(HZ63) , MAX(HZ125), MAX(HZ250), MAX(HZ500), MAX(HZ1000), MAX(HZ2000), MAX(HZ4000), MAX(HZ8000), MAX(LEQ), MAX(LAEQ) FROM "+ ldenConfig.lNightTable)) {
+            assertTrue(rs.next());
+            double[] leqs = new double[ldenConfig.propagationProcessPathDataDay.freq_lvl.size()];
+            for (int idfreq = 1; idfreq <= ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
+                leqs[idfreq - 1] = rs.getDouble(idfreq);
+            }
+            assertEquals(78, leqs[0], 2.0);
+            assertEquals(71, leqs[1], 2.0);
+            assertEquals(70, leqs[2], 2.0);
+            assertEquals(72, leqs[3], 2.0);
+            assertEquals(75, leqs[4], 2.0);
+            assertEquals(72, leqs[5], 2.0);
+            assertEquals(64, leqs[6], 2.0);
+            assertEquals(55, leqs[7], 2.0);
+
+            assertEquals(82, rs.getDouble(9), 2.0);
+            assertEquals(78,rs.getDouble(10), 2.0);
+        }
+
+    }
+
+    @Test
+    public void testOutputQueueBackPressure() throws InterruptedException {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setOutputMaximumQueue(Integer.MAX_VALUE);
+        ldenConfig.setOutputMaximumQueueBytes(100);
+        LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
+        ReceiverLevelsBlock row = new ReceiverLevelsBlock(1, 8);
+        row.add(1, new double[8]);
+        long rowSize = LDENComputeRaysOut.LdenData.estimateSize(row);
+        assertTrue(rowSize > 100);
+        ldenData.lDayLevels.add(row);
+        ldenData.pushed(1, rowSize);
+        AtomicBoolean released = new AtomicBoolean(false);
+        Thread producer = new Thread(() -> released.set(ldenData.waitForSpace(ldenConfig)));
+        producer.start();
+        producer.join(200);
+        // queue is full, the producer must wait
+        assertTrue(producer.isAlive());
+        ldenData.lDayLevels.pop();
+        ldenData.popped(1, rowSize);
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertTrue(released.get());
+        // Abort release the waiting producer
+        ldenData.pushed(1, rowSize);
+        producer = new Thread(() -> released.set(ldenData.waitForSpace(ldenConfig)));
+        producer.start();
+        ldenConfig.aborted = true;
+        ldenData.signalAll();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertFalse(released.get());
+    }
+
+    @Test
+    public void testAttenuationMatrix() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("lw_roads.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        try(Statement st = connection.createStatement()) {
+            // Use only a subset of receivers
+            st.execute("SELECT UpdateGeometrySRID('RECEIVERS', 'THE_GEOM', 2154);");
+            st.execute("DELETE FROM RECEIVERS WHERE ST_DISTANCE('SRID=2154;POINT (223940.83614225042 6757305.252751735)'::geometry, THE_GEOM) > 300");
+        }
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true);
+        File matrixFile = new File("target/attenuation_matrix.bin");
+        ldenConfig.setAttenuationMatrixFile(matrixFile);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "LW_ROADS",
+                "RECEIVERS");
+
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+
+        Set<Long> receivers = new HashSet<>();
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(2);
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+            }
+        } finally {
+            factory.stop();
+        }
+        assertFalse(receivers.isEmpty());
+        assertTrue(matrixFile.exists());
+        assertFalse(new File(matrixFile.getAbsolutePath() + ".part").exists());
+
+        try(AttenuationMatrixFile.Reader matrix = new AttenuationMatrixFile.Reader(matrixFile)) {
+            assertEquals(receivers.size(), matrix.getReceiverIds().length);
+            // Same emission as the computation
+            AttenuationMatrixEmission.applyEmissions(connection, matrix, LDENConfig.TIME_PERIOD.DAY, "LW_ROADS",
+                    "LWD", "LDAY_MATRIX");
+            // Other emission scenario, +3 dB on all sources
+            try(Statement st = connection.createStatement()) {
+                StringBuilder query = new StringBuilder("UPDATE LW_ROADS SET ");
+                for(int frequency : matrix.getFrequencies()) {
+                    if(query.charAt(query.length() - 1) != ' ') {
+                        query.append(", ");
+                    }
+                    query.append("LWD").append(frequency).append(" = LWD").append(frequency).append(" + 3");
+                }
+                st.execute(query.toString());
+            }
+            AttenuationMatrixEmission.applyEmissions(connection, matrix, LDENConfig.TIME_PERIOD.DAY, "LW_ROADS",
+                    "LWD", "LDAY_MATRIX_3DB");
+        }
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT R.LAEQ, M.LAEQ, M3.LAEQ, R.HZ1000, " +
+                "M.HZ1000 FROM " + ldenConfig.lDayTable + " R, LDAY_MATRIX M, LDAY_MATRIX_3DB M3 WHERE " +
+                "R.IDRECEIVER = M.IDRECEIVER AND R.IDRECEIVER = M3.IDRECEIVER")) {
+            int count = 0;
+            while (rs.next()) {
+                assertEquals(rs.getDouble(1), rs.getDouble(2), 0.011);
+                if(rs.getDouble(2) > 0) {
+                    assertEquals(rs.getDouble(2) + 3, rs.getDouble(3), 0.011);
+                }
+                assertEquals(rs.getDouble(4), rs.getDouble(5), 0.011);
+                count++;
+            }
+            assertEquals(receivers.size(), count);
+        }
+    }
+
     @Test
     public void testTableGenerationFromTrafficNightOnlyLaeq() throws SQLException, IOException {
         SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
@@ -1188,4 +1406,214 @@ public class LDENPointNoiseMapFactoryTest {
             throw new IOException(ex);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Compute the night levels of the roads_traff scene
+     * @param journal Computation journal, may be null
+     * @param sqlFile SQL output file, null to write in database
+     * @param maximumCells Stop the computation (as a crash) after this number of cells, -1 to compute all the cells
+     * @return Computed cells
+     */
+    private int computeNightLevels(ComputationJournal journal, File sqlFile, int maximumCells) throws Exception {
+        return computeNightLevels(journal, sqlFile, maximumCells, LDENPointNoiseMapFactory.DEFAULT_EMISSION_CACHE_SIZE);
+    }
+
+    /**
+     * Compute the night levels of the roads_traff scene
+     * @param journal Computation journal, may be null
+     * @param sqlFile SQL output file, null to write in database
+     * @param maximumCells Stop the computation (as a crash) after this number of cells, -1 to compute all the cells
+     * @param emissionCacheSize Maximum number of sources of the emission cache, 0 to disable the cache
+     * @return Computed cells
+     */
+    private int computeNightLevels(ComputationJournal journal, File sqlFile, int maximumCells, int emissionCacheSize)
+            throws Exception {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true);
+        ldenConfig.setSqlOutputFile(sqlFile);
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        factory.setEmissionCacheSize(emissionCacheSize);
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF", "RECEIVERS");
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        pointNoiseMap.setComputationJournal(journal);
+        pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+        pointNoiseMap.setGridDim(4);
+        factory.start();
+        int computedCells = 0;
+        try {
+            Set<Long> receivers = new HashSet<>();
+            for (PointNoiseMap.CellIndex cellIndex : new TreeSet<>(pointNoiseMap.searchPopulatedCells(connection).keySet())) {
+                if (computedCells == maximumCells) {
+                    // The next cell is started and some results are written when the crash occurs
+                    CnossosPropagationData cellData = pointNoiseMap.prepareCell(connection,
+                            cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), new EmptyProgressVisitor(),
+                            receivers);
+                    ReceiverLevelsBlock block = new ReceiverLevelsBlock(cellData.receiversPk.get(0), 8);
+                    block.add(0, new double[]{50, 50, 50, 50, 50, 50, 50, 50});
+                    factory.getLdenData().lNightLevels.add(block);
+                    factory.getLdenData().pushed(1, 0);
+                    while (factory.getLdenData().queueSize.get() > 0) {
+                        Thread.sleep(10);
+                    }
+                    factory.cancel();
+                    return computedCells;
+                }
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(),
+                        new EmptyProgressVisitor(), receivers);
+                if (journal != null) {
+                    // the cell results are written before the checkpoint
+                    assertEquals(0, factory.getLdenData().queueSize.get());
+                }
+                computedCells++;
+            }
+        } finally {
+            factory.stop();
+        }
+        return computedCells;
+    }
+
+    private Map<Long, Double> readNightLevels() throws SQLException {
+        Map<Long, Double> levels = new HashMap<>();
+        try (ResultSet rs = connection.createStatement().executeQuery("SELECT IDRECEIVER, LAEQ FROM LNIGHT_RESULT")) {
+            while (rs.next()) {
+                assertNull(levels.put(rs.getLong(1), rs.getDouble(2)));
+            }
+        }
+        return levels;
+    }
+
+    @Test
+    public void testResumeComputation() throws Exception {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        int cellCount = computeNightLevels(null, null, -1);
+        assertTrue(cellCount > 4);
+        Map<Long, Double> expectedLevels = readNightLevels();
+        File journalFile = new File("target/resume_journal.bin");
+        File sqlFile = new File("target/resume_levels.sql.gz");
+        for (File outputFile : new File[]{null, sqlFile}) {
+            journalFile.delete();
+            connection.createStatement().execute("DROP TABLE IF EXISTS LNIGHT_RESULT");
+            try (ComputationJournal journal = new ComputationJournal(journalFile)) {
+                assertEquals(3, computeNightLevels(journal, outputFile, 3));
+            }
+            try (ComputationJournal journal = new ComputationJournal(journalFile)) {
+                assertTrue(journal.isResumed());
+                assertEquals(1, journal.getInterruptedCells().size());
+                assertEquals(cellCount - 3, computeNightLevels(journal, outputFile, -1));
+            }
+            if (outputFile != null) {
+                connection.createStatement().execute("DROP TABLE IF EXISTS LNIGHT_RESULT");
+                connection.createStatement().execute("RUNSCRIPT FROM '" + outputFile.getPath() + "' COMPRESSION GZIP");
+            }
+            Map<Long, Double> levels = readNightLevels();
+            assertEquals(expectedLevels.keySet(), levels.keySet());
+            for (Map.Entry<Long, Double> entry : expectedLevels.entrySet()) {
+                assertEquals(entry.getValue(), levels.get(entry.getKey()), 1e-6);
+            }
+        }
+    }
+
+    /**
+     * A crash during the first cell leaves only an interrupted cell in the journal, the computation is resumed
+     * without dropping the existing output
+     */
+    @Test
+    public void testResumeFirstCellCrash() throws Exception {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        int cellCount = computeNightLevels(null, null, -1);
+        Map<Long, Double> expectedLevels = readNightLevels();
+        File journalFile = new File("target/resume_first_cell_journal.bin");
+        File sqlFile = new File("target/resume_first_cell_levels.sql.gz");
+        for (File outputFile : new File[]{null, sqlFile}) {
+            journalFile.delete();
+            connection.createStatement().execute("DROP TABLE IF EXISTS LNIGHT_RESULT");
+            try (ComputationJournal journal = new ComputationJournal(journalFile)) {
+                assertEquals(0, computeNightLevels(journal, outputFile, 0));
+            }
+            try (ComputationJournal journal = new ComputationJournal(journalFile)) {
+                assertTrue(journal.isResumed());
+                assertFalse(journal.hasCompletedCells());
+                assertEquals(1, journal.getInterruptedCells().size());
+                assertEquals(cellCount, computeNightLevels(journal, outputFile, -1));
+            }
+            if (outputFile != null) {
+                connection.createStatement().execute("DROP TABLE IF EXISTS LNIGHT_RESULT");
+                connection.createStatement().execute("RUNSCRIPT FROM '" + outputFile.getPath() + "' COMPRESSION GZIP");
+            }
+            Map<Long, Double> levels = readNightLevels();
+            assertEquals(expectedLevels.keySet(), levels.keySet());
+            for (Map.Entry<Long, Double> entry : expectedLevels.entrySet()) {
+                assertEquals(entry.getValue(), levels.get(entry.getKey()), 1e-6);
+            }
+        }
+    }
+
+    /**
+     * The emission spectra reused from the previous cells give the same levels
+     */
+    @Test
+    public void testEmissionCache() throws Exception {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        int cellCount = computeNightLevels(null, null, -1, 0);
+        Map<Long, Double> expectedLevels = readNightLevels();
+        // A small cache replaces the sources of the first cells
+        for (int emissionCacheSize : new int[]{100000, 20}) {
+            connection.createStatement().execute("DROP TABLE IF EXISTS LNIGHT_RESULT");
+            assertEquals(cellCount, computeNightLevels(null, null, -1, emissionCacheSize));
+            Map<Long, Double> levels = readNightLevels();
+            assertEquals(expectedLevels.keySet(), levels.keySet());
+            for (Map.Entry<Long, Double> entry : expectedLevels.entrySet()) {
+                assertEquals(entry.getValue(), levels.get(entry.getKey()), 1e-6);
+            }
+        }
+    }
+
+    /**
+     * The emission cache is used only when its size is set
+     */
+    @Test
+    public void testEmissionCacheDisabledByDefault() {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        assertEquals(0, factory.getEmissionCacheSize());
+        assertNull(factory.getEmissionCache());
+    }
+
+    /**
+     * The emission cache is emptied when the emission parameters change between two cells
+     */
+    @Test
+    public void testEmissionCacheContext() {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY, new PropagationProcessPathData(false));
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        factory.sourcesTableName = "ROADS_TRAFF";
+        factory.emissionCache = new SourceEmissionCache(10, 8);
+        factory.create(new ProfileBuilder());
+        factory.emissionCache.put(1, 0, new double[SourceEmissionCache.PERIOD_COUNT][8]);
+        factory.create(new ProfileBuilder());
+        assertEquals(1, factory.getEmissionCache().size());
+        ldenConfig.setCoefficientVersion(1);
+        factory.create(new ProfileBuilder());
+        assertEquals(0, factory.getEmissionCache().size());
+        factory.emissionCache.put(1, 0, new double[SourceEmissionCache.PERIOD_COUNT][8]);
+        factory.sourcesTableName = "ROADS_TRAFF_2";
+        factory.create(new ProfileBuilder());
+        assertEquals(0, factory.getEmissionCache().size());
+    }
+}
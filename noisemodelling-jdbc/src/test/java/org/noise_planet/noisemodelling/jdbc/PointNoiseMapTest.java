@@ -1,6 +1,7 @@
 package org.noise_planet.noisemodelling.jdbc;
 
 import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.utilities.JDBCUtilities;
 import org.junit.After;
@@ -11,6 +12,7 @@ import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.io.WKTWriter;
+import org.noise_planet.noisemodelling.emission.directivity.CompiledDirectivitySphere;
 import org.noise_planet.noisemodelling.jdbc.Utils.JDBCComputeRaysOut;
 import org.noise_planet.noisemodelling.jdbc.Utils.JDBCPropagationData;
 import org.noise_planet.noisemodelling.pathfinder.*;
@@ -46,6 +48,66 @@ public class PointNoiseMapTest {
         }
     }
 
+    /** Receivers of the scene_with_dem.sql scene used by the cell tests */
+    private static final String[] DEM_SCENE_RECEIVERS = new String[]{"POINTZ(-72 41 11)", "POINTZ(-9 41 1.6)",
+            "POINTZ(70 11 7)", "POINTZ(-60 -20 4)", "POINTZ(50 -30 4)"};
+
+    /**
+     * Create the buildings, sources and DEM of scene_with_dem.sql with the given receivers
+     * @param receivers WKT of the receivers, with absolute altitude
+     */
+    private void createDemScene(String... receivers) throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(getRunScriptRes("scene_with_dem.sql"));
+            st.execute("DROP TABLE IF EXISTS RECEIVERS");
+            st.execute("CREATE TABLE RECEIVERS(the_geom GEOMETRY(POINTZ), GID SERIAL PRIMARY KEY)");
+            for(String receiver : receivers) {
+                st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('" + receiver + "')");
+            }
+        }
+    }
+
+    /**
+     * @return Initialized noise map of the scene created by {@link #createDemScene(String...)}, 2x2 cells, one
+     * thread, results kept in memory
+     */
+    private PointNoiseMap createDemSceneNoiseMap() throws Exception {
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOUND_SOURCE", "RECEIVERS");
+        pointNoiseMap.setComputeHorizontalDiffraction(true);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(1);
+        pointNoiseMap.setReceiverHasAbsoluteZCoordinates(true);
+        pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+        pointNoiseMap.setHeightField("HEIGHT");
+        pointNoiseMap.setDemTable("DEM");
+        pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+        pointNoiseMap.setGridDim(2);
+        pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+        pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+        pointNoiseMap.setThreadCount(1);
+        return pointNoiseMap;
+    }
+
+    /**
+     * Copy the levels of a computed cell
+     * @param out Result of the cell
+     * @param levels Levels by receiver * 1000 + source
+     */
+    private static void collectLevels(IComputeRaysOut out, Map<Long, double[]> levels) {
+        for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+            levels.put(v.receiverId * 1000 + v.sourceId, v.value);
+        }
+    }
+
+    private static void assertLevelsEquals(Map<Long, double[]> expectedLevels, Map<Long, double[]> levels,
+                                           double delta) {
+        assertEquals(expectedLevels.keySet(), levels.keySet());
+        assertFalse(levels.isEmpty());
+        for(Map.Entry<Long, double[]> entry : expectedLevels.entrySet()) {
+            assertArrayEquals(entry.getValue(), levels.get(entry.getKey()), delta);
+        }
+    }
+
 
 
     /**
@@ -103,6 +165,126 @@ public class PointNoiseMapTest {
         }
     }
 
+    /**
+     * Cells evaluated by the pipeline must give the same levels as the sequential evaluation
+     * @throws SQLException
+     */
+    @Test
+    public void testPipelinedCells() throws Exception {
+        createDemScene(DEM_SCENE_RECEIVERS);
+        PointNoiseMap pointNoiseMap = createDemSceneNoiseMap();
+        Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+        Map<Long, double[]> expectedLevels = new HashMap<>();
+        Set<Long> receivers = new HashSet<>();
+        for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+            collectLevels(pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(),
+                    cellIndex.getLongitudeIndex(), new EmptyProgressVisitor(), receivers), expectedLevels);
+        }
+
+        Map<Long, double[]> levels = new HashMap<>();
+        List<PointNoiseMap.CellIndex> computedCells = new ArrayList<>();
+        PointNoiseMapPipeline pipeline = new PointNoiseMapPipeline(pointNoiseMap);
+        // Tiny budget, only one cell is prefetched
+        pipeline.setMemoryBudget(1);
+        pipeline.run(connection, new TreeSet<>(cells.keySet()), new EmptyProgressVisitor(), new HashSet<>(),
+                (cellIndex, out) -> {
+            computedCells.add(cellIndex);
+            collectLevels(out, levels);
+        });
+        assertEquals(new ArrayList<>(new TreeSet<>(cells.keySet())), computedCells);
+        assertLevelsEquals(expectedLevels, levels, 1e-12);
+    }
+
+    /**
+     * An error of the preparation thread, even if it is not an Exception, must be thrown by the calling thread
+     */
+    @Test
+    public void testPipelinePreparationError() throws Exception {
+        AtomicInteger computedCells = new AtomicInteger();
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOUND_SOURCE", "RECEIVERS") {
+            @Override
+            public CnossosPropagationData prepareCell(Connection connection, int cellI, int cellJ,
+                                                      ProgressVisitor progression, Set<Long> skipReceivers) {
+                throw new OutOfMemoryError("cell data");
+            }
+        };
+        PointNoiseMapPipeline pipeline = new PointNoiseMapPipeline(pointNoiseMap);
+        try {
+            pipeline.run(connection, Collections.singletonList(new PointNoiseMap.CellIndex(0, 0)),
+                    new EmptyProgressVisitor(), new HashSet<>(), (cellIndex, out) -> computedCells.incrementAndGet());
+            fail("The preparation error must be thrown");
+        } catch (OutOfMemoryError ex) {
+            assertEquals("cell data", ex.getMessage());
+        }
+        assertEquals(0, computedCells.get());
+    }
+
+    /**
+     * Cells using the shared ProfileBuilder must give the same levels as cells with their own ProfileBuilder
+     * @throws SQLException
+     */
+    @Test
+    public void testSharedProfileBuilder() throws Exception {
+        createDemScene(DEM_SCENE_RECEIVERS);
+        Map<Long, double[]> expectedLevels = new HashMap<>();
+        Map<Long, double[]> levels = new HashMap<>();
+        for(boolean share : new boolean[]{false, true}) {
+            PointNoiseMap pointNoiseMap = createDemSceneNoiseMap();
+            pointNoiseMap.setShareProfileBuilder(share);
+            Map<Long, double[]> cellLevels = share ? levels : expectedLevels;
+            Set<Long> receivers = new HashSet<>();
+            ProfileBuilder firstBuilder = null;
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(pointNoiseMap.searchPopulatedCells(connection).keySet())) {
+                CnossosPropagationData cellData = pointNoiseMap.prepareCell(connection,
+                        cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), new EmptyProgressVisitor(),
+                        receivers);
+                if(firstBuilder == null) {
+                    firstBuilder = cellData.profileBuilder;
+                } else {
+                    assertEquals(share, firstBuilder == cellData.profileBuilder);
+                }
+                collectLevels(pointNoiseMap.computeCell(cellData), cellLevels);
+            }
+        }
+        assertLevelsEquals(expectedLevels, levels, 1e-6);
+    }
+
+    /**
+     * Balanced cells must give the same levels as the uniform grid
+     * @throws SQLException
+     */
+    @Test
+    public void testBalancedCells() throws Exception {
+        String[] sceneReceivers = Arrays.copyOf(DEM_SCENE_RECEIVERS, DEM_SCENE_RECEIVERS.length + 1);
+        sceneReceivers[DEM_SCENE_RECEIVERS.length] = "POINTZ(52 -31 4)";
+        createDemScene(sceneReceivers);
+        Map<Long, double[]> expectedLevels = new HashMap<>();
+        Map<Long, double[]> levels = new HashMap<>();
+        for(boolean balanced : new boolean[]{false, true}) {
+            PointNoiseMap pointNoiseMap = createDemSceneNoiseMap();
+            Map<PointNoiseMap.CellIndex, Integer> cells;
+            if(balanced) {
+                cells = pointNoiseMap.searchBalancedCells(connection, 3, 2);
+                int receiverCount = 0;
+                for(int cellReceivers : cells.values()) {
+                    assertTrue(cellReceivers <= 2);
+                    receiverCount += cellReceivers;
+                }
+                assertEquals(6, receiverCount);
+            } else {
+                cells = pointNoiseMap.searchPopulatedCells(connection);
+            }
+            Map<Long, double[]> cellLevels = balanced ? levels : expectedLevels;
+            Set<Long> receivers = new HashSet<>();
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                collectLevels(pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(),
+                        cellIndex.getLongitudeIndex(), new EmptyProgressVisitor(), receivers), cellLevels);
+            }
+            assertEquals(6, receivers.size());
+        }
+        assertLevelsEquals(expectedLevels, levels, 1e-6);
+    }
+
     @Test
     public void testGroundSurface() throws Exception {
         try(Statement st = connection.createStatement()) {
@@ -220,6 +402,51 @@ public class PointNoiseMapTest {
         return sb.toString();
     }
 
+    /**
+     * Create an empty building table and one point source of 91 dB with the train directivity 4
+     * @param receiversSql Query creating and filling the receivers table
+     */
+    private void createPointDirectivityScene(String receiversSql) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(pk serial  PRIMARY KEY, the_geom geometry, height real)");
+            st.execute(createSource(new GeometryFactory().createPoint(new Coordinate(223915.72,6757480.22,0.0 )),
+                    91, new Orientation(90,15,0),
+                    4));
+            st.execute(receiversSql);
+        }
+    }
+
+    /**
+     * @param directivityResolution Angular step of the compiled directivity, 0 to use the directivity functions
+     * @return Initialized noise map of the point directivity scene, one cell, direct field only, rays kept in memory
+     */
+    private PointNoiseMap createPointDirectivityNoiseMap(double directivityResolution) throws SQLException {
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_GEOM", "RECEIVERS");
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        pointNoiseMap.setReceiverHasAbsoluteZCoordinates(false);
+        pointNoiseMap.setMaximumPropagationDistance(1000);
+        pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+        pointNoiseMap.setHeightField("HEIGHT");
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setExportRaysMethod(LDENConfig.ExportRaysMethods.TO_MEMORY);
+        ldenConfig.setCoefficientVersion(1);
+        LDENPointNoiseMapFactory ldenPointNoiseMapFactory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        // Use train directivity functions instead of discrete directivity
+        ldenPointNoiseMapFactory.insertTrainDirectivity();
+        ldenPointNoiseMapFactory.setDirectivityResolution(directivityResolution);
+
+        pointNoiseMap.setPropagationProcessDataFactory(ldenPointNoiseMapFactory);
+        pointNoiseMap.setComputeRaysOutFactory(ldenPointNoiseMapFactory);
+
+        pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+        pointNoiseMap.setThreadCount(1);
+        pointNoiseMap.setGridDim(1);
+        return pointNoiseMap;
+    }
+
 
     @Test
     public void testPointDirectivity() throws Exception {
@@ -261,12 +488,12 @@ public class PointNoiseMapTest {
                     if(out instanceof LDENComputeRaysOut) {
                         LDENComputeRaysOut rout = (LDENComputeRaysOut) out;
 
-                        ComputeRaysOutAttenuation.VerticeSL sl = rout.ldenData.lDenLevels.pop();
-                        assertEquals(1, sl.receiverId);
-                        assertEquals(73.3, sl.value[0], 1);
+                        ReceiverLevelsBlock sl = rout.ldenData.lDenLevels.pop();
+                        assertEquals(1, sl.getReceiverId());
+                        assertEquals(73.3, sl.getLevels()[0], 1);
                         sl = rout.ldenData.lDenLevels.pop();
-                        assertEquals(2, sl.receiverId);
-                        assertEquals(53.3, sl.value[0], 1);
+                        assertEquals(2, sl.getReceiverId());
+                        assertEquals(53.3, sl.getLevels()[0], 1);
                         assertTrue(rout.ldenData.lDenLevels.isEmpty());
 
                         List<PropagationPath> propagationPaths = rout.getPropagationPaths();
@@ -286,6 +513,36 @@ public class PointNoiseMapTest {
         }
     }
 
+    /**
+     * The directivity interpolated from the compiled grids is close to the directivity functions
+     */
+    @Test
+    public void testPointDirectivityCompiled() throws Exception {
+        createPointDirectivityScene("create table receivers(id serial PRIMARY KEY, the_geom GEOMETRY(POINTZ));\n" +
+                "insert into receivers(the_geom) values ('POINTZ (223915.72 6757490.22 0.0)');" +
+                "insert into receivers(the_geom) values ('POINTZ (223925.72 6757480.22 0.0)');" +
+                "insert into receivers(the_geom) values ('POINTZ (223910.12 6757473.02 6.0)');");
+        List<double[]> expectedLevels = null;
+        for (double resolution : new double[]{0, CompiledDirectivitySphere.DEFAULT_ANGULAR_RESOLUTION}) {
+            PointNoiseMap pointNoiseMap = createPointDirectivityNoiseMap(resolution);
+            IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, 0, 0, new EmptyProgressVisitor(),
+                    new HashSet<>());
+            assertTrue(out instanceof LDENComputeRaysOut);
+            List<double[]> levels = new ArrayList<>();
+            for (ReceiverLevelsBlock sl : ((LDENComputeRaysOut) out).ldenData.lDenLevels) {
+                levels.add(sl.getRowLevels(0));
+            }
+            assertEquals(3, levels.size());
+            if (expectedLevels == null) {
+                expectedLevels = levels;
+            } else {
+                for (int i = 0; i < levels.size(); i++) {
+                    assertArrayEquals(expectedLevels.get(i), levels.get(i), 0.05);
+                }
+            }
+        }
+    }
+
     public static void assertOrientationEquals(Orientation orientationA, Orientation orientationB, double epsilon) {
         assertEquals(orientationA.pitch, orientationB.pitch, epsilon);
         assertEquals(orientationA.roll, orientationB.roll, epsilon);
@@ -343,12 +600,12 @@ public class PointNoiseMapTest {
 
                         assertEquals(2, rout.ldenData.lDenLevels.size());
 
-                        ComputeRaysOutAttenuation.VerticeSL sl = rout.ldenData.lDenLevels.pop();
-                        assertEquals(1, sl.receiverId);
-                        assertEquals(68.3, sl.value[0], 1);
+                        ReceiverLevelsBlock sl = rout.ldenData.lDenLevels.pop();
+                        assertEquals(1, sl.getReceiverId());
+                        assertEquals(68.3, sl.getLevels()[0], 1);
                         sl = rout.ldenData.lDenLevels.pop();
-                        assertEquals(2, sl.receiverId);
-                        assertEquals(70.8, sl.value[0], 1);
+                        assertEquals(2, sl.getReceiverId());
+                        assertEquals(70.8, sl.getLevels()[0], 1);
 
                         assertEquals(3 , rout.propagationPaths.size());
                         List<PropagationPath> propagationPaths = rout.getPropagationPaths();
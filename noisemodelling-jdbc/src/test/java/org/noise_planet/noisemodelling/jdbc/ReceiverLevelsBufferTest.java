@@ -0,0 +1,46 @@
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumDbArray;
+
+public class ReceiverLevelsBufferTest {
+
+    @Test
+    public void testMergeAndClear() {
+        ReceiverLevelsBuffer buffer = new ReceiverLevelsBuffer(3, 2);
+        double[] a = new double[]{-20, -30};
+        double[] b = new double[]{-25, -28};
+        // many sources in order to grow the buffer
+        for(int sourceId = 40; sourceId >= 0; sourceId -= 2) {
+            buffer.add(sourceId, 0, a);
+        }
+        buffer.add(4, 0, b);
+        buffer.add(4, 2, b);
+        assertEquals(21, buffer.size());
+        buffer.sortBySource();
+        for(int position = 0; position < buffer.size(); position++) {
+            assertEquals(position * 2, buffer.getSource(position));
+        }
+        // source 4 is at position 2
+        double[] expected = sumDbArray(a, b);
+        int offset = buffer.getOffset(2, 0);
+        assertEquals(expected[0], buffer.getLevels()[offset], 1e-12);
+        assertEquals(expected[1], buffer.getLevels()[offset + 1], 1e-12);
+        assertFalse(buffer.hasLevels(2, 1));
+        assertTrue(buffer.hasLevels(2, 2));
+        offset = buffer.getOffset(2, 2);
+        assertEquals(b[0], buffer.getLevels()[offset], 1e-12);
+        assertFalse(buffer.hasLevels(0, 2));
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        buffer.add(4, 1, a);
+        assertEquals(1, buffer.size());
+        assertEquals(4, buffer.getSource(0));
+        assertFalse(buffer.hasLevels(0, 0));
+        assertTrue(buffer.hasLevels(0, 1));
+        assertEquals(a[1], buffer.getLevels()[buffer.getOffset(0, 1) + 1], 1e-12);
+    }
+}
@@ -0,0 +1,91 @@
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SourceEmissionCacheTest {
+
+    private static double[][] spectra(long pk, int bandCount) {
+        double[][] spectra = new double[SourceEmissionCache.PERIOD_COUNT][bandCount];
+        for (int period = 0; period < spectra.length; period++) {
+            for (int band = 0; band < bandCount; band++) {
+                spectra[period][band] = pk * 100 + period * 10 + band;
+            }
+        }
+        return spectra;
+    }
+
+    @Test
+    public void testGetPut() {
+        SourceEmissionCache cache = new SourceEmissionCache(10, 8);
+        assertNull(cache.get(5, 0));
+        cache.put(5, 0, spectra(5, 8));
+        double[][] cached = cache.get(5, 0);
+        assertArrayEquals(spectra(5, 8), cached);
+        // returned arrays are copies
+        cached[0][0] = -1;
+        assertArrayEquals(spectra(5, 8), cache.get(5, 0));
+        cache.put(5, 0, spectra(6, 8));
+        assertArrayEquals(spectra(6, 8), cache.get(5, 0));
+        // computed with another road slope
+        assertNull(cache.get(5, 1.5));
+        cache.put(5, 1.5, spectra(7, 8));
+        assertArrayEquals(spectra(7, 8), cache.get(5, 1.5));
+        assertEquals(1, cache.size());
+        assertEquals(4, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testContext() {
+        SourceEmissionCache cache = new SourceEmissionCache(10, 8);
+        assertTrue(cache.setContext("ROADS 2"));
+        cache.put(5, 0, spectra(5, 8));
+        assertFalse(cache.setContext("ROADS 2"));
+        assertArrayEquals(spectra(5, 8), cache.get(5, 0));
+        assertTrue(cache.setContext("ROADS 1"));
+        assertEquals("ROADS 1", cache.getContext());
+        assertEquals(0, cache.size());
+        assertNull(cache.get(5, 0));
+    }
+
+    /**
+     * The oldest sources are replaced, the content match a map of the last inserted sources
+     */
+    @Test
+    public void testEviction() {
+        int capacity = 50;
+        SourceEmissionCache cache = new SourceEmissionCache(capacity, 3);
+        Random random = new Random(42);
+        long[] insertionOrder = new long[5000];
+        Map<Long, Integer> lastInsertion = new HashMap<>();
+        int insertions = 0;
+        for (int i = 0; i < insertionOrder.length; i++) {
+            // small key range so keys collide in the hash table and are inserted again
+            long pk = random.nextInt(200) * 1024L;
+            if (cache.get(pk, 0) == null) {
+                cache.put(pk, 0, spectra(pk, 3));
+                insertionOrder[insertions] = pk;
+                lastInsertion.put(pk, insertions++);
+            }
+            assertTrue(cache.size() <= capacity);
+        }
+        assertEquals(capacity, cache.size());
+        for (Map.Entry<Long, Integer> entry : lastInsertion.entrySet()) {
+            double[][] cached = cache.get(entry.getKey(), 0);
+            if (entry.getValue() >= insertions - capacity) {
+                assertArrayEquals(spectra(entry.getKey(), 3), cached);
+            } else {
+                assertNull(cached);
+            }
+        }
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(insertionOrder[insertions - 1], 0));
+    }
+}
@@ -0,0 +1,249 @@
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.Test;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
+
+public class TrafficMonteCarloTest {
+    private static final int[] FREQUENCIES = new int[]{63, 125, 250, 500, 1000, 2000, 4000, 8000};
+    private static final double[] A_WEIGHTING = new double[]{-26.2, -16.1, -8.6, -3.2, 0, 1.2, 1.0, -1.1};
+
+    private static double[] flat(double value) {
+        double[] levels = new double[FREQUENCIES.length];
+        Arrays.fill(levels, value);
+        return levels;
+    }
+
+    private static List<ComputeRaysOutAttenuation.VerticeSL> createAttenuation(int receiverCount, int sourceCount) {
+        Random random = new Random(42);
+        List<ComputeRaysOutAttenuation.VerticeSL> attenuation = new ArrayList<>();
+        for (int receiver = 0; receiver < receiverCount; receiver++) {
+            for (int source = 0; source < sourceCount; source++) {
+                if (random.nextDouble() < 0.5) {
+                    attenuation.add(new ComputeRaysOutAttenuation.VerticeSL(receiver, source,
+                            flat(-40 - random.nextDouble() * 30)));
+                }
+            }
+        }
+        return attenuation;
+    }
+
+    /**
+     * With a probability of 1 all the iterations give the same level
+     */
+    @Test
+    public void testConstantTraffic() {
+        List<ComputeRaysOutAttenuation.VerticeSL> attenuation = new ArrayList<>();
+        attenuation.add(new ComputeRaysOutAttenuation.VerticeSL(1, 10, flat(-50)));
+        attenuation.add(new ComputeRaysOutAttenuation.VerticeSL(1, 11, flat(-60)));
+        // ignored because of the NaN value
+        double[] invalid = flat(-30);
+        invalid[3] = Double.NaN;
+        attenuation.add(new ComputeRaysOutAttenuation.VerticeSL(1, 12, invalid));
+        TrafficMonteCarlo monteCarlo = new TrafficMonteCarlo(attenuation, FREQUENCIES);
+        monteCarlo.setVehicleCombination(TrafficMonteCarlo.VehicleCombination.ENERGETIC_SUM);
+        assertEquals(1, monteCarlo.getReceiverCount());
+        assertEquals(2, monteCarlo.getSourceCount());
+        assertTrue(monteCarlo.setSource(10, 1, flat(100), 1, flat(100)));
+        assertTrue(monteCarlo.setSource(11, 1, flat(90), 0, flat(110)));
+        assertFalse(monteCarlo.setSource(12, 1, flat(100), 1, flat(100)));
+        List<TrafficMonteCarlo.ReceiverStatistics> statistics = monteCarlo.run(100, null);
+        assertEquals(1, statistics.size());
+        TrafficMonteCarlo.ReceiverStatistics receiver = statistics.get(0);
+        assertEquals(1, receiver.receiverId);
+        double expected = wToDba(dbaToW(100 - 50) * 2 + dbaToW(90 - 60));
+        for (double leq : receiver.leq) {
+            assertEquals(expected, leq, 1e-9);
+        }
+        double expectedA = wToDba(sumArray(dbaToW(sumArray(flat(expected), A_WEIGHTING))));
+        assertEquals(expectedA, receiver.laeq, 1e-9);
+        assertEquals(expectedA, receiver.la10, 1e-9);
+        assertEquals(expectedA, receiver.la50, 1e-9);
+        assertEquals(expectedA, receiver.la90, 1e-9);
+    }
+
+    /**
+     * Default model of the Traffic_Probabilistic_Modelling script: 10 log10(0.5 (10^(LV/10) + 10^(HV/10))) with 0 dB
+     * for an absent vehicle
+     */
+    @Test
+    public void testAverageWithAbsentVehicle() {
+        List<ComputeRaysOutAttenuation.VerticeSL> attenuation = new ArrayList<>();
+        attenuation.add(new ComputeRaysOutAttenuation.VerticeSL(1, 10, flat(-50)));
+        attenuation.add(new ComputeRaysOutAttenuation.VerticeSL(1, 11, flat(-60)));
+        attenuation.add(new ComputeRaysOutAttenuation.VerticeSL(2, 12, flat(-40)));
+        TrafficMonteCarlo monteCarlo = new TrafficMonteCarlo(attenuation, FREQUENCIES);
+        assertEquals(TrafficMonteCarlo.VehicleCombination.AVERAGE_WITH_ABSENT_VEHICLE,
+                monteCarlo.getVehicleCombination());
+        // light vehicle only
+        monteCarlo.setSource(10, 1, flat(100), 0, flat(110));
+        // light and heavy vehicles
+        monteCarlo.setSource(11, 1, flat(90), 1, flat(100));
+        // never any vehicle, the source is ignored
+        monteCarlo.setSource(12, 0, flat(100), 0, flat(100));
+        List<TrafficMonteCarlo.ReceiverStatistics> statistics = monteCarlo.run(10, null);
+        assertEquals(2, statistics.size());
+        // 10 log10(0.5 (10^10 + 1)) - 50 = 46.9897 dB and 10 log10(0.5 (10^9 + 10^10)) - 60 = 37.4036 dB
+        double expected = 10 * Math.log10(Math.pow(10, 4.69897) + Math.pow(10, 3.74036));
+        for (double leq : statistics.get(0).leq) {
+            assertEquals(expected, leq, 1e-4);
+        }
+        for (double leq : statistics.get(1).leq) {
+            assertEquals(TrafficMonteCarlo.NO_LEVEL, leq, 0);
+        }
+    }
+
+    @Test
+    public void testPresenceProbability() {
+        List<ComputeRaysOutAttenuation.VerticeSL> attenuation = new ArrayList<>();
+        attenuation.add(new ComputeRaysOutAttenuation.VerticeSL(1, 10, flat(-50)));
+        TrafficMonteCarlo monteCarlo = new TrafficMonteCarlo(attenuation, FREQUENCIES);
+        monteCarlo.setVehicleCombination(TrafficMonteCarlo.VehicleCombination.ENERGETIC_SUM);
+        monteCarlo.setSource(10, 0.3, flat(100), 0, flat(100));
+        TrafficMonteCarlo.ReceiverStatistics receiver = monteCarlo.run(5000, null).get(0);
+        // the vehicle is present during 30 % of the iterations
+        assertEquals(wToDba(0.3 * dbaToW(50)), receiver.leq[0], 0.2);
+        double levelA = wToDba(sumArray(dbaToW(sumArray(flat(50), A_WEIGHTING))));
+        assertEquals(levelA, receiver.la10, 1e-9);
+        assertEquals(TrafficMonteCarlo.NO_LEVEL, receiver.la50, 0);
+        assertEquals(TrafficMonteCarlo.NO_LEVEL, receiver.la90, 0);
+    }
+
+    /**
+     * The results depend on the seed only
+     */
+    @Test
+    public void testThreadCount() {
+        TrafficMonteCarlo monteCarlo = new TrafficMonteCarlo(createAttenuation(300, 80), FREQUENCIES);
+        for (int source = 0; source < 80; source++) {
+            monteCarlo.setSource(source, 0.2 + source / 200.0, flat(95), 0.05, flat(105));
+        }
+        monteCarlo.setSeed(7);
+        monteCarlo.setThreadCount(1);
+        List<TrafficMonteCarlo.ReceiverStatistics> expected = monteCarlo.run(150, null);
+        monteCarlo.setThreadCount(4);
+        List<TrafficMonteCarlo.ReceiverStatistics> got = monteCarlo.run(150, null);
+        assertEquals(300, got.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).receiverId, got.get(i).receiverId);
+            assertArrayEquals(expected.get(i).leq, got.get(i).leq, 0);
+            assertEquals(expected.get(i).la10, got.get(i).la10, 0);
+            assertEquals(expected.get(i).la50, got.get(i).la50, 0);
+            assertEquals(expected.get(i).la90, got.get(i).la90, 0);
+        }
+        monteCarlo.setSeed(8);
+        assertNotEquals(expected.get(0).la50, monteCarlo.run(150, null).get(0).la50, 0);
+    }
+
+    @Test
+    public void testPercentile() {
+        double[] values = new double[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(9, TrafficMonteCarlo.percentile(values, 10, 0.9), 0);
+        assertEquals(5, TrafficMonteCarlo.percentile(values, 10, 0.5), 0);
+        assertEquals(1, TrafficMonteCarlo.percentile(values, 10, 0.1), 0);
+        assertEquals(1, TrafficMonteCarlo.percentile(values, 1, 0.9), 0);
+    }
+
+    /**
+     * Levels of each iteration, in the former L_PROBA table format
+     */
+    @Test
+    public void testExportIterationLevels() throws Exception {
+        try (Connection connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                TrafficMonteCarloTest.class.getSimpleName(), true, ""))) {
+            List<ComputeRaysOutAttenuation.VerticeSL> attenuation = new ArrayList<>();
+            attenuation.add(new ComputeRaysOutAttenuation.VerticeSL(1, 10, flat(-50)));
+            attenuation.add(new ComputeRaysOutAttenuation.VerticeSL(2, 11, flat(-50)));
+            TrafficMonteCarlo monteCarlo = new TrafficMonteCarlo(attenuation, FREQUENCIES);
+            monteCarlo.setSource(10, 1, flat(100), 0, flat(100));
+            monteCarlo.setSource(11, 0.5, flat(100), 0, flat(100));
+            monteCarlo.exportIterationLevels(connection, "L_PROBA", 200, null);
+            try (Statement st = connection.createStatement()) {
+                try (ResultSet rs = st.executeQuery("SELECT COUNT(*), MIN(IT), MAX(IT), MIN(HZ63), MAX(HZ8000)" +
+                        " FROM L_PROBA WHERE IDRECEIVER = 1")) {
+                    assertTrue(rs.next());
+                    assertEquals(200, rs.getInt(1));
+                    assertEquals(1, rs.getInt(2));
+                    assertEquals(200, rs.getInt(3));
+                    double expected = 10 * Math.log10(0.5 * (1e10 + 1)) - 50;
+                    assertEquals(expected, rs.getDouble(4), 1e-9);
+                    assertEquals(expected, rs.getDouble(5), 1e-9);
+                }
+                // no row when the vehicle is absent
+                try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM L_PROBA WHERE IDRECEIVER = 2")) {
+                    assertTrue(rs.next());
+                    assertEquals(100, rs.getInt(1), 30);
+                }
+            }
+        }
+    }
+
+    /**
+     * The chunks evaluated in parallel write the same rows as a single thread
+     */
+    @Test
+    public void testExportIterationLevelsParallel() throws Exception {
+        try (Connection connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                TrafficMonteCarloTest.class.getSimpleName(), true, ""))) {
+            TrafficMonteCarlo monteCarlo = new TrafficMonteCarlo(createAttenuation(300, 80), FREQUENCIES);
+            for (int source = 0; source < 80; source++) {
+                monteCarlo.setSource(source, 0.02 + source / 2000.0, flat(95), 0.005, flat(105));
+            }
+            monteCarlo.setThreadCount(1);
+            monteCarlo.exportIterationLevels(connection, "L_PROBA_EXPECTED", 37, null);
+            monteCarlo.setThreadCount(4);
+            monteCarlo.exportIterationLevels(connection, "L_PROBA", 37, null);
+            try (Statement st = connection.createStatement()) {
+                try (ResultSet rs = st.executeQuery("SELECT (SELECT COUNT(*) FROM L_PROBA_EXPECTED)," +
+                        " (SELECT COUNT(*) FROM L_PROBA)")) {
+                    assertTrue(rs.next());
+                    assertTrue(rs.getInt(1) > 0);
+                    assertEquals(rs.getInt(1), rs.getInt(2));
+                }
+                try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM (SELECT * FROM L_PROBA_EXPECTED" +
+                        " EXCEPT SELECT * FROM L_PROBA)")) {
+                    assertTrue(rs.next());
+                    assertEquals(0, rs.getInt(1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        try (Connection connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                TrafficMonteCarloTest.class.getSimpleName(), true, ""))) {
+            TrafficMonteCarlo monteCarlo = new TrafficMonteCarlo(createAttenuation(20, 10), FREQUENCIES);
+            for (int source = 0; source < 10; source++) {
+                monteCarlo.setSource(source, 0.5, flat(95), 0.1, flat(105));
+            }
+            List<TrafficMonteCarlo.ReceiverStatistics> statistics = monteCarlo.run(100, null);
+            monteCarlo.exportStatistics(connection, "L_PROBA_STATS", statistics);
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT * FROM L_PROBA_STATS ORDER BY IDRECEIVER")) {
+                int row = 0;
+                while (rs.next()) {
+                    TrafficMonteCarlo.ReceiverStatistics receiver = statistics.get(row++);
+                    assertEquals(receiver.receiverId, rs.getLong("IDRECEIVER"));
+                    assertEquals(receiver.leq[4], rs.getDouble("HZ1000"), 0.01);
+                    assertEquals(receiver.laeq, rs.getDouble("LAEQ"), 0.01);
+                    assertEquals(receiver.la10, rs.getDouble("LA10"), 0.01);
+                    assertEquals(receiver.la90, rs.getDouble("LA90"), 0.01);
+                }
+                assertEquals(statistics.size(), row);
+            }
+        }
+    }
+}
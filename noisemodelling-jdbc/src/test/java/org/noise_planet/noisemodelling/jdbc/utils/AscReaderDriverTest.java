@@ -29,6 +29,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.ElevationGrid;
 
 import java.io.File;
 import java.io.IOException;
@@ -297,4 +298,29 @@ public class AscReaderDriverTest {
         }
     }
 
+    @Test
+    public void testReadElevationGrid() throws IOException {
+        AscReaderDriver reader = new AscReaderDriver();
+        ElevationGrid grid = reader.readElevationGrid(new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()),
+                new File("target/precip30min.grid"));
+        assertEquals(15, grid.getColumns());
+        assertEquals(20, grid.getRows());
+        // Check first read cell
+        assertEquals(234, grid.getZ(-179.75, -80.25), 1e-6);
+        // Check last read cell
+        assertEquals(114, grid.getZ(-172.75, -89.75), 1e-6);
+        // Check nodata cell
+        assertTrue(Double.isNaN(grid.getZ(-177.25, -84.25)));
+        // Between the two first cells
+        assertEquals((234 + 212) / 2.0, grid.getZ(-179.5, -80.25), 1e-6);
+
+        reader.setDownScale(5);
+        grid = reader.readElevationGrid(new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()),
+                new File("target/precip30min_downscale.grid"));
+        assertEquals(15 / 5, grid.getColumns());
+        assertEquals(20 / 5, grid.getRows());
+        assertEquals(2.5, grid.getCellSize(), 1e-6);
+        assertEquals(234, grid.getZ(-179.75, -80.25), 1e-6);
+    }
+
 }
@@ -0,0 +1,95 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class AsciiGridTokenizerTest {
+
+    private static AsciiGridTokenizer createTokenizer(String content, int bufferSize) {
+        return new AsciiGridTokenizer(Channels.newChannel(new ByteArrayInputStream(
+                content.getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8, bufferSize);
+    }
+
+    @Test
+    public void testParseDouble() throws IOException {
+        List<String> words = new ArrayList<>(List.of("0", "-0", "+12", "-9999", "234", "1.5", "-0.000125", ".5", "5.",
+                "1e3", "1.25E-4", "-3.4028235E38", "4.9E-324", "123456789012345678901234", "0.1", "0.3",
+                "9007199254740993", "1e-400", "1e400", "12.000000000000000000001", "NaN", "-Infinity", "2d"));
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            words.add(Double.toString((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20)));
+            words.add(String.format(Locale.ROOT, "%." + random.nextInt(8) + "f",
+                    (random.nextDouble() - 0.5) * 1e5));
+        }
+        // the small buffer splits the words
+        try (AsciiGridTokenizer tokenizer = createTokenizer("  " + String.join(" \r\n\t", words) + "\n", 7)) {
+            for (String word : words) {
+                double value = tokenizer.nextDouble();
+                assertEquals(word, Double.doubleToLongBits(Double.parseDouble(word)), Double.doubleToLongBits(value));
+                assertEquals(word, tokenizer.getLastWord());
+            }
+            assertThrows(EOFException.class, tokenizer::nextDouble);
+        }
+    }
+
+    @Test
+    public void testWords() throws IOException {
+        try (AsciiGridTokenizer tokenizer = createTokenizer("ncols 4\nNODATA_value -9999\n1 x2 3 4", 5)) {
+            assertEquals("ncols", tokenizer.nextWord());
+            assertEquals(4, tokenizer.nextDouble(), 0);
+            tokenizer.skipWord();
+            assertEquals("NODATA_value", tokenizer.getLastWord());
+            String value = tokenizer.nextWord();
+            tokenizer.pushBack(value);
+            assertEquals(-9999, tokenizer.nextDouble(), 0);
+            assertEquals(1, tokenizer.nextDouble(), 0);
+            assertThrows(NumberFormatException.class, tokenizer::nextDouble);
+            assertEquals("x2", tokenizer.getLastWord());
+            tokenizer.skipWord();
+            assertEquals(4, tokenizer.nextDouble(), 0);
+            assertThrows(EOFException.class, tokenizer::skipWord);
+        }
+    }
+
+    @Test
+    public void testReadCompressed() throws IOException {
+        File ascFile = new File(AsciiGridTokenizerTest.class.getResource("precip30min.asc").getPath());
+        File gzFile = new File("target/precip30min.asc.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(new FileOutputStream(gzFile))) {
+            Files.copy(ascFile.toPath(), outputStream);
+        }
+        try (AsciiGridTokenizer ascTokenizer = AsciiGridTokenizer.open(ascFile, StandardCharsets.UTF_8);
+             AsciiGridTokenizer gzTokenizer = AsciiGridTokenizer.open(gzFile, StandardCharsets.UTF_8)) {
+            int words = 0;
+            while (true) {
+                String word;
+                try {
+                    word = ascTokenizer.nextWord();
+                } catch (EOFException ex) {
+                    break;
+                }
+                assertEquals(word, gzTokenizer.nextWord());
+                words++;
+            }
+            assertThrows(EOFException.class, gzTokenizer::nextWord);
+            String content = new String(Files.readAllBytes(ascFile.toPath()), StandardCharsets.UTF_8);
+            assertEquals(content.trim().split("\\s+").length, words);
+        }
+    }
+}
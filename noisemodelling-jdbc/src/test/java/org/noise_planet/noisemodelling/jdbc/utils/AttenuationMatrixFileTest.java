@@ -0,0 +1,71 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AttenuationMatrixFileTest {
+
+    @Test
+    public void testWriteReadApply() throws IOException {
+        File file = new File("target/attenuation_matrix_test.bin");
+        int[] frequencies = new int[]{500, 1000};
+        // 2 periods, 2 bands
+        try (AttenuationMatrixFile.Writer writer = new AttenuationMatrixFile.Writer(file, 2, frequencies)) {
+            assertEquals(4, writer.getStride());
+            // receivers and sources are not sorted
+            writer.addReceiver(30, 2, new long[]{7, 3}, new float[]{0.1f, 0.2f, 0.3f, 0.4f, 0.01f, 0.02f, 0.03f, 0.04f});
+            writer.addReceiver(10, 1, new long[]{5}, new float[]{1, 2, 3, 4});
+            writer.addReceiver(20, 0, new long[0], new float[0]);
+            writer.finish();
+        }
+        assertFalse(new File(file.getAbsolutePath() + ".part").exists());
+        try (AttenuationMatrixFile.Reader reader = new AttenuationMatrixFile.Reader(file)) {
+            assertEquals(2, reader.getPeriodCount());
+            assertArrayEquals(frequencies, reader.getFrequencies());
+            assertArrayEquals(new long[]{10, 20, 30}, reader.getReceiverIds());
+            assertArrayEquals(new long[]{3, 5, 7}, reader.getSourceIds());
+            assertEquals(1, reader.getSourceIndex(5));
+            assertTrue(reader.getSourceIndex(4) < 0);
+            assertEquals(2, reader.getRowIndex(30));
+            assertEquals(0, reader.readRow(1));
+            // entries of a row are sorted by source index
+            assertEquals(2, reader.readRow(2));
+            assertEquals(0, reader.getRowSourceIndex()[0]);
+            assertEquals(2, reader.getRowSourceIndex()[1]);
+            assertEquals(0.01f, reader.getRowFactors()[0], 1e-9);
+            assertEquals(0.4f, reader.getRowFactors()[7], 1e-9);
+            // power of source 3, 5, 7 in W
+            double[] power = new double[]{100, 200, 10, 20, 1000, 2000};
+            List<double[]> levels = new ArrayList<>();
+            List<Long> receivers = new ArrayList<>();
+            reader.applyEmissions(1, power, (receiverId, values) -> {
+                receivers.add(receiverId);
+                levels.add(values.clone());
+            });
+            assertEquals(3, receivers.size());
+            assertEquals(10, (long) receivers.get(0));
+            assertEquals(10 * 3, levels.get(0)[0], 1e-5);
+            assertEquals(20 * 4, levels.get(0)[1], 1e-5);
+            assertEquals(0, levels.get(1)[0], 1e-12);
+            assertEquals(100 * 0.03 + 1000 * 0.3, levels.get(2)[0], 1e-4);
+            assertEquals(200 * 0.04 + 2000 * 0.4, levels.get(2)[1], 1e-4);
+        }
+    }
+
+    @Test
+    public void testCloseWithoutFinish() throws IOException {
+        File file = new File("target/attenuation_matrix_cancel.bin");
+        file.delete();
+        try (AttenuationMatrixFile.Writer writer = new AttenuationMatrixFile.Writer(file, 1, new int[]{1000})) {
+            writer.addReceiver(1, 1, new long[]{1}, new float[]{0.5f});
+        }
+        assertFalse(file.exists());
+        assertFalse(new File(file.getAbsolutePath() + ".part").exists());
+    }
+}
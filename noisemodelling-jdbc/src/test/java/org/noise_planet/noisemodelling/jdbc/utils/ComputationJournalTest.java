@@ -0,0 +1,94 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ComputationJournalTest {
+
+    @Test
+    public void testResume() throws IOException {
+        File file = new File("target/journal_test.bin");
+        file.delete();
+        try (ComputationJournal journal = new ComputationJournal(file)) {
+            assertFalse(journal.isResumed());
+            assertFalse(journal.hasCompletedCells());
+            journal.checkPartition("grid 2");
+            journal.setOutputCheckpoint(() -> 1234);
+            journal.cellStarted(1, Arrays.asList(10L, 11L, 12L));
+            journal.cellCompleted(1);
+            assertTrue(journal.isCellCompleted(1));
+            assertEquals(1234, journal.getOutputOffset());
+            journal.setOutputCheckpoint(() -> 5678);
+            journal.cellStarted(2, Arrays.asList(20L, 21L));
+            journal.cellCompleted(2);
+            journal.cellStarted(3, Arrays.asList(30L, 31L));
+            // receivers are skipped only in the next sessions
+            assertFalse(journal.isReceiverCompleted(10));
+        }
+        long size = file.length();
+        try (ComputationJournal journal = new ComputationJournal(file)) {
+            assertTrue(journal.isResumed());
+            assertTrue(journal.hasCompletedCells());
+            journal.checkPartition("grid 2");
+            assertTrue(journal.isCellCompleted(1));
+            assertTrue(journal.isCellCompleted(2));
+            assertFalse(journal.isCellCompleted(3));
+            assertEquals(5678, journal.getOutputOffset());
+            assertTrue(journal.isReceiverCompleted(10));
+            assertTrue(journal.isReceiverCompleted(21));
+            assertFalse(journal.isReceiverCompleted(30));
+            assertEquals(1, journal.getInterruptedCells().size());
+            assertArrayEquals(new long[]{30, 31}, journal.getInterruptedCells().get(3));
+            try {
+                journal.checkPartition("grid 4");
+                fail();
+            } catch (IllegalStateException ex) {
+                // expected
+            }
+        }
+        assertEquals(size, file.length());
+    }
+
+    /**
+     * The last record is partially written when the computation is killed
+     */
+    @Test
+    public void testTruncatedRecord() throws IOException {
+        File file = new File("target/journal_truncated_test.bin");
+        file.delete();
+        long validSize;
+        try (ComputationJournal journal = new ComputationJournal(file)) {
+            journal.checkPartition("grid 2");
+            journal.cellStarted(1, Arrays.asList(10L, 11L));
+            journal.cellCompleted(1);
+            validSize = file.length();
+            journal.cellStarted(2, Arrays.asList(20L, 21L));
+            journal.cellCompleted(2);
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(file.length() - 3);
+        }
+        try (ComputationJournal journal = new ComputationJournal(file)) {
+            assertTrue(journal.isCellCompleted(1));
+            assertFalse(journal.isCellCompleted(2));
+            assertTrue(journal.getInterruptedCells().containsKey(2));
+            assertEquals(-1, journal.getOutputOffset());
+        }
+        // corrupted record
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(validSize + 6);
+            randomAccessFile.write(0x7F);
+        }
+        try (ComputationJournal journal = new ComputationJournal(file)) {
+            assertTrue(journal.isCellCompleted(1));
+            assertTrue(journal.getInterruptedCells().isEmpty());
+        }
+        assertEquals(validSize, file.length());
+    }
+}
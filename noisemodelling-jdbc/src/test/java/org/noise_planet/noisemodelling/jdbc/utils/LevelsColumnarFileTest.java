@@ -0,0 +1,140 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class LevelsColumnarFileTest {
+
+    @Test
+    public void testWriteRead() throws IOException {
+        File file = new File("target/levels_test.bin");
+        final int rowCount = 10;
+        try (LevelsColumnarFile.Writer writer = new LevelsColumnarFile.Writer(file, true, false, 3, 4)) {
+            for (int i = 0; i < rowCount; i++) {
+                writer.write(i, 100 + i, new double[]{i, i + 0.5, i + 0.25}, 50 + i, 60 + i);
+            }
+            assertEquals(rowCount, writer.getRowCount());
+        }
+        int readRows = 0;
+        try (LevelsColumnarFile.Reader reader = new LevelsColumnarFile.Reader(file)) {
+            assertTrue(reader.hasSourceId());
+            assertFalse(reader.isLaeqOnly());
+            assertEquals(3, reader.getBandCount());
+            while (reader.next()) {
+                assertTrue(reader.getRowCount() <= 4);
+                for (int i = 0; i < reader.getRowCount(); i++) {
+                    assertEquals(readRows, reader.getReceiverIds()[i]);
+                    assertEquals(100 + readRows, reader.getSourceIds()[i]);
+                    assertEquals(readRows + 0.5, reader.getBand(1)[i], 1e-6);
+                    assertEquals(readRows + 0.25, reader.getBand(2)[i], 1e-6);
+                    assertEquals(50 + readRows, reader.getLaeq()[i], 1e-6);
+                    assertEquals(60 + readRows, reader.getLeq()[i], 1e-6);
+                    assertEquals(readRows, reader.getReceiverId(i));
+                    assertEquals(100 + readRows, reader.getSourceId(i));
+                    assertEquals(readRows, reader.getBandLevel(0, i), 1e-6);
+                    assertEquals(readRows + 0.25, reader.getBandLevel(2, i), 1e-6);
+                    assertEquals(50 + readRows, reader.getLaeq(i), 1e-6);
+                    assertEquals(60 + readRows, reader.getLeq(i), 1e-6);
+                    readRows++;
+                }
+            }
+        }
+        assertEquals(rowCount, readRows);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        File file = new File("target/levels_load_test.bin");
+        try (LevelsColumnarFile.Writer writer = new LevelsColumnarFile.Writer(file, false, true, 8)) {
+            writer.write(1, 0, null, 45.5, 0);
+            writer.write(2, 0, null, 52.25, 0);
+        }
+        try (Connection connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                LevelsColumnarFileTest.class.getSimpleName(), true, ""));
+             Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE LEVELS(IDRECEIVER bigint NOT NULL, LAEQ numeric(5, 2))");
+            assertEquals(2, LevelsColumnarFile.load(connection, file, "LEVELS"));
+            try (ResultSet rs = st.executeQuery("SELECT IDRECEIVER, LAEQ FROM LEVELS ORDER BY IDRECEIVER")) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getLong(1));
+                assertEquals(45.5, rs.getDouble(2), 1e-6);
+                assertTrue(rs.next());
+                assertEquals(2, rs.getLong(1));
+                assertEquals(52.25, rs.getDouble(2), 1e-6);
+                assertFalse(rs.next());
+            }
+        }
+    }
+
+    /**
+     * Rows split in several blocks with source identifiers and frequency bands
+     */
+    @Test
+    public void testLoadBlocks() throws Exception {
+        File file = new File("target/levels_load_blocks_test.bin");
+        final int rowCount = 25;
+        try (LevelsColumnarFile.Writer writer = new LevelsColumnarFile.Writer(file, true, false, 2, 7)) {
+            for (int i = 0; i < rowCount; i++) {
+                writer.write(i, 1000 + i, new double[]{i + 0.5, -i}, 40 + i, 50 + i);
+            }
+        }
+        try (Connection connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                LevelsColumnarFileTest.class.getSimpleName() + "_blocks", true, ""));
+             Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE LEVELS(IDRECEIVER bigint NOT NULL, IDSOURCE bigint NOT NULL, HZ63 real," +
+                    " HZ125 real, LAEQ real, LEQ real)");
+            assertEquals(rowCount, LevelsColumnarFile.load(connection, file, "LEVELS"));
+            assertTrue(connection.getAutoCommit());
+            try (ResultSet rs = st.executeQuery("SELECT * FROM LEVELS ORDER BY IDRECEIVER")) {
+                for (int i = 0; i < rowCount; i++) {
+                    assertTrue(rs.next());
+                    assertEquals(i, rs.getLong(1));
+                    assertEquals(1000 + i, rs.getLong(2));
+                    assertEquals(i + 0.5, rs.getDouble(3), 1e-6);
+                    assertEquals(-i, rs.getDouble(4), 1e-6);
+                    assertEquals(40 + i, rs.getDouble(5), 1e-6);
+                    assertEquals(50 + i, rs.getDouble(6), 1e-6);
+                }
+                assertFalse(rs.next());
+            }
+        }
+    }
+
+    /**
+     * Blocks larger than one multi-row insert statement, the last rows of each block are inserted by a shorter
+     * statement
+     */
+    @Test
+    public void testLoadMultiRowStatements() throws Exception {
+        File file = new File("target/levels_load_statements_test.bin");
+        final int rowCount = 1234;
+        try (LevelsColumnarFile.Writer writer = new LevelsColumnarFile.Writer(file, false, true, 0, 512)) {
+            for (int i = 0; i < rowCount; i++) {
+                writer.write(i, 0, new double[0], 40 + i * 0.01, 0);
+            }
+        }
+        try (Connection connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                LevelsColumnarFileTest.class.getSimpleName() + "_statements", true, ""));
+             Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE LEVELS(IDRECEIVER bigint NOT NULL, LAEQ real)");
+            assertEquals(rowCount, LevelsColumnarFile.load(connection, file, "LEVELS"));
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(DISTINCT IDRECEIVER), MIN(IDRECEIVER)," +
+                    " MAX(IDRECEIVER), SUM(LAEQ) FROM LEVELS")) {
+                assertTrue(rs.next());
+                assertEquals(rowCount, rs.getInt(1));
+                assertEquals(0, rs.getLong(2));
+                assertEquals(rowCount - 1, rs.getLong(3));
+                assertEquals(40 * rowCount + 0.01 * rowCount * (rowCount - 1) / 2.0, rs.getDouble(4), 0.1);
+            }
+        }
+    }
+}
@@ -290,6 +290,22 @@ public class CnossosPropagationData {
         return new double[frequencies.length];
     }
 
+    /**
+     * Return directivity attenuation into the provided array. The default implementation copies the array returned by
+     * {@link #getSourceAttenuation(int, double[], double, double)}, subclasses override it in order to write
+     * directly into the destination array.
+     * @param srcIndex Source index in the list sourceGeometries
+     * @param frequencies Frequencies in Hertz
+     * @param phi (0 2π) 0 is front
+     * @param theta (-π/2 π/2) 0 is horizontal π is top
+     * @param attenuation Destination array, attenuation in dB for each frequency
+     */
+    public void getSourceAttenuation(int srcIndex, double[] frequencies, double phi, double theta,
+                                     double[] attenuation) {
+        System.arraycopy(getSourceAttenuation(srcIndex, frequencies, phi, theta), 0, attenuation, 0,
+                frequencies.length);
+    }
+
     /**
      * @param srcIndex Source index in the list sourceGeometries
      * @return True if the source is omnidirectional and so does not have orientation dependant attenuation.
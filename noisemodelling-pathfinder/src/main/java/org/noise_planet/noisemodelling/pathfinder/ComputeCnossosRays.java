@@ -40,13 +40,13 @@ import org.locationtech.jts.algorithm.*;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.impl.CoordinateArraySequence;
 import org.locationtech.jts.geom.prep.PreparedLineString;
-import org.locationtech.jts.index.ItemVisitor;
 import org.locationtech.jts.math.Vector2D;
 import org.locationtech.jts.math.Vector3D;
 import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
 import org.locationtech.jts.triangulate.quadedge.Vertex;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
 import org.noise_planet.noisemodelling.pathfinder.utils.ReceiverStatsMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.VisibilityStatsMetric;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -86,6 +86,7 @@ public class ComputeCnossosRays {
 
     /** Number of thread used for ray computation. */
     private int threadCount ;
+    private boolean orderReceiversByCost = false;
     private ProfilerThread profilerThread;
 
     /**
@@ -123,30 +124,73 @@ public class ComputeCnossosRays {
         this.threadCount = threadCount;
     }
 
+    /**
+     * @return True if the receivers are processed by decreasing estimated computation cost
+     */
+    public boolean isOrderReceiversByCost() {
+        return orderReceiversByCost;
+    }
+
+    /**
+     * Process the most expensive receivers first, the cost is estimated using the number of sources in the
+     * maximum propagation distance. This limits the time where only one thread is still busy at the end of the
+     * computation.
+     * @param orderReceiversByCost True to process receivers by decreasing estimated computation cost
+     */
+    public void setOrderReceiversByCost(boolean orderReceiversByCost) {
+        this.orderReceiversByCost = orderReceiversByCost;
+    }
+
+    /**
+     * Estimate the computation cost of each receiver and return the receivers sorted by decreasing cost
+     * @return Receivers index in processing order
+     */
+    int[] computeReceiversOrderByCost() {
+        final int receiverCount = data.receivers.size();
+        final long[] keys = new long[receiverCount];
+        for (int idReceiver = 0; idReceiver < receiverCount; idReceiver++) {
+            Coordinate receiver = data.receivers.get(idReceiver);
+            Envelope receiverSourceRegion = new Envelope(receiver.x - data.maxSrcDist, receiver.x + data.maxSrcDist,
+                    receiver.y - data.maxSrcDist, receiver.y + data.maxSrcDist);
+            Iterator<Integer> regionSourcesLst = data.sourcesIndex.query(receiverSourceRegion);
+            long sourceCount = 0;
+            while (regionSourcesLst.hasNext()) {
+                regionSourcesLst.next();
+                sourceCount++;
+            }
+            // sort by decreasing cost then by increasing receiver index
+            keys[idReceiver] = ((Integer.MAX_VALUE - Math.min(sourceCount, Integer.MAX_VALUE)) << 32) | idReceiver;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[receiverCount];
+        for (int i = 0; i < receiverCount; i++) {
+            order[i] = (int) (keys[i] & 0xFFFFFFFFL);
+        }
+        return order;
+    }
+
     /**
      * Run computation and store the results in the given output.
      * @param computeRaysOut Result output.
      */
     public void run(IComputeRaysOut computeRaysOut) {
         ProgressVisitor visitor = data.cellProg;
+        int[] receiverOrder = orderReceiversByCost ? computeReceiversOrderByCost() : null;
+        int workerCount = Math.max(1, Math.min(threadCount, data.receivers.size()));
+        ReceiverChunkQueue receiverQueue = new ReceiverChunkQueue(data.receivers.size(), workerCount,
+                ReceiverChunkQueue.DEFAULT_MINIMUM_CHUNK_SIZE, receiverOrder);
+        if (threadCount == 1) {
+            new ReceiversComputation(receiverQueue, this, visitor, computeRaysOut, data).run();
+            return;
+        }
         ThreadPool threadManager = new ThreadPool(threadCount, threadCount + 1, Long.MAX_VALUE, TimeUnit.SECONDS);
-        int maximumReceiverBatch = (int) Math.ceil(data.receivers.size() / (double) threadCount);
-        int endReceiverRange = 0;
-        //Launch execution of computation by batch
-        while (endReceiverRange < data.receivers.size()) {
+        //Launch one worker by thread, each worker fetch receivers until the queue is empty
+        for (int idWorker = 0; idWorker < workerCount; idWorker++) {
             //Break if the progress visitor is cancelled
             if (visitor != null && visitor.isCanceled()) {
                 break;
             }
-            int newEndReceiver = Math.min(endReceiverRange + maximumReceiverBatch, data.receivers.size());
-            RangeReceiversComputation batchThread = new RangeReceiversComputation(endReceiverRange, newEndReceiver,
-                    this, visitor, computeRaysOut, data);
-            if (threadCount != 1) {
-                threadManager.executeBlocking(batchThread);
-            } else {
-                batchThread.run();
-            }
-            endReceiverRange = newEndReceiver;
+            threadManager.executeBlocking(new ReceiversComputation(receiverQueue, this, visitor, computeRaysOut, data));
         }
         //Once the execution ends, shutdown the thread manager and await termination
         threadManager.shutdown();
@@ -164,14 +208,17 @@ public class ComputeCnossosRays {
      * @param rcv     Receiver point.
      * @param dataOut Computation output.
      * @param visitor Progress visitor used for cancellation and progression managing.
+     * @param wallsCache Walls of the previous receivers of this thread, null to fetch walls from the profile builder
      */
-    private void computeRaysAtPosition(ReceiverPointInfo rcv, IComputeRaysOut dataOut, ProgressVisitor visitor) {
+    private void computeRaysAtPosition(ReceiverPointInfo rcv, IComputeRaysOut dataOut, ProgressVisitor visitor,
+                                       MirrorReceiverResultIndex.WallsCache wallsCache) {
         MirrorReceiverResultIndex receiverMirrorIndex = null;
 
         if(data.reflexionOrder > 0) {
             Envelope receiverPropagationEnvelope = new Envelope(rcv.getCoord());
             receiverPropagationEnvelope.expandBy(data.maxSrcDist);
-            List<ProfileBuilder.Wall> buildWalls = data.profileBuilder.getWallsIn(receiverPropagationEnvelope);
+            List<ProfileBuilder.Wall> buildWalls = wallsCache != null ? wallsCache.getWallsIn(receiverPropagationEnvelope)
+                    : data.profileBuilder.getWallsIn(receiverPropagationEnvelope);
             receiverMirrorIndex = new MirrorReceiverResultIndex(buildWalls, rcv.position, data.reflexionOrder,
                     data.maxSrcDist, data.maxRefDist);
         }
@@ -309,6 +356,15 @@ public class ComputeCnossosRays {
      */
     public List<PropagationPath> directPath(Coordinate srcCoord, int srcId, Orientation orientation, Coordinate rcvCoord, int rcvId, boolean verticalDiffraction, boolean horizontalDiffraction, boolean bodyBarrier) {
         List<PropagationPath> propagationPaths = new ArrayList<>();
+        if(!verticalDiffraction && !horizontalDiffraction) {
+            // Only a free field path can be found, do not build the cut profile of an obstructed path
+            ProfileBuilder.Visibility visibility = data.profileBuilder.getVisibility(srcCoord, rcvCoord);
+            boolean obstructed = visibility != ProfileBuilder.Visibility.FREE_FIELD;
+            onVisibility(visibility, obstructed ? 1 : 0);
+            if(obstructed) {
+                return propagationPaths;
+            }
+        }
         ProfileBuilder.CutProfile cutProfile = data.profileBuilder.getProfile(srcCoord, rcvCoord, data.gS);
         cutProfile.setSrcOrientation(orientation);
         //If the field is free, simplify the computation
@@ -343,6 +399,20 @@ public class ComputeCnossosRays {
         return propagationPaths;
     }
 
+    /**
+     * Report a visibility test to the profiler
+     * @param visibility Result of the test
+     * @param skippedProfiles Number of cut profiles not computed thanks to the test
+     */
+    private void onVisibility(ProfileBuilder.Visibility visibility, int skippedProfiles) {
+        if(profilerThread != null) {
+            VisibilityStatsMetric metric = profilerThread.getMetric(VisibilityStatsMetric.class);
+            if(metric != null) {
+                metric.onVisibility(visibility, skippedProfiles);
+            }
+        }
+    }
+
     private static double toCurve(double mn, double d){
         return 2*max(1000, 8*d)* asin(mn/(2*max(1000, 8*d)));
     }
@@ -592,6 +662,19 @@ public class ComputeCnossosRays {
         }
     }
 
+    /**
+     * Compute horizontal diffraction (diffraction of vertical edge.)
+     * @param rcvCoord Receiver coordinates.
+     * @param srcCoord Source coordinates.
+     * @param data     Propagation data.
+     * @param left     True to compute the left side, false to compute the right side.
+     * @return The propagation path of the horizontal diffraction.
+     */
+    public PropagationPath computeVEdgeDiffraction(Coordinate rcvCoord, Coordinate srcCoord,
+                                                   CnossosPropagationData data, boolean left, Orientation orientation) {
+        return computeVEdgeDiffraction(rcvCoord, srcCoord, data, left ? LEFT : RIGHT, orientation);
+    }
+
     /**
      * Compute horizontal diffraction (diffraction of vertical edge.)
      * @param rcvCoord Receiver coordinates.
@@ -609,6 +692,16 @@ public class ComputeCnossosRays {
 
         if (!coordinates.isEmpty()) {
             if (coordinates.size() > 2) {
+                // All the segments of the path must be free field, check it before building their cut profiles
+                for(int i=0; i<coordinates.size()-1; i++) {
+                    ProfileBuilder.Visibility visibility = data.profileBuilder.getVisibility(coordinates.get(i),
+                            coordinates.get(i+1));
+                    if(visibility != ProfileBuilder.Visibility.FREE_FIELD) {
+                        onVisibility(visibility, i + 1);
+                        return null;
+                    }
+                    onVisibility(visibility, 0);
+                }
                 List<Coordinate> topoPts = new ArrayList<>();
                 topoPts.add(coordinates.get(0));
                 double g = 0;
@@ -943,17 +1036,9 @@ public class ComputeCnossosRays {
             return new ArrayList<>();
         }
 
-        // Intersection test cache
-        Set<LineSegment> freeFieldSegments = new HashSet<>();
-
+        // Points found by the intersection tests, to be added to the hull
         List<Coordinate> input = new ArrayList<>();
 
-        Coordinate[] coordinates = new Coordinate[0];
-        int indexp1 = 0;
-        int indexp2 = 0;
-
-        boolean convexHullIntersects = true;
-
         input.add(p1);
         input.add(p2);
 
@@ -963,55 +1048,41 @@ public class ComputeCnossosRays {
         Plane cutPlane = computeZeroRadPlane(p1, p2);
 
         BuildingIntersectionRayVisitor buildingIntersectionRayVisitor = new BuildingIntersectionRayVisitor(
-                profileBuilder.getBuildings(), p1, p2, profileBuilder, input, buildingInHull, cutPlane);
-
+                profileBuilder.getBuildings(), profileBuilder, input, buildingInHull, cutPlane);
+        buildingIntersectionRayVisitor.setSegment(p1, p2);
         data.profileBuilder.getBuildingsOnPath(p1, p2, buildingIntersectionRayVisitor);
 
         WallIntersectionRayVisitor wallIntersectionRayVisitor = new WallIntersectionRayVisitor(
-                profileBuilder.getWalls(), p1, p2, profileBuilder, input, wallInHull, cutPlane);
-
+                profileBuilder.getWalls(), profileBuilder, input, wallInHull, cutPlane);
+        wallIntersectionRayVisitor.setSegment(p1, p2);
         data.profileBuilder.getWallsOnPath(p1, p2, wallIntersectionRayVisitor);
 
-        int k;
-        while (convexHullIntersects) {
-            ConvexHull convexHull = new ConvexHull(input.toArray(new Coordinate[0]), GEOMETRY_FACTORY);
-            Geometry convexhull = convexHull.getConvexHull();
-
-            if (convexhull.getLength() / p1.distance(p2) > MAX_RATIO_HULL_DIRECT_PATH) {
-                return new ArrayList<>();
-            }
-
-            convexHullIntersects = false;
-            coordinates = convexhull.getCoordinates();
-
-            input.clear();
-            input.addAll(Arrays.asList(coordinates));
-
-            indexp1 = -1;
-            for (int i = 0; i < coordinates.length - 1; i++) {
-                if (coordinates[i].equals(p1)) {
-                    indexp1 = i;
-                    break;
-                }
-            }
+        Geometry convexhull = new ConvexHull(input.toArray(new Coordinate[0]), GEOMETRY_FACTORY).getConvexHull();
+        if (convexhull.getLength() / p1.distance(p2) > MAX_RATIO_HULL_DIRECT_PATH) {
+            return new ArrayList<>();
+        }
+        if (!(convexhull instanceof Polygon)) {
+            // No obstacle found, or all the points are aligned
+            return new ArrayList<>();
+        }
+        // The hull is then updated with the new points only. The flag of an edge is set when the edge has been
+        // tested free of intersection
+        IncrementalConvexHull hull = new IncrementalConvexHull(convexhull.getCoordinates());
+        input.clear();
+        int indexp1;
+        int indexp2;
+        while (true) {
+            indexp1 = hull.indexOf(p1);
             if (indexp1 == -1) {
                 // P1 does not belong to convex vertices, cannot compute diffraction
                 // TODO handle concave path
                 return new ArrayList<>();
             }
-            // Transform array to set p1 at index=0
-            Coordinate[] coordinatesShifted = new Coordinate[coordinates.length];
-            // Copy from P1 to end in beginning of new array
-            int len = (coordinates.length - 1) - indexp1;
-            System.arraycopy(coordinates, indexp1, coordinatesShifted, 0, len);
-            // Copy from 0 to P1 in the end of array
-            System.arraycopy(coordinates, 0, coordinatesShifted, len, coordinates.length - len - 1);
-            coordinatesShifted[coordinatesShifted.length - 1] = coordinatesShifted[0];
-            coordinates = coordinatesShifted;
-            indexp1 = 0;
+            // Index of P2 relative to P1
+            int n = hull.size();
             indexp2 = -1;
-            for (int i = 1; i < coordinates.length - 1; i++) {
-                if (coordinates[i].equals(p2)) {
+            for (int i = 1; i < n; i++) {
+                if (hull.get((indexp1 + i) % n).equals(p2)) {
                     indexp2 = i;
                     break;
                 }
@@ -1021,29 +1092,43 @@ public class ComputeCnossosRays {
                 // TODO handle concave path
                 return new ArrayList<>();
             }
-            for (k = 0; k < coordinates.length - 1; k++) {
-                LineSegment freeFieldTestSegment = new LineSegment(coordinates[k], coordinates[k + 1]);
+            boolean convexHullIntersects = false;
+            for (int k = 0; k < n; k++) {
                 // Ignore intersection if iterating over other side (not parts of what is returned)
                 if (left && k < indexp2 || !left && k >= indexp2) {
-                    if (!freeFieldSegments.contains(freeFieldTestSegment)) {
+                    int edge = (indexp1 + k) % n;
+                    if (!hull.isEdgeFlag(edge)) {
+                        Coordinate c0 = hull.get(edge);
+                        Coordinate c1 = hull.get((edge + 1) % n);
                         // Check if we still are in the propagation domain
-                        buildingIntersectionRayVisitor = new BuildingIntersectionRayVisitor(profileBuilder.getBuildings(),
-                                coordinates[k], coordinates[k + 1], profileBuilder, input, buildingInHull, cutPlane);
-                        profileBuilder.getBuildingsOnPath(coordinates[k], coordinates[k + 1], buildingIntersectionRayVisitor);
-                        wallIntersectionRayVisitor = new WallIntersectionRayVisitor(profileBuilder.getWalls(),
-                                coordinates[k], coordinates[k + 1], profileBuilder, input, wallInHull, cutPlane);
-                        profileBuilder.getWallsOnPath(coordinates[k], coordinates[k + 1], wallIntersectionRayVisitor);
+                        buildingIntersectionRayVisitor.setSegment(c0, c1);
+                        profileBuilder.getBuildingsOnPath(c0, c1, buildingIntersectionRayVisitor);
+                        wallIntersectionRayVisitor.setSegment(c0, c1);
+                        profileBuilder.getWallsOnPath(c0, c1, wallIntersectionRayVisitor);
                         if (!buildingIntersectionRayVisitor.doContinue() || !wallIntersectionRayVisitor.doContinue()) {
                             convexHullIntersects = true;
-                        }
-                        if (!convexHullIntersects) {
-                            freeFieldSegments.add(freeFieldTestSegment);
-                        } else {
                             break;
                         }
+                        hull.setEdgeFlag(edge, true);
                     }
                 }
             }
+            if (!convexHullIntersects) {
+                break;
+            }
+            for (Coordinate point : input) {
+                hull.add(point);
+            }
+            input.clear();
+            if (hull.getLength() / p1.distance(p2) > MAX_RATIO_HULL_DIRECT_PATH) {
+                return new ArrayList<>();
+            }
+        }
+        // Hull ring starting at p1
+        int n = hull.size();
+        Coordinate[] coordinates = new Coordinate[n + 1];
+        for (int i = 0; i <= n; i++) {
+            coordinates[i] = hull.get((indexp1 + i) % n);
         }
         // Check for invalid coordinates
         for (Coordinate p : coordinates) {
@@ -1053,7 +1138,7 @@ public class ComputeCnossosRays {
         }
 
         if (left) {
-            return Arrays.asList(Arrays.copyOfRange(coordinates, indexp1, indexp2 + 1));
+            return Arrays.asList(Arrays.copyOfRange(coordinates, 0, indexp2 + 1));
         } else {
             List<Coordinate> inversePath = Arrays.asList(Arrays.copyOfRange(coordinates, indexp2, coordinates.length));
             Collections.reverse(inversePath);
@@ -1076,11 +1161,12 @@ public class ComputeCnossosRays {
     }
 
 
-    private static final class BuildingIntersectionRayVisitor implements ItemVisitor {
-        Set<Integer> itemProcessed = new HashSet<>();
+    /**
+     * Look for the first building crossing the segment, its cut roof points are added to the hull input.
+     * The instance is reused for each tested segment of the hull, see {@link #setSegment(Coordinate, Coordinate)}
+     */
+    private static final class BuildingIntersectionRayVisitor implements PackedRTree.Visitor {
         List<ProfileBuilder.Building> buildings;
-        Coordinate p1;
-        Coordinate p2;
         PreparedLineString seg;
         Set<Integer> buildingsInIntersection;
         ProfileBuilder profileBuilder;
@@ -1088,34 +1174,42 @@ public class ComputeCnossosRays {
         List<Coordinate> input;
         boolean foundIntersection = false;
 
-        public BuildingIntersectionRayVisitor(List<ProfileBuilder.Building> buildings, Coordinate p1,
-                                              Coordinate p2, ProfileBuilder profileBuilder, List<Coordinate> input, Set<Integer> buildingsInIntersection, Plane cutPlane) {
+        public BuildingIntersectionRayVisitor(List<ProfileBuilder.Building> buildings, ProfileBuilder profileBuilder,
+                                              List<Coordinate> input, Set<Integer> buildingsInIntersection, Plane cutPlane) {
             this.profileBuilder = profileBuilder;
             this.input = input;
             this.buildingsInIntersection = buildingsInIntersection;
             this.cutPlane = cutPlane;
             this.buildings = buildings;
-            this.p1 = p1;
-            this.p2 = p2;
+        }
+
+        /**
+         * Reset the visitor for a new segment
+         * @param p1 first point of the segment
+         * @param p2 second point of the segment
+         */
+        public void setSegment(Coordinate p1, Coordinate p2) {
             seg = new PreparedLineString(GEOMETRY_FACTORY.createLineString(new Coordinate[]{p1, p2}));
+            foundIntersection = false;
         }
 
         @Override
-        public void visitItem(Object item) {
-            int id = (Integer) item;
-            if(!itemProcessed.contains(id)) {
-                itemProcessed.add(id);
-                final ProfileBuilder.Building b = buildings.get(id - 1);
-                RectangleLineIntersector rect = new RectangleLineIntersector(b.getGeometry().getEnvelopeInternal());
-                if (rect.intersects(p1, p2) && seg.intersects(b.getGeometry())) {
-                    addItem(id);
-                }
+        public boolean visit(int id) {
+            // The tree already checked the envelope against the segment
+            final ProfileBuilder.Building b = buildings.get(id - 1);
+            if (seg.intersects(b.getGeometry())) {
+                return addItem(id);
             }
+            return true;
         }
 
-        public void addItem(int id) {
+        /**
+         * @param id building identifier
+         * @return False if the building has been added to the hull input (stop iterating bounding boxes)
+         */
+        public boolean addItem(int id) {
             if (buildingsInIntersection.contains(id)) {
-                return;
+                return true;
             }
             List<Coordinate> roofPoints = profileBuilder.getPrecomputedWideAnglePoints(id);
             // Create a cut of the building volume
@@ -1124,20 +1218,22 @@ public class ComputeCnossosRays {
                 input.addAll(roofPoints.subList(0, roofPoints.size() - 1));
                 buildingsInIntersection.add(id);
                 foundIntersection = true;
-                // Stop iterating bounding boxes
-                throw new IllegalStateException();
+                return false;
             }
+            return true;
         }
 
         public boolean doContinue() {
             return !foundIntersection;
         }
     }
-    private static final class WallIntersectionRayVisitor implements ItemVisitor {
-        Set<Integer> itemProcessed = new HashSet<>();
+
+    /**
+     * Look for the first wall crossing the segment, its cut points are added to the hull input.
+     * The instance is reused for each tested segment of the hull, see {@link #setSegment(Coordinate, Coordinate)}
+     */
+    private static final class WallIntersectionRayVisitor implements PackedRTree.Visitor {
         List<ProfileBuilder.Wall> walls;
-        Coordinate p1;
-        Coordinate p2;
         PreparedLineString seg;
         Set<Integer> wallsInIntersection;
         ProfileBuilder profileBuilder;
@@ -1145,35 +1241,42 @@ public class ComputeCnossosRays {
         List<Coordinate> input;
         boolean foundIntersection = false;
 
-        public WallIntersectionRayVisitor(List<ProfileBuilder.Wall> walls, Coordinate p1,
-                                              Coordinate p2, ProfileBuilder profileBuilder, List<Coordinate> input,
-                                          Set<Integer> wallsInIntersection, Plane cutPlane) {
+        public WallIntersectionRayVisitor(List<ProfileBuilder.Wall> walls, ProfileBuilder profileBuilder,
+                                          List<Coordinate> input, Set<Integer> wallsInIntersection, Plane cutPlane) {
             this.profileBuilder = profileBuilder;
             this.input = input;
             this.wallsInIntersection = wallsInIntersection;
             this.cutPlane = cutPlane;
             this.walls = walls;
-            this.p1 = p1;
-            this.p2 = p2;
+        }
+
+        /**
+         * Reset the visitor for a new segment
+         * @param p1 first point of the segment
+         * @param p2 second point of the segment
+         */
+        public void setSegment(Coordinate p1, Coordinate p2) {
             seg = new PreparedLineString(GEOMETRY_FACTORY.createLineString(new Coordinate[]{p1, p2}));
+            foundIntersection = false;
         }
 
         @Override
-        public void visitItem(Object item) {
-            int id = (Integer) item;
-            if(!itemProcessed.contains(id)) {
-                itemProcessed.add(id);
-                final ProfileBuilder.Wall w = walls.get(id-1);
-                RectangleLineIntersector rect = new RectangleLineIntersector(w.getLine().getEnvelopeInternal());
-                if (rect.intersects(p1, p2) && seg.intersects(w.getLine())) {
-                    addItem(id);
-                }
+        public boolean visit(int id) {
+            // The tree already checked the envelope against the segment
+            final ProfileBuilder.Wall w = walls.get(id-1);
+            if (seg.intersects(w.getLine())) {
+                return addItem(id);
             }
+            return true;
         }
 
-        public void addItem(int id) {
+        /**
+         * @param id wall identifier
+         * @return False if the wall has been added to the hull input (stop iterating bounding boxes)
+         */
+        public boolean addItem(int id) {
             if (wallsInIntersection.contains(id)) {
-                return;
+                return true;
             }
             List<Coordinate> roofPoints = Arrays.asList(profileBuilder.getWall(id-1).getLine().getCoordinates());
             // Create a cut of the building volume
@@ -1182,9 +1285,9 @@ public class ComputeCnossosRays {
                 input.addAll(roofPoints);
                 wallsInIntersection.add(id);
                 foundIntersection = true;
-                // Stop iterating bounding boxes
-                throw new IllegalStateException();
+                return false;
             }
+            return true;
         }
 
         public boolean doContinue() {
@@ -1680,19 +1783,20 @@ public class ComputeCnossosRays {
         return totalPowerRemaining;
     }
 
-    private static final class RangeReceiversComputation implements Runnable {
-        private final int startReceiver; // Included
-        private final int endReceiver; // Excluded
+    /**
+     * Compute the receivers fetched from the shared queue until it is empty
+     */
+    private static final class ReceiversComputation implements Runnable {
+        private final ReceiverChunkQueue receiverQueue;
         private final ComputeCnossosRays propagationProcess;
         private final ProgressVisitor visitor;
         private final IComputeRaysOut dataOut;
         private final CnossosPropagationData data;
 
-        public RangeReceiversComputation(int startReceiver, int endReceiver, ComputeCnossosRays propagationProcess,
-                                         ProgressVisitor visitor, IComputeRaysOut dataOut,
-                                         CnossosPropagationData data) {
-            this.startReceiver = startReceiver;
-            this.endReceiver = endReceiver;
+        public ReceiversComputation(ReceiverChunkQueue receiverQueue, ComputeCnossosRays propagationProcess,
+                                    ProgressVisitor visitor, IComputeRaysOut dataOut,
+                                    CnossosPropagationData data) {
+            this.receiverQueue = receiverQueue;
             this.propagationProcess = propagationProcess;
             this.visitor = visitor;
             this.dataOut = dataOut.subProcess();
@@ -1702,34 +1806,43 @@ public class ComputeCnossosRays {
         @Override
         public void run() {
             try {
-                for (int idReceiver = startReceiver; idReceiver < endReceiver; idReceiver++) {
-                    if (visitor != null) {
-                        if (visitor.isCanceled()) {
-                            break;
+                int[] range = new int[2];
+                // Consecutive receivers of a chunk are often close to each other (ex: facade receivers)
+                MirrorReceiverResultIndex.WallsCache wallsCache = data.reflexionOrder > 0 ?
+                        new MirrorReceiverResultIndex.WallsCache(data.profileBuilder) : null;
+                while (receiverQueue.next(range)) {
+                    for (int position = range[0]; position < range[1]; position++) {
+                        if (visitor != null) {
+                            if (visitor.isCanceled()) {
+                                receiverQueue.abort();
+                                return;
+                            }
                         }
-                    }
-                    ReceiverPointInfo rcv = new ReceiverPointInfo(idReceiver, data.receivers.get(idReceiver));
+                        int idReceiver = receiverQueue.getReceiver(position);
+                        ReceiverPointInfo rcv = new ReceiverPointInfo(idReceiver, data.receivers.get(idReceiver));
 
-                    long start = 0;
-                    if(propagationProcess.profilerThread != null) {
-                        start = propagationProcess.profilerThread.timeTracker.get();
-                    }
+                        long start = 0;
+                        if (propagationProcess.profilerThread != null) {
+                            start = propagationProcess.profilerThread.timeTracker.get();
+                        }
 
-                    propagationProcess.computeRaysAtPosition(rcv, dataOut, visitor);
+                        propagationProcess.computeRaysAtPosition(rcv, dataOut, visitor, wallsCache);
 
-                    // Save computation time for this receiver
-                    if(propagationProcess.profilerThread != null &&
-                            propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
-                        propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class).onEndComputation(idReceiver,
-                                (int) (propagationProcess.profilerThread.timeTracker.get() - start));
-                    }
+                        // Save computation time for this receiver
+                        if (propagationProcess.profilerThread != null &&
+                                propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
+                            propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class).onEndComputation(idReceiver,
+                                    (int) (propagationProcess.profilerThread.timeTracker.get() - start));
+                        }
 
-                    if (visitor != null) {
-                        visitor.endStep();
+                        if (visitor != null) {
+                            visitor.endStep();
+                        }
                     }
                 }
             } catch (Exception ex) {
                 LOGGER.error(ex.getLocalizedMessage(), ex);
+                receiverQueue.abort();
                 if (visitor != null) {
                     visitor.cancel();
                 }
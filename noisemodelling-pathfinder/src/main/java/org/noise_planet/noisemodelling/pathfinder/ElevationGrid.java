@@ -0,0 +1,373 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Digital elevation model stored as a regular grid of elevations, an alternative to the triangulation of the
+ * topographic points when the DEM comes from a raster.
+ * The values are the elevations of the cell centers, stored row by row from the north row to the south row (same
+ * order as the ESRI ASCII grid). The elevation between the cell centers is the bilinear interpolation of the four
+ * surrounding centers, the cells without value are stored as NaN.
+ * The grid can be read from a memory mapped file (see {@link Writer} and {@link #map(File)}), so large DEM are not
+ * loaded in the heap. This class is immutable and can be shared between threads.
+ * <p>
+ * File layout, little endian:
+ * header: int MAGIC, int VERSION, int columns, int rows, double x0, double y0, double cellSize
+ * rows: float[columns] for each row, from north to south
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public final class ElevationGrid {
+    public static final int MAGIC = 0x4E4D4547; // NMEG
+    public static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 * Integer.BYTES + 3 * Double.BYTES;
+    static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+    /** x of the center of the west column */
+    private final double x0;
+    /** y of the center of the north row */
+    private final double y0;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    /** Elevations, a segment contains only complete rows */
+    private final FloatBuffer[] segments;
+    private final int rowsPerSegment;
+
+    /**
+     * @param x0 x of the center of the west column
+     * @param y0 y of the center of the north row
+     * @param cellSize Distance between two cell centers
+     * @param columns Number of columns
+     * @param rows Number of rows
+     * @param values Elevations, [row * columns + column], from the north row to the south row. NaN if no value.
+     */
+    public ElevationGrid(double x0, double y0, double cellSize, int columns, int rows, float[] values) {
+        this(x0, y0, cellSize, columns, rows, new FloatBuffer[]{FloatBuffer.wrap(values)}, rows);
+        if(values.length != (long) columns * rows) {
+            throw new IllegalArgumentException(String.format("Expected %d values, got %d",
+                    (long) columns * rows, values.length));
+        }
+    }
+
+    private ElevationGrid(double x0, double y0, double cellSize, int columns, int rows, FloatBuffer[] segments,
+                          int rowsPerSegment) {
+        if(columns < 2 || rows < 2) {
+            throw new IllegalArgumentException("The elevation grid must have at least two rows and two columns");
+        }
+        if(!(cellSize > 0)) {
+            throw new IllegalArgumentException("The cell size must be greater than 0");
+        }
+        this.x0 = x0;
+        this.y0 = y0;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.segments = segments;
+        this.rowsPerSegment = rowsPerSegment;
+    }
+
+    /**
+     * Map an elevation grid file written by {@link Writer}. The file must not be modified while the grid is used.
+     * @param file Elevation grid file
+     * @return Memory mapped elevation grid
+     * @throws IOException Not an elevation grid file or truncated file
+     */
+    public static ElevationGrid map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while(header.hasRemaining()) {
+                if(channel.read(header) < 0) {
+                    throw new EOFException("Truncated elevation grid file " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an elevation grid file " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported elevation grid file version %d", version));
+            }
+            int columns = header.getInt();
+            int rows = header.getInt();
+            double x0 = header.getDouble();
+            double y0 = header.getDouble();
+            double cellSize = header.getDouble();
+            long rowSize = (long) columns * Float.BYTES;
+            if(channel.size() < HEADER_SIZE + rowSize * rows) {
+                throw new EOFException("Truncated elevation grid file " + file);
+            }
+            int rowsPerSegment = (int) Math.min(rows, MAX_SEGMENT_SIZE / rowSize);
+            if(rowsPerSegment == 0) {
+                throw new IOException("Elevation grid row is too large to be mapped");
+            }
+            FloatBuffer[] segments = new FloatBuffer[(rows + rowsPerSegment - 1) / rowsPerSegment];
+            for(int i = 0; i < segments.length; i++) {
+                int segmentRows = Math.min(rowsPerSegment, rows - i * rowsPerSegment);
+                // the mapping stays valid after the channel is closed
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + rowSize * rowsPerSegment * i, rowSize * segmentRows)
+                        .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+            return new ElevationGrid(x0, y0, cellSize, columns, rows, segments, rowsPerSegment);
+        }
+    }
+
+    /**
+     * @return x of the center of the west column
+     */
+    public double getX0() {
+        return x0;
+    }
+
+    /**
+     * @return y of the center of the north row
+     */
+    public double getY0() {
+        return y0;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Extent of the cell centers, the elevation is defined inside this envelope
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(x0, x0 + (columns - 1) * cellSize, y0 - (rows - 1) * cellSize, y0);
+    }
+
+    /**
+     * @param column Column index, 0 is the west column
+     * @param row Row index, 0 is the north row
+     * @return Elevation of the cell center, NaN if the cell has no value
+     */
+    public float getValue(int column, int row) {
+        return segments[row / rowsPerSegment].get((row % rowsPerSegment) * columns + column);
+    }
+
+    /**
+     * Bilinear interpolation of the elevation. If some of the four surrounding cells have no value, the elevation is
+     * interpolated with the remaining cells.
+     * @param px Point x
+     * @param py Point y
+     * @return Elevation, NaN if the point is outside of the grid or surrounded by cells without value
+     */
+    public double getZ(double px, double py) {
+        double fx = (px - x0) / cellSize;
+        double fy = (y0 - py) / cellSize;
+        if(!(fx >= 0 && fx <= columns - 1 && fy >= 0 && fy <= rows - 1)) {
+            return Double.NaN;
+        }
+        int column = Math.min((int) fx, columns - 2);
+        int row = Math.min((int) fy, rows - 2);
+        double tx = fx - column;
+        double ty = fy - row;
+        double weightedSum = 0;
+        double weights = 0;
+        double w = (1 - tx) * (1 - ty);
+        float z = getValue(column, row);
+        if(!Float.isNaN(z)) {
+            weightedSum += w * z;
+            weights += w;
+        }
+        w = tx * (1 - ty);
+        z = getValue(column + 1, row);
+        if(!Float.isNaN(z)) {
+            weightedSum += w * z;
+            weights += w;
+        }
+        w = (1 - tx) * ty;
+        z = getValue(column, row + 1);
+        if(!Float.isNaN(z)) {
+            weightedSum += w * z;
+            weights += w;
+        }
+        w = tx * ty;
+        z = getValue(column + 1, row + 1);
+        if(!Float.isNaN(z)) {
+            weightedSum += w * z;
+            weights += w;
+        }
+        return weights > 0 ? weightedSum / weights : Double.NaN;
+    }
+
+    /**
+     * Walk in the grid along the segment p0 p1 (digital differential analyzer). The intersection points of the segment
+     * with the rows and columns lines joining the cell centers are appended to the buffer, with the interpolated
+     * elevation. If p0 is outside of the grid, the point where the segment enters the grid is added first.
+     * Points without elevation are skipped.
+     * @param ax Segment start x
+     * @param ay Segment start y
+     * @param bx Segment end x
+     * @param by Segment end y
+     * @param buffer Output buffer, cleared by the caller
+     */
+    public void walk(double ax, double ay, double bx, double by, TopographicTin.WalkBuffer buffer) {
+        double rx = bx - ax;
+        double ry = by - ay;
+        if(rx == 0 && ry == 0) {
+            return;
+        }
+        // Clip the segment with the extent of the cell centers (Liang-Barsky)
+        double maxX = x0 + (columns - 1) * cellSize;
+        double minY = y0 - (rows - 1) * cellSize;
+        double tEnter = 0;
+        double tExit = 1;
+        for(int boundary = 0; boundary < 4; boundary++) {
+            double p = boundary == 0 ? -rx : boundary == 1 ? rx : boundary == 2 ? -ry : ry;
+            double q = boundary == 0 ? ax - x0 : boundary == 1 ? maxX - ax : boundary == 2 ? ay - minY : y0 - ay;
+            if(p == 0) {
+                if(q < 0) {
+                    return;
+                }
+            } else if(p < 0) {
+                tEnter = Math.max(tEnter, q / p);
+            } else {
+                tExit = Math.min(tExit, q / p);
+            }
+        }
+        if(tEnter > tExit) {
+            return;
+        }
+        if(tEnter > 0) {
+            addPoint(ax + tEnter * rx, ay + tEnter * ry, buffer);
+        }
+        // Lines are indexed in grid units, column lines along x and row lines along y (row 0 is the north row)
+        double fx = (ax + tEnter * rx - x0) / cellSize;
+        double fy = (y0 - (ay + tEnter * ry)) / cellSize;
+        int stepColumn = rx > 0 ? 1 : -1;
+        int stepRow = ry < 0 ? 1 : -1;
+        long column = rx > 0 ? (long) Math.floor(fx) + 1 : (long) Math.ceil(fx) - 1;
+        long row = ry < 0 ? (long) Math.floor(fy) + 1 : (long) Math.ceil(fy) - 1;
+        double tColumn = rx == 0 ? Double.POSITIVE_INFINITY : (x0 + column * cellSize - ax) / rx;
+        double tRow = ry == 0 ? Double.POSITIVE_INFINITY : (y0 - row * cellSize - ay) / ry;
+        double tolerance = JTSUtility.TRIANGLE_INTERSECTION_EPSILON / Math.sqrt(rx * rx + ry * ry);
+        while(true) {
+            double t = Math.min(tColumn, tRow);
+            if(t > tExit + tolerance) {
+                break;
+            }
+            if(t > tEnter) {
+                addPoint(ax + t * rx, ay + t * ry, buffer);
+            }
+            // a cell corner crosses both lines at once
+            if(tColumn <= t) {
+                column += stepColumn;
+                tColumn = (x0 + column * cellSize - ax) / rx;
+            }
+            if(tRow <= t) {
+                row += stepRow;
+                tRow = (y0 - row * cellSize - ay) / ry;
+            }
+        }
+    }
+
+    private void addPoint(double px, double py, TopographicTin.WalkBuffer buffer) {
+        double z = getZ(px, py);
+        if(!Double.isNaN(z)) {
+            buffer.add(px, py, z);
+        }
+    }
+
+    /**
+     * Write an elevation grid file, row by row from the north row to the south row.
+     */
+    public static class Writer implements Closeable {
+        private final OutputStream outputStream;
+        private final int columns;
+        private final int rows;
+        private final ByteBuffer rowBuffer;
+        private int writtenRows = 0;
+
+        /**
+         * @param file Output file (overwritten)
+         * @param x0 x of the center of the west column
+         * @param y0 y of the center of the north row
+         * @param cellSize Distance between two cell centers
+         * @param columns Number of columns
+         * @param rows Number of rows
+         * @throws IOException Error while creating the file
+         */
+        public Writer(File file, double x0, double y0, double cellSize, int columns, int rows) throws IOException {
+            if(columns < 2 || rows < 2) {
+                throw new IllegalArgumentException("The elevation grid must have at least two rows and two columns");
+            }
+            this.columns = columns;
+            this.rows = rows;
+            rowBuffer = ByteBuffer.allocate(Math.max(HEADER_SIZE, columns * Float.BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            outputStream = new BufferedOutputStream(new FileOutputStream(file));
+            rowBuffer.putInt(MAGIC);
+            rowBuffer.putInt(VERSION);
+            rowBuffer.putInt(columns);
+            rowBuffer.putInt(rows);
+            rowBuffer.putDouble(x0);
+            rowBuffer.putDouble(y0);
+            rowBuffer.putDouble(cellSize);
+            flush();
+        }
+
+        /**
+         * @param row Elevation of the cells of the next row, NaN if the cell has no value
+         * @throws IOException Error while writing the file
+         */
+        public void writeRow(float[] row) throws IOException {
+            if(row.length != columns) {
+                throw new IllegalArgumentException(String.format("Expected %d columns, got %d", columns,
+                        row.length));
+            }
+            if(writtenRows == rows) {
+                throw new IllegalStateException("All the rows have already been written");
+            }
+            rowBuffer.asFloatBuffer().put(row);
+            rowBuffer.position(row.length * Float.BYTES);
+            flush();
+            writtenRows++;
+        }
+
+        private void flush() throws IOException {
+            outputStream.write(rowBuffer.array(), 0, rowBuffer.position());
+            rowBuffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            outputStream.close();
+            if(writtenRows != rows) {
+                throw new IOException(String.format("Incomplete elevation grid, %d rows written on %d",
+                        writtenRows, rows));
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 2D convex hull where points are inserted one by one.
+ * The hull is initialised with the ring of a JTS {@link org.locationtech.jts.algorithm.ConvexHull} polygon and keeps
+ * its orientation. As with the JTS hull, the vertices are strictly convex (collinear points are removed) and when two
+ * points have the same 2D location the first one is kept.
+ * Each edge (from the vertex i to the next vertex) holds a flag, cleared when the edge is replaced by an insertion.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public final class IncrementalConvexHull {
+    private final List<Coordinate> vertices;
+    private boolean[] edgeFlags;
+    /** Orientation index of a point located outside of the hull, relative to an edge */
+    private final int outside;
+
+    /**
+     * @param ring Closed ring of a convex polygon, with at least 3 distinct vertices and without collinear vertices
+     */
+    public IncrementalConvexHull(Coordinate[] ring) {
+        if (ring.length < 4) {
+            throw new IllegalArgumentException("The hull must have at least 3 vertices");
+        }
+        vertices = new ArrayList<>(ring.length * 2);
+        vertices.addAll(Arrays.asList(ring).subList(0, ring.length - 1));
+        edgeFlags = new boolean[Math.max(16, ring.length * 2)];
+        outside = Orientation.isCCW(ring) ? Orientation.CLOCKWISE : Orientation.COUNTERCLOCKWISE;
+    }
+
+    /**
+     * @return Number of vertices
+     */
+    public int size() {
+        return vertices.size();
+    }
+
+    /**
+     * @param index Vertex index
+     * @return Vertex
+     */
+    public Coordinate get(int index) {
+        return vertices.get(index);
+    }
+
+    /**
+     * @param coordinate Location
+     * @return Index of the vertex located at the same 2D location, -1 if not found
+     */
+    public int indexOf(Coordinate coordinate) {
+        for (int i = 0; i < vertices.size(); i++) {
+            if (vertices.get(i).equals2D(coordinate)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Perimeter of the hull
+     */
+    public double getLength() {
+        double length = 0;
+        Coordinate previous = vertices.get(vertices.size() - 1);
+        for (Coordinate vertex : vertices) {
+            length += previous.distance(vertex);
+            previous = vertex;
+        }
+        return length;
+    }
+
+    /**
+     * @param index Index of the first vertex of the edge
+     * @return Flag of the edge, false for a new edge
+     */
+    public boolean isEdgeFlag(int index) {
+        return edgeFlags[index];
+    }
+
+    /**
+     * @param index Index of the first vertex of the edge
+     * @param flag New flag of the edge
+     */
+    public void setEdgeFlag(int index, boolean flag) {
+        edgeFlags[index] = flag;
+    }
+
+    /**
+     * @param index Index of the first vertex of the edge
+     * @param point Point to test
+     * @return True if the point sees the edge from the outside of the hull, or if it is aligned with the edge but
+     * not on it, in which case a vertex of the edge becomes collinear with its neighbours once the point is inserted
+     */
+    private boolean isVisible(int index, Coordinate point) {
+        int n = vertices.size();
+        Coordinate a = vertices.get(index);
+        Coordinate b = vertices.get((index + 1) % n);
+        int orientation = Orientation.index(a, b, point);
+        if (orientation == outside) {
+            return true;
+        }
+        if (orientation == Orientation.COLLINEAR) {
+            // aligned, check if the point is outside the segment
+            double dot = (point.x - a.x) * (b.x - a.x) + (point.y - a.y) * (b.y - a.y);
+            return dot < 0 || dot > (b.x - a.x) * (b.x - a.x) + (b.y - a.y) * (b.y - a.y);
+        }
+        return false;
+    }
+
+    /**
+     * Insert a point into the hull
+     * @param point Point to insert
+     * @return True if the hull has been modified, false if the point is inside the hull, on its boundary or at the
+     * location of a vertex
+     */
+    public boolean add(Coordinate point) {
+        int n = vertices.size();
+        // Find one visible edge
+        int visible = -1;
+        for (int i = 0; i < n; i++) {
+            if (vertices.get(i).equals2D(point)) {
+                return false;
+            }
+            if (visible == -1 && isVisible(i, point)) {
+                visible = i;
+            }
+        }
+        if (visible == -1) {
+            return false;
+        }
+        // The visible edges form a chain, extend it in both directions
+        int first = visible;
+        int count = 1;
+        while (count < n && isVisible((first - 1 + n) % n, point)) {
+            first = (first - 1 + n) % n;
+            count++;
+        }
+        while (count < n && isVisible((first + count) % n, point)) {
+            count++;
+        }
+        // Replace the vertices between the first and the last visible edges by the point
+        int removed = count - 1;
+        boolean[] flags = new boolean[Math.max(edgeFlags.length, n - removed + 1)];
+        List<Coordinate> newVertices = new ArrayList<>(n - removed + 1);
+        for (int i = 0; i < n - removed; i++) {
+            int vertex = (first + count + i) % n;
+            newVertices.add(vertices.get(vertex));
+            // the edge of the last kept vertex now ends on the new point
+            flags[i] = i < n - removed - 1 && edgeFlags[vertex];
+        }
+        newVertices.add(point);
+        vertices.clear();
+        vertices.addAll(newVertices);
+        edgeFlags = flags;
+        return true;
+    }
+}
@@ -47,8 +47,16 @@ import org.locationtech.jts.math.Vector2D;
 import org.locationtech.jts.triangulate.quadedge.Vertex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Receiver images of a receiver for all the reflection orders. Images are stored in primitive arrays and indexed by
+ * the envelope of their visibility cone, {@link MirrorReceiverResult} instances are only created for the images
+ * returned by {@link #findCloseMirrorReceivers(Coordinate)}.
+ * For reflection orders greater than one, only the walls located in the propagation area of the parent image are
+ * mirrored, as the reflection on other walls cannot reach the parent wall.
+ */
 public class MirrorReceiverResultIndex {
     private static final double DEFAULT_CIRCLE_POINT_ANGLE = Math.PI / 24;
     STRtree mirrorReceiverTree;
@@ -59,6 +67,15 @@ public class MirrorReceiverResultIndex {
     private final double maximumDistanceFromWall;
     private final double maximumPropagationDistance;
     int numberOfImageReceivers = 0;
+    // Receiver images
+    private double[] imageX = new double[0];
+    private double[] imageY = new double[0];
+    private double[] imageZ = new double[0];
+    /** Index of the mirrored wall in buildWalls */
+    private int[] imageWall = new int[0];
+    /** Index of the parent image, -1 for first order images */
+    private int[] imageParent = new int[0];
+    private MirrorReceiverResult[] imageResults = null;
 
     public static Polygon createWallReflectionVisibilityCone(Coordinate receiverImage, LineSegment wall,
                                                              double maximumPropagationDistance,
@@ -107,6 +124,119 @@ public class MirrorReceiverResultIndex {
             return factory.createPolygon();
         }
     }
+
+    /**
+     * Compute the envelope of the polygon returned by
+     * {@link #createWallReflectionVisibilityCone(Coordinate, LineSegment, double, double)} without creating the
+     * polygon.
+     * @param receiverImage Receiver image
+     * @param wall Mirrored wall
+     * @param maximumPropagationDistance Maximum propagation distance
+     * @param maximumDistanceFromWall Maximum distance from wall
+     * @return Envelope of the visibility cone, null envelope if the cone is empty
+     */
+    public static Envelope createWallReflectionVisibilityConeEnvelope(Coordinate receiverImage, LineSegment wall,
+                                                                      double maximumPropagationDistance,
+                                                                      double maximumDistanceFromWall) {
+        Envelope envelope = new Envelope();
+        if(wall.distance(receiverImage) > maximumPropagationDistance) {
+            return envelope;
+        }
+        final double ix = receiverImage.x;
+        final double iy = receiverImage.y;
+        final double wx = wall.p1.x - wall.p0.x;
+        final double wy = wall.p1.y - wall.p0.y;
+        double r0x = wall.p0.x - ix, r0y = wall.p0.y - iy;
+        double length = Math.sqrt(r0x * r0x + r0y * r0y);
+        r0x /= length;
+        r0y /= length;
+        double r1x = wall.p1.x - ix, r1y = wall.p1.y - iy;
+        length = Math.sqrt(r1x * r1x + r1y * r1y);
+        r1x /= length;
+        r1y /= length;
+        double angle = Math.atan2(r1y, r1x) - Math.atan2(r0y, r0x);
+        if(angle <= -Math.PI) {
+            angle += 2 * Math.PI;
+        } else if(angle > Math.PI) {
+            angle -= 2 * Math.PI;
+        }
+        double angleSign = angle >= 0 ? 1 : -1;
+        int numberOfStep = Math.max(1, (int)(Math.abs(angle) / DEFAULT_CIRCLE_POINT_ANGLE));
+        double lastIntersectionX = 0, lastIntersectionY = 0;
+        for(int angleStep = 0 ; angleStep <= numberOfStep; angleStep++) {
+            double dx, dy;
+            if(angleStep == numberOfStep) {
+                dx = r1x;
+                dy = r1y;
+            } else if(angleStep == 0) {
+                dx = r0x;
+                dy = r0y;
+            } else {
+                double rotation = DEFAULT_CIRCLE_POINT_ANGLE * angleSign * angleStep;
+                double cos = Math.cos(rotation);
+                double sin = Math.sin(rotation);
+                dx = r0x * cos - r0y * sin;
+                dy = r0x * sin + r0y * cos;
+            }
+            // intersection of the wall line with the line from the image along the direction
+            double denominator = wx * dy - wy * dx;
+            if(denominator == 0) {
+                continue;
+            }
+            double t = ((ix - wall.p0.x) * dy - (iy - wall.p0.y) * dx) / denominator;
+            double intersectionX = wall.p0.x + t * wx;
+            double intersectionY = wall.p0.y + t * wy;
+            if(!Double.isFinite(intersectionX) || !Double.isFinite(intersectionY)) {
+                continue;
+            }
+            double intersectionDistance = Math.sqrt((intersectionX - ix) * (intersectionX - ix) +
+                    (intersectionY - iy) * (intersectionY - iy));
+            if (intersectionDistance < maximumPropagationDistance) {
+                double vectorLength = Math.min(intersectionDistance + maximumDistanceFromWall, maximumPropagationDistance);
+                if(envelope.isNull()) {
+                    envelope.expandToInclude(intersectionX, intersectionY);
+                }
+                lastIntersectionX = intersectionX;
+                lastIntersectionY = intersectionY;
+                envelope.expandToInclude(ix + dx * vectorLength, iy + dy * vectorLength);
+            }
+        }
+        if(!envelope.isNull()) {
+            envelope.expandToInclude(lastIntersectionX, lastIntersectionY);
+        }
+        return envelope;
+    }
+
+    /**
+     * Envelope of the area beyond the wall seen from the receiver image, up to the maximum propagation distance.
+     * A reflection point of a higher order image must be in this area.
+     */
+    private static void propagationAreaEnvelope(double ix, double iy, ProfileBuilder.Wall wall, double radius,
+                                                Envelope envelope) {
+        envelope.init(wall.p0.x, wall.p1.x, wall.p0.y, wall.p1.y);
+        double a0 = Math.atan2(wall.p0.y - iy, wall.p0.x - ix);
+        double a1 = Math.atan2(wall.p1.y - iy, wall.p1.x - ix);
+        envelope.expandToInclude(ix + Math.cos(a0) * radius, iy + Math.sin(a0) * radius);
+        envelope.expandToInclude(ix + Math.cos(a1) * radius, iy + Math.sin(a1) * radius);
+        // sweep the smallest angle between the wall extremities
+        double start = a0;
+        double sweep = a1 - a0;
+        if(sweep < 0) {
+            sweep += 2 * Math.PI;
+        }
+        if(sweep > Math.PI) {
+            start = a1;
+            sweep = 2 * Math.PI - sweep;
+        }
+        // add the circle extremities crossed by the sweep
+        for(int quadrant = -4; quadrant <= 4; quadrant++) {
+            double axisAngle = quadrant * Math.PI / 2;
+            if(axisAngle > start && axisAngle < start + sweep) {
+                envelope.expandToInclude(ix + Math.cos(axisAngle) * radius, iy + Math.sin(axisAngle) * radius);
+            }
+        }
+    }
+
     /**
      * Generate all image receivers from the provided list of walls
      * @param buildWalls
@@ -121,50 +251,122 @@ public class MirrorReceiverResultIndex {
         this.maximumDistanceFromWall = maximumDistanceFromWall;
         this.maximumPropagationDistance = maximumPropagationDistance;
         mirrorReceiverTree = new STRtree();
-        ArrayList<MirrorReceiverResult> parentsToProcess = new ArrayList<>();
-        for(int currentDepth = 0; currentDepth < reflectionOrder; currentDepth++) {
-            if(currentDepth == 0) {
-                parentsToProcess.add(null);
+        final int wallCount = buildWalls.size();
+        STRtree wallsTree = null;
+        if(reflectionOrder > 1) {
+            wallsTree = new STRtree();
+            for(int idWall = 0; idWall < wallCount; idWall++) {
+                ProfileBuilder.Wall wall = buildWalls.get(idWall);
+                wallsTree.insert(new Envelope(wall.p0, wall.p1), idWall);
             }
-            ArrayList<MirrorReceiverResult> nextParentsToProcess = new ArrayList<>();
-            for(MirrorReceiverResult parent : parentsToProcess) {
-                for (ProfileBuilder.Wall wall : buildWalls) {
-                    Coordinate receiverImage;
-                    if (parent != null) {
-                        if(wall == parent.getWall()) {
-                            continue;
-                        } else {
-                            receiverImage = parent.getReceiverPos();
-                        }
-                    } else {
-                        receiverImage = receiverCoordinates;
+        }
+        int[] allWalls = new int[wallCount];
+        for(int idWall = 0; idWall < wallCount; idWall++) {
+            allWalls[idWall] = idWall;
+        }
+        WallIndexVisitor wallIndexVisitor = new WallIndexVisitor();
+        Envelope propagationArea = new Envelope();
+        Coordinate image = new Coordinate();
+        int parentsBegin = 0;
+        int parentsEnd = 1;
+        for(int currentDepth = 0; currentDepth < reflectionOrder; currentDepth++) {
+            int nextParentsBegin = numberOfImageReceivers;
+            for(int parent = parentsBegin; parent < parentsEnd; parent++) {
+                // candidate walls
+                int[] walls = allWalls;
+                int candidateCount = wallCount;
+                if (currentDepth == 0) {
+                    image.setCoordinate(receiverCoordinates);
+                } else {
+                    image.setX(imageX[parent]);
+                    image.setY(imageY[parent]);
+                    image.setZ(imageZ[parent]);
+                    propagationAreaEnvelope(image.x, image.y, buildWalls.get(imageWall[parent]),
+                            maximumPropagationDistance, propagationArea);
+                    wallIndexVisitor.size = 0;
+                    wallsTree.query(propagationArea, wallIndexVisitor);
+                    // keep walls order
+                    Arrays.sort(wallIndexVisitor.walls, 0, wallIndexVisitor.size);
+                    walls = wallIndexVisitor.walls;
+                    candidateCount = wallIndexVisitor.size;
+                }
+                for (int idCandidate = 0; idCandidate < candidateCount; idCandidate++) {
+                    final int idWall = walls[idCandidate];
+                    if (currentDepth > 0 && idWall == imageWall[parent]) {
+                        continue;
                     }
+                    ProfileBuilder.Wall wall = buildWalls.get(idWall);
                     //Calculate the coordinate of projection
-                    Coordinate proj = wall.getLineSegment().project(receiverImage);
-                    Coordinate rcvMirror = new Coordinate(2 * proj.x - receiverImage.x,
-                            2 * proj.y - receiverImage.y, receiverImage.z);
-                    if(wall.getLineSegment().distance(rcvMirror) > maximumPropagationDistance) {
+                    LineSegment wallSegment = wall.getLineSegment();
+                    Coordinate proj = wallSegment.project(image);
+                    Coordinate rcvMirror = new Coordinate(2 * proj.x - image.x,
+                            2 * proj.y - image.y, image.z);
+                    if(wallSegment.distance(rcvMirror) > maximumPropagationDistance) {
                         // wall is too far from the receiver image, there is no receiver image
                         continue;
                     }
-                    MirrorReceiverResult receiverResult = new MirrorReceiverResult(rcvMirror, parent, wall,
-                            wall.getOriginId(), wall.getType());
-                    // create the visibility cone of this receiver image
-                    Polygon imageReceiverVisibilityCone = createWallReflectionVisibilityCone(rcvMirror,
-                            wall.getLineSegment(), maximumPropagationDistance, maximumDistanceFromWall);
-                    mirrorReceiverTree.insert(imageReceiverVisibilityCone.getEnvelopeInternal(), receiverResult);
-                    nextParentsToProcess.add(receiverResult);
-                    numberOfImageReceivers++;
+                    int imageIndex = addImage(rcvMirror, idWall, currentDepth == 0 ? -1 : parent);
+                    // index the envelope of the visibility cone of this receiver image
+                    Envelope coneEnvelope = createWallReflectionVisibilityConeEnvelope(rcvMirror,
+                            wallSegment, maximumPropagationDistance, maximumDistanceFromWall);
+                    if(!coneEnvelope.isNull()) {
+                        mirrorReceiverTree.insert(coneEnvelope, imageIndex);
+                    }
                     if(numberOfImageReceivers >= mirrorReceiverCapacity) {
                         return;
                     }
                 }
             }
-            parentsToProcess = nextParentsToProcess;
+            parentsBegin = nextParentsBegin;
+            parentsEnd = numberOfImageReceivers;
         }
         mirrorReceiverTree.build();
     }
 
+    private int addImage(Coordinate position, int wall, int parent) {
+        int index = numberOfImageReceivers++;
+        if(index >= imageX.length) {
+            int capacity = Math.max(16, imageX.length * 2);
+            imageX = Arrays.copyOf(imageX, capacity);
+            imageY = Arrays.copyOf(imageY, capacity);
+            imageZ = Arrays.copyOf(imageZ, capacity);
+            imageWall = Arrays.copyOf(imageWall, capacity);
+            imageParent = Arrays.copyOf(imageParent, capacity);
+        }
+        imageX[index] = position.x;
+        imageY[index] = position.y;
+        imageZ[index] = position.z;
+        imageWall[index] = wall;
+        imageParent[index] = parent;
+        return index;
+    }
+
+    /**
+     * @param index Image index
+     * @return Receiver image with its parents, the same instance is returned for the same index
+     */
+    MirrorReceiverResult getMirrorReceiverResult(int index) {
+        if(imageResults == null) {
+            imageResults = new MirrorReceiverResult[numberOfImageReceivers];
+        }
+        MirrorReceiverResult result = imageResults[index];
+        if(result == null) {
+            MirrorReceiverResult parent = imageParent[index] >= 0 ? getMirrorReceiverResult(imageParent[index]) : null;
+            ProfileBuilder.Wall wall = buildWalls.get(imageWall[index]);
+            result = new MirrorReceiverResult(new Coordinate(imageX[index], imageY[index], imageZ[index]), parent,
+                    wall, wall.getOriginId(), wall.getType());
+            imageResults[index] = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return Number of receiver images
+     */
+    public int getNumberOfImageReceivers() {
+        return numberOfImageReceivers;
+    }
+
     public int getMirrorReceiverCapacity() {
         return mirrorReceiverCapacity;
     }
@@ -178,26 +380,120 @@ public class MirrorReceiverResultIndex {
             throw new IllegalArgumentException("Not supported NaN z value");
         }
         Envelope env = new Envelope(sourcePosition);
-        ReceiverImageVisitor receiverImageVisitor = new ReceiverImageVisitor(buildWalls, sourcePosition,
+        ReceiverImageVisitor receiverImageVisitor = new ReceiverImageVisitor(this, sourcePosition,
                 receiverCoordinate, maximumDistanceFromWall, maximumPropagationDistance);
         mirrorReceiverTree.query(env, receiverImageVisitor);
         return receiverImageVisitor.result;
     }
 
+    /**
+     * Walls around a group of close receivers. Receivers of the same facade are usually computed one after the other
+     * by the same thread; the walls are fetched once for an area slightly larger than the propagation area of a
+     * receiver, then the walls of the next receivers are only filtered from this list while they stay in this area.
+     * The returned walls are the same, and in the same order, as {@link ProfileBuilder#getWallsIn(Envelope)}.
+     * This class is not thread safe.
+     */
+    public static class WallsCache {
+        public static final double DEFAULT_MARGIN = 25;
+        private final ProfileBuilder profileBuilder;
+        private final double margin;
+        private Envelope cachedEnvelope = null;
+        private List<ProfileBuilder.Wall> cachedWalls = new ArrayList<>();
+        // envelope of each cached wall, minX, maxX, minY, maxY
+        private double[] wallEnvelopes = new double[0];
+        private long cacheHit = 0;
+        private long cacheMiss = 0;
+
+        public WallsCache(ProfileBuilder profileBuilder) {
+            this(profileBuilder, DEFAULT_MARGIN);
+        }
+
+        /**
+         * @param profileBuilder Walls source
+         * @param margin Expand the fetched area by this distance in meters
+         */
+        public WallsCache(ProfileBuilder profileBuilder, double margin) {
+            this.profileBuilder = profileBuilder;
+            this.margin = margin;
+        }
+
+        /**
+         * @param env Area
+         * @return Walls (buildings and walls) that intersects the area
+         */
+        public List<ProfileBuilder.Wall> getWallsIn(Envelope env) {
+            if(cachedEnvelope == null || !cachedEnvelope.contains(env)) {
+                cacheMiss++;
+                cachedEnvelope = new Envelope(env);
+                cachedEnvelope.expandBy(margin);
+                cachedWalls = profileBuilder.getWallsIn(cachedEnvelope);
+                if(wallEnvelopes.length < cachedWalls.size() * 4) {
+                    wallEnvelopes = new double[cachedWalls.size() * 4];
+                }
+                for(int idWall = 0; idWall < cachedWalls.size(); idWall++) {
+                    ProfileBuilder.Wall wall = cachedWalls.get(idWall);
+                    wallEnvelopes[idWall * 4] = Math.min(wall.p0.x, wall.p1.x);
+                    wallEnvelopes[idWall * 4 + 1] = Math.max(wall.p0.x, wall.p1.x);
+                    wallEnvelopes[idWall * 4 + 2] = Math.min(wall.p0.y, wall.p1.y);
+                    wallEnvelopes[idWall * 4 + 3] = Math.max(wall.p0.y, wall.p1.y);
+                }
+            } else {
+                cacheHit++;
+            }
+            List<ProfileBuilder.Wall> walls = new ArrayList<>();
+            for(int idWall = 0; idWall < cachedWalls.size(); idWall++) {
+                if(wallEnvelopes[idWall * 4] <= env.getMaxX() && wallEnvelopes[idWall * 4 + 1] >= env.getMinX() &&
+                        wallEnvelopes[idWall * 4 + 2] <= env.getMaxY() && wallEnvelopes[idWall * 4 + 3] >= env.getMinY()) {
+                    walls.add(cachedWalls.get(idWall));
+                }
+            }
+            return walls;
+        }
+
+        /**
+         * @return Number of requests served from the cached walls
+         */
+        public long getCacheHit() {
+            return cacheHit;
+        }
+
+        /**
+         * @return Number of requests that fetched the walls from the profile builder
+         */
+        public long getCacheMiss() {
+            return cacheMiss;
+        }
+    }
+
+    private static class WallIndexVisitor implements ItemVisitor {
+        int[] walls = new int[16];
+        int size = 0;
+
+        @Override
+        public void visitItem(Object item) {
+            if(size == walls.length) {
+                walls = Arrays.copyOf(walls, size * 2);
+            }
+            walls[size++] = (Integer) item;
+        }
+    }
+
     private static class ReceiverImageVisitor implements ItemVisitor {
         List<MirrorReceiverResult> result = new ArrayList<>();
-        List<ProfileBuilder.Wall> buildWalls;
+        MirrorReceiverResultIndex index;
         Coordinate source;
         Coordinate receiver;
         LineSegment sourceReceiverSegment;
         double maximumDistanceFromSegment;
         double maximumPropagationDistance;
         int visitedNode = 0;
+        final Coordinate imagePosition = new Coordinate();
+        final LineIntersector li = new RobustLineIntersector();
 
-        public ReceiverImageVisitor(List<ProfileBuilder.Wall> buildWalls, Coordinate source, Coordinate receiver,
+        public ReceiverImageVisitor(MirrorReceiverResultIndex index, Coordinate source, Coordinate receiver,
                                     double maximumDistanceFromSegment,
                                     double maximumPropagationDistance) {
-            this.buildWalls = buildWalls;
+            this.index = index;
             this.source = source;
             this.receiver = receiver;
             this.sourceReceiverSegment = new LineSegment(source, receiver);
@@ -210,28 +506,31 @@ public class MirrorReceiverResultIndex {
             visitedNode++;
             // try to excluded walls without taking into account the topography and other factors
 
-            MirrorReceiverResult receiverImage = (MirrorReceiverResult) item;
+            final int imageIndex = (Integer) item;
             // Check propagation distance
-            if(receiverImage.getReceiverPos().distance3D(source) < maximumPropagationDistance) {
+            imagePosition.setX(index.imageX[imageIndex]);
+            imagePosition.setY(index.imageY[imageIndex]);
+            imagePosition.setZ(index.imageZ[imageIndex]);
+            if(imagePosition.distance3D(source) < maximumPropagationDistance) {
                 // Check distance of walls
-                MirrorReceiverResult currentReceiverImage = receiverImage;
+                int currentImage = imageIndex;
                 Coordinate reflectionPoint = source;
-                while (currentReceiverImage != null) {
-                    final ProfileBuilder.Wall currentWall = currentReceiverImage.getWall();
+                while (currentImage >= 0) {
+                    final ProfileBuilder.Wall currentWall = index.buildWalls.get(index.imageWall[currentImage]);
                     final LineSegment currentWallLineSegment = currentWall.getLineSegment();
                     if (currentWallLineSegment.distance(sourceReceiverSegment) > maximumDistanceFromSegment) {
                         return;
                     }
                     // Check if reflection is placed on the wall segment
-                    LineSegment srcMirrRcvLine = new LineSegment(currentReceiverImage.getReceiverPos(), reflectionPoint);
-                    LineIntersector li = new RobustLineIntersector();
+                    LineSegment srcMirrRcvLine = new LineSegment(new Coordinate(index.imageX[currentImage],
+                            index.imageY[currentImage], index.imageZ[currentImage]), reflectionPoint);
                     li.computeIntersection(currentWallLineSegment.p0, currentWallLineSegment.p1,
                             srcMirrRcvLine.p0, srcMirrRcvLine.p1);
                     if(!li.hasIntersection()) {
                         // No reflection on this wall
                         return;
                     } else {
-                        reflectionPoint = li.getIntersection(0);
+                        reflectionPoint = new Coordinate(li.getIntersection(0));
                         double wallReflectionPointZ = Vertex.interpolateZ(reflectionPoint, currentWallLineSegment.p0,
                                 currentWallLineSegment.p1);
                         double propagationReflectionPointZ =  Vertex.interpolateZ(reflectionPoint, srcMirrRcvLine.p0,
@@ -246,7 +545,6 @@ public class MirrorReceiverResultIndex {
                     for (ProfileBuilder.Wall otherWall : currentWall.getObstacle().getWalls()) {
                         if(!otherWall.equals(currentWall)) {
                             LineSegment otherWallSegment = otherWall.getLineSegment();
-                            li = new RobustLineIntersector();
                             li.computeIntersection(otherWall.p0, otherWall.p1, reflectionPoint, source);
                             if (li.hasIntersection()) {
                                 Coordinate otherReflectionPoint = li.getIntersection(0);
@@ -261,10 +559,10 @@ public class MirrorReceiverResultIndex {
                             }
                         }
                     }
-                    currentReceiverImage = currentReceiverImage.getParentMirror();
+                    currentImage = index.imageParent[currentImage];
                 }
                 // not rejected
-                result.add(receiverImage);
+                result.add(index.getMirrorReceiverResult(imageIndex));
             }
         }
     }
@@ -34,8 +34,6 @@
 package org.noise_planet.noisemodelling.pathfinder;
 
 
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
-import org.apache.commons.math3.linear.RealMatrix;
 import org.locationtech.jts.math.Vector3D;
 
 import java.util.Objects;
@@ -95,10 +93,24 @@ public class Orientation {
      * @return New vector orientation
      */
     public static Vector3D rotate(Orientation orientation, Vector3D vector, boolean inverse) {
+        double[] res = new double[3];
+        rotate(orientation, vector.getX(), vector.getY(), vector.getZ(), inverse, res);
+        return new Vector3D(res[0], res[1], res[2]);
+    }
+
+    /**
+     * Rotate the vector by the provided orientation without allocating intermediate objects
+     * @param orientation Rotation to apply
+     * @param x Vector x component
+     * @param y Vector y component
+     * @param z Vector z component
+     * @param inverse True to inverse rotation
+     * @param out Array of size 3 that will receive the x, y, z components of the rotated vector
+     */
+    public static void rotate(Orientation orientation, double x, double y, double z, boolean inverse, double[] out) {
         // Coordinate system of the orientation is Y+ North X+ East
         // Y+ must be yaw = 0
         // X+ must be yaw = 90
-        double[] b = new double[]{vector.getY(), vector.getX(), vector.getZ()};
         final double yaw = Math.toRadians(orientation.yaw);
         final double pitch = Math.toRadians(orientation.pitch);
         final double roll = Math.toRadians(orientation.roll);
@@ -109,20 +121,23 @@ public class Orientation {
         final double c3 = Math.cos(roll);
         final double s3 = Math.sin(roll);
         // https://en.wikipedia.org/wiki/Euler_angles#Rotation_matrix
-        double[][] a = new double[][]{
-                {c1 * c2, c1 * s2 * s3 - s1 * c3, c1 * s2 * c3 + s1 * s3},
-                {s1 * c2, s1 * s2 * s3 + c1 * c3, s1 * s2 * c3 - c1 * s3},
-                {-s2, c2 * s3, c2 * c3}
-        };
-        RealMatrix matrixA = new Array2DRowRealMatrix(a);
+        final double a00 = c1 * c2, a01 = c1 * s2 * s3 - s1 * c3, a02 = c1 * s2 * c3 + s1 * s3;
+        final double a10 = s1 * c2, a11 = s1 * s2 * s3 + c1 * c3, a12 = s1 * s2 * c3 - c1 * s3;
+        final double a20 = -s2, a21 = c2 * s3, a22 = c2 * c3;
+        // b = {y, x, z}
+        final double r0, r1, r2;
         if(inverse) {
-            matrixA = matrixA.transpose();
+            r0 = a00 * y + a10 * x + a20 * z;
+            r1 = a01 * y + a11 * x + a21 * z;
+            r2 = a02 * y + a12 * x + a22 * z;
+        } else {
+            r0 = a00 * y + a01 * x + a02 * z;
+            r1 = a10 * y + a11 * x + a12 * z;
+            r2 = a20 * y + a21 * x + a22 * z;
         }
-        RealMatrix matrixB = new Array2DRowRealMatrix(b);
-        RealMatrix res = matrixA.multiply(matrixB);
-        return new Vector3D(res.getEntry(1, 0),
-                res.getEntry(0, 0),
-                res.getEntry(2, 0));
+        out[0] = r1;
+        out[1] = r0;
+        out[2] = r2;
     }
 
     public static Orientation fromVector(Vector3D vector, double roll) {
@@ -0,0 +1,388 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Static R-tree of integer items, packed in primitive arrays.
+ * The items are sorted along a Hilbert curve (using the center of their envelope) then grouped by nodeSize to build
+ * each level of the tree, from the leaves to the root. The envelopes of all the nodes are stored in a single double
+ * array and the items in an int array, so the tree does not hold any object per item.
+ * The tree is immutable once built and can be queried concurrently by several threads.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public final class PackedRTree {
+    public static final int DEFAULT_NODE_SIZE = 16;
+    /** Number of cells of the Hilbert curve grid along each axis is 2^HILBERT_ORDER */
+    private static final int HILBERT_ORDER = 15;
+    /** Tolerance added to the node envelopes when testing a segment */
+    static final double SEGMENT_TOLERANCE = 1e-7;
+    private static final PackedRTree EMPTY = new Builder().build();
+
+    private final int nodeSize;
+    private final int itemCount;
+    /** Envelope of each node, minX, minY, maxX, maxY. The leaves first, the root is the last node. */
+    private final double[] boxes;
+    /** Item of the leaves, position of the first child of the other nodes */
+    private final int[] indices;
+    /** Position of the end (exclusive) of each level */
+    private final int[] levelBounds;
+
+    /**
+     * Called for each item found by a query
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @param item Item identifier
+         * @return False to stop the query
+         */
+        boolean visit(int item);
+    }
+
+    private PackedRTree(int nodeSize, int itemCount, double[] boxes, int[] indices, int[] levelBounds) {
+        this.nodeSize = nodeSize;
+        this.itemCount = itemCount;
+        this.boxes = boxes;
+        this.indices = indices;
+        this.levelBounds = levelBounds;
+    }
+
+    /**
+     * @return Tree without items
+     */
+    public static PackedRTree empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return Number of items
+     */
+    public int size() {
+        return itemCount;
+    }
+
+    public int getNodeSize() {
+        return nodeSize;
+    }
+
+    /**
+     * Visit the items whose envelope intersects the query envelope
+     * @param minX Query envelope min x
+     * @param minY Query envelope min y
+     * @param maxX Query envelope max x
+     * @param maxY Query envelope max y
+     * @param visitor Item visitor
+     * @return False if the visitor stopped the query
+     */
+    public boolean query(double minX, double minY, double maxX, double maxY, Visitor visitor) {
+        if (itemCount == 0) {
+            return true;
+        }
+        int root = levelBounds[levelBounds.length - 1] - 1;
+        if (!intersects(root, minX, minY, maxX, maxY)) {
+            return true;
+        }
+        return queryNode(root, levelBounds.length - 1, minX, minY, maxX, maxY, visitor);
+    }
+
+    /**
+     * Visit the items whose envelope intersects the query envelope
+     * @param envelope Query envelope
+     * @param visitor Item visitor
+     * @return False if the visitor stopped the query
+     */
+    public boolean query(Envelope envelope, Visitor visitor) {
+        if (envelope.isNull()) {
+            return true;
+        }
+        return query(envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY(), visitor);
+    }
+
+    /**
+     * @param envelope Query envelope
+     * @return Items whose envelope intersects the query envelope
+     */
+    public List<Integer> query(Envelope envelope) {
+        List<Integer> items = new ArrayList<>();
+        query(envelope, item -> {
+            items.add(item);
+            return true;
+        });
+        return items;
+    }
+
+    /**
+     * Visit the items whose envelope intersects the segment p0 p1. Each item is visited once.
+     * @param x0 Segment start x
+     * @param y0 Segment start y
+     * @param x1 Segment end x
+     * @param y1 Segment end y
+     * @param visitor Item visitor
+     * @return False if the visitor stopped the query
+     */
+    public boolean querySegment(double x0, double y0, double x1, double y1, Visitor visitor) {
+        if (itemCount == 0) {
+            return true;
+        }
+        int root = levelBounds[levelBounds.length - 1] - 1;
+        if (!intersectsSegment(root, x0, y0, x1, y1)) {
+            return true;
+        }
+        return querySegmentNode(root, levelBounds.length - 1, x0, y0, x1, y1, visitor);
+    }
+
+    private boolean queryNode(int node, int level, double minX, double minY, double maxX, double maxY,
+                              Visitor visitor) {
+        if (level == 0) {
+            return visitor.visit(indices[node]);
+        }
+        int start = indices[node];
+        int end = Math.min(start + nodeSize, levelBounds[level - 1]);
+        for (int child = start; child < end; child++) {
+            if (intersects(child, minX, minY, maxX, maxY)
+                    && !queryNode(child, level - 1, minX, minY, maxX, maxY, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean querySegmentNode(int node, int level, double x0, double y0, double x1, double y1,
+                                     Visitor visitor) {
+        if (level == 0) {
+            return visitor.visit(indices[node]);
+        }
+        int start = indices[node];
+        int end = Math.min(start + nodeSize, levelBounds[level - 1]);
+        for (int child = start; child < end; child++) {
+            if (intersectsSegment(child, x0, y0, x1, y1)
+                    && !querySegmentNode(child, level - 1, x0, y0, x1, y1, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean intersects(int node, double minX, double minY, double maxX, double maxY) {
+        int pos = node * 4;
+        return boxes[pos] <= maxX && boxes[pos + 1] <= maxY && boxes[pos + 2] >= minX && boxes[pos + 3] >= minY;
+    }
+
+    /**
+     * Clip the segment with the slabs of the node envelope (Liang-Barsky)
+     */
+    private boolean intersectsSegment(int node, double x0, double y0, double x1, double y1) {
+        int pos = node * 4;
+        double minX = boxes[pos] - SEGMENT_TOLERANCE;
+        double minY = boxes[pos + 1] - SEGMENT_TOLERANCE;
+        double maxX = boxes[pos + 2] + SEGMENT_TOLERANCE;
+        double maxY = boxes[pos + 3] + SEGMENT_TOLERANCE;
+        double tEnter = 0;
+        double tExit = 1;
+        double dx = x1 - x0;
+        if (dx == 0) {
+            if (x0 < minX || x0 > maxX) {
+                return false;
+            }
+        } else {
+            double ta = (minX - x0) / dx;
+            double tb = (maxX - x0) / dx;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+            if (tEnter > tExit) {
+                return false;
+            }
+        }
+        double dy = y1 - y0;
+        if (dy == 0) {
+            return y0 >= minY && y0 <= maxY;
+        }
+        double ta = (minY - y0) / dy;
+        double tb = (maxY - y0) / dy;
+        tEnter = Math.max(tEnter, Math.min(ta, tb));
+        tExit = Math.min(tExit, Math.max(ta, tb));
+        return tEnter <= tExit;
+    }
+
+    /**
+     * Position of a point on the Hilbert curve of order {@link #HILBERT_ORDER}
+     * @param x Column in [0, 2^order[
+     * @param y Row in [0, 2^order[
+     * @return Distance along the curve
+     */
+    static long hilbert(int x, int y) {
+        long d = 0;
+        for (int s = 1 << (HILBERT_ORDER - 1); s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Collect the items, then build the tree.
+     */
+    public static final class Builder {
+        private double[] boxes = new double[64];
+        private int[] items = new int[16];
+        private int count = 0;
+
+        /**
+         * @param minX Item envelope min x
+         * @param minY Item envelope min y
+         * @param maxX Item envelope max x
+         * @param maxY Item envelope max y
+         * @param item Item identifier returned by the queries
+         * @return This builder
+         */
+        public Builder add(double minX, double minY, double maxX, double maxY, int item) {
+            if (count == items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+                boxes = Arrays.copyOf(boxes, boxes.length * 2);
+            }
+            boxes[count * 4] = minX;
+            boxes[count * 4 + 1] = minY;
+            boxes[count * 4 + 2] = maxX;
+            boxes[count * 4 + 3] = maxY;
+            items[count] = item;
+            count++;
+            return this;
+        }
+
+        /**
+         * @param envelope Item envelope, null envelopes are ignored
+         * @param item Item identifier returned by the queries
+         * @return This builder
+         */
+        public Builder add(Envelope envelope, int item) {
+            if (!envelope.isNull()) {
+                add(envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY(), item);
+            }
+            return this;
+        }
+
+        /**
+         * @return Number of items added
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * @return Tree with the default node size
+         */
+        public PackedRTree build() {
+            return build(DEFAULT_NODE_SIZE);
+        }
+
+        /**
+         * @param nodeSize Maximum number of children of a node
+         * @return Tree of the added items
+         */
+        public PackedRTree build(int nodeSize) {
+            if (nodeSize < 2) {
+                throw new IllegalArgumentException("The node size must be at least 2");
+            }
+            // levels sizes
+            List<Integer> bounds = new ArrayList<>();
+            int levelSize = count;
+            int nodeCount = count;
+            bounds.add(nodeCount);
+            while (levelSize > 1) {
+                levelSize = (levelSize + nodeSize - 1) / nodeSize;
+                nodeCount += levelSize;
+                bounds.add(nodeCount);
+            }
+            int[] levelBounds = bounds.stream().mapToInt(Integer::intValue).toArray();
+            double[] treeBoxes = new double[nodeCount * 4];
+            int[] indices = new int[nodeCount];
+            if (count > 0) {
+                sortLeaves(treeBoxes, indices);
+            }
+            // build the upper levels
+            int pos = 0;
+            int node = count;
+            for (int level = 1; level < levelBounds.length; level++) {
+                int end = levelBounds[level - 1];
+                while (pos < end) {
+                    int first = pos;
+                    double minX = Double.POSITIVE_INFINITY;
+                    double minY = Double.POSITIVE_INFINITY;
+                    double maxX = Double.NEGATIVE_INFINITY;
+                    double maxY = Double.NEGATIVE_INFINITY;
+                    for (int i = 0; i < nodeSize && pos < end; i++, pos++) {
+                        minX = Math.min(minX, treeBoxes[pos * 4]);
+                        minY = Math.min(minY, treeBoxes[pos * 4 + 1]);
+                        maxX = Math.max(maxX, treeBoxes[pos * 4 + 2]);
+                        maxY = Math.max(maxY, treeBoxes[pos * 4 + 3]);
+                    }
+                    treeBoxes[node * 4] = minX;
+                    treeBoxes[node * 4 + 1] = minY;
+                    treeBoxes[node * 4 + 2] = maxX;
+                    treeBoxes[node * 4 + 3] = maxY;
+                    indices[node] = first;
+                    node++;
+                }
+            }
+            return new PackedRTree(nodeSize, count, treeBoxes, indices, levelBounds);
+        }
+
+        /**
+         * Copy the items into the leaves, sorted by the Hilbert value of the center of their envelope
+         */
+        private void sortLeaves(double[] treeBoxes, int[] indices) {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                minX = Math.min(minX, boxes[i * 4]);
+                minY = Math.min(minY, boxes[i * 4 + 1]);
+                maxX = Math.max(maxX, boxes[i * 4 + 2]);
+                maxY = Math.max(maxY, boxes[i * 4 + 3]);
+            }
+            int hilbertMax = (1 << HILBERT_ORDER) - 1;
+            double scaleX = maxX > minX ? hilbertMax / (maxX - minX) : 0;
+            double scaleY = maxY > minY ? hilbertMax / (maxY - minY) : 0;
+            // the insertion position is kept in the low bits so the sort is deterministic
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                double centerX = (boxes[i * 4] + boxes[i * 4 + 2]) / 2;
+                double centerY = (boxes[i * 4 + 1] + boxes[i * 4 + 3]) / 2;
+                int hx = (int) ((centerX - minX) * scaleX);
+                int hy = (int) ((centerY - minY) * scaleY);
+                keys[i] = (hilbert(hx, hy) << 32) | i;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < count; i++) {
+                int source = (int) (keys[i] & 0xFFFFFFFFL);
+                System.arraycopy(boxes, source * 4, treeBoxes, i * 4, 4);
+                indices[i] = items[source];
+            }
+        }
+    }
+}
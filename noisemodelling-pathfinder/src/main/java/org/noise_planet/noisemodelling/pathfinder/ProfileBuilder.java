@@ -34,7 +34,6 @@
 package org.noise_planet.noisemodelling.pathfinder;
 
 import org.locationtech.jts.algorithm.Angle;
-import org.locationtech.jts.algorithm.CGAlgorithms3D;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.CoordinateSequenceFilter;
@@ -59,15 +58,15 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static java.lang.Double.NaN;
 import static java.lang.Double.isNaN;
@@ -95,33 +94,36 @@ public class ProfileBuilder {
     /** {@link Geometry} factory. */
     private static final GeometryFactory FACTORY = new GeometryFactory();
     private static final double DELTA = 1e-3;
+    /** Height in meters above the sight line under which an obstacle is not trusted by getVisibility */
+    private static final double VISIBILITY_EPSILON = 1e-6;
 
     /** If true, no more data can be add. */
     private boolean isFeedingFinished = false;
     /** Wide angle points of a building polygon */
     private Map<Integer, ArrayList<Coordinate>> buildingsWideAnglePoints = new HashMap<>();
     /** Building RTree node capacity. */
-    private int buildingNodeCapacity = TREE_NODE_CAPACITY;
+    private int buildingNodeCapacity = PackedRTree.DEFAULT_NODE_SIZE;
     /** Topographic RTree node capacity. */
     private int topoNodeCapacity = TREE_NODE_CAPACITY;
     /** Ground RTree node capacity. */
-    private int groundNodeCapacity = TREE_NODE_CAPACITY;
-    /**
-     * Max length of line part used for profile retrieving.
-     * @see ProfileBuilder#getProfile(Coordinate, Coordinate)
-     */
-    private double maxLineLength = 60;
+    private int groundNodeCapacity = PackedRTree.DEFAULT_NODE_SIZE;
     /** List of buildings. */
     private final List<Building> buildings = new ArrayList<>();
     /** List of walls. */
     private final List<Wall> walls = new ArrayList<>();
-    /** Building RTree. */
-    private final STRtree buildingTree;
-    /** Building RTree. */
-    private final STRtree wallTree = new STRtree(TREE_NODE_CAPACITY);
-    /** Global RTree. */
-    private STRtree rtree;
-    private STRtree groundEffectsRtree = new STRtree(TREE_NODE_CAPACITY);
+    /** Building RTree, items are the building identifiers (1-n). Built by finishFeeding. */
+    private PackedRTree buildingTree = PackedRTree.empty();
+    /** Wall RTree, items are the wall identifiers (1-n). Built by finishFeeding. */
+    private PackedRTree wallTree = PackedRTree.empty();
+    /** Global RTree, items are the index of the processed walls. Built by finishFeeding. */
+    private PackedRTree rtree;
+    /** Ground effects RTree, items are the index of the ground effects. Built by finishFeeding. */
+    private PackedRTree groundEffectsRtree = PackedRTree.empty();
+    /** Uniform grid of the processed walls, used instead of rtree for the cut profiles if not null */
+    private WallGrid wallGrid;
+    /** Topographic walk of getVisibility, addTopoCutPts and getTopographicProfile, one buffer by computation thread */
+    private final ThreadLocal<TopographicTin.WalkBuffer> walkBuffer =
+            ThreadLocal.withInitial(TopographicTin.WalkBuffer::new);
 
 
     /** List of topographic points. */
@@ -136,6 +138,10 @@ public class ProfileBuilder {
     private List<Coordinate> vertices = new ArrayList<>();
     /** Topographic RTree. */
     private STRtree topoTree;
+    /** Primitive copy of the topographic triangulation used to walk along the profiles. */
+    private TopographicTin topoTin;
+    /** Regular elevation grid, used instead of the topographic triangulation if set. */
+    private ElevationGrid elevationGrid;
 
     /** List of ground effects. */
     private final List<GroundEffect> groundEffects = new ArrayList<>();
@@ -154,6 +160,14 @@ public class ProfileBuilder {
     /** if true take into account z value on Buildings Polygons
      * In this case, z represent the altitude (from the sea to the top of the wall) */
     private boolean zBuildings = false;
+    /** Minimal number of items (buildings, walls, ground effects..) to process them with parallel streams */
+    private static final int PARALLEL_FEEDING_THRESHOLD = 256;
+    /** If true, finishFeeding processes the items with parallel streams */
+    private boolean parallelFeeding = true;
+    /** If true, finishFeeding builds a uniform grid of the processed walls for the cut profiles */
+    private boolean useWallGrid = false;
+    /** Cell size of the wall grid, 0 for automatic */
+    private double wallGridCellSize = 0;
 
 
     public ProfileBuilder setzBuildings(boolean zBuildings) {
@@ -161,12 +175,70 @@ public class ProfileBuilder {
         return this;
     }
 
+    /**
+     * @param parallelFeeding If true (default), {@link #finishFeeding()} processes the buildings, the walls and the
+     *                        ground effects with parallel streams. The result is the same in both cases.
+     * @return This builder
+     */
+    public ProfileBuilder setParallelFeeding(boolean parallelFeeding) {
+        this.parallelFeeding = parallelFeeding;
+        return this;
+    }
+
+    /**
+     * @return True if {@link #finishFeeding()} processes the items with parallel streams
+     */
+    public boolean isParallelFeeding() {
+        return parallelFeeding;
+    }
+
+    /**
+     * @param useWallGrid If true, the buildings, walls and ground effects crossed by the cut profiles are found by
+     *                    walking a uniform grid along the profile line instead of querying the rtree. The grid is
+     *                    faster for long profiles in dense areas. False by default.
+     * @return This builder
+     */
+    public ProfileBuilder setWallGrid(boolean useWallGrid) {
+        if(isFeedingFinished) {
+            LOGGER.warn("Cannot set the wall grid, feeding is finished.");
+        } else {
+            this.useWallGrid = useWallGrid;
+        }
+        return this;
+    }
+
+    /**
+     * @return True if the cut profiles use a uniform grid of the walls
+     */
+    public boolean isWallGrid() {
+        return useWallGrid;
+    }
+
+    /**
+     * @param wallGridCellSize Cell size of the wall grid, 0 (default) to compute it from the number of walls
+     * @return This builder
+     */
+    public ProfileBuilder setWallGridCellSize(double wallGridCellSize) {
+        if(isFeedingFinished) {
+            LOGGER.warn("Cannot set the wall grid cell size, feeding is finished.");
+        } else {
+            this.wallGridCellSize = wallGridCellSize;
+        }
+        return this;
+    }
+
+    /**
+     * @return Cell size of the wall grid, 0 for automatic
+     */
+    public double getWallGridCellSize() {
+        return wallGridCellSize;
+    }
+
 
     /**
      * Main empty constructor.
      */
     public ProfileBuilder() {
-        buildingTree = new STRtree(buildingNodeCapacity);
     }
 
     //TODO : when a source/receiver are underground, should an offset be applied ?
@@ -175,14 +247,24 @@ public class ProfileBuilder {
      * @param buildingNodeCapacity Building RTree node capacity.
      * @param topoNodeCapacity     Topographic RTree node capacity.
      * @param groundNodeCapacity   Ground RTree node capacity.
-     * @param maxLineLength        Max length of line part used for profile retrieving.
      */
-    public ProfileBuilder(int buildingNodeCapacity, int topoNodeCapacity, int groundNodeCapacity, int maxLineLength) {
+    public ProfileBuilder(int buildingNodeCapacity, int topoNodeCapacity, int groundNodeCapacity) {
         this.buildingNodeCapacity = buildingNodeCapacity;
         this.topoNodeCapacity = topoNodeCapacity;
         this.groundNodeCapacity = groundNodeCapacity;
-        this.maxLineLength = maxLineLength;
-        buildingTree = new STRtree(buildingNodeCapacity);
+    }
+
+    /**
+     * Constructor setting parameters.
+     * @param buildingNodeCapacity Building RTree node capacity.
+     * @param topoNodeCapacity     Topographic RTree node capacity.
+     * @param groundNodeCapacity   Ground RTree node capacity.
+     * @param maxLineLength        Has no effect, the packed rtree is traversed along the whole profile line.
+     * @deprecated use {@link #ProfileBuilder(int, int, int)}
+     */
+    @Deprecated
+    public ProfileBuilder(int buildingNodeCapacity, int topoNodeCapacity, int groundNodeCapacity, int maxLineLength) {
+        this(buildingNodeCapacity, topoNodeCapacity, groundNodeCapacity);
     }
 
     /**
@@ -201,7 +283,6 @@ public class ProfileBuilder {
                 envelope.expandToInclude(building.poly.getEnvelopeInternal());
             }
             buildings.add(building);
-            buildingTree.insert(building.poly.getEnvelopeInternal(), buildings.size());
             return this;
         }
         else{
@@ -426,7 +507,6 @@ public class ProfileBuilder {
             }
             Building building = new Building(poly, height, alphas, id, zBuildings);
             buildings.add(building);
-            buildingTree.insert(building.poly.getEnvelopeInternal(), buildings.size());
             //TODO : generalization of building coefficient
             addGroundEffect(geom, 0);
             return this;
@@ -514,7 +594,6 @@ public class ProfileBuilder {
                 wall.setHeight(height);
                 wall.setAlpha(alphas);
                 walls.add(wall);
-                wallTree.insert(wall.line.getEnvelopeInternal(), walls.size());
             }
             return this;
         }
@@ -712,6 +791,29 @@ public class ProfileBuilder {
         return envelope;
     }
 
+    /**
+     * Use a regular elevation grid as digital elevation model. The topographic points and lines are then ignored and
+     * the topographic triangulation is not computed. The grid does not expand the envelope of the builder, so a
+     * single grid covering the whole area can be shared by the builders of all the cells.
+     * @param elevationGrid Elevation grid
+     */
+    public ProfileBuilder setElevationGrid(ElevationGrid elevationGrid) {
+        if(!isFeedingFinished) {
+            this.elevationGrid = elevationGrid;
+        }
+        else {
+            LOGGER.warn("Cannot set the elevation grid, feeding is finished.");
+        }
+        return this;
+    }
+
+    /**
+     * @return Regular elevation grid, null if the digital elevation model is triangulated
+     */
+    public ElevationGrid getElevationGrid() {
+        return elevationGrid;
+    }
+
     /**
      * Add a constraint on maximum triangle area.
      * @param maximumArea Value in square meter.
@@ -764,7 +866,7 @@ public class ProfileBuilder {
         isFeedingFinished = true;
 
         //Process topographic points and lines
-        if(topoPoints.size()+topoLines.size() > 1) {
+        if(elevationGrid == null && topoPoints.size()+topoLines.size() > 1) {
             //Feed the Delaunay layer
             LayerDelaunay layerDelaunay = new LayerTinfour();
             layerDelaunay.setRetrieveNeighbors(true);
@@ -813,56 +915,50 @@ public class ProfileBuilder {
                 LOGGER.error("Error while getting vertices", e);
                 return null;
             }
-            // wallIndex set will merge shared triangle segments
-            Set<IntegerTuple> wallIndex = new HashSet<>();
-            for (int i = 0; i < topoTriangles.size(); i++) {
+            topoTin = new TopographicTin(vertices, topoTriangles, topoNeighbors);
+            // Insert triangles in rtree, the envelopes are computed first so the items are inserted in the same order
+            Envelope[] triangleEnvelopes = new Envelope[topoTriangles.size()];
+            parallelFor(triangleEnvelopes.length, i -> {
                 final Triangle tri = topoTriangles.get(i);
-                wallIndex.add(new IntegerTuple(tri.getA(), tri.getB(), i));
-                wallIndex.add(new IntegerTuple(tri.getB(), tri.getC(), i));
-                wallIndex.add(new IntegerTuple(tri.getC(), tri.getA(), i));
-                // Insert triangle in rtree
-                Coordinate vA = vertices.get(tri.getA());
-                Coordinate vB = vertices.get(tri.getB());
-                Coordinate vC = vertices.get(tri.getC());
-                Envelope env = FACTORY.createLineString(new Coordinate[]{vA, vB, vC}).getEnvelopeInternal();
-                topoTree.insert(env, i);
+                Envelope env = new Envelope(vertices.get(tri.getA()));
+                env.expandToInclude(vertices.get(tri.getB()));
+                env.expandToInclude(vertices.get(tri.getC()));
+                triangleEnvelopes[i] = env;
+            });
+            for (int i = 0; i < triangleEnvelopes.length; i++) {
+                topoTree.insert(triangleEnvelopes[i], i);
             }
             topoTree.build();
-            //TODO : Seems to be useless, to check
-            /*for (IntegerTuple wallId : wallIndex) {
-                Coordinate vA = vertices.get(wallId.nodeIndexA);
-                Coordinate vB = vertices.get(wallId.nodeIndexB);
-                Wall wall = new Wall(vA, vB, wallId.triangleIdentifier, TOPOGRAPHY);
-                processedWalls.add(wall);
-            }*/
         }
         //Update building z
-        if(topoTree != null) {
-            for (Building b : buildings) {
+        if(hasTopography()) {
+            parallelFor(buildings.size(), j -> {
+                Building b = buildings.get(j);
                 if(isNaN(b.poly.getCoordinate().z) || b.poly.getCoordinate().z == 0.0 || !zBuildings) {
                     b.poly2D_3D();
                     b.poly.apply(new UpdateZ(b.height + b.updateZTopo(this)));
                 }
-            }
-            for (Wall w : walls) {
+            });
+            parallelFor(walls.size(), j -> {
+                Wall w = walls.get(j);
                 if(isNaN(w.p0.z) || w.p0.z == 0.0) {
                     w.p0.z = w.height + getZGround(w.p0);
                 }
                 if(isNaN(w.p1.z) || w.p1.z == 0.0) {
                     w.p1.z = w.height + getZGround(w.p1);
                 }
-            }
+            });
         }
         else {
-            for (Building b : buildings) {
+            parallelFor(buildings.size(), j -> {
+                Building b = buildings.get(j);
                 if(b != null && b.poly != null && b.poly.getCoordinate() != null && (!zBuildings ||
                         isNaN(b.poly.getCoordinate().z) || b.poly.getCoordinate().z == 0.0)) {
 
                     b.poly2D_3D();
                     b.poly.apply(new UpdateZ(b.height));
                 }
-
-            }
+            });
             for (Wall w : walls) {
                 if(isNaN(w.p0.z) || w.p0.z == 0.0) {
                     w.p0.z = w.height;
@@ -872,65 +968,142 @@ public class ProfileBuilder {
                 }
             }
         }
-        //Process buildings
-        rtree = new STRtree(buildingNodeCapacity);
-        buildingsWideAnglePoints.clear();
+        // The processed walls are the building walls, then the walls, then the ground effects borders. The index of
+        // the first processed wall of each item is known in advance, so the items are processed concurrently and the
+        // processed walls are added in the same order as a sequential processing.
+        int[] buildingWallsStart = new int[buildings.size() + 1];
         for (int j = 0; j < buildings.size(); j++) {
+            buildingWallsStart[j + 1] = buildingWallsStart[j] + buildings.get(j).poly.getNumPoints() - 1;
+        }
+        int wallsStart = processedWalls.size() + buildingWallsStart[buildings.size()];
+        int groundEffectsStart = wallsStart + walls.size();
+        List<List<Polygon>> groundEffectsPolygons = new ArrayList<>(Collections.nCopies(groundEffects.size(), null));
+        parallelFor(groundEffects.size(), j -> {
+            GroundEffect effect = groundEffects.get(j);
+            List<Polygon> polygons = new ArrayList<>();
+            if (effect.geom instanceof Polygon) {
+                polygons.add((Polygon) effect.geom);
+            }
+            if (effect.geom instanceof MultiPolygon) {
+                MultiPolygon multi = (MultiPolygon) effect.geom;
+                for (int i = 0; i < multi.getNumGeometries(); i++) {
+                    polygons.add((Polygon) multi.getGeometryN(i));
+                }
+            }
+            groundEffectsPolygons.set(j, polygons);
+        });
+        int[] groundWallsStart = new int[groundEffects.size() + 1];
+        for (int j = 0; j < groundEffects.size(); j++) {
+            int count = 0;
+            for (Polygon poly : groundEffectsPolygons.get(j)) {
+                count += poly.getNumPoints() - 1;
+            }
+            groundWallsStart[j + 1] = groundWallsStart[j] + count;
+        }
+        Wall[] newWalls = new Wall[groundEffectsStart + groundWallsStart[groundEffects.size()] - processedWalls.size()];
+        int firstIndex = processedWalls.size();
+        //Process buildings
+        List<ArrayList<Coordinate>> wideAnglePoints = new ArrayList<>(Collections.nCopies(buildings.size(), null));
+        parallelFor(buildings.size(), j -> {
             Building building = buildings.get(j);
-            buildingsWideAnglePoints.put(j + 1,
-                    getWideAnglePointsByBuilding(j + 1, 0, 2 * Math.PI));
+            wideAnglePoints.set(j, getWideAnglePointsByBuilding(j + 1, 0, 2 * Math.PI));
             List<Wall> walls = new ArrayList<>();
             Coordinate[] coords = building.poly.getCoordinates();
             for (int i = 0; i < coords.length - 1; i++) {
+                int index = firstIndex + buildingWallsStart[j] + i;
                 LineSegment lineSegment = new LineSegment(coords[i], coords[i + 1]);
-                Wall w = new Wall(lineSegment, j, IntersectionType.BUILDING).setProcessedWallIndex(processedWalls.size());
+                Wall w = new Wall(lineSegment, j, IntersectionType.BUILDING).setProcessedWallIndex(index);
                 walls.add(w);
                 w.setAlpha(building.alphas);
-                processedWalls.add(w);
-                rtree.insert(lineSegment.toGeometry(FACTORY).getEnvelopeInternal(), processedWalls.size()-1);
+                newWalls[index - firstIndex] = w;
             }
             building.setWalls(walls);
+        });
+        buildingsWideAnglePoints.clear();
+        for (int j = 0; j < buildings.size(); j++) {
+            buildingsWideAnglePoints.put(j + 1, wideAnglePoints.get(j));
         }
         for (int j = 0; j < walls.size(); j++) {
             Wall wall = walls.get(j);
-            Coordinate[] coords = new Coordinate[]{wall.p0, wall.p1};
-            for (int i = 0; i < coords.length - 1; i++) {
-                LineSegment lineSegment = new LineSegment(coords[i], coords[i + 1]);
-                Wall w = new Wall(lineSegment, j, IntersectionType.WALL).setProcessedWallIndex(processedWalls.size());
-                w.setAlpha(wall.alphas);
-                processedWalls.add(w);
-                rtree.insert(lineSegment.toGeometry(FACTORY).getEnvelopeInternal(), processedWalls.size()-1);
-            }
+            LineSegment lineSegment = new LineSegment(wall.p0, wall.p1);
+            Wall w = new Wall(lineSegment, j, IntersectionType.WALL).setProcessedWallIndex(wallsStart + j);
+            w.setAlpha(wall.alphas);
+            newWalls[wallsStart + j - firstIndex] = w;
         }
         //Process the ground effects
-        groundEffectsRtree = new STRtree(TREE_NODE_CAPACITY);
-        for (int j = 0; j < groundEffects.size(); j++) {
-            GroundEffect effect = groundEffects.get(j);
-            List<Polygon> polygons = new ArrayList<>();
-            if (effect.geom instanceof Polygon) {
-                polygons.add((Polygon) effect.geom);
-            }
-            if (effect.geom instanceof MultiPolygon) {
-                MultiPolygon multi = (MultiPolygon) effect.geom;
-                for (int i = 0; i < multi.getNumGeometries(); i++) {
-                    polygons.add((Polygon) multi.getGeometryN(i));
-                }
-            }
-            for (Polygon poly : polygons) {
-                groundEffectsRtree.insert(poly.getEnvelopeInternal(), j);
+        parallelFor(groundEffects.size(), j -> {
+            int index = groundEffectsStart + groundWallsStart[j];
+            for (Polygon poly : groundEffectsPolygons.get(j)) {
                 Coordinate[] coords = poly.getCoordinates();
                 for (int k = 0; k < coords.length - 1; k++) {
                     LineSegment line = new LineSegment(coords[k], coords[k + 1]);
-                    processedWalls.add(new Wall(line, j, GROUND_EFFECT).setProcessedWallIndex(processedWalls.size()));
-                    rtree.insert(new Envelope(line.p0, line.p1), processedWalls.size() - 1);
+                    newWalls[index - firstIndex] = new Wall(line, j, GROUND_EFFECT).setProcessedWallIndex(index);
+                    index++;
                 }
             }
+        });
+        processedWalls.addAll(Arrays.asList(newWalls));
+        // Pack the rtrees, the four trees are independent
+        List<Runnable> indexTasks = new ArrayList<>(Arrays.asList(() -> {
+            PackedRTree.Builder builder = new PackedRTree.Builder();
+            for (int j = 0; j < buildings.size(); j++) {
+                builder.add(buildings.get(j).poly.getEnvelopeInternal(), j + 1);
+            }
+            buildingTree = builder.build(buildingNodeCapacity);
+        }, () -> {
+            PackedRTree.Builder builder = new PackedRTree.Builder();
+            for (int j = 0; j < walls.size(); j++) {
+                builder.add(walls.get(j).line.getEnvelopeInternal(), j + 1);
+            }
+            wallTree = builder.build(buildingNodeCapacity);
+        }, () -> {
+            PackedRTree.Builder builder = new PackedRTree.Builder();
+            for (Wall w : processedWalls) {
+                builder.add(new Envelope(w.p0, w.p1), w.getProcessedWallIndex());
+            }
+            rtree = builder.build(buildingNodeCapacity);
+        }, () -> {
+            PackedRTree.Builder builder = new PackedRTree.Builder();
+            for (int j = 0; j < groundEffects.size(); j++) {
+                for (Polygon poly : groundEffectsPolygons.get(j)) {
+                    builder.add(poly.getEnvelopeInternal(), j);
+                }
+            }
+            groundEffectsRtree = builder.build(groundNodeCapacity);
+        }));
+        if(useWallGrid) {
+            indexTasks.add(() -> {
+                WallGrid.Builder builder = new WallGrid.Builder();
+                for (Wall w : processedWalls) {
+                    builder.add(w.p0.x, w.p0.y, w.p1.x, w.p1.y, w.getProcessedWallIndex());
+                }
+                wallGrid = builder.build(wallGridCellSize);
+            });
+        }
+        if(parallelFeeding) {
+            indexTasks.parallelStream().forEach(Runnable::run);
+        } else {
+            indexTasks.forEach(Runnable::run);
         }
-        rtree.build();
-        groundEffectsRtree.build();
         return this;
     }
 
+    /**
+     * Run the body for each index, with a parallel stream if {@link #parallelFeeding} is enabled and if there are
+     * enough items. The body must only write data of its own index.
+     * @param count Number of items
+     * @param body Processing of one item
+     */
+    private void parallelFor(int count, IntConsumer body) {
+        if(parallelFeeding && count >= PARALLEL_FEEDING_THRESHOLD) {
+            IntStream.range(0, count).parallel().forEach(body);
+        } else {
+            for (int i = 0; i < count; i++) {
+                body.accept(i);
+            }
+        }
+    }
+
     public double getZ(Coordinate reflectionPt) {
         List<Integer> ids = buildingTree.query(new Envelope(reflectionPt));
         if(ids.isEmpty()) {
@@ -950,6 +1123,8 @@ public class ProfileBuilder {
     public List<Wall> getWallsIn(Envelope env) {
         List<Wall> list = new ArrayList<>();
         List<Integer> indexes = rtree.query(env);
+        // Feeding order
+        Collections.sort(indexes);
         for(int i : indexes) {
             Wall w = getProcessedWalls().get(i);
             if(w.getType().equals(BUILDING) || w.getType().equals(WALL)) {
@@ -1060,17 +1235,14 @@ public class ProfileBuilder {
         CutProfile profile = new CutProfile();
 
         //Topography
-        if(topoTree != null) {
+        if(hasTopography()) {
             addTopoCutPts(c0, c1, profile);
         }
-        // Split line into segments for structures based on RTree in order to limit the number of queries
-        // (for large area of the line segment envelope)
         LineSegment fullLine = new LineSegment(c0, c1);
-        List<LineSegment> lines = splitSegment(c0, c1, maxLineLength);
 
         //Buildings and Ground effect
         if(rtree != null) {
-            addGroundBuildingCutPts(lines, fullLine, profile);
+            addGroundBuildingCutPts(fullLine, profile);
         }
 
         //Sort all the cut point in order to set the ground coefficients.
@@ -1104,7 +1276,7 @@ public class ProfileBuilder {
         GroundEffect currentGround = null;
         int currGrdI = -1;
         Point p0 = FACTORY.createPoint(c0);
-        List<Integer> groundEffectsResult = (List<Integer>)groundEffectsRtree.query(new Envelope(c0));
+        List<Integer> groundEffectsResult = groundEffectsRtree.query(new Envelope(c0));
         for(Integer groundEffectIndex : groundEffectsResult) {
             GroundEffect ground = groundEffects.get(groundEffectIndex);
             if(ground.geom.contains(p0)) {
@@ -1277,32 +1449,102 @@ public class ProfileBuilder {
         profile.addReceiver(c1);
     }
 
-    private void addGroundBuildingCutPts(List<LineSegment> lines, LineSegment fullLine, CutProfile profile) {
+    /**
+     * @param facetLine Processed wall
+     * @param intersection Point of the wall
+     * @return Altitude of the wall at the given point, the ground altitude if the wall has no altitude
+     */
+    private double getIntersectionZ(Wall facetLine, Coordinate intersection) {
+        if(!isNaN(facetLine.p0.z) && !isNaN(facetLine.p1.z)) {
+            if(facetLine.p0.z == facetLine.p1.z) {
+                return facetLine.p0.z;
+            }
+            else {
+                return facetLine.p0.z + ((intersection.x - facetLine.p0.x) / (facetLine.p1.x - facetLine.p0.x) * (facetLine.p1.z - facetLine.p0.z));
+            }
+        }
+        else if(!hasTopography()) {
+            return NaN;
+        }
+        else {
+            return getZGround(intersection);
+        }
+    }
+
+    /**
+     * Classify the sight line between two points without building the cut profile. The buildings and walls crossed
+     * by the line are checked first, then the topography, and the search stops at the first obstacle above the line.
+     * The line is obstructed only if an obstacle is more than {@link #VISIBILITY_EPSILON} above it, and like
+     * {@link CutProfile#isFreeField()} the corners of the buildings and the ends of the walls are ignored. So an
+     * obstructed line always has an obstructed cut profile, but a line grazing an obstacle is classified as free
+     * field and the caller must check the cut profile of the line.
+     * @param c0 First point, with absolute altitude
+     * @param c1 Second point, with absolute altitude
+     * @return Visibility between the two points
+     */
+    public Visibility getVisibility(Coordinate c0, Coordinate c1) {
+        if(rtree != null) {
+            LineSegment fullLine = new LineSegment(c0, c1);
+            PackedRTree.Visitor visitor = i -> {
+                Wall facetLine = processedWalls.get(i);
+                if(facetLine.type != BUILDING && facetLine.type != WALL) {
+                    return true;
+                }
+                Coordinate intersection = fullLine.intersection(facetLine.ls);
+                // The corners of the buildings and the ends of the walls do not obstruct the line
+                if(intersection == null || facetLine.p0.equals2D(intersection) || facetLine.p1.equals2D(intersection)) {
+                    return true;
+                }
+                return !isAboveSightLine(c0, c1, intersection.x, intersection.y,
+                        getIntersectionZ(facetLine, intersection));
+            };
+            boolean free = wallGrid != null ? wallGrid.querySegment(c0.x, c0.y, c1.x, c1.y, visitor) :
+                    rtree.querySegment(c0.x, c0.y, c1.x, c1.y, visitor);
+            if(!free) {
+                return Visibility.BUILDING_OBSTRUCTED;
+            }
+        }
+        if(hasTopography()) {
+            TopographicTin.WalkBuffer buffer = walkBuffer.get();
+            walkTopographicProfile(c0, c1, buffer);
+            for(int i = 0; i < buffer.size(); i++) {
+                if(isAboveSightLine(c0, c1, buffer.getX(i), buffer.getY(i), buffer.getZ(i))) {
+                    return Visibility.TERRAIN_OBSTRUCTED;
+                }
+            }
+        }
+        return Visibility.FREE_FIELD;
+    }
+
+    /**
+     * @return True if the point x y z is more than {@link #VISIBILITY_EPSILON} above the line c0 c1 (false if one of
+     * the altitudes is NaN)
+     */
+    private static boolean isAboveSightLine(Coordinate c0, Coordinate c1, double x, double y, double z) {
+        double dx = c1.x - c0.x;
+        double dy = c1.y - c0.y;
+        double length2 = dx * dx + dy * dy;
+        double frac = length2 > 0 ? ((x - c0.x) * dx + (y - c0.y) * dy) / length2 : 0;
+        return z > c0.z + frac * (c1.z - c0.z) + VISIBILITY_EPSILON;
+    }
+
+    private void addGroundBuildingCutPts(LineSegment fullLine, CutProfile profile) {
         List<Integer> indexes = new ArrayList<>();
-        for (LineSegment line : lines) {
-            indexes.addAll(rtree.query(new Envelope(line.p0, line.p1)));
+        if(wallGrid != null) {
+            // The walls are found approximately in the order of the path, the cut points are almost sorted
+            wallGrid.querySegment(fullLine.p0.x, fullLine.p0.y, fullLine.p1.x, fullLine.p1.y, indexes::add);
+        } else {
+            rtree.querySegment(fullLine.p0.x, fullLine.p0.y, fullLine.p1.x, fullLine.p1.y, indexes::add);
+            // Process the walls in the feeding order, not in the tree order
+            Collections.sort(indexes);
         }
-        indexes = indexes.stream().distinct().collect(Collectors.toList());
         Map<Integer, Coordinate> processedGround = new HashMap<>();
         for (int i : indexes) {
             Wall facetLine = processedWalls.get(i);
             Coordinate intersection = fullLine.intersection(facetLine.ls);
             if (intersection != null) {
                 intersection = new Coordinate(intersection);
-                if(!isNaN(facetLine.p0.z) && !isNaN(facetLine.p1.z)) {
-                    if(facetLine.p0.z == facetLine.p1.z) {
-                        intersection.z = facetLine.p0.z;
-                    }
-                    else {
-                        intersection.z = facetLine.p0.z + ((intersection.x - facetLine.p0.x) / (facetLine.p1.x - facetLine.p0.x) * (facetLine.p1.z - facetLine.p0.z));
-                    }
-                }
-                else if(topoTree == null) {
-                    intersection.z = NaN;
-                }
-                else {
-                    intersection.z = getZGround(intersection);
-                }
+                intersection.z = getIntersectionZ(facetLine, intersection);
                 if(facetLine.type == IntersectionType.BUILDING) {
                     profile.addBuildingCutPt(intersection, facetLine.originId, i, facetLine.p0.equals(intersection)||facetLine.p1.equals(intersection));
                 }
@@ -1333,90 +1575,6 @@ public class ProfileBuilder {
         }
     }
 
-    /**
-     * Compute the next triangle index.Find the shortest intersection point of
-     * triIndex segments to the p1 coordinate
-     *
-     * @param triIndex        Triangle index
-     * @param propagationLine Propagation line
-     * @return Next triangle to the specified direction, -1 if there is no
-     * triangle neighbor.
-     */
-    private int getNextTri(final int triIndex,
-                           final LineSegment propagationLine,
-                           HashSet<Integer> navigationHistory, final Coordinate segmentIntersection) {
-        final Triangle tri = topoTriangles.get(triIndex);
-        final Triangle triNeighbors = topoNeighbors.get(triIndex);
-        int nearestIntersectionSide = -1;
-        int idNeighbor;
-
-        double nearestIntersectionPtDist = Double.MAX_VALUE;
-        // Find intersection pt
-        final Coordinate aTri = this.vertices.get(tri.getA());
-        final Coordinate bTri = this.vertices.get(tri.getB());
-        final Coordinate cTri = this.vertices.get(tri.getC());
-        double distline_line;
-        // Intersection First Side
-        idNeighbor = triNeighbors.get(2);
-        if (!navigationHistory.contains(idNeighbor)) {
-            LineSegment triSegment = new LineSegment(aTri, bTri);
-            Coordinate[] closestPoints = propagationLine.closestPoints(triSegment);
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
-                intersectionTest = new Coordinate(closestPoints[0].x, closestPoints[0].y, Vertex.interpolateZ(closestPoints[0], triSegment.p0, triSegment.p1));
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    segmentIntersection.setCoordinate(intersectionTest);
-                    nearestIntersectionPtDist = distline_line;
-                    nearestIntersectionSide = 2;
-                }
-            }
-        }
-        // Intersection Second Side
-        idNeighbor = triNeighbors.get(0);
-        if (!navigationHistory.contains(idNeighbor)) {
-            LineSegment triSegment = new LineSegment(bTri, cTri);
-            Coordinate[] closestPoints = propagationLine.closestPoints(triSegment);
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
-                intersectionTest = new Coordinate(closestPoints[0].x, closestPoints[0].y, Vertex.interpolateZ(closestPoints[0], triSegment.p0, triSegment.p1));
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    segmentIntersection.setCoordinate(intersectionTest);
-                    nearestIntersectionPtDist = distline_line;
-                    nearestIntersectionSide = 0;
-                }
-            }
-        }
-        // Intersection Third Side
-        idNeighbor = triNeighbors.get(1);
-        if (!navigationHistory.contains(idNeighbor)) {
-            LineSegment triSegment = new LineSegment(cTri, aTri);
-            Coordinate[] closestPoints = propagationLine.closestPoints(triSegment);
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
-                intersectionTest = new Coordinate(closestPoints[0].x, closestPoints[0].y, Vertex.interpolateZ(closestPoints[0], triSegment.p0, triSegment.p1));
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    segmentIntersection.setCoordinate(intersectionTest);
-                    nearestIntersectionSide = 1;
-                }
-            }
-        }
-        if(nearestIntersectionSide > -1) {
-            return triNeighbors.get(nearestIntersectionSide);
-        } else {
-            return -1;
-        }
-    }
-
-
     /**
      * Get coordinates of triangle vertices
      * @param triIndex Index of triangle
@@ -1437,6 +1595,11 @@ public class ProfileBuilder {
      */
 
     public int getTriangleIdByCoordinate(Coordinate pt) {
+        int triangle = topoTin.locate(pt.x, pt.y);
+        if(triangle != -1) {
+            return triangle;
+        }
+        // Outside of the triangulation, take the nearest triangle within 1 m
         Envelope ptEnv = new Envelope(pt);
         ptEnv.expandBy(1);
         List res = topoTree.query(new Envelope(ptEnv));
@@ -1456,33 +1619,33 @@ public class ProfileBuilder {
     }
 
     public void addTopoCutPts(Coordinate p1, Coordinate p2, CutProfile profile) {
-        List<Coordinate> coordinates = getTopographicProfile(p1, p2);
-        // Remove unnecessary points
-        ArrayList<Coordinate> retainedCoordinates = new ArrayList<>(coordinates.size());
-        for(int i =0; i < coordinates.size(); i++) {
-            // Always add first and last points
-            Coordinate previous;
-            Coordinate current = coordinates.get(i);
-            Coordinate next;
-            if(retainedCoordinates.isEmpty()) {
-                previous = new Coordinate(p1.x, p1.y, getZGround(p1));
-            } else {
-                previous = retainedCoordinates.get(retainedCoordinates.size() - 1);
-            }
-            if(i == coordinates.size() - 1) {
-                next = new Coordinate(p2.x, p2.y, getZGround(p2));
-            } else {
-                next = coordinates.get(i + 1);
-            }
+        TopographicTin.WalkBuffer buffer = walkBuffer.get();
+        walkTopographicProfile(p1, p2, buffer);
+        if(buffer.size() == 0) {
+            return;
+        }
+        // Remove unnecessary points, the retained points are moved in place at the beginning of the buffer
+        double z1 = getZGround(p1);
+        double z2 = getZGround(p2);
+        int retained = 0;
+        for(int i = 0; i < buffer.size(); i++) {
+            double px = retained == 0 ? p1.x : buffer.getX(retained - 1);
+            double py = retained == 0 ? p1.y : buffer.getY(retained - 1);
+            double pz = retained == 0 ? z1 : buffer.getZ(retained - 1);
+            boolean last = i == buffer.size() - 1;
+            double nx = last ? p2.x : buffer.getX(i + 1);
+            double ny = last ? p2.y : buffer.getY(i + 1);
+            double nz = last ? z2 : buffer.getZ(i + 1);
             // Do not add topographic points which are simply the linear interpolation between two points
-            if(CGAlgorithms3D.distancePointSegment(current, previous, next) >= DELTA) {
-                retainedCoordinates.add(coordinates.get(i));
+            if(TopographicTin.distancePointSegment(buffer.getX(i), buffer.getY(i), buffer.getZ(i),
+                    px, py, pz, nx, ny, nz) >= DELTA) {
+                buffer.set(retained++, buffer.getX(i), buffer.getY(i), buffer.getZ(i));
             }
         }
         // Feed profile
-        profile.reservePoints(retainedCoordinates.size());
-        for(int i =0; i < retainedCoordinates.size(); i++) {
-            profile.addTopoCutPt(retainedCoordinates.get(i), i);
+        profile.reservePoints(retained);
+        for(int i = 0; i < retained; i++) {
+            profile.addTopoCutPt(new Coordinate(buffer.getX(i), buffer.getY(i), buffer.getZ(i)), i);
         }
     }
 
@@ -1534,39 +1697,52 @@ public class ProfileBuilder {
     }
 
     public List<Coordinate> getTopographicProfile(Coordinate p1, Coordinate p2) {
+        TopographicTin.WalkBuffer buffer = walkBuffer.get();
+        walkTopographicProfile(p1, p2, buffer);
+        List<Coordinate> outputPoints = new ArrayList<>(buffer.size());
+        for(int i = 0; i < buffer.size(); i++) {
+            outputPoints.add(new Coordinate(buffer.getX(i), buffer.getY(i), buffer.getZ(i)));
+        }
+        return outputPoints;
+    }
+
+    /**
+     * Compute the intersections of the segment p1 p2 with the edges of the topographic triangles
+     * @param p1 Segment start
+     * @param p2 Segment end
+     * @param buffer Cleared then filled with the intersection points, ordered from p1 to p2
+     */
+    public void walkTopographicProfile(Coordinate p1, Coordinate p2, TopographicTin.WalkBuffer buffer) {
+        buffer.clear();
+        if(elevationGrid != null) {
+            elevationGrid.walk(p1.x, p1.y, p2.x, p2.y, buffer);
+            return;
+        }
         if(topoTree == null) {
-            return new ArrayList<>();
+            return;
         }
-        List<Coordinate> outputPoints = new ArrayList<>();
         //get origin triangle id
         int curTriP1 = getTriangleIdByCoordinate(p1);
-        LineSegment propaLine = new LineSegment(p1, p2);
         if(curTriP1 == -1) {
             // we are outside the bounds of the triangles
             // Find the closest triangle to p1
             Coordinate intersectionPt = new Coordinate();
             AtomicInteger minDistanceTriangle = new AtomicInteger();
-            if(findClosestTriangleIntersection(propaLine, intersectionPt, minDistanceTriangle)) {
-                outputPoints.add(intersectionPt);
+            if(findClosestTriangleIntersection(new LineSegment(p1, p2), intersectionPt, minDistanceTriangle)) {
+                buffer.add(intersectionPt.x, intersectionPt.y, intersectionPt.z);
                 curTriP1 = minDistanceTriangle.get();
             } else {
-                return outputPoints;
+                return;
             }
         }
-        HashSet<Integer> navigationHistory = new HashSet<Integer>();
-        int navigationTri = curTriP1;
-        while (navigationTri != -1) {
-            navigationHistory.add(navigationTri);
-            Coordinate intersectionPt = new Coordinate();
-            int propaTri = this.getNextTri(navigationTri, propaLine, navigationHistory, intersectionPt);
-            // Found next triangle (if propaTri >= 0)
-            // extract X,Y,Z values of intersection with triangle segment
-            if(!Double.isNaN(intersectionPt.z)) {
-                outputPoints.add(intersectionPt);
-            }
-            navigationTri = propaTri;
-        }
-        return outputPoints;
+        topoTin.walk(curTriP1, p1.x, p1.y, p2.x, p2.y, buffer);
+    }
+
+    /**
+     * @return Primitive representation of the topographic triangulation, null if there is no topography
+     */
+    public TopographicTin getTopographicTin() {
+        return topoTin;
     }
 
     /**
@@ -1576,39 +1752,56 @@ public class ProfileBuilder {
      */
     @Deprecated
     public double getZGround(Coordinate c) {
-        return getZGround(new CutPoint(c, TOPOGRAPHY, -1));
+        double z;
+        if(elevationGrid != null) {
+            z = elevationGrid.getZ(c.x, c.y);
+        } else if(topoTin != null) {
+            z = topoTin.getZ(c.x, c.y);
+        } else {
+            return 0.0;
+        }
+        return isNaN(z) ? 0.0 : z;
     }
 
     /**
      * @return True if digital elevation model has been added
      */
     public boolean hasDem() {
-        return topoTree != null && topoTree.size() > 0;
+        return elevationGrid != null || (topoTree != null && topoTree.size() > 0);
+    }
+
+    /**
+     * @return True if there is an elevation grid or a topographic triangulation, even empty
+     */
+    private boolean hasTopography() {
+        return elevationGrid != null || topoTree != null;
     }
 
     public double getZGround(CutPoint cut) {
         if(!Double.isNaN(cut.zGround)) {
             return cut.zGround;
         }
-        if(topoTree == null) {
+        if(elevationGrid != null) {
+            cut.zGround = elevationGrid.getZ(cut.coordinate.x, cut.coordinate.y);
+        } else if(topoTin != null) {
+            cut.zGround = topoTin.getZ(cut.coordinate.x, cut.coordinate.y);
+        } else {
             cut.zGround = NaN;
             return 0.0;
         }
-        Envelope env = new Envelope(cut.coordinate);
-        List<Integer> list = (List<Integer>)topoTree.query(env);
-        for (int i : list) {
-            final Triangle tri = topoTriangles.get(i);
-            final Coordinate p1 = vertices.get(tri.getA());
-            final Coordinate p2 = vertices.get(tri.getB());
-            final Coordinate p3 = vertices.get(tri.getC());
-            if(JTSUtility.dotInTri(cut.coordinate, p1, p2, p3)) {
-                double z = Vertex.interpolateZ(cut.coordinate, p1, p2, p3);
-                cut.zGround = z;
-                return z;
-            }
-        }
-        cut.zGround = NaN;
-        return 0.0;
+        return isNaN(cut.zGround) ? 0.0 : cut.zGround;
+    }
+
+    /**
+     * Result of {@link #getVisibility(Coordinate, Coordinate)}
+     */
+    public enum Visibility {
+        /** No obstacle above the sight line */
+        FREE_FIELD,
+        /** A building or a wall is above the sight line */
+        BUILDING_OBSTRUCTED,
+        /** The topography is above the sight line */
+        TERRAIN_OBSTRUCTED
     }
 
     /**
@@ -2629,70 +2822,62 @@ public class ProfileBuilder {
     }
 
     /**
-     * Find all buildings (polygons) that 2D cross the line p1->p2
+     * Find all buildings (polygons) whose envelope 2D cross the line p1->p2
      * @param p1 first point of line
      * @param p2 second point of line
-     * @param visitor Iterate over found buildings
-     * @return Building identifier (1-n) intersected by the line
+     * @param visitor Iterate over found buildings identifier (1-n), return false to stop the search
+     * @return False if the visitor stopped the search
      */
-    public void getBuildingsOnPath(Coordinate p1, Coordinate p2, ItemVisitor visitor) {
-        try {
-            List<LineSegment> lines = splitSegment(p1, p2, maxLineLength);
-            for(LineSegment segment : lines) {
-                Envelope pathEnv = new Envelope(segment.p0, segment.p1);
-                    buildingTree.query(pathEnv, visitor);
-            }
-        } catch (IllegalStateException ex) {
-            //Ignore
-        }
+    public boolean getBuildingsOnPath(Coordinate p1, Coordinate p2, PackedRTree.Visitor visitor) {
+        return buildingTree.querySegment(p1.x, p1.y, p2.x, p2.y, visitor);
     }
 
-    public void getWallsOnPath(Coordinate p1, Coordinate p2, ItemVisitor visitor) {
-        Envelope pathEnv = new Envelope(p1, p2);
+    /**
+     * Find all buildings (polygons) whose envelope 2D cross the line p1->p2
+     * @param p1 first point of line
+     * @param p2 second point of line
+     * @param visitor Iterate over found buildings identifier (1-n), throw IllegalStateException to stop the search
+     * @deprecated use {@link #getBuildingsOnPath(Coordinate, Coordinate, PackedRTree.Visitor)}
+     */
+    @Deprecated
+    public void getBuildingsOnPath(Coordinate p1, Coordinate p2, ItemVisitor visitor) {
         try {
-            wallTree.query(pathEnv, visitor);
+            getBuildingsOnPath(p1, p2, (PackedRTree.Visitor) item -> {
+                visitor.visitItem(item);
+                return true;
+            });
         } catch (IllegalStateException ex) {
             //Ignore
         }
     }
 
-
     /**
-     * Hold two integers. Used to store unique triangle segments
+     * Find all walls whose envelope 2D cross the line p1->p2
+     * @param p1 first point of line
+     * @param p2 second point of line
+     * @param visitor Iterate over found walls identifier (1-n), return false to stop the search
+     * @return False if the visitor stopped the search
      */
-    private static class IntegerTuple {
-        int nodeIndexA;
-        int nodeIndexB;
-        int triangleIdentifier;
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            IntegerTuple that = (IntegerTuple) o;
-            return nodeIndexA == that.nodeIndexA && nodeIndexB == that.nodeIndexB;
-        }
-
-        @Override
-        public String toString() {
-            return "IntegerTuple{" + "nodeIndexA=" + nodeIndexA + ", nodeIndexB=" + nodeIndexB + ", " +
-                    "triangleIdentifier=" + triangleIdentifier + '}';
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(nodeIndexA, nodeIndexB);
-        }
+    public boolean getWallsOnPath(Coordinate p1, Coordinate p2, PackedRTree.Visitor visitor) {
+        return wallTree.querySegment(p1.x, p1.y, p2.x, p2.y, visitor);
+    }
 
-        public IntegerTuple(int nodeIndexA, int nodeIndexB, int triangleIdentifier) {
-            if(nodeIndexA < nodeIndexB) {
-                this.nodeIndexA = nodeIndexA;
-                this.nodeIndexB = nodeIndexB;
-            } else {
-                this.nodeIndexA = nodeIndexB;
-                this.nodeIndexB = nodeIndexA;
-            }
-            this.triangleIdentifier = triangleIdentifier;
+    /**
+     * Find all walls whose envelope 2D cross the line p1->p2
+     * @param p1 first point of line
+     * @param p2 second point of line
+     * @param visitor Iterate over found walls identifier (1-n), throw IllegalStateException to stop the search
+     * @deprecated use {@link #getWallsOnPath(Coordinate, Coordinate, PackedRTree.Visitor)}
+     */
+    @Deprecated
+    public void getWallsOnPath(Coordinate p1, Coordinate p2, ItemVisitor visitor) {
+        try {
+            getWallsOnPath(p1, p2, (PackedRTree.Visitor) item -> {
+                visitor.visitItem(item);
+                return true;
+            });
+        } catch (IllegalStateException ex) {
+            //Ignore
         }
     }
 }
@@ -0,0 +1,111 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hand out receivers to the computation threads by small chunks. Each worker thread takes the next chunk when
+ * it has finished the previous one, so a thread that got expensive receivers does not delay the others.
+ * The chunk size decreases with the remaining work (guided self-scheduling): large chunks at the beginning
+ * limit the synchronisation, small chunks at the end limit the tail latency.
+ * This class is thread safe.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class ReceiverChunkQueue {
+    /** Number of chunks by worker for the remaining work */
+    public static final int CHUNKS_BY_WORKER = 4;
+    public static final int DEFAULT_MINIMUM_CHUNK_SIZE = 1;
+
+    private final int receiverCount;
+    private final int workerCount;
+    private final int minimumChunkSize;
+    private final int[] receiverOrder;
+    private final AtomicInteger cursor = new AtomicInteger(0);
+    private final AtomicBoolean aborted = new AtomicBoolean(false);
+
+    /**
+     * @param receiverCount Number of receivers
+     * @param workerCount Number of threads that will poll this queue
+     */
+    public ReceiverChunkQueue(int receiverCount, int workerCount) {
+        this(receiverCount, workerCount, DEFAULT_MINIMUM_CHUNK_SIZE, null);
+    }
+
+    /**
+     * @param receiverCount Number of receivers
+     * @param workerCount Number of threads that will poll this queue
+     * @param minimumChunkSize Minimal number of receivers returned by {@link #next(int[])}
+     * @param receiverOrder Receivers index in processing order, null to process receivers in natural order
+     */
+    public ReceiverChunkQueue(int receiverCount, int workerCount, int minimumChunkSize, int[] receiverOrder) {
+        if(receiverOrder != null && receiverOrder.length != receiverCount) {
+            throw new IllegalArgumentException(String.format("Receiver order length is not compatible %d!=%d",
+                    receiverOrder.length, receiverCount));
+        }
+        this.receiverCount = receiverCount;
+        this.workerCount = Math.max(1, workerCount);
+        this.minimumChunkSize = Math.max(1, minimumChunkSize);
+        this.receiverOrder = receiverOrder;
+    }
+
+    /**
+     * Reserve the next chunk of receivers
+     * @param range Array of size 2 that receive the chunk positions [begin, end[
+     * @return False if there is no more receivers to process or if the queue has been aborted
+     */
+    public boolean next(int[] range) {
+        while(!aborted.get()) {
+            int begin = cursor.get();
+            int remaining = receiverCount - begin;
+            if(remaining <= 0) {
+                return false;
+            }
+            int chunkSize = Math.min(remaining,
+                    Math.max(minimumChunkSize, remaining / (workerCount * CHUNKS_BY_WORKER)));
+            if(cursor.compareAndSet(begin, begin + chunkSize)) {
+                range[0] = begin;
+                range[1] = begin + chunkSize;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param position Position in the queue, as returned by {@link #next(int[])}
+     * @return Receiver index
+     */
+    public int getReceiver(int position) {
+        return receiverOrder == null ? position : receiverOrder[position];
+    }
+
+    /**
+     * Stop handing out receivers
+     */
+    public void abort() {
+        aborted.set(true);
+    }
+
+    /**
+     * @return True if {@link #abort()} has been called
+     */
+    public boolean isAborted() {
+        return aborted.get();
+    }
+
+    /**
+     * @return Number of receivers
+     */
+    public int getReceiverCount() {
+        return receiverCount;
+    }
+}
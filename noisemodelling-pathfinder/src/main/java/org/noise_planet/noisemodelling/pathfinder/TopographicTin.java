@@ -0,0 +1,459 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Triangulated irregular network of the digital elevation model, stored in primitive arrays.
+ * The vertices are stored in x, y, z arrays, each triangle is three vertex indices and three neighbor triangle
+ * indices. The neighbor k of a triangle is the triangle on the other side of the edge opposite to the vertex k,
+ * -1 if the edge is on the border of the triangulation.
+ * Points are located with a jump and walk: a uniform grid gives a triangle close to the point, then the
+ * triangulation is walked up to the triangle that contains the point.
+ * This class is immutable and can be shared between threads, the walk state is kept in a {@link WalkBuffer}.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public final class TopographicTin {
+    /** Number of last visited triangles that can not be entered again during a walk */
+    static final int VISITED_CAPACITY = 16;
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    /** vertex indices, triangle * 3 + corner */
+    private final int[] triangles;
+    /** neighbor triangle indices, triangle * 3 + side */
+    private final int[] neighbors;
+    /** Average number of triangles in a cell of the location grid */
+    private static final int TRIANGLES_PER_CELL = 4;
+    private double gridMinX;
+    private double gridMinY;
+    private double gridCellSize;
+    private int gridColumns;
+    private int gridRows;
+    /** Triangle used to start the walk for each cell, row * gridColumns + column */
+    private int[] gridSeeds = new int[0];
+
+    /**
+     * @param vertices Vertices of the triangulation
+     * @param triangles Triangles, vertex index of each corner
+     * @param neighbors Neighbors of the triangles, same order as triangles
+     */
+    public TopographicTin(List<Coordinate> vertices, List<Triangle> triangles, List<Triangle> neighbors) {
+        x = new double[vertices.size()];
+        y = new double[vertices.size()];
+        z = new double[vertices.size()];
+        for (int i = 0; i < vertices.size(); i++) {
+            Coordinate vertex = vertices.get(i);
+            x[i] = vertex.x;
+            y[i] = vertex.y;
+            z[i] = vertex.z;
+        }
+        this.triangles = new int[triangles.size() * 3];
+        this.neighbors = new int[triangles.size() * 3];
+        for (int i = 0; i < triangles.size(); i++) {
+            Triangle triangle = triangles.get(i);
+            Triangle triangleNeighbors = neighbors.get(i);
+            for (int k = 0; k < 3; k++) {
+                this.triangles[i * 3 + k] = triangle.get(k);
+                this.neighbors[i * 3 + k] = triangleNeighbors.get(k);
+            }
+        }
+        buildLocationGrid();
+    }
+
+    /**
+     * Store in each cell of a uniform grid the index of a triangle whose centroid is in this cell.
+     * Empty cells take the triangle of the previous non empty cell.
+     */
+    private void buildLocationGrid() {
+        int triangleCount = getTriangleCount();
+        if (triangleCount == 0) {
+            return;
+        }
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < x.length; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        double width = Math.max(maxX - minX, 1e-6);
+        double height = Math.max(maxY - minY, 1e-6);
+        gridCellSize = Math.max(Math.sqrt(width * height * TRIANGLES_PER_CELL / triangleCount), 1e-6);
+        gridMinX = minX;
+        gridMinY = minY;
+        gridColumns = Math.max(1, (int) Math.ceil(width / gridCellSize));
+        gridRows = Math.max(1, (int) Math.ceil(height / gridCellSize));
+        gridSeeds = new int[gridColumns * gridRows];
+        Arrays.fill(gridSeeds, -1);
+        for (int i = 0; i < triangleCount; i++) {
+            int a = triangles[i * 3];
+            int b = triangles[i * 3 + 1];
+            int c = triangles[i * 3 + 2];
+            gridSeeds[getCell((x[a] + x[b] + x[c]) / 3, (y[a] + y[b] + y[c]) / 3)] = i;
+        }
+        int seed = 0;
+        for (int cell = 0; cell < gridSeeds.length; cell++) {
+            if (gridSeeds[cell] == -1) {
+                gridSeeds[cell] = seed;
+            } else {
+                seed = gridSeeds[cell];
+            }
+        }
+    }
+
+    private int getCell(double px, double py) {
+        int column = Math.min(gridColumns - 1, Math.max(0, (int) ((px - gridMinX) / gridCellSize)));
+        int row = Math.min(gridRows - 1, Math.max(0, (int) ((py - gridMinY) / gridCellSize)));
+        return row * gridColumns + column;
+    }
+
+    /**
+     * Find the triangle that contains a point
+     * @param px Point x
+     * @param py Point y
+     * @return Triangle index, -1 if the point is outside of the triangulation
+     */
+    public int locate(double px, double py) {
+        int triangleCount = getTriangleCount();
+        if (triangleCount == 0) {
+            return -1;
+        }
+        int triangle = gridSeeds[getCell(px, py)];
+        // the walk can not visit more triangles than the triangulation contains
+        for (int step = 0; step <= triangleCount; step++) {
+            int exitSide = -1;
+            // start with a different side at each step in order to not loop on degenerate configurations
+            for (int i = 0; i < 3 && exitSide == -1; i++) {
+                int side = (step + i) % 3;
+                if (isOutside(triangle, side, px, py)) {
+                    exitSide = side;
+                }
+            }
+            if (exitSide == -1) {
+                return triangle;
+            }
+            int next = neighbors[triangle * 3 + exitSide];
+            if (next == -1) {
+                // the point is beyond a border edge of the convex triangulation
+                return -1;
+            }
+            triangle = next;
+        }
+        // should not happen, check all the triangles
+        for (int i = 0; i < triangleCount; i++) {
+            if (!isOutside(i, 0, px, py) && !isOutside(i, 1, px, py) && !isOutside(i, 2, px, py)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param triangle Triangle index
+     * @param side Side opposite to the corner of the same index
+     * @param px Point x
+     * @param py Point y
+     * @return True if the point is on the other side of this edge than the triangle, with a tolerance of
+     * {@link JTSUtility#TRIANGLE_INTERSECTION_EPSILON} relative to the edge length
+     */
+    private boolean isOutside(int triangle, int side, double px, double py) {
+        int opposite = triangles[triangle * 3 + side];
+        int u = triangles[triangle * 3 + (side + 1) % 3];
+        int v = triangles[triangle * 3 + (side + 2) % 3];
+        double ex = x[v] - x[u];
+        double ey = y[v] - y[u];
+        double pointSide = ex * (py - y[u]) - ey * (px - x[u]);
+        double oppositeSide = ex * (y[opposite] - y[u]) - ey * (x[opposite] - x[u]);
+        double tolerance = JTSUtility.TRIANGLE_INTERSECTION_EPSILON * (ex * ex + ey * ey);
+        return oppositeSide > 0 ? pointSide < -tolerance : pointSide > tolerance;
+    }
+
+    /**
+     * @param px Point x
+     * @param py Point y
+     * @return Elevation of the triangulation at this location, NaN if the point is outside of the triangulation
+     */
+    public double getZ(double px, double py) {
+        int triangle = locate(px, py);
+        return triangle == -1 ? Double.NaN : interpolateZ(triangle, px, py);
+    }
+
+    /**
+     * @return Number of triangles
+     */
+    public int getTriangleCount() {
+        return triangles.length / 3;
+    }
+
+    /**
+     * @return Number of vertices
+     */
+    public int getVertexCount() {
+        return x.length;
+    }
+
+    /**
+     * @param triangle Triangle index
+     * @param corner Corner in [0, 2]
+     * @return Vertex index
+     */
+    public int getVertex(int triangle, int corner) {
+        return triangles[triangle * 3 + corner];
+    }
+
+    /**
+     * @param triangle Triangle index
+     * @param side Side in [0, 2], the side opposite to the corner of the same index
+     * @return Neighbor triangle index or -1
+     */
+    public int getNeighbor(int triangle, int side) {
+        return neighbors[triangle * 3 + side];
+    }
+
+    public double getX(int vertex) {
+        return x[vertex];
+    }
+
+    public double getY(int vertex) {
+        return y[vertex];
+    }
+
+    public double getZ(int vertex) {
+        return z[vertex];
+    }
+
+    /**
+     * Interpolate the elevation on the plane of a triangle
+     * @param triangle Triangle index
+     * @param px Point x
+     * @param py Point y
+     * @return Elevation of the plane at this location
+     */
+    public double interpolateZ(int triangle, double px, double py) {
+        int a = triangles[triangle * 3];
+        int b = triangles[triangle * 3 + 1];
+        int c = triangles[triangle * 3 + 2];
+        double abx = x[b] - x[a];
+        double acx = x[c] - x[a];
+        double aby = y[b] - y[a];
+        double acy = y[c] - y[a];
+        double det = abx * acy - acx * aby;
+        double dx = px - x[a];
+        double dy = py - y[a];
+        double t = (acy * dx - acx * dy) / det;
+        double u = (-aby * dx + abx * dy) / det;
+        return z[a] + t * (z[b] - z[a]) + u * (z[c] - z[a]);
+    }
+
+    /**
+     * Walk in the triangulation along the segment p0 p1 starting from the triangle that contains p0 (or the first
+     * triangle intersected by the segment). At each step the segment leaves the triangle by the side whose
+     * intersection is the closest to p1. The intersection points of the segment with the sides of the crossed
+     * triangles are appended to the buffer.
+     * @param startTriangle Index of the first triangle
+     * @param x0 Segment start x
+     * @param y0 Segment start y
+     * @param x1 Segment end x
+     * @param y1 Segment end y
+     * @param buffer Output buffer, cleared by the caller
+     * @return Index of the last triangle visited
+     */
+    public int walk(int startTriangle, double x0, double y0, double x1, double y1, WalkBuffer buffer) {
+        double rx = x1 - x0;
+        double ry = y1 - y0;
+        double length2 = rx * rx + ry * ry;
+        // orientation values are scaled by the segment length
+        double epsilon = JTSUtility.TRIANGLE_INTERSECTION_EPSILON * Math.sqrt(length2);
+        buffer.visitedCount = 0;
+        int lastTriangle = startTriangle;
+        int triangle = startTriangle;
+        // The walk can not visit more triangles than the triangulation contains
+        for (int step = 0; triangle != -1 && step <= getTriangleCount(); step++) {
+            buffer.visit(triangle);
+            lastTriangle = triangle;
+            int nextSide = -1;
+            double nearestDistance = Double.MAX_VALUE;
+            double nearestX = 0, nearestY = 0, nearestZ = 0;
+            // same order than the sides of the triangle A-B, B-C, C-A
+            for (int edge = 0; edge < 3; edge++) {
+                int side = (edge + 2) % 3;
+                if (buffer.isVisited(neighbors[triangle * 3 + side])) {
+                    continue;
+                }
+                int u = triangles[triangle * 3 + edge];
+                int v = triangles[triangle * 3 + (edge + 1) % 3];
+                double du = rx * (y[u] - y0) - ry * (x[u] - x0);
+                double dv = rx * (y[v] - y0) - ry * (x[v] - x0);
+                double ix, iy, iz;
+                if (Math.abs(du) <= epsilon && Math.abs(dv) <= epsilon) {
+                    // side on the segment line, keep the vertex closest to p1
+                    int closest = distance2(x[u], y[u], x1, y1) <= distance2(x[v], y[v], x1, y1) ? u : v;
+                    ix = x[closest];
+                    iy = y[closest];
+                    iz = z[closest];
+                } else if ((du > epsilon && dv > epsilon) || (du < -epsilon && dv < -epsilon)) {
+                    // both vertices on the same side of the segment line
+                    continue;
+                } else {
+                    double s = Math.abs(du) <= epsilon ? 0 : Math.abs(dv) <= epsilon ? 1 : du / (du - dv);
+                    ix = x[u] + s * (x[v] - x[u]);
+                    iy = y[u] + s * (y[v] - y[u]);
+                    iz = z[u] + s * (z[v] - z[u]);
+                }
+                // the intersection must be on the segment p0 p1
+                double t = ((ix - x0) * rx + (iy - y0) * ry) / length2;
+                double tolerance = epsilon / length2;
+                if (t < -tolerance || t > 1 + tolerance) {
+                    continue;
+                }
+                double distance = distance2(ix, iy, x1, y1);
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nextSide = side;
+                    nearestX = ix;
+                    nearestY = iy;
+                    nearestZ = iz;
+                }
+            }
+            if (nextSide == -1) {
+                break;
+            }
+            buffer.add(nearestX, nearestY, nearestZ);
+            triangle = neighbors[triangle * 3 + nextSide];
+        }
+        return lastTriangle;
+    }
+
+    private static double distance2(double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * 3D distance between a point and a segment, same result as
+     * {@link org.locationtech.jts.algorithm.CGAlgorithms3D#distancePointSegment(Coordinate, Coordinate, Coordinate)}
+     */
+    static double distancePointSegment(double px, double py, double pz, double ax, double ay, double az,
+                                       double bx, double by, double bz) {
+        double abx = bx - ax;
+        double aby = by - ay;
+        double abz = bz - az;
+        double len2 = abx * abx + aby * aby + abz * abz;
+        if (len2 == 0) {
+            return distance3D(px, py, pz, ax, ay, az);
+        }
+        double r = ((px - ax) * abx + (py - ay) * aby + (pz - az) * abz) / len2;
+        if (r <= 0.0) {
+            return distance3D(px, py, pz, ax, ay, az);
+        }
+        if (r >= 1.0) {
+            return distance3D(px, py, pz, bx, by, bz);
+        }
+        return distance3D(px, py, pz, ax + r * abx, ay + r * aby, az + r * abz);
+    }
+
+    private static double distance3D(double ax, double ay, double az, double bx, double by, double bz) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double dz = bz - az;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Points found by a walk, stored as packed x, y, z values, and the last visited triangles.
+     * A buffer can be reused for successive walks of the same thread.
+     */
+    public static final class WalkBuffer {
+        private double[] values = new double[3 * 32];
+        private int size = 0;
+        private final int[] visited = new int[VISITED_CAPACITY];
+        private int visitedCount = 0;
+
+        /**
+         * Remove all points, keep allocated memory
+         */
+        public void clear() {
+            size = 0;
+            visitedCount = 0;
+        }
+
+        /**
+         * @return Number of points
+         */
+        public int size() {
+            return size;
+        }
+
+        public void add(double px, double py, double pz) {
+            if (size * 3 + 3 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size * 3] = px;
+            values[size * 3 + 1] = py;
+            values[size * 3 + 2] = pz;
+            size++;
+        }
+
+        /**
+         * Overwrite a point
+         * @param index Point index in [0, {@link #size()}[
+         */
+        public void set(int index, double px, double py, double pz) {
+            values[index * 3] = px;
+            values[index * 3 + 1] = py;
+            values[index * 3 + 2] = pz;
+        }
+
+        /**
+         * Keep only the first points
+         * @param newSize New number of points, lower or equal than {@link #size()}
+         */
+        public void truncate(int newSize) {
+            size = newSize;
+        }
+
+        public double getX(int index) {
+            return values[index * 3];
+        }
+
+        public double getY(int index) {
+            return values[index * 3 + 1];
+        }
+
+        public double getZ(int index) {
+            return values[index * 3 + 2];
+        }
+
+        void visit(int triangle) {
+            visited[visitedCount % VISITED_CAPACITY] = triangle;
+            visitedCount++;
+        }
+
+        boolean isVisited(int triangle) {
+            if (triangle == -1) {
+                return false;
+            }
+            int count = Math.min(visitedCount, VISITED_CAPACITY);
+            for (int i = 0; i < count; i++) {
+                if (visited[i] == triangle) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
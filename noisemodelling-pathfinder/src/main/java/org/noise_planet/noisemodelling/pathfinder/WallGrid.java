@@ -0,0 +1,350 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid of segments (walls) with integer identifiers.
+ * Each segment is referenced in all the cells it crosses. A query walks the cells crossed by a ray from its origin to
+ * its end (Amanatides and Woo traversal) so the segments are returned approximately in the order of the path. This
+ * index is better suited than an R-tree to long and thin queries such as source receiver lines.
+ * The grid is immutable once built and can be queried concurrently by several threads.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public final class WallGrid {
+    /** Maximum number of cells of a grid, the cell size is increased to fit */
+    private static final int MAX_CELLS = 1 << 24;
+    /** Distance (m) used to compare the crossing of a column line and of a row line */
+    private static final double EPSILON = 1e-7;
+    private static final WallGrid EMPTY = new Builder().build();
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    /** Position in items of the first item of each cell, the last value is the number of references */
+    private final int[] cellStart;
+    /** Items of each cell, in the insertion order */
+    private final int[] items;
+    /** Number of segments */
+    private final int itemCount;
+    /** Greatest item identifier + 1 */
+    private final int itemBound;
+    /** Items already visited by the current query of each thread */
+    private final ThreadLocal<VisitedItems> visitedItems;
+
+    /**
+     * Called for each cell crossed by a ray
+     */
+    @FunctionalInterface
+    private interface CellVisitor {
+        /**
+         * @param cell Cell index (row * columns + column)
+         * @return False to stop the traversal
+         */
+        boolean visit(int cell);
+    }
+
+    private static final class VisitedItems {
+        private final int[] stamps;
+        private int generation = 0;
+
+        VisitedItems(int itemBound) {
+            stamps = new int[itemBound];
+        }
+
+        /**
+         * @return A new stamp for the next query
+         */
+        int next() {
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                generation = 0;
+            }
+            return ++generation;
+        }
+    }
+
+    private WallGrid(double minX, double minY, double cellSize, int columns, int rows, int[] cellStart, int[] items,
+                     int itemCount, int itemBound) {
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.cellStart = cellStart;
+        this.items = items;
+        this.itemCount = itemCount;
+        this.itemBound = itemBound;
+        visitedItems = ThreadLocal.withInitial(() -> new VisitedItems(itemBound));
+    }
+
+    /**
+     * @return Grid without any item
+     */
+    public static WallGrid empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return Number of segments
+     */
+    public int size() {
+        return itemCount;
+    }
+
+    /**
+     * @return Size of a cell side
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return Number of columns of the grid
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return Number of rows of the grid
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Visit the items referenced in the cells crossed by the segment p0 p1, from p0 to p1. Each item is visited once.
+     * The items are candidates, the segment may not intersect them.
+     * @param x0 Segment start x
+     * @param y0 Segment start y
+     * @param x1 Segment end x
+     * @param y1 Segment end y
+     * @param visitor Item visitor
+     * @return False if the visitor stopped the query
+     */
+    public boolean querySegment(double x0, double y0, double x1, double y1, PackedRTree.Visitor visitor) {
+        if (itemCount == 0) {
+            return true;
+        }
+        VisitedItems visited = visitedItems.get();
+        int stamp = visited.next();
+        int[] stamps = visited.stamps;
+        return traverse(x0, y0, x1, y1, cell -> {
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                int item = items[i];
+                if (stamps[item] != stamp) {
+                    stamps[item] = stamp;
+                    if (!visitor.visit(item)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Visit the cells crossed by the segment a b, from a to b. A cell is visited if its closed extent intersects the
+     * segment, so two segments that intersect always share a visited cell.
+     */
+    private boolean traverse(double ax, double ay, double bx, double by, CellVisitor visitor) {
+        double rx = bx - ax;
+        double ry = by - ay;
+        // Clip the segment with the extent of the grid (Liang-Barsky)
+        double maxX = minX + columns * cellSize;
+        double maxY = minY + rows * cellSize;
+        double tEnter = 0;
+        double tExit = 1;
+        for (int boundary = 0; boundary < 4; boundary++) {
+            double p = boundary == 0 ? -rx : boundary == 1 ? rx : boundary == 2 ? -ry : ry;
+            double q = boundary == 0 ? ax - minX : boundary == 1 ? maxX - ax : boundary == 2 ? ay - minY : maxY - ay;
+            if (p == 0) {
+                if (q < 0) {
+                    return true;
+                }
+            } else if (p < 0) {
+                tEnter = Math.max(tEnter, q / p);
+            } else {
+                tExit = Math.min(tExit, q / p);
+            }
+        }
+        if (tEnter > tExit) {
+            return true;
+        }
+        int column = Math.max(0, Math.min(columns - 1,
+                (int) Math.floor((ax + tEnter * rx - minX) / cellSize)));
+        int row = Math.max(0, Math.min(rows - 1, (int) Math.floor((ay + tEnter * ry - minY) / cellSize)));
+        if (!visitor.visit(row * columns + column)) {
+            return false;
+        }
+        if (rx == 0 && ry == 0) {
+            return true;
+        }
+        int stepColumn = rx > 0 ? 1 : -1;
+        int stepRow = ry > 0 ? 1 : -1;
+        // the next column line and row line crossed by the ray
+        int columnLine = rx > 0 ? 1 : 0;
+        int rowLine = ry > 0 ? 1 : 0;
+        double tColumn = rx == 0 ? Double.POSITIVE_INFINITY : (minX + (column + columnLine) * cellSize - ax) / rx;
+        double tRow = ry == 0 ? Double.POSITIVE_INFINITY : (minY + (row + rowLine) * cellSize - ay) / ry;
+        double tolerance = EPSILON / Math.sqrt(rx * rx + ry * ry);
+        while (Math.min(tColumn, tRow) <= tExit + tolerance) {
+            if (tColumn < tRow - tolerance) {
+                column += stepColumn;
+            } else if (tRow < tColumn - tolerance) {
+                row += stepRow;
+            } else {
+                // the ray crosses a cell corner, the two cells on the sides touch the ray too
+                int sideColumn = column + stepColumn;
+                if (sideColumn >= 0 && sideColumn < columns && !visitor.visit(row * columns + sideColumn)) {
+                    return false;
+                }
+                int sideRow = row + stepRow;
+                if (sideRow >= 0 && sideRow < rows && !visitor.visit(sideRow * columns + column)) {
+                    return false;
+                }
+                column = sideColumn;
+                row = sideRow;
+            }
+            if (column < 0 || column >= columns || row < 0 || row >= rows) {
+                break;
+            }
+            if (!visitor.visit(row * columns + column)) {
+                return false;
+            }
+            if (rx != 0) {
+                tColumn = (minX + (column + columnLine) * cellSize - ax) / rx;
+            }
+            if (ry != 0) {
+                tRow = (minY + (row + rowLine) * cellSize - ay) / ry;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collect the segments, then build the grid.
+     */
+    public static final class Builder {
+        private double[] segments = new double[64];
+        private int[] items = new int[16];
+        private int count = 0;
+
+        /**
+         * @param x0 Segment start x
+         * @param y0 Segment start y
+         * @param x1 Segment end x
+         * @param y1 Segment end y
+         * @param item Item identifier returned by the queries, must be positive or zero
+         * @return This builder
+         */
+        public Builder add(double x0, double y0, double x1, double y1, int item) {
+            if (item < 0) {
+                throw new IllegalArgumentException("The item identifier must be positive or zero");
+            }
+            if (count == items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+                segments = Arrays.copyOf(segments, segments.length * 2);
+            }
+            segments[count * 4] = x0;
+            segments[count * 4 + 1] = y0;
+            segments[count * 4 + 2] = x1;
+            segments[count * 4 + 3] = y1;
+            items[count] = item;
+            count++;
+            return this;
+        }
+
+        /**
+         * @return Number of segments added
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * @return Grid with a cell size computed from the extent and the number of segments
+         */
+        public WallGrid build() {
+            return build(0);
+        }
+
+        /**
+         * @param cellSize Size of a cell side, 0 to compute it from the extent and the number of segments (about one
+         *                 cell per segment)
+         * @return Grid of the added segments
+         */
+        public WallGrid build(double cellSize) {
+            if (cellSize < 0 || Double.isNaN(cellSize)) {
+                throw new IllegalArgumentException("The cell size must be positive");
+            }
+            if (count == 0) {
+                return new WallGrid(0, 0, 1, 1, 1, new int[2], new int[0], 0, 0);
+            }
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            int itemBound = 0;
+            for (int i = 0; i < count; i++) {
+                minX = Math.min(minX, Math.min(segments[i * 4], segments[i * 4 + 2]));
+                minY = Math.min(minY, Math.min(segments[i * 4 + 1], segments[i * 4 + 3]));
+                maxX = Math.max(maxX, Math.max(segments[i * 4], segments[i * 4 + 2]));
+                maxY = Math.max(maxY, Math.max(segments[i * 4 + 1], segments[i * 4 + 3]));
+                itemBound = Math.max(itemBound, items[i] + 1);
+            }
+            double width = maxX - minX;
+            double height = maxY - minY;
+            if (cellSize == 0) {
+                cellSize = width * height > 0 ? Math.sqrt(width * height / count) : Math.max(width, height) / count;
+            }
+            cellSize = Math.max(cellSize, Math.sqrt(width * height / MAX_CELLS));
+            if (!(cellSize > 0)) {
+                // all the segments are on the same point
+                cellSize = 1;
+            }
+            int columns = Math.max(1, (int) Math.ceil(width / cellSize));
+            int rows = Math.max(1, (int) Math.ceil(height / cellSize));
+            while ((long) columns * rows > MAX_CELLS) {
+                cellSize *= 2;
+                columns = Math.max(1, (int) Math.ceil(width / cellSize));
+                rows = Math.max(1, (int) Math.ceil(height / cellSize));
+            }
+            // Count the references of each cell, then fill the cells in the insertion order
+            int[] cellStart = new int[columns * rows + 1];
+            WallGrid counter = new WallGrid(minX, minY, cellSize, columns, rows, cellStart, new int[0], 0, 0);
+            for (int i = 0; i < count; i++) {
+                counter.traverse(segments[i * 4], segments[i * 4 + 1], segments[i * 4 + 2], segments[i * 4 + 3],
+                        cell -> {
+                            cellStart[cell + 1]++;
+                            return true;
+                        });
+            }
+            for (int cell = 0; cell < columns * rows; cell++) {
+                cellStart[cell + 1] += cellStart[cell];
+            }
+            int[] cellItems = new int[cellStart[columns * rows]];
+            int[] cursor = Arrays.copyOf(cellStart, columns * rows);
+            for (int i = 0; i < count; i++) {
+                final int item = items[i];
+                counter.traverse(segments[i * 4], segments[i * 4 + 1], segments[i * 4 + 2], segments[i * 4 + 3],
+                        cell -> {
+                            cellItems[cursor[cell]++] = item;
+                            return true;
+                        });
+            }
+            return new WallGrid(minX, minY, cellSize, columns, rows, cellStart, cellItems, count, itemBound);
+        }
+    }
+}
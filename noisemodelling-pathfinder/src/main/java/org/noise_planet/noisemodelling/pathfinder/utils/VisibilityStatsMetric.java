@@ -0,0 +1,74 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils;
+
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count the results of the visibility tests done before building the cut profiles, and the number of cut profiles
+ * that have not been computed thanks to these tests. The counts are reset each time the values are written.
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class VisibilityStatsMetric implements ProfilerThread.Metric {
+    private final AtomicLong freeField = new AtomicLong();
+    private final AtomicLong buildingObstructed = new AtomicLong();
+    private final AtomicLong terrainObstructed = new AtomicLong();
+    private final AtomicLong skippedProfiles = new AtomicLong();
+
+    public VisibilityStatsMetric() {
+    }
+
+    /**
+     * @param visibility Result of a visibility test
+     * @param skippedProfiles Number of cut profiles that have not been computed thanks to this test
+     */
+    public void onVisibility(ProfileBuilder.Visibility visibility, int skippedProfiles) {
+        switch (visibility) {
+            case FREE_FIELD:
+                freeField.incrementAndGet();
+                break;
+            case BUILDING_OBSTRUCTED:
+                buildingObstructed.incrementAndGet();
+                break;
+            default:
+                terrainObstructed.incrementAndGet();
+        }
+        this.skippedProfiles.addAndGet(skippedProfiles);
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return new String[] {"visibility_free_field", "visibility_building", "visibility_terrain",
+                "visibility_obstructed_ratio", "visibility_skipped_profiles"};
+    }
+
+    @Override
+    public String[] getCurrentValues() {
+        long free = freeField.getAndSet(0);
+        long building = buildingObstructed.getAndSet(0);
+        long terrain = terrainObstructed.getAndSet(0);
+        long total = free + building + terrain;
+        return new String[] {
+                Long.toString(free),
+                Long.toString(building),
+                Long.toString(terrain),
+                String.format(Locale.ROOT, "%.2f", total > 0 ? (building + terrain) / (double) total : 0),
+                Long.toString(skippedProfiles.getAndSet(0))
+        };
+    }
+
+    @Override
+    public void tick(long currentMillis) {
+
+    }
+}
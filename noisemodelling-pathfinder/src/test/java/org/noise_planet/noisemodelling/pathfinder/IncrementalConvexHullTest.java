@@ -0,0 +1,92 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+import org.locationtech.jts.algorithm.ConvexHull;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IncrementalConvexHullTest {
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+
+    private static Coordinate randomPoint(Random random, boolean lattice) {
+        if (lattice) {
+            // many aligned and duplicated points
+            return new Coordinate(random.nextInt(20) * 5, random.nextInt(20) * 5, random.nextInt(10));
+        }
+        return new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 10);
+    }
+
+    /**
+     * Inserting points one batch at a time must give the same hull as computing the JTS hull of the previous hull
+     * vertices and of the new points
+     */
+    @Test
+    public void testSameAsJtsHull() {
+        Random random = new Random(42);
+        for (int test = 0; test < 200; test++) {
+            boolean lattice = test % 2 == 0;
+            List<Coordinate> input = new ArrayList<>();
+            Geometry expected;
+            do {
+                input.add(randomPoint(random, lattice));
+                expected = new ConvexHull(input.toArray(new Coordinate[0]), FACTORY).getConvexHull();
+            } while (expected.getNumPoints() < 4);
+            IncrementalConvexHull hull = new IncrementalConvexHull(expected.getCoordinates());
+            for (int batch = 0; batch < 10; batch++) {
+                input = new ArrayList<>(Arrays.asList(expected.getCoordinates()));
+                for (int i = 0; i < 5; i++) {
+                    Coordinate point = randomPoint(random, lattice);
+                    input.add(point);
+                    hull.add(point);
+                }
+                expected = new ConvexHull(input.toArray(new Coordinate[0]), FACTORY).getConvexHull();
+                Coordinate[] ring = expected.getCoordinates();
+                assertEquals(ring.length - 1, hull.size());
+                assertEquals(expected.getLength(), hull.getLength(), 1e-9);
+                // same vertices in the same order
+                int offset = hull.indexOf(ring[0]);
+                assertTrue(offset >= 0);
+                for (int i = 0; i < ring.length - 1; i++) {
+                    assertTrue(ring[i].equals3D(hull.get((offset + i) % hull.size())));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeFlags() {
+        Coordinate[] square = new Coordinate[]{new Coordinate(0, 0), new Coordinate(0, 10), new Coordinate(10, 10),
+                new Coordinate(10, 0), new Coordinate(0, 0)};
+        IncrementalConvexHull hull = new IncrementalConvexHull(square);
+        for (int i = 0; i < hull.size(); i++) {
+            assertFalse(hull.isEdgeFlag(i));
+            hull.setEdgeFlag(i, true);
+        }
+        // inside, on an edge and on a vertex
+        assertFalse(hull.add(new Coordinate(5, 5)));
+        assertFalse(hull.add(new Coordinate(5, 10)));
+        assertFalse(hull.add(new Coordinate(10, 10, 4)));
+        // replace the top edge by two edges
+        assertTrue(hull.add(new Coordinate(5, 15)));
+        assertEquals(5, hull.size());
+        int top = hull.indexOf(new Coordinate(5, 15));
+        assertFalse(hull.isEdgeFlag(top));
+        assertFalse(hull.isEdgeFlag((top - 1 + hull.size()) % hull.size()));
+        assertTrue(hull.isEdgeFlag((top + 1) % hull.size()));
+        assertTrue(hull.isEdgeFlag((top + 2) % hull.size()));
+        assertTrue(hull.isEdgeFlag((top + 3) % hull.size()));
+        // aligned with the bottom edge and with the top right edge, the vertices (10, 0) and (10, 10) are removed
+        assertTrue(hull.add(new Coordinate(20, 0)));
+        assertEquals(-1, hull.indexOf(new Coordinate(10, 0)));
+        assertEquals(-1, hull.indexOf(new Coordinate(10, 10)));
+        assertEquals(4, hull.size());
+    }
+}
@@ -0,0 +1,122 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class PackedRTreeTest {
+
+    private static List<Envelope> randomEnvelopes(Random random, int count) {
+        List<Envelope> envelopes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble() * 1000;
+            double y = random.nextDouble() * 1000;
+            envelopes.add(new Envelope(x, x + random.nextDouble() * 20, y, y + random.nextDouble() * 20));
+        }
+        return envelopes;
+    }
+
+    private static PackedRTree build(List<Envelope> envelopes, int nodeSize) {
+        PackedRTree.Builder builder = new PackedRTree.Builder();
+        for (int i = 0; i < envelopes.size(); i++) {
+            builder.add(envelopes.get(i), i);
+        }
+        return builder.build(nodeSize);
+    }
+
+    @Test
+    public void testEmpty() {
+        PackedRTree tree = PackedRTree.empty();
+        assertEquals(0, tree.size());
+        assertTrue(tree.query(new Envelope(0, 10, 0, 10)).isEmpty());
+        assertTrue(tree.querySegment(0, 0, 10, 10, item -> {
+            fail();
+            return true;
+        }));
+    }
+
+    /**
+     * Envelope queries must return the same items as a brute force search
+     */
+    @Test
+    public void testEnvelopeQuery() {
+        Random random = new Random(42);
+        List<Envelope> envelopes = randomEnvelopes(random, 5000);
+        for (int nodeSize : new int[]{2, 4, 16}) {
+            PackedRTree tree = build(envelopes, nodeSize);
+            assertEquals(envelopes.size(), tree.size());
+            for (int q = 0; q < 200; q++) {
+                double x = random.nextDouble() * 1000;
+                double y = random.nextDouble() * 1000;
+                Envelope query = new Envelope(x, x + random.nextDouble() * 100, y, y + random.nextDouble() * 100);
+                Set<Integer> expected = new TreeSet<>();
+                for (int i = 0; i < envelopes.size(); i++) {
+                    if (envelopes.get(i).intersects(query)) {
+                        expected.add(i);
+                    }
+                }
+                List<Integer> found = tree.query(query);
+                assertEquals(expected.size(), found.size());
+                assertEquals(expected, new TreeSet<>(found));
+            }
+        }
+    }
+
+    /**
+     * Segment queries must return all the envelopes crossed by the segment, and no envelope far from it
+     */
+    @Test
+    public void testSegmentQuery() {
+        Random random = new Random(42);
+        GeometryFactory factory = new GeometryFactory();
+        List<Envelope> envelopes = randomEnvelopes(random, 5000);
+        PackedRTree tree = build(envelopes, PackedRTree.DEFAULT_NODE_SIZE);
+        for (int q = 0; q < 200; q++) {
+            Coordinate p0 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000);
+            Coordinate p1 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000);
+            LineString segment = factory.createLineString(new Coordinate[]{p0, p1});
+            Set<Integer> found = new TreeSet<>();
+            assertTrue(tree.querySegment(p0.x, p0.y, p1.x, p1.y, found::add));
+            for (int i = 0; i < envelopes.size(); i++) {
+                Envelope envelope = envelopes.get(i);
+                boolean crossed = segment.intersects(factory.toGeometry(envelope));
+                if (crossed) {
+                    assertTrue(found.contains(i));
+                } else if (found.contains(i)) {
+                    // Only envelopes touched within the tolerance may be returned
+                    Envelope expanded = new Envelope(envelope);
+                    expanded.expandBy(1e-3);
+                    assertTrue(segment.intersects(factory.toGeometry(expanded)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStopQuery() {
+        List<Envelope> envelopes = randomEnvelopes(new Random(42), 1000);
+        PackedRTree tree = build(envelopes, PackedRTree.DEFAULT_NODE_SIZE);
+        List<Integer> visited = new ArrayList<>();
+        assertFalse(tree.query(new Envelope(0, 1000, 0, 1000), item -> {
+            visited.add(item);
+            return visited.size() < 3;
+        }));
+        assertEquals(3, visited.size());
+        visited.clear();
+        assertFalse(tree.querySegment(0, 0, 1000, 1000, item -> {
+            visited.add(item);
+            return false;
+        }));
+        assertEquals(1, visited.size());
+    }
+}
@@ -7,18 +7,22 @@ import org.locationtech.jts.geom.*;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 import org.locationtech.jts.io.WKTWriter;
+import org.locationtech.jts.triangulate.quadedge.Vertex;
 import org.noise_planet.noisemodelling.pathfinder.utils.GeoJSONDocument;
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.stream.XMLStreamException;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -95,6 +99,34 @@ public class ProfileBuilderTest {
         assertEquals(0.3, pts.get(7).getCoordinate().z, DELTA);
     }
 
+    /**
+     * The maxLineLength argument of the deprecated constructor has no effect on the cut profile.
+     * @throws ParseException JTS WKT parsing exception.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedConstructorCutProfileTest() throws ParseException {
+        List<List<ProfileBuilder.CutPoint>> cutPoints = new ArrayList<>();
+        for(ProfileBuilder profileBuilder : new ProfileBuilder[]{new ProfileBuilder(3, 3, 3),
+                new ProfileBuilder(3, 3, 3, 2)}) {
+            profileBuilder.addBuilding(READER.read("POLYGON((2 2 10, 1 3 15, 2 4 10, 3 3 12, 2 2 10))"));
+            profileBuilder.addBuilding(READER.read("POLYGON((4.5 7, 4.5 8.5, 6.5 8.5, 4.5 7))"), 3.3);
+            profileBuilder.addBuilding(READER.read("POLYGON((7 6, 10 6, 10 2, 7 2, 7 6))"), 5.6);
+            profileBuilder.finishFeeding();
+            cutPoints.add(profileBuilder.getProfile(new Coordinate(0, 1, 0.1), new Coordinate(8, 10, 0.3)).getCutPoints());
+        }
+        assertEquals(8, cutPoints.get(1).size());
+        assertEquals(cutPoints.get(0).size(), cutPoints.get(1).size());
+        for(int i = 0; i < cutPoints.get(0).size(); i++) {
+            assertEquals(cutPoints.get(0).get(i).getType(), cutPoints.get(1).get(i).getType());
+            Coordinate expected = cutPoints.get(0).get(i).getCoordinate();
+            Coordinate actual = cutPoints.get(1).get(i).getCoordinate();
+            assertEquals(expected.x, actual.x, DELTA);
+            assertEquals(expected.y, actual.y, DELTA);
+            assertEquals(expected.z, actual.z, DELTA);
+        }
+    }
+
     /**
      * Test the topographic adding to a {@link ProfileBuilder}.
      * @throws ParseException JTS WKT parsing exception.
@@ -405,4 +437,267 @@ public class ProfileBuilderTest {
                 .map(coordinate -> coordinate.z).max(Double::compareTo).get();
         assertEquals(3.05, maxZ, 1e-6);
     }
+
+    /**
+     * Walk along the edges of a regular DEM grid, the points must be ordered from p1 to p2 without duplicates,
+     * and be on the triangulation surface
+     */
+    @Test
+    public void testTopographicWalkAlongEdges() {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        for (int i = 0; i <= 20; i++) {
+            for (int j = 0; j <= 20; j++) {
+                double x = i * 25;
+                double y = j * 25;
+                profileBuilder.addTopographicPoint(new Coordinate(x, y, 10 * Math.sin(x / 80) + 8 * Math.cos(y / 60)));
+            }
+        }
+        profileBuilder.finishFeeding();
+        TopographicTin tin = profileBuilder.getTopographicTin();
+        assertNotNull(tin);
+        TopographicTin.WalkBuffer buffer = new TopographicTin.WalkBuffer();
+        Coordinate[][] segments = new Coordinate[][]{
+                {new Coordinate(100, 100), new Coordinate(400, 100)},
+                {new Coordinate(30, 480), new Coordinate(470, 20)},
+                {new Coordinate(212, 40), new Coordinate(212, 460)}};
+        for (Coordinate[] segment : segments) {
+            profileBuilder.walkTopographicProfile(segment[0], segment[1], buffer);
+            assertTrue(buffer.size() > 0);
+            double previousDistance = 0;
+            for (int i = 0; i < buffer.size(); i++) {
+                Coordinate pt = new Coordinate(buffer.getX(i), buffer.getY(i), buffer.getZ(i));
+                double distance = pt.distance(segment[0]);
+                assertTrue(distance > previousDistance - 1e-6);
+                assertTrue(distance <= segment[0].distance(segment[1]) + 1e-6);
+                assertEquals(profileBuilder.getZGround(pt), pt.z, 1e-6);
+                previousDistance = distance;
+            }
+        }
+        // along the x axis each grid vertex between the two points is kept once, the last one is the end point
+        ProfileBuilder.CutProfile profile = new ProfileBuilder.CutProfile();
+        profileBuilder.addTopoCutPts(segments[0][0], segments[0][1], profile);
+        assertEquals(11, profile.getCutPoints().size());
+    }
+
+    /**
+     * Point location in the DEM triangulation must give the same elevation as an exhaustive search, inside and
+     * outside of the triangulation, on vertices and on edges
+     */
+    @Test
+    public void testTopographicLocate() {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        Random random = new Random(3);
+        for (int i = 0; i < 900; i++) {
+            double x = random.nextDouble() * 750;
+            double y = random.nextDouble() * 750;
+            profileBuilder.addTopographicPoint(new Coordinate(x, y, 10 * Math.sin(x / 80) + 8 * Math.cos(y / 60)));
+        }
+        profileBuilder.finishFeeding();
+        TopographicTin tin = profileBuilder.getTopographicTin();
+        List<Coordinate> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            points.add(new Coordinate(random.nextDouble() * 900 - 75, random.nextDouble() * 900 - 75));
+        }
+        // vertices and middle of edges
+        for (int i = 0; i < 100; i++) {
+            Coordinate a = profileBuilder.getVertices().get(profileBuilder.getTriangles().get(i).getA());
+            Coordinate b = profileBuilder.getVertices().get(profileBuilder.getTriangles().get(i).getB());
+            points.add(new Coordinate(a.x, a.y));
+            points.add(new Coordinate((a.x + b.x) / 2, (a.y + b.y) / 2));
+        }
+        for (Coordinate pt : points) {
+            double expected = Double.NaN;
+            for (Triangle triangle : profileBuilder.getTriangles()) {
+                Coordinate a = profileBuilder.getVertices().get(triangle.getA());
+                Coordinate b = profileBuilder.getVertices().get(triangle.getB());
+                Coordinate c = profileBuilder.getVertices().get(triangle.getC());
+                if (JTSUtility.dotInTri(pt, a, b, c)) {
+                    expected = Vertex.interpolateZ(pt, a, b, c);
+                    break;
+                }
+            }
+            double z = tin.getZ(pt.x, pt.y);
+            if (Double.isNaN(expected)) {
+                assertTrue(pt.toString(), Double.isNaN(z));
+                assertEquals(-1, tin.locate(pt.x, pt.y));
+            } else {
+                assertEquals(pt.toString(), expected, z, 1e-6);
+                assertEquals(expected, profileBuilder.getZGround(pt), 1e-6);
+            }
+        }
+    }
+
+    /**
+     * On a planar terrain the elevation grid and the triangulation of the same points give the same elevations
+     */
+    @Test
+    public void testElevationGrid() throws IOException {
+        // 51x51 grid, 20 m step, the north row first
+        File gridFile = new File("target/testElevationGrid.bin");
+        try (ElevationGrid.Writer writer = new ElevationGrid.Writer(gridFile, 0, 1000, 20, 51, 51)) {
+            for (int row = 0; row < 51; row++) {
+                float[] values = new float[51];
+                for (int column = 0; column < 51; column++) {
+                    values[column] = (float) (10 + column * 20 * 0.02 + (1000 - row * 20) * 0.01);
+                }
+                writer.writeRow(values);
+            }
+        }
+        ElevationGrid grid = ElevationGrid.map(gridFile);
+        ProfileBuilder gridBuilder = new ProfileBuilder();
+        gridBuilder.setElevationGrid(grid);
+        gridBuilder.addWall(new Coordinate[]{new Coordinate(300, 300), new Coordinate(340, 300)}, 3, 1);
+        gridBuilder.finishFeeding();
+        assertTrue(gridBuilder.hasDem());
+        assertTrue(gridBuilder.getTriangles().isEmpty());
+        ProfileBuilder tinBuilder = new ProfileBuilder();
+        for (int i = 0; i <= 50; i++) {
+            for (int j = 0; j <= 50; j++) {
+                tinBuilder.addTopographicPoint(new Coordinate(i * 20, j * 20, 10 + i * 20 * 0.02 + j * 20 * 0.01));
+            }
+        }
+        tinBuilder.finishFeeding();
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            Coordinate pt = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000);
+            assertEquals(pt.toString(), tinBuilder.getZGround(pt), gridBuilder.getZGround(pt), 1e-4);
+        }
+        assertTrue(Double.isNaN(grid.getZ(-1, 500)));
+        assertEquals(3 + 10 + 300 * 0.02 + 300 * 0.01, gridBuilder.getWall(0).p0.z, 1e-4);
+        assertEquals(3 + 10 + 340 * 0.02 + 300 * 0.01, gridBuilder.getWall(0).p1.z, 1e-4);
+        // the walk stops on each column line
+        TopographicTin.WalkBuffer buffer = new TopographicTin.WalkBuffer();
+        gridBuilder.walkTopographicProfile(new Coordinate(100, 110), new Coordinate(400, 110), buffer);
+        assertEquals(15, buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            assertEquals(120 + i * 20, buffer.getX(i), 1e-6);
+            assertEquals(110, buffer.getY(i), 1e-6);
+        }
+        // random segments, partially outside of the grid
+        for (int i = 0; i < 200; i++) {
+            Coordinate p0 = new Coordinate(random.nextDouble() * 1200 - 100, random.nextDouble() * 1200 - 100);
+            Coordinate p1 = new Coordinate(random.nextDouble() * 1200 - 100, random.nextDouble() * 1200 - 100);
+            gridBuilder.walkTopographicProfile(p0, p1, buffer);
+            double lastDistance = -1;
+            for (int k = 0; k < buffer.size(); k++) {
+                Coordinate pt = new Coordinate(buffer.getX(k), buffer.getY(k));
+                double distance = pt.distance(p0);
+                assertTrue(distance > lastDistance);
+                lastDistance = distance;
+                assertEquals(tinBuilder.getZGround(pt), buffer.getZ(k), 1e-4);
+            }
+        }
+    }
+
+    private static ProfileBuilder feedDenseScene(ProfileBuilder profileBuilder) {
+        Random random = new Random(7);
+        for (int i = 0; i <= 40; i++) {
+            for (int j = 0; j <= 40; j++) {
+                profileBuilder.addTopographicPoint(new Coordinate(i * 25, j * 25, random.nextDouble() * 10));
+            }
+        }
+        for (int i = 0; i < 30; i++) {
+            for (int j = 0; j < 30; j++) {
+                double x = 10 + i * 33;
+                double y = 10 + j * 33;
+                profileBuilder.addBuilding(new Coordinate[]{new Coordinate(x, y), new Coordinate(x + 20, y),
+                        new Coordinate(x + 20, y + 15), new Coordinate(x + 10, y + 25), new Coordinate(x, y + 15),
+                        new Coordinate(x, y)}, 5 + random.nextInt(10), Collections.nCopies(8, 0.1));
+            }
+        }
+        for (int i = 0; i < 300; i++) {
+            profileBuilder.addWall(new Coordinate[]{new Coordinate(i * 3, 2), new Coordinate(i * 3 + 2, 3)}, 2,
+                    Collections.nCopies(8, 0.2), i);
+        }
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 20; j++) {
+                profileBuilder.addGroundEffect(i * 50, i * 50 + 50, j * 50, j * 50 + 50, (i + j) % 3 / 2.0);
+            }
+        }
+        return profileBuilder.finishFeeding();
+    }
+
+    /**
+     * The parallel processing of finishFeeding must give the same result as the sequential processing
+     */
+    @Test
+    public void testParallelFeeding() {
+        ProfileBuilder sequential = feedDenseScene(new ProfileBuilder().setParallelFeeding(false));
+        ProfileBuilder parallel = feedDenseScene(new ProfileBuilder().setParallelFeeding(true));
+        assertEquals(sequential.getProcessedWalls().size(), parallel.getProcessedWalls().size());
+        for (int i = 0; i < sequential.getProcessedWalls().size(); i++) {
+            ProfileBuilder.Wall expected = sequential.getProcessedWalls().get(i);
+            ProfileBuilder.Wall wall = parallel.getProcessedWalls().get(i);
+            assertEquals(i, wall.getProcessedWallIndex());
+            assertEquals(expected.getType(), wall.getType());
+            assertEquals(expected.getOriginId(), wall.getOriginId());
+            assertTrue(expected.p0.equals3D(wall.p0));
+            assertTrue(expected.p1.equals3D(wall.p1));
+            assertEquals(expected.getAlphas(), wall.getAlphas());
+        }
+        for (int i = 0; i < sequential.getBuildingCount(); i++) {
+            assertTrue(sequential.getBuilding(i).getGeometry().equalsExact(parallel.getBuilding(i).getGeometry()));
+            assertEquals(sequential.getPrecomputedWideAnglePoints(i + 1), parallel.getPrecomputedWideAnglePoints(i + 1));
+        }
+        Random random = new Random(8);
+        for (int i = 0; i < 200; i++) {
+            Coordinate p0 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000, 4);
+            Coordinate p1 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000, 4);
+            assertEquals(sequential.getProfile(p0, p1, 0.5).toString(), parallel.getProfile(p0, p1, 0.5).toString());
+        }
+    }
+
+    private static List<String> sortedCutPoints(ProfileBuilder.CutProfile profile) {
+        List<String> pts = new ArrayList<>();
+        for (ProfileBuilder.CutPoint cut : profile.getCutPoints()) {
+            pts.add(cut.getType() + " " + cut.getCoordinate() + " " + cut.getBuildingId());
+        }
+        Collections.sort(pts);
+        return pts;
+    }
+
+    /**
+     * The wall grid must find the same cut points as the rtree
+     */
+    @Test
+    public void testWallGrid() {
+        ProfileBuilder rtree = feedDenseScene(new ProfileBuilder());
+        ProfileBuilder grid = feedDenseScene(new ProfileBuilder().setWallGrid(true));
+        ProfileBuilder coarseGrid = feedDenseScene(new ProfileBuilder().setWallGrid(true).setWallGridCellSize(200));
+        Random random = new Random(8);
+        for (int i = 0; i < 200; i++) {
+            Coordinate p0 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000, 4);
+            Coordinate p1 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000, 4);
+            List<String> expected = sortedCutPoints(rtree.getProfile(p0, p1, 0.5));
+            assertEquals(expected, sortedCutPoints(grid.getProfile(p0, p1, 0.5)));
+            assertEquals(expected, sortedCutPoints(coarseGrid.getProfile(p0, p1, 0.5)));
+        }
+    }
+
+    /**
+     * The visibility test must agree with the free field test of the cut profile
+     */
+    @Test
+    public void testVisibility() {
+        ProfileBuilder profileBuilder = feedDenseScene(new ProfileBuilder());
+        Random random = new Random(9);
+        int[] counts = new int[ProfileBuilder.Visibility.values().length];
+        for (int i = 0; i < 500; i++) {
+            Coordinate p0 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000);
+            Coordinate p1 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000);
+            p0.z = profileBuilder.getZGround(p0) + 1 + random.nextDouble() * 20;
+            p1.z = profileBuilder.getZGround(p1) + 1 + random.nextDouble() * 20;
+            ProfileBuilder.Visibility visibility = profileBuilder.getVisibility(p0, p1);
+            ProfileBuilder.CutProfile profile = profileBuilder.getProfile(p0, p1, 0.5);
+            assertEquals(p0 + " " + p1, profile.isFreeField(), visibility == ProfileBuilder.Visibility.FREE_FIELD);
+            if (visibility == ProfileBuilder.Visibility.BUILDING_OBSTRUCTED) {
+                assertTrue(profile.intersectBuilding());
+            }
+            counts[visibility.ordinal()]++;
+        }
+        // the scene must test all the cases
+        for (int count : counts) {
+            assertTrue(count > 0);
+        }
+    }
 }
@@ -0,0 +1,70 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReceiverChunkQueueTest {
+
+    @Test
+    public void testEachReceiverOnce() throws InterruptedException {
+        final int receiverCount = 10007;
+        final int workerCount = 8;
+        ReceiverChunkQueue queue = new ReceiverChunkQueue(receiverCount, workerCount);
+        AtomicIntegerArray visits = new AtomicIntegerArray(receiverCount);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            Thread thread = new Thread(() -> {
+                int[] range = new int[2];
+                while (queue.next(range)) {
+                    for (int position = range[0]; position < range[1]; position++) {
+                        visits.incrementAndGet(queue.getReceiver(position));
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < receiverCount; i++) {
+            assertEquals(1, visits.get(i));
+        }
+    }
+
+    @Test
+    public void testChunkSizeDecrease() {
+        ReceiverChunkQueue queue = new ReceiverChunkQueue(1000, 4);
+        int[] range = new int[2];
+        assertTrue(queue.next(range));
+        int firstChunkSize = range[1] - range[0];
+        assertEquals(1000 / (4 * ReceiverChunkQueue.CHUNKS_BY_WORKER), firstChunkSize);
+        int lastChunkSize = firstChunkSize;
+        int total = firstChunkSize;
+        while (queue.next(range)) {
+            int chunkSize = range[1] - range[0];
+            assertTrue(chunkSize <= lastChunkSize);
+            lastChunkSize = chunkSize;
+            total += chunkSize;
+        }
+        assertEquals(1, lastChunkSize);
+        assertEquals(1000, total);
+    }
+
+    @Test
+    public void testOrderAndAbort() {
+        ReceiverChunkQueue queue = new ReceiverChunkQueue(3, 1, 1, new int[]{2, 0, 1});
+        int[] range = new int[2];
+        assertTrue(queue.next(range));
+        assertEquals(2, queue.getReceiver(range[0]));
+        queue.abort();
+        assertFalse(queue.next(range));
+    }
+}
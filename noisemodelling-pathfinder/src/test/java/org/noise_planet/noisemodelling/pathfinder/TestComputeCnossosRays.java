@@ -2055,4 +2055,42 @@ public class TestComputeCnossosRays {
         Assert.assertTrue(ray.isEmpty());
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Without diffraction the direct path is skipped when the visibility test finds an obstacle, this must give the
+     * same result as the free field test of the cut profile when the roof of the building grazes the sight line
+     */
+    @Test
+    public void testDirectPathGrazingEdge() {
+        Coordinate source = new Coordinate(0, 5, 2);
+        Coordinate receiver = new Coordinate(30, 5, 12);
+        // altitude of the sight line above the first roof edge
+        double lineZ = 2 + 10 * (12 - 2) / 30.0;
+        double[] heights = new double[]{lineZ - 1e-3, Math.nextDown(lineZ), lineZ, Math.nextUp(lineZ),
+                lineZ + 1e-9, lineZ + 1e-7, lineZ + 1e-3};
+        int obstructed = 0;
+        for (double height : heights) {
+            ProfileBuilder profileBuilder = new ProfileBuilder();
+            profileBuilder.addBuilding(new Coordinate[]{new Coordinate(10, 0), new Coordinate(20, 0),
+                    new Coordinate(20, 10), new Coordinate(10, 10), new Coordinate(10, 0)}, height);
+            // the line touches a corner of this building
+            profileBuilder.addBuilding(new Coordinate[]{new Coordinate(24, 5), new Coordinate(27, 9),
+                    new Coordinate(21, 9), new Coordinate(24, 5)}, 50);
+            profileBuilder.finishFeeding();
+            CnossosPropagationData data = new CnossosPropagationData(profileBuilder);
+            ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+            boolean freeField = profileBuilder.getProfile(source, receiver, data.gS).isFreeField();
+            List<PropagationPath> paths = computeRays.directPath(source, -1, new Orientation(), receiver, -1,
+                    false, false, false);
+            assertEquals("Roof at " + height, freeField ? 1 : 0, paths.size());
+            if (profileBuilder.getVisibility(source, receiver) != ProfileBuilder.Visibility.FREE_FIELD) {
+                Assert.assertFalse("Roof at " + height, freeField);
+            }
+            if (!freeField) {
+                obstructed++;
+            }
+        }
+        // the roofs above the line obstruct it
+        Assert.assertTrue(obstructed >= 3);
+    }
+}
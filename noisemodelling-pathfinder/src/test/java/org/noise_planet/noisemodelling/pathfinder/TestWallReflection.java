@@ -48,8 +48,10 @@ import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 public class TestWallReflection {
@@ -84,6 +86,91 @@ public class TestWallReflection {
         assertTrue(polygon.intersects(factory.createPoint(new Coordinate(100, 145, 0))));
     }
 
+    @Test
+    public void testVisibilityConeEnvelope() {
+        Random random = new Random(42);
+        for(int i = 0; i < 200; i++) {
+            Coordinate image = new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100, 1.5);
+            LineSegment wall = new LineSegment(new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100),
+                    new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100));
+            Envelope expected = MirrorReceiverResultIndex.createWallReflectionVisibilityCone(image, wall, 80, 20)
+                    .getEnvelopeInternal();
+            Envelope envelope = MirrorReceiverResultIndex.createWallReflectionVisibilityConeEnvelope(image, wall, 80, 20);
+            assertEquals(expected.isNull(), envelope.isNull());
+            if(!expected.isNull()) {
+                assertEquals(expected.getMinX(), envelope.getMinX(), 1e-6);
+                assertEquals(expected.getMaxX(), envelope.getMaxX(), 1e-6);
+                assertEquals(expected.getMinY(), envelope.getMinY(), 1e-6);
+                assertEquals(expected.getMaxY(), envelope.getMaxY(), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testStreetCanyonSecondOrder() {
+        GeometryFactory factory = new GeometryFactory();
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        // two facing buildings and one building behind the receiver building
+        profileBuilder.addBuilding(factory.createPolygon(new Coordinate[]{new Coordinate(0, 0),
+                new Coordinate(100, 0), new Coordinate(100, 10), new Coordinate(0, 10), new Coordinate(0, 0)}), 20);
+        profileBuilder.addBuilding(factory.createPolygon(new Coordinate[]{new Coordinate(0, 20),
+                new Coordinate(100, 20), new Coordinate(100, 30), new Coordinate(0, 30), new Coordinate(0, 20)}), 20);
+        profileBuilder.addBuilding(factory.createPolygon(new Coordinate[]{new Coordinate(0, -40),
+                new Coordinate(100, -40), new Coordinate(100, -30), new Coordinate(0, -30), new Coordinate(0, -40)}), 20);
+        profileBuilder.finishFeeding();
+        Coordinate receiver = new Coordinate(20, 15, 1.5);
+        Coordinate source = new Coordinate(80, 15, 0.05);
+        Envelope propagationEnvelope = new Envelope(receiver);
+        propagationEnvelope.expandBy(200);
+        List<ProfileBuilder.Wall> walls = profileBuilder.getWallsIn(propagationEnvelope);
+        MirrorReceiverResultIndex index = new MirrorReceiverResultIndex(walls, receiver, 2, 200, 50);
+        // second order images are only created for the walls in front of the first order images
+        assertTrue(index.getNumberOfImageReceivers() < walls.size() * walls.size());
+        boolean canyonReflection = false;
+        for(MirrorReceiverResult result : index.findCloseMirrorReceivers(source)) {
+            if(result.getParentMirror() != null) {
+                assertNotEquals(result.getWall().getProcessedWallIndex(),
+                        result.getParentMirror().getWall().getProcessedWallIndex());
+                // reflection on the north facade of the street then on the south facade
+                LineSegment wall = result.getWall().getLineSegment();
+                LineSegment parentWall = result.getParentMirror().getWall().getLineSegment();
+                if(wall.p0.y == 20 && wall.p1.y == 20 && parentWall.p0.y == 10 && parentWall.p1.y == 10) {
+                    canyonReflection = true;
+                }
+            }
+        }
+        assertTrue(canyonReflection);
+    }
+
+    @Test
+    public void testWallsCache() {
+        GeometryFactory factory = new GeometryFactory();
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        Random random = new Random(42);
+        for(int i = 0; i < 50; i++) {
+            double x = random.nextDouble() * 500;
+            double y = random.nextDouble() * 500;
+            profileBuilder.addBuilding(factory.createPolygon(new Coordinate[]{new Coordinate(x, y),
+                    new Coordinate(x + 10, y), new Coordinate(x + 10, y + 10), new Coordinate(x, y + 10),
+                    new Coordinate(x, y)}), 10);
+        }
+        profileBuilder.finishFeeding();
+        MirrorReceiverResultIndex.WallsCache wallsCache = new MirrorReceiverResultIndex.WallsCache(profileBuilder);
+        // receivers along a facade
+        for(int i = 0; i < 10; i++) {
+            Envelope envelope = new Envelope(new Coordinate(200 + i, 250));
+            envelope.expandBy(100);
+            assertEquals(profileBuilder.getWallsIn(envelope), wallsCache.getWallsIn(envelope));
+        }
+        assertEquals(1, wallsCache.getCacheMiss());
+        assertEquals(9, wallsCache.getCacheHit());
+        // far receiver
+        Envelope envelope = new Envelope(new Coordinate(400, 400));
+        envelope.expandBy(100);
+        assertEquals(profileBuilder.getWallsIn(envelope), wallsCache.getWallsIn(envelope));
+        assertEquals(2, wallsCache.getCacheMiss());
+    }
+
 //
 //    @Test
 //    public void testExportVisibilityCones() throws Exception {
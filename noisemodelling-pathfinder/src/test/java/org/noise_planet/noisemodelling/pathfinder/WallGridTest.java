@@ -0,0 +1,101 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineSegment;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class WallGridTest {
+
+    /**
+     * All the segments crossed by the query must be found, each one only once
+     */
+    @Test
+    public void testSegmentQuery() {
+        Random random = new Random(42);
+        List<LineSegment> walls = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Coordinate p0 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000);
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double length = random.nextDouble() * 30;
+            walls.add(new LineSegment(p0, new Coordinate(p0.x + Math.cos(angle) * length,
+                    p0.y + Math.sin(angle) * length)));
+        }
+        // walls on the lines of a 10 m grid
+        for (int i = 0; i < 100; i++) {
+            walls.add(new LineSegment(i * 10, 0, i * 10, 1000));
+        }
+        WallGrid.Builder builder = new WallGrid.Builder();
+        for (int i = 0; i < walls.size(); i++) {
+            LineSegment wall = walls.get(i);
+            builder.add(wall.p0.x, wall.p0.y, wall.p1.x, wall.p1.y, i);
+        }
+        for (double cellSize : new double[]{0, 10, 100}) {
+            WallGrid grid = builder.build(cellSize);
+            assertEquals(walls.size(), grid.size());
+            for (int q = 0; q < 300; q++) {
+                LineSegment ray;
+                if (q % 3 == 0) {
+                    // through the cell corners
+                    ray = new LineSegment(random.nextInt(100) * 10, random.nextInt(100) * 10,
+                            random.nextInt(100) * 10, random.nextInt(100) * 10);
+                } else {
+                    ray = new LineSegment(random.nextDouble() * 1000, random.nextDouble() * 1000,
+                            random.nextDouble() * 1000, random.nextDouble() * 1000);
+                }
+                List<Integer> found = new ArrayList<>();
+                assertTrue(grid.querySegment(ray.p0.x, ray.p0.y, ray.p1.x, ray.p1.y, found::add));
+                Set<Integer> foundSet = new HashSet<>(found);
+                assertEquals(found.size(), foundSet.size());
+                for (int i = 0; i < walls.size(); i++) {
+                    if (ray.intersection(walls.get(i)) != null) {
+                        assertTrue(cellSize + " " + ray + " " + walls.get(i), foundSet.contains(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The walls are returned in the order of the path
+     */
+    @Test
+    public void testPathOrder() {
+        WallGrid.Builder builder = new WallGrid.Builder();
+        for (int i = 0; i < 50; i++) {
+            builder.add(i * 20 + 5, -10, i * 20 + 5, 10, i);
+        }
+        WallGrid grid = builder.build(10);
+        List<Integer> found = new ArrayList<>();
+        grid.querySegment(1000, 0, 0, 0, found::add);
+        assertEquals(50, found.size());
+        for (int i = 0; i < found.size(); i++) {
+            assertEquals(49 - i, (int) found.get(i));
+        }
+        // stop the query
+        found.clear();
+        assertFalse(grid.querySegment(0, 0, 1000, 0, item -> {
+            found.add(item);
+            return found.size() < 3;
+        }));
+        assertEquals(3, found.size());
+        assertEquals(2, (int) found.get(2));
+    }
+
+    @Test
+    public void testEmpty() {
+        WallGrid grid = WallGrid.empty();
+        assertEquals(0, grid.size());
+        assertTrue(grid.querySegment(0, 0, 10, 10, item -> {
+            fail();
+            return true;
+        }));
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.propagation;
+
+import org.noise_planet.noisemodelling.pathfinder.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+
+/**
+ * Evaluate the attenuation of propagation paths following {@link EvaluateAttenuationCnossos}.
+ * An instance owns its scratch buffers, so it must be used by a single thread only. Create one instance by
+ * thread and by {@link PropagationProcessPathData}: once created, evaluating a path does not allocate memory
+ * (except when the path keeps absorption details for testing purpose).
+ * @author Nicolas Fortin, Université Gustave Eiffel
+ */
+public class AttenuationCnossosEvaluator {
+    private final PropagationProcessPathData data;
+    /** {@link PropagationProcessPathData#getModificationCount()} of the data when the arrays have been computed */
+    private int dataModificationCount;
+    private int frequencyCount;
+    private double[] frequencies;
+    private double[] wavelengths;
+
+    // Scratch buffers
+    private double[] aDiv;
+    private double[] aAtm;
+    private double[] aRef;
+    private double[] aBoundary;
+    private double[] aRetroDiff;
+    private double[] aGlobalMeteoHom;
+    private double[] aGlobalMeteoFav;
+    private double[] deltaBodyScreen;
+    private double[] pathBuffer;
+    private double[] directivityBuffer;
+    private final double[] rotatedVector = new double[3];
+
+    /**
+     * @param data Meteorological and frequency parameters. The frequencies and wave lengths are computed again
+     *             when this object is changed through its setters.
+     */
+    public AttenuationCnossosEvaluator(PropagationProcessPathData data) {
+        this.data = data;
+        update();
+    }
+
+    /**
+     * Compute the frequencies and wave lengths of the data, and allocate the scratch buffers
+     */
+    private void update() {
+        dataModificationCount = data.getModificationCount();
+        wavelengths = data.getWavelengths();
+        if(frequencies == null || frequencies.length != data.freq_lvl.size()) {
+            frequencyCount = data.freq_lvl.size();
+            frequencies = new double[frequencyCount];
+            aDiv = new double[frequencyCount];
+            aAtm = new double[frequencyCount];
+            aRef = new double[frequencyCount];
+            aBoundary = new double[frequencyCount];
+            aRetroDiff = new double[frequencyCount];
+            aGlobalMeteoHom = new double[frequencyCount];
+            aGlobalMeteoFav = new double[frequencyCount];
+            deltaBodyScreen = new double[frequencyCount];
+            pathBuffer = new double[frequencyCount];
+            directivityBuffer = new double[frequencyCount];
+        }
+        for (int idFrequency = 0; idFrequency < frequencyCount; idFrequency++) {
+            frequencies[idFrequency] = data.freq_lvl.get(idFrequency);
+        }
+    }
+
+    /**
+     * Compute the frequencies again if the data has been changed since the last call
+     */
+    private void checkData() {
+        if(dataModificationCount != data.getModificationCount()) {
+            update();
+        }
+    }
+
+    /**
+     * @return Parameters used by this evaluator
+     */
+    public PropagationProcessPathData getData() {
+        return data;
+    }
+
+    /**
+     * @return Number of frequency bands, the expected length of the destination arrays
+     */
+    public int getFrequencyCount() {
+        checkData();
+        return frequencyCount;
+    }
+
+    /**
+     * @return Frequency bands values (Hz)
+     */
+    public double[] getFrequencies() {
+        checkData();
+        return frequencies;
+    }
+
+    /**
+     * @return Wave length (m) for each frequency band
+     */
+    public double[] getWavelengths() {
+        checkData();
+        return wavelengths;
+    }
+
+    /**
+     * @return Scratch array of size {@link #getFrequencyCount()} free to use by the owner thread of this evaluator
+     */
+    double[] getPathBuffer() {
+        return pathBuffer;
+    }
+
+    /**
+     * @return Scratch array of size {@link #getFrequencyCount()} for the source directivity attenuation
+     */
+    double[] getDirectivityBuffer() {
+        return directivityBuffer;
+    }
+
+    /**
+     * Compute the global attenuation of one propagation path, weighted by the occurrence of favorable conditions
+     * in the direction of the path. The source directivity and the line source length are not applied.
+     * @param proPath Propagation path
+     * @param aGlobalMeteoRay Destination array of size {@link #getFrequencyCount()} (dB)
+     * @return aGlobalMeteoRay
+     */
+    public double[] evaluate(PropagationPath proPath, double[] aGlobalMeteoRay) {
+        checkData();
+        if(proPath.keepAbsorption) {
+            proPath.groundAttenuation.init(frequencyCount);
+            proPath.absorptionData.init(frequencyCount);
+        }
+        //ADiv computation
+        EvaluateAttenuationCnossos.aDiv(proPath, aDiv);
+        //AAtm computation
+        EvaluateAttenuationCnossos.aAtm(data.getAlpha_atmo(), proPath.getSRSegment().d, aAtm);
+        //Reflexion computation
+        EvaluateAttenuationCnossos.evaluateAref(proPath, aRef);
+        // Rail body barrier
+        EvaluateAttenuationCnossos.deltaBodyScreen(proPath, frequencies, deltaBodyScreen);
+
+        // restore the Map relative propagation direction from the emission propagation relative to the sound source orientation
+        // just swap the inverse boolean parameter
+        // @see ComputeCnossosRays#computeOrientation
+        Orientation.rotate(proPath.raySourceReceiverDirectivity, 0, 1, 0, false, rotatedVector);
+        Orientation.rotate(proPath.getSourceOrientation(), rotatedVector[0], rotatedVector[1], rotatedVector[2],
+                false, rotatedVector);
+        int roseIndex = ComputeRaysOutAttenuation.getRoseIndex(Math.atan2(rotatedVector[1], rotatedVector[0]));
+        double p = data.getWindRose()[roseIndex];
+        // Homogenous conditions
+        if (p != 1) {
+            proPath.setFavorable(false);
+            EvaluateAttenuationCnossos.aBoundary(proPath, data, aBoundary);
+            EvaluateAttenuationCnossos.deltaRetrodif(proPath, data, aRetroDiff);
+            EvaluateAttenuationCnossos.aGlobal(aDiv, aAtm, aBoundary, aRef, aRetroDiff, deltaBodyScreen,
+                    aGlobalMeteoHom); // Eq. 2.5.6
+            //For testing purpose
+            if(proPath.keepAbsorption) {
+                proPath.absorptionData.aBoundaryH = aBoundary.clone();
+                proPath.absorptionData.aGlobalH = aGlobalMeteoHom.clone();
+            }
+        }
+        // Favorable conditions
+        if (p != 0) {
+            proPath.setFavorable(true);
+            EvaluateAttenuationCnossos.aBoundary(proPath, data, aBoundary);
+            EvaluateAttenuationCnossos.deltaRetrodif(proPath, data, aRetroDiff);
+            EvaluateAttenuationCnossos.aGlobal(aDiv, aAtm, aBoundary, aRef, aRetroDiff, deltaBodyScreen,
+                    aGlobalMeteoFav); // Eq. 2.5.8
+            //For testing purpose
+            if(proPath.keepAbsorption) {
+                proPath.absorptionData.aBoundaryF = aBoundary.clone();
+                proPath.absorptionData.aGlobalF = aGlobalMeteoFav.clone();
+            }
+        }
+
+        //For testing purpose
+        if(proPath.keepAbsorption) {
+            proPath.absorptionData.aDiv = aDiv.clone();
+            proPath.absorptionData.aAtm = aAtm.clone();
+        }
+
+        // Compute attenuation under the wind conditions using the ray direction
+        EvaluateAttenuationCnossos.aGlobalMeteo(p, aGlobalMeteoFav, aGlobalMeteoHom, aGlobalMeteoRay);
+        return aGlobalMeteoRay;
+    }
+}
@@ -36,7 +36,6 @@ package org.noise_planet.noisemodelling.propagation;
 
 import org.locationtech.jts.algorithm.Angle;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.math.Vector3D;
 import org.noise_planet.noisemodelling.pathfinder.*;
 
 import java.util.*;
@@ -44,9 +43,6 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-import static java.lang.Math.*;
-import static java.lang.Math.log10;
-import static org.noise_planet.noisemodelling.pathfinder.PointPath.POINT_TYPE.DIFH;
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
 
 /**
@@ -91,6 +87,9 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
     public AtomicLong nb_diffraction_path = new AtomicLong();
     public AtomicInteger cellComputed = new AtomicInteger();
     private static final double angle_section = (2 * Math.PI) / PropagationProcessPathData.DEFAULT_WIND_ROSE.length;
+    /** Attenuation evaluators of each thread, by propagation parameters */
+    private final ThreadLocal<Map<PropagationProcessPathData, AttenuationCnossosEvaluator>> evaluators =
+            ThreadLocal.withInitial(IdentityHashMap::new);
 
     /**
      * get the rose index to search the mean occurrence p of favourable conditions in the direction of the path (S,R):
@@ -127,6 +126,17 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         return index;
     }
 
+    /**
+     * @param data Propagation parameters
+     * @return Attenuation evaluator of the calling thread for these parameters, null if data is null
+     */
+    protected AttenuationCnossosEvaluator getEvaluator(PropagationProcessPathData data) {
+        if(data == null) {
+            return null;
+        }
+        return evaluators.get().computeIfAbsent(data, AttenuationCnossosEvaluator::new);
+    }
+
     @Override
     public void finalizeReceiver(long receiverId) {
 
@@ -160,200 +170,74 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         }
     }
 
+    /**
+     * Compute the attenuation of all the propagation paths between a source and a receiver.
+     * Called by {@link #addPropagationPaths} and {@link ThreadRaysOut#addPropagationPaths}, override this method to
+     * post-process the attenuation of each source-receiver pair.
+     * @param data Propagation parameters
+     * @param sourceId Source index
+     * @param sourceLi Line source length coefficient
+     * @param receiverId Receiver index
+     * @param propagationPath Propagation paths between the source and the receiver
+     * @return Global attenuation in dB for each frequency band, empty if there is no propagation path
+     */
     public double[] computeAttenuation(PropagationProcessPathData data, long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
         if (data == null) {
             return new double[0];
         }
-        // cache frequencies
-        double[] frequencies = new double[0];
-        if(inputData != null) {
-            frequencies = new double[inputData.freq_lvl.size()];
-            for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
-                frequencies[idFrequency] = inputData.freq_lvl.get(idFrequency);
-            }
+        AttenuationCnossosEvaluator evaluator = getEvaluator(data);
+        double[] attenuation = new double[evaluator.getFrequencyCount()];
+        if(computeAttenuation(evaluator, sourceId, sourceLi, receiverId, propagationPath, attenuation)) {
+            return attenuation;
+        } else {
+            return new double[0];
         }
+    }
+
+    /**
+     * Compute the attenuation of all the propagation paths between a source and a receiver into the destination
+     * array, implementation of {@link #computeAttenuation(PropagationProcessPathData, long, double, long, List)}
+     * @param evaluator Attenuation evaluator owned by the calling thread
+     * @param sourceId Source index
+     * @param sourceLi Line source length coefficient
+     * @param receiverId Receiver index
+     * @param propagationPath Propagation paths between the source and the receiver
+     * @param attenuation Destination array, global attenuation in dB for each frequency band
+     * @return False if there is no propagation path
+     */
+    protected final boolean computeAttenuation(AttenuationCnossosEvaluator evaluator, long sourceId, double sourceLi,
+                                               long receiverId, List<PropagationPath> propagationPath,
+                                               double[] attenuation) {
         // Compute receiver/source attenuation
-        double[] propagationAttenuationSpectrum = null;
+        boolean first = true;
+        double[] frequencies = null;
         for (PropagationPath proPath : propagationPath) {
             if(keepAbsorption) {
                 proPath.keepAbsorption = true;
-                proPath.groundAttenuation.init(data.freq_lvl.size());
-                proPath.absorptionData.init(data.freq_lvl.size());
             }
-            EvaluateAttenuationCnossos.init(data);
-            //ADiv computation
-            double[] aDiv = EvaluateAttenuationCnossos.aDiv(proPath, data);
-            //AAtm computation
-            double[] aAtm = EvaluateAttenuationCnossos.aAtm(data, proPath.getSRSegment().d);
-            //Reflexion computation
-            double[] aRef = EvaluateAttenuationCnossos.evaluateAref(proPath, data);
-            double[] aRetroDiff;
-            //ABoundary computation
-            double[] aBoundary;
-            double[] aGlobalMeteoHom = new double[data.freq_lvl.size()];
-            double[] aGlobalMeteoFav = new double[data.freq_lvl.size()];
-            double[] deltaBodyScreen = new double[data.freq_lvl.size()];
-
-            List<PointPath> ptList = proPath.getPointList();
-
-            // todo get hRail from input data
-            double hRail = 0.5;
-            Coordinate src = ptList.get(0).coordinate;
-            PointPath pDif = ptList.stream().filter(p -> p.type.equals(DIFH)).findFirst().orElse(null);
-
-            if (pDif != null && pDif.alphaWall.size()>0) {
-                if (pDif.bodyBarrier){
-
-                    int n = 3;
-                    Coordinate rcv = ptList.get(ptList.size() - 1).coordinate;
-                    double[][] deltaGeo = new double[n+1][data.freq_lvl.size()];
-                    double[][] deltaAbs = new double[n+1][data.freq_lvl.size()];
-                    double[][] deltaDif = new double[n+1][data.freq_lvl.size()];
-                    double[][] deltaRef = new double[n+1][data.freq_lvl.size()];
-                    double[][] deltaRetroDifi = new double[n+1][data.freq_lvl.size()];
-                    double[][] deltaRetroDif = new double[n+1][data.freq_lvl.size()];
-                    double[] deltaL = new double[data.freq_lvl.size()];
-                    Arrays.fill(deltaL,dbaToW(0.0));
-
-                    double db = pDif.coordinate.x;
-                    double hb = pDif.coordinate.y;
-                    Coordinate B = new Coordinate(db,hb);
-
-                    double Cref = 1;
-                    double dr = rcv.x;
-                    double h0 = ptList.get(0).altitude+hRail;
-                    double hs = ptList.get(0).altitude+src.y-hRail;
-                    double hr = ptList.get(ptList.size()-1).altitude + ptList.get(ptList.size()-1).coordinate.y-h0;
-                    double[] r = new double[4];
-                    if (db<5*hb) {
-                        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-                            if (pDif.alphaWall.get(idfreq)<0.8){
-
-                                double dif0 =0 ;
-                                double ch = 1.;
-                                double lambda = 340.0 / data.freq_lvl.get(idfreq);
-                                double hi = hs;
-                                double cSecond = 1;
-
-                                for (int i = 0; i <= n; i++) {
-                                    double di = -2 * i * db;
-
-                                    Coordinate si = new Coordinate(src.x+di, src.y);
-                                    r[i] = sqrt(pow(di - (db + dr), 2) + pow(hi - hr, 2));
-                                    deltaGeo[i][idfreq] =  20 * log10(r[0] / r[i]);
-                                    double deltai = si.distance(B)+B.distance(rcv)-si.distance(rcv);
-
-                                    double dif = 0;
-                                    double testForm = (40/lambda)*cSecond*deltai;
-                                    if (testForm>=-2) {
-                                        dif = 10*ch*log10(3+testForm);
-                                    }
-
-                                    if (i==0){
-                                        dif0=dif;
-                                        deltaRetroDif[i][idfreq] = dif;
-                                    }else{
-                                        deltaDif[i][idfreq] = dif0-dif;
-                                    }
-
-                                    deltaAbs[i][idfreq] = 10 * i * log10(1 - pDif.alphaWall.get(idfreq));
-                                    deltaRef[i][idfreq] = 10 * i * log10(Cref);
-
-                                    double retroDif =0 ;
-                                    Coordinate Pi = new Coordinate(-(2 * i -1)* db,hb);
-                                    Coordinate RcvPrime = new Coordinate(dr,max(hr,hb*(db+dr-di)/(db-di)));
-                                    deltai = -(si.distance(Pi)+Pi.distance(RcvPrime)-si.distance(RcvPrime));
-
-                                    testForm = (40/lambda)*cSecond*deltai;
-                                    if (testForm>=-2) {
-                                        retroDif = 10*ch*log10(3+testForm);
-                                    }
-
-                                    if (i==0){
-                                        deltaRetroDifi[i][idfreq] = 0;
-                                    }else{
-                                        deltaRetroDifi[i][idfreq] = retroDif;
-                                    }
-
-
-                                }
-                                // Compute deltaRetroDif
-                                deltaRetroDif[0][idfreq] = 0;
-                                for (int i = 1; i <= n; i++) {
-                                    double sumRetrodif = 0;
-                                    for (int j = 1; j <= i; j++) {
-                                        sumRetrodif = sumRetrodif + deltaRetroDifi[j][idfreq];
-                                    }
-                                    deltaRetroDif[i][idfreq] = - sumRetrodif;
-                                }
-                                // Compute deltaL
-                                for (int i = 0; i <= n; i++) {
-                                    deltaL[idfreq] = deltaL[idfreq] + dbaToW(deltaGeo[i][idfreq] + deltaDif[i][idfreq] + deltaAbs[i][idfreq] + deltaRef[i][idfreq] + deltaRetroDif[i][idfreq]);
-                                }
-                            }
-                        }
-                        deltaBodyScreen = wToDba(deltaL);
-                    }
-                }
-
-            }
-
-            // restore the Map relative propagation direction from the emission propagation relative to the sound source orientation
-            // just swap the inverse boolean parameter
-            // @see ComputeCnossosRays#computeOrientation
-            Vector3D fieldVectorPropagation = Orientation.rotate(proPath.getSourceOrientation(),
-                    Orientation.toVector(proPath.raySourceReceiverDirectivity), false);
-            int roseIndex = getRoseIndex(Math.atan2(fieldVectorPropagation.getY(), fieldVectorPropagation.getX()));
-            // Homogenous conditions
-            if (data.getWindRose()[roseIndex] != 1) {
-                proPath.setFavorable(false);
-
-                aBoundary = EvaluateAttenuationCnossos.aBoundary(proPath, data);
-                aRetroDiff = EvaluateAttenuationCnossos.deltaRetrodif(proPath, data);
-                for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-                    aGlobalMeteoHom[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] + aRef[idfreq] + aRetroDiff[idfreq] - deltaBodyScreen[idfreq]); // Eq. 2.5.6
-                }
-                //For testing purpose
-                if(keepAbsorption) {
-                    proPath.absorptionData.aBoundaryH = aBoundary.clone();
-                    proPath.absorptionData.aGlobalH = aGlobalMeteoHom.clone();
-                }
-            }
-            // Favorable conditions
-            if (data.getWindRose()[roseIndex] != 0) {
-                proPath.setFavorable(true);
-                aBoundary = EvaluateAttenuationCnossos.aBoundary(proPath, data);
-                aRetroDiff = EvaluateAttenuationCnossos.deltaRetrodif(proPath, data);
-                for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-                    aGlobalMeteoFav[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq]+ aRef[idfreq] + aRetroDiff[idfreq] -deltaBodyScreen[idfreq]); // Eq. 2.5.8
-                }
-                //For testing purpose
-                if(keepAbsorption) {
-                    proPath.absorptionData.aBoundaryF = aBoundary.clone();
-                    proPath.absorptionData.aGlobalF = aGlobalMeteoFav.clone();
-                }
-            }
-
-            //For testing purpose
-            if(keepAbsorption) {
-                proPath.keepAbsorption = true;
-                proPath.absorptionData.aDiv = aDiv.clone();
-                proPath.absorptionData.aAtm = aAtm.clone();
-            }
-
-            // Compute attenuation under the wind conditions using the ray direction
-            double[] aGlobalMeteoRay = sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, data.getWindRose()[roseIndex]);
+            // The first path is evaluated directly into the destination array
+            double[] aGlobalMeteoRay = first ? attenuation : evaluator.getPathBuffer();
+            evaluator.evaluate(proPath, aGlobalMeteoRay);
 
             // Apply attenuation due to sound direction
             if(inputData != null && !inputData.isOmnidirectional((int)sourceId)) {
+                if(frequencies == null) {
+                    frequencies = new double[inputData.freq_lvl.size()];
+                    for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+                        frequencies[idFrequency] = inputData.freq_lvl.get(idFrequency);
+                    }
+                }
                 Orientation directivityToPick = proPath.raySourceReceiverDirectivity;
-                double[] attSource = inputData.getSourceAttenuation((int) sourceId,
-                        frequencies, Math.toRadians(directivityToPick.yaw),
-                        Math.toRadians(directivityToPick.pitch));
+                double[] attSource = frequencies.length == evaluator.getFrequencyCount() ?
+                        evaluator.getDirectivityBuffer() : new double[frequencies.length];
+                inputData.getSourceAttenuation((int) sourceId, frequencies, Math.toRadians(directivityToPick.yaw),
+                        Math.toRadians(directivityToPick.pitch), attSource);
                 if(keepAbsorption) {
-                    proPath.absorptionData.aSource = attSource;
+                    proPath.absorptionData.aSource = attSource.clone();
+                }
+                for (int i = 0; i < aGlobalMeteoRay.length; i++) {
+                    aGlobalMeteoRay[i] += attSource[i];
                 }
-                aGlobalMeteoRay = sumArray(aGlobalMeteoRay, attSource);
             }
 
             // For line source, take account of li coefficient
@@ -367,17 +251,14 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
                 proPath.absorptionData.aGlobal = aGlobalMeteoRay.clone();
             }
 
-            if (propagationAttenuationSpectrum != null) {
-                propagationAttenuationSpectrum = sumDbArray(aGlobalMeteoRay, propagationAttenuationSpectrum);
-            } else {
-                propagationAttenuationSpectrum = aGlobalMeteoRay;
+            if (!first) {
+                for (int i = 0; i < aGlobalMeteoRay.length; i++) {
+                    attenuation[i] = wToDba(dbaToW(aGlobalMeteoRay[i]) + dbaToW(attenuation[i]));
+                }
             }
+            first = false;
         }
-        if (propagationAttenuationSpectrum != null) {
-            return propagationAttenuationSpectrum;
-        } else {
-            return new double[0];
-        }
+        return !first;
     }
 
     @Override
@@ -46,6 +46,8 @@ import java.util.List;
 
 import static java.lang.Math.*;
 import static org.noise_planet.noisemodelling.pathfinder.PointPath.POINT_TYPE.*;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
 
 /**
  * Return the dB value corresponding to the parameters
@@ -55,14 +57,30 @@ import static org.noise_planet.noisemodelling.pathfinder.PointPath.POINT_TYPE.*;
  */
 
 public class EvaluateAttenuationCnossos {
+    /** Wave length of each frequency band, set by {@link #init(PropagationProcessPathData)} */
+    @Deprecated
     private static double[] freq_lambda;
+    /** Attenuation of the last {@link #evaluate(PropagationPath, PropagationProcessPathData)} call */
+    @Deprecated
     private static double[] aGlobal;
 
+    /**
+     * @return Attenuation of the last {@link #evaluate(PropagationPath, PropagationProcessPathData)} call, shared
+     * by all the threads
+     * @deprecated Use the array returned by {@link #evaluate(PropagationPath, PropagationProcessPathData)} or
+     * {@link AttenuationCnossosEvaluator#evaluate(PropagationPath, double[])}
+     */
+    @Deprecated
     public static double[] getaGlobal() {
         return aGlobal;
     }
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EvaluateAttenuationCnossos.class);
+    /** Number of reflections on the train body (Cnossos rail body barrier) */
+    private static final int BODY_BARRIER_REFLECTIONS = 3;
+    /** Height of the rail (m) */
+    // todo get hRail from input data
+    private static final double H_RAIL = 0.5;
 
     /**
      * Eq 2.5.21
@@ -71,29 +89,39 @@ public class EvaluateAttenuationCnossos {
      * @return
      */
     public static double[] getDeltaDif(SegmentPath srpath, PropagationProcessPathData data) {
-        double[] DeltaDif = new double[data.freq_lvl.size()];
+        double[] deltaDif = new double[data.freq_lvl.size()];
+        getDeltaDif(srpath, data.getWavelengths(), deltaDif);
+        return deltaDif;
+    }
+
+    /**
+     * Eq 2.5.21, computed into the provided array
+     * @param srpath Segment path
+     * @param wavelengths Wave length (m) for each frequency band, see {@link AttenuationCnossosEvaluator#getWavelengths()}
+     * @param deltaDif Destination array, one value by frequency band
+     */
+    public static void getDeltaDif(SegmentPath srpath, double[] wavelengths, double[] deltaDif) {
         double cprime;
 
-        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+        for (int idfreq = 0; idfreq < wavelengths.length; idfreq++) {
             double Ch = 1; // Eq 2.5.21
             if (srpath.eLength > 0.3) {
-                double gammaPart = pow((5 * freq_lambda[idfreq]) / srpath.eLength, 2);
+                double gammaPart = pow((5 * wavelengths[idfreq]) / srpath.eLength, 2);
                 cprime = (1. + gammaPart) / (1./3. + gammaPart); // Eq. 2.5.23
             } else {
                 cprime = 1.;
             }
 
             //(7.11) NMP2008 P.32
-            double testForm = (40 / freq_lambda[idfreq])
+            double testForm = (40 / wavelengths[idfreq])
                     * cprime * srpath.getDelta();
 
-            double deltaDif = 0.;
+            double value = 0.;
             if (testForm >= -2.) {
-                deltaDif = 10 * Ch * log10(Math.max(0, 3 + testForm));
+                value = 10 * Ch * log10(Math.max(0, 3 + testForm));
             }
-            DeltaDif[idfreq] = Math.max(0, deltaDif);
+            deltaDif[idfreq] = Math.max(0, value);
         }
-        return DeltaDif;
     }
 
     /**
@@ -218,8 +246,18 @@ public class EvaluateAttenuationCnossos {
      */
     private static double[] getARef(PropagationPath path, PropagationProcessPathData data) {
         double[] aRef = new double[data.freq_lvl.size()];
+        evaluateAref(path, aRef);
+        return aRef;
+    }
+
+    /**
+     * Compute the attenuation due to the absorption of the reflecting walls into the provided array
+     * @param path Propagation path
+     * @param aRef Destination array, one value by frequency band
+     */
+    public static void evaluateAref(PropagationPath path, double[] aRef) {
         Arrays.fill(aRef, 0.0);
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
+        for (int idf = 0; idf < aRef.length; idf++) {
             for (int idRef = 0; idRef < path.refPoints.size(); idRef++) {
                 List<Double> alpha = path.getPointList().get(path.refPoints.get(idRef)).alphaWall;
                 if(alpha != null && !alpha.isEmpty()) {
@@ -227,7 +265,6 @@ public class EvaluateAttenuationCnossos {
                 }
             }
         }
-        return aRef;
     }
 
     /**
@@ -327,9 +364,13 @@ public class EvaluateAttenuationCnossos {
             double[] aGroundSO; // is the attenuation due to the ground effect on the source side, weighted by the diffraction on the source side; where it is understood that O = O1 in case of multiple diffractions as in Figure 2.5.f
             double[] aGroundOR; // is the attenuation due to the ground effect on the receiver side, weighted by the diffraction on the receiver side.
 
-            deltaDifSR = getDeltaDif(srPath, data);
-            DeltaDifSpR = getDeltaDif(segments.get(segments.size() - 2), data);
-            deltaDifSRp = getDeltaDif(segments.get(segments.size() - 1), data);
+            double[] wavelengths = data.getWavelengths();
+            deltaDifSR = new double[wavelengths.length];
+            DeltaDifSpR = new double[wavelengths.length];
+            deltaDifSRp = new double[wavelengths.length];
+            getDeltaDif(srPath, wavelengths, deltaDifSR);
+            getDeltaDif(segments.get(segments.size() - 2), wavelengths, DeltaDifSpR);
+            getDeltaDif(segments.get(segments.size() - 1), wavelengths, deltaDifSRp);
 
             // Set Gm and Gw for AGround SO - Table 2.5.b
             if (path.isFavorable()) {
@@ -369,7 +410,7 @@ public class EvaluateAttenuationCnossos {
 
             if (path.difVPoints.size() > 0 ) {
 
-                aDif = getDeltaDif(srPath, data);
+                getDeltaDif(srPath, wavelengths, aDif);
 
                 // Eq. 2.5.33 - Eq. 2.5.34
                 for (int idf : noDifBands) {
@@ -383,30 +424,33 @@ public class EvaluateAttenuationCnossos {
     }
 
     /**
-     *
-     * @param data
+     * Initialise the static wave lengths and attenuation arrays from the parameters
+     * @param data Propagation parameters
+     * @deprecated The wave lengths are computed by {@link AttenuationCnossosEvaluator}, which is not shared by the
+     * threads
      */
+    @Deprecated
     public static void init(PropagationProcessPathData data) {
-        // init
-        aGlobal = new double[data.freq_lvl.size()];
-
-        // Init wave length for each frequency
-        freq_lambda = new double[data.freq_lvl.size()];
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
-            if (data.freq_lvl.get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.freq_lvl.get(idf);
-            } else {
-                freq_lambda[idf] = 1;
-            }
-        }
+        AttenuationCnossosEvaluator evaluator = new AttenuationCnossosEvaluator(data);
+        aGlobal = new double[evaluator.getFrequencyCount()];
+        freq_lambda = evaluator.getWavelengths();
     }
 
     public static double[] aDiv(PropagationPath path, PropagationProcessPathData data) {
         double[] aDiv = new double[data.freq_lvl.size()];
-        Arrays.fill(aDiv, getADiv(path.difVPoints.isEmpty() ? path.getSRSegment().d : path.getSRSegment().dc));
+        aDiv(path, aDiv);
         return aDiv;
     }
 
+    /**
+     * Compute the geometrical divergence into the provided array
+     * @param path Propagation path
+     * @param aDiv Destination array, one value by frequency band
+     */
+    public static void aDiv(PropagationPath path, double[] aDiv) {
+        Arrays.fill(aDiv, getADiv(path.difVPoints.isEmpty() ? path.getSRSegment().d : path.getSRSegment().dc));
+    }
+
     /**
      *
      * @param data
@@ -416,13 +460,20 @@ public class EvaluateAttenuationCnossos {
     public static double[] aAtm(PropagationProcessPathData data, double distance) {
         // init
         double[] aAtm = new double[data.freq_lvl.size()];
-        // init atmosphere
-        double[] alpha_atmo = data.getAlpha_atmo();
+        aAtm(data.getAlpha_atmo(), distance, aAtm);
+        return aAtm;
+    }
 
-        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+    /**
+     * Compute the atmospheric absorption into the provided array
+     * @param alpha_atmo Atmospheric alpha (dB/km) for each frequency band
+     * @param distance Propagation distance
+     * @param aAtm Destination array, one value by frequency band
+     */
+    public static void aAtm(double[] alpha_atmo, double distance, double[] aAtm) {
+        for (int idfreq = 0; idfreq < aAtm.length; idfreq++) {
             aAtm[idfreq] = getAAtm(distance, alpha_atmo[idfreq]);
         }
-        return aAtm;
     }
 
     /**
@@ -444,20 +495,10 @@ public class EvaluateAttenuationCnossos {
      */
     public static double[] evaluate(PropagationPath path, PropagationProcessPathData data) {
         // init
-        aGlobal = new double[data.freq_lvl.size()];
+        double[] result = new double[data.freq_lvl.size()];
         double[] aBoundary;
         double[] aRef;
 
-        // Init wave length for each frequency
-        freq_lambda = new double[data.freq_lvl.size()];
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
-            if (data.freq_lvl.get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.freq_lvl.get(idf);
-            } else {
-                freq_lambda[idf] = 1;
-            }
-        }
-
         // init atmosphere
         double[] alpha_atmo = data.getAlpha_atmo();
 
@@ -485,10 +526,12 @@ public class EvaluateAttenuationCnossos {
                 aAtm = getAAtm(path.getSRSegment().d, alpha_atmo[idfreq]);
             }
 
-            aGlobal[idfreq] = -(aDiv + aAtm + aBoundary[idfreq] + aRef[idfreq]);
+            result[idfreq] = -(aDiv + aAtm + aBoundary[idfreq] + aRef[idfreq]);
 
         }
-        return aGlobal;
+        // kept for getaGlobal
+        aGlobal = result;
+        return result;
     }
 
     private static boolean isValidRcrit(PropagationPath pp, int freq, boolean favorable) {
@@ -499,67 +542,91 @@ public class EvaluateAttenuationCnossos {
     }
 
     public static double[] aBoundary(PropagationPath path, PropagationProcessPathData data) {
-        double[] aGround = new double[data.freq_lvl.size()];
-        double[] aDif = new double[data.freq_lvl.size()];
-        List<PointPath> diffPts = new ArrayList<>();
-        for(int i=0; i<path.getPointList().size(); i++) {
-            if(path.difHPoints.contains(i)) {
-                diffPts.add(path.getPointList().get(i));
-            }
-            else if(path.difVPoints.contains(i)) {
-                diffPts.add(path.getPointList().get(i));
+        double[] aBoundary = new double[data.freq_lvl.size()];
+        aBoundary(path, data, aBoundary);
+        return aBoundary;
+    }
+
+    /**
+     * Compute the attenuation due to the ground and the diffractions into the provided array
+     * @param path Propagation path
+     * @param data Propagation data
+     * @param aBoundary Destination array, one value by frequency band
+     */
+    public static void aBoundary(PropagationPath path, PropagationProcessPathData data, double[] aBoundary) {
+        List<PointPath> pointList = path.getPointList();
+        double[] aDifKeep = null;
+        if(path.keepAbsorption) {
+            path.aBoundaryH.init(data.freq_lvl.size());
+            path.aBoundaryF.init(data.freq_lvl.size());
+            // reuse the array of a previous evaluation of this path
+            aDifKeep = path.isFavorable() ? path.absorptionData.aDifF : path.absorptionData.aDifH;
+            if(aDifKeep == null || aDifKeep.length != data.freq_lvl.size()) {
+                aDifKeep = new double[data.freq_lvl.size()];
             }
         }
-        path.aBoundaryH.init(data.freq_lvl.size());
-        path.aBoundaryF.init(data.freq_lvl.size());
         // Without diff
         for(int i=0; i<data.freq_lvl.size(); i++) {
-            int finalI = i;
-            PointPath first = diffPts.stream()
-                    .filter(pp -> pp.type.equals(PointPath.POINT_TYPE.DIFH) || pp.type.equals(DIFV) ||
+            // Look for the first diffraction point valid for this frequency band
+            PointPath first = null;
+            for(int idPoint = 0; idPoint < pointList.size() && first == null; idPoint++) {
+                if(path.difHPoints.contains(idPoint) || path.difVPoints.contains(idPoint)) {
+                    PointPath pp = pointList.get(idPoint);
+                    if(pp.type.equals(PointPath.POINT_TYPE.DIFH) || pp.type.equals(DIFV) ||
                             (pp.type.equals(DIFH_RCRIT) &&
-                                    isValidRcrit(path, data.freq_lvl.get(finalI), path.isFavorable())))
-                    .findFirst()
-                    .orElse(null);
-            aGround[i] = path.isFavorable() ?
+                                    isValidRcrit(path, data.freq_lvl.get(i), path.isFavorable()))) {
+                        first = pp;
+                    }
+                }
+            }
+            double aGround = path.isFavorable() ?
                     aGroundF(path, path.getSRSegment(), data, i) :
                     aGroundH(path, path.getSRSegment(), data, i);
             if(path.groundAttenuation != null && path.groundAttenuation.aGroundF != null) {
                 if (path.isFavorable()) {
-                    path.groundAttenuation.aGroundF[i] = aGround[i];
+                    path.groundAttenuation.aGroundF[i] = aGround;
                 } else {
-                    path.groundAttenuation.aGroundH[i] = aGround[i];
+                    path.groundAttenuation.aGroundH[i] = aGround;
                 }
             }
+            double aDif;
             if (first != null) {
-                aDif[i] = aDif(path, data, i, first.type);
+                aDif = aDif(path, data, i, first.type);
                 if(!first.type.equals(DIFV)) {
-                    aGround[i] = 0.;
+                    aGround = 0.;
                 }
             }
             // With diff
             else {
-                aDif[i] = 0.;
+                aDif = 0.;
             }
-
+            if(aDifKeep != null) {
+                aDifKeep[i] = aDif;
+            }
+            aBoundary[i] = aGround + aDif;
         }
         if(path.keepAbsorption) {
             if (path.isFavorable()) {
-                path.absorptionData.aDifF = aDif;
+                path.absorptionData.aDifF = aDifKeep;
             } else {
-                path.absorptionData.aDifH = aDif;
+                path.absorptionData.aDifH = aDifKeep;
             }
         }
-        double[] aBoundary = new double[data.freq_lvl.size()];
-        for(int i=0; i<data.freq_lvl.size(); i++) {
-            aBoundary[i] = aGround[i] + aDif[i];
-        }
-        return aBoundary;
     }
 
     public static double[] deltaRetrodif(PropagationPath reflect, PropagationProcessPathData data) {
-
         double[] retroDiff = new double[data.freq_lvl.size()];
+        deltaRetrodif(reflect, data, retroDiff);
+        return retroDiff;
+    }
+
+    /**
+     * Compute the retro-diffraction attenuation of the reflection points into the provided array
+     * @param reflect Propagation path
+     * @param data Propagation data
+     * @param retroDiff Destination array, one value by frequency band
+     */
+    public static void deltaRetrodif(PropagationPath reflect, PropagationProcessPathData data, double[] retroDiff) {
         Arrays.fill(retroDiff, 0.);
         Coordinate s = reflect.getSRSegment().s;
         Coordinate r = reflect.getSRSegment().r;
@@ -567,9 +634,12 @@ public class EvaluateAttenuationCnossos {
             //Get the reflexion point
             PointPath pp = reflect.getPointList().get(idx);
             //Get the point on the top of the obstacle
-            Coordinate o = new Coordinate(pp.coordinate.x, pp.buildingHeight);
+            double ox = pp.coordinate.x;
+            double oy = pp.buildingHeight;
             //Compute de distance delta (2.5.36)
-            double deltaPrime = -(s.distance(o) + o.distance(r) - reflect.getSRSegment().d);
+            double dsx = s.x - ox, dsy = s.y - oy;
+            double drx = ox - r.x, dry = oy - r.y;
+            double deltaPrime = -(sqrt(dsx * dsx + dsy * dsy) + sqrt(drx * drx + dry * dry) - reflect.getSRSegment().d);
             double ch = 1.;
             for (int i = 0; i < data.freq_lvl.size(); i++) {
                 double lambda = 340.0 / data.freq_lvl.get(i);
@@ -582,9 +652,143 @@ public class EvaluateAttenuationCnossos {
             if (reflect.reflectionAttenuation.dLRetro == null) {
                 reflect.reflectionAttenuation.init(data.freq_lvl.size());
             }
-            reflect.reflectionAttenuation.dLRetro = retroDiff;
+            reflect.reflectionAttenuation.dLRetro = retroDiff.clone();
+        }
+    }
+
+    private static double distance(double x1, double y1, double x2, double y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Compute the attenuation of the multiple reflections between the train body and the diffraction edge
+     * (rail body barrier) into the provided array
+     * @param proPath Propagation path
+     * @param frequencies Frequency (Hz) of each band
+     * @param deltaBodyScreen Destination array, one value by frequency band, 0 if the path has no body barrier
+     */
+    public static void deltaBodyScreen(PropagationPath proPath, double[] frequencies, double[] deltaBodyScreen) {
+        Arrays.fill(deltaBodyScreen, 0);
+        List<PointPath> ptList = proPath.getPointList();
+        PointPath pDif = null;
+        for (PointPath pointPath : ptList) {
+            if (pointPath.type.equals(DIFH)) {
+                pDif = pointPath;
+                break;
+            }
+        }
+        if (pDif == null || pDif.alphaWall.size() == 0 || !pDif.bodyBarrier) {
+            return;
+        }
+        final int n = BODY_BARRIER_REFLECTIONS;
+        Coordinate src = ptList.get(0).coordinate;
+        Coordinate rcv = ptList.get(ptList.size() - 1).coordinate;
+        double db = pDif.coordinate.x;
+        double hb = pDif.coordinate.y;
+        double Cref = 1;
+        double dr = rcv.x;
+        double h0 = ptList.get(0).altitude + H_RAIL;
+        double hs = ptList.get(0).altitude + src.y - H_RAIL;
+        double hr = ptList.get(ptList.size() - 1).altitude + ptList.get(ptList.size() - 1).coordinate.y - h0;
+        if (db >= 5 * hb) {
+            return;
+        }
+        for (int idfreq = 0; idfreq < deltaBodyScreen.length; idfreq++) {
+            double deltaL = dbaToW(0.0);
+            if (pDif.alphaWall.get(idfreq) < 0.8) {
+                double dif0 = 0;
+                double r0 = 0;
+                double ch = 1.;
+                double lambda = 340.0 / frequencies[idfreq];
+                double hi = hs;
+                double cSecond = 1;
+                // sum of the retro-diffraction of the images 1 to i
+                double sumRetroDif = 0;
+                for (int i = 0; i <= n; i++) {
+                    double di = -2 * i * db;
+                    double six = src.x + di;
+                    double siy = src.y;
+                    double ri = sqrt(pow(di - (db + dr), 2) + pow(hi - hr, 2));
+                    if (i == 0) {
+                        r0 = ri;
+                    }
+                    double deltaGeo = 20 * log10(r0 / ri);
+                    double deltai = distance(six, siy, db, hb) + distance(db, hb, rcv.x, rcv.y) -
+                            distance(six, siy, rcv.x, rcv.y);
+
+                    double dif = 0;
+                    double testForm = (40 / lambda) * cSecond * deltai;
+                    if (testForm >= -2) {
+                        dif = 10 * ch * log10(3 + testForm);
+                    }
+
+                    double deltaDif = 0;
+                    if (i == 0) {
+                        dif0 = dif;
+                    } else {
+                        deltaDif = dif0 - dif;
+                    }
+
+                    double deltaAbs = 10 * i * log10(1 - pDif.alphaWall.get(idfreq));
+                    double deltaRef = 10 * i * log10(Cref);
+
+                    double retroDif = 0;
+                    double pix = -(2 * i - 1) * db;
+                    double piy = hb;
+                    double rcvPrimeX = dr;
+                    double rcvPrimeY = max(hr, hb * (db + dr - di) / (db - di));
+                    deltai = -(distance(six, siy, pix, piy) + distance(pix, piy, rcvPrimeX, rcvPrimeY) -
+                            distance(six, siy, rcvPrimeX, rcvPrimeY));
+
+                    testForm = (40 / lambda) * cSecond * deltai;
+                    if (testForm >= -2) {
+                        retroDif = 10 * ch * log10(3 + testForm);
+                    }
+                    if (i > 0) {
+                        sumRetroDif += retroDif;
+                    }
+                    deltaL += dbaToW(deltaGeo + deltaDif + deltaAbs + deltaRef - sumRetroDif);
+                }
+            }
+            deltaBodyScreen[idfreq] = wToDba(deltaL);
+        }
+    }
+
+    /**
+     * Global attenuation under homogeneous (Eq. 2.5.6) or favorable (Eq. 2.5.8) conditions, computed into the
+     * provided array
+     * @param aDiv Geometrical divergence
+     * @param aAtm Atmospheric absorption
+     * @param aBoundary Ground and diffraction attenuation of the condition
+     * @param aRef Reflection attenuation
+     * @param aRetroDiff Retro-diffraction attenuation of the condition
+     * @param deltaBodyScreen Rail body barrier attenuation
+     * @param aGlobal Destination array, one value by frequency band
+     */
+    public static void aGlobal(double[] aDiv, double[] aAtm, double[] aBoundary, double[] aRef, double[] aRetroDiff,
+                               double[] deltaBodyScreen, double[] aGlobal) {
+        for (int idfreq = 0; idfreq < aGlobal.length; idfreq++) {
+            aGlobal[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] + aRef[idfreq] + aRetroDiff[idfreq]
+                    - deltaBodyScreen[idfreq]);
+        }
+    }
+
+    /**
+     * Long term attenuation, energetic mean of the favorable and homogeneous conditions weighted by the occurrence
+     * of favorable conditions in the direction of the path, computed into the provided array
+     * @param p Occurrence of favorable conditions (0-1)
+     * @param aGlobalFav Attenuation under favorable conditions, ignored if p is 0
+     * @param aGlobalHom Attenuation under homogeneous conditions, ignored if p is 1
+     * @param aGlobalMeteo Destination array, one value by frequency band
+     */
+    public static void aGlobalMeteo(double p, double[] aGlobalFav, double[] aGlobalHom, double[] aGlobalMeteo) {
+        for (int idfreq = 0; idfreq < aGlobalMeteo.length; idfreq++) {
+            double favorable = p != 0 ? p * dbaToW(aGlobalFav[idfreq]) : 0;
+            double homogeneous = p != 1 ? (1 - p) * dbaToW(aGlobalHom[idfreq]) : 0;
+            aGlobalMeteo[idfreq] = wToDba(favorable + homogeneous);
         }
-        return retroDiff;
     }
 
     private static double aDif(PropagationPath proPath, PropagationProcessPathData data, int i, PointPath.POINT_TYPE type) {
@@ -670,19 +874,31 @@ public class EvaluateAttenuationCnossos {
         return aDiff;
     }
 
-    private static double[] computeCfKValues(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
-        return computeCfKValues(proPath, path, data, idFreq, false);
-    }
-    private static double[] computeCfKValues(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
+    /**
+     * Eq. 2.5.17
+     * @return Ground parameter w
+     */
+    private static double computeW(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
         int fm = data.freq_lvl.get(idFreq);
-        double c = data.getCelerity();
-        double dp = path.dp;
-        double k = 2*PI*fm/c;
         double gw = forceGPath ? path.gPath : proPath.isFavorable() ? path.gPath : path.gPathPrime;
-        double w = 0.0185 * pow(fm, 2.5) * pow(gw, 2.6) /
+        return 0.0185 * pow(fm, 2.5) * pow(gw, 2.6) /
                 (pow(fm, 1.5) * pow(gw, 2.6) + 1.3e3 * pow(fm, 0.75) * pow(gw, 1.3) + 1.16e6);
-        double cf = dp * (1 + 3 * w * dp * exp(-sqrt(w * dp))) / (1 + w * dp);
-        return new double[]{cf, k, w};
+    }
+
+    /**
+     * Eq. 2.5.16
+     * @return Ground parameter cf
+     */
+    private static double computeCf(SegmentPath path, double w) {
+        double dp = path.dp;
+        return dp * (1 + 3 * w * dp * exp(-sqrt(w * dp))) / (1 + w * dp);
+    }
+
+    /**
+     * @return Wave number k
+     */
+    private static double computeK(PropagationProcessPathData data, int idFreq) {
+        return 2*PI*data.freq_lvl.get(idFreq)/data.getCelerity();
     }
 
     public static double aGroundH(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
@@ -690,10 +906,9 @@ public class EvaluateAttenuationCnossos {
     }
 
     public static double aGroundH(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        double[] values = computeCfKValues(proPath, path, data, idFreq, forceGPath);
-        double cf = values[0];
-        double k = values[1];
-        double w = values[2];
+        double w = computeW(proPath, path, data, idFreq, forceGPath);
+        double cf = computeCf(path, w);
+        double k = computeK(data, idFreq);
         if(proPath.keepAbsorption && path == proPath.getSRSegment()) {
             proPath.groundAttenuation.wH[idFreq] = w;
             proPath.groundAttenuation.cfH[idFreq] = cf;
@@ -717,10 +932,9 @@ public class EvaluateAttenuationCnossos {
         return aGroundF(proPath, path, data, idFreq, false);
     }
     public static double aGroundF(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        double[] values = computeCfKValues(proPath, path, data, idFreq);
-        double cf = values[0];
-        double k = values[1];
-        double w = values[2];
+        double w = computeW(proPath, path, data, idFreq, false);
+        double cf = computeCf(path, w);
+        double k = computeK(data, idFreq);
         if(proPath.keepAbsorption && path == proPath.getSRSegment()) {
             proPath.groundAttenuation.wF[idFreq] = w;
             proPath.groundAttenuation.cfF[idFreq] = cf;
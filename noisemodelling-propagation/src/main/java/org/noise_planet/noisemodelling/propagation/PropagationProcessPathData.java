@@ -72,6 +72,8 @@ public class PropagationProcessPathData {
     private boolean prime2520 = false; // choose to use prime values to compute eq. 2.5.20
     /** probability occurrence favourable condition */
     private double[] windRose  = DEFAULT_WIND_ROSE;
+    /** Incremented on each change of the frequencies or of the atmospheric parameters */
+    private int modificationCount = 0;
 
     public PropagationProcessPathData() {
         this(false);
@@ -135,6 +137,7 @@ public class PropagationProcessPathData {
 
     public void setFrequencies(List<Integer> freq_lvl) {
         this.freq_lvl = freq_lvl;
+        modificationCount++;
     }
 
     public List<Double> getFrequenciesExact() {
@@ -144,6 +147,7 @@ public class PropagationProcessPathData {
     public void setFrequenciesExact(List<Double> freq_lvl_exact) {
         this.freq_lvl_exact = freq_lvl_exact;
         this.alpha_atmo = getAtmoCoeffArray(freq_lvl_exact,  temperature,  pressure,  humidity);
+        modificationCount++;
     }
 
     public List<Double> getFrequenciesAWeighting() {
@@ -191,6 +195,7 @@ public class PropagationProcessPathData {
 
         this.humidity = humidity;
         this.alpha_atmo = getAtmoCoeffArray(freq_lvl_exact,  temperature,  pressure,  humidity);
+        modificationCount++;
         return this;
     }
 
@@ -200,6 +205,7 @@ public class PropagationProcessPathData {
     public PropagationProcessPathData setPressure(double pressure) {
         this.pressure = pressure;
         this.alpha_atmo = getAtmoCoeffArray(freq_lvl_exact,  temperature,  pressure,  humidity);
+        modificationCount++;
         return this;
     }
 
@@ -212,6 +218,15 @@ public class PropagationProcessPathData {
             throw new IllegalArgumentException(String.format("Wind roses length is not compatible %d!=%d",windRose.length,this.windRose.length));
         }
         this.windRose = windRose;
+        modificationCount++;
+    }
+
+    /**
+     * @return Number of changes of the frequencies, of the wind rose or of the atmospheric parameters through the
+     * setters of this object. Used to refresh the values copied from this object.
+     */
+    public int getModificationCount() {
+        return modificationCount;
     }
 
     public double getTemperature() {
@@ -282,6 +297,7 @@ public class PropagationProcessPathData {
         this.temperature = temperature;
         this.celerity = computeCelerity(temperature + K_0);
         this.alpha_atmo = getAtmoCoeffArray(freq_lvl_exact,  temperature,  pressure,  humidity);
+        modificationCount++;
         return this;
     }
 
@@ -408,6 +424,21 @@ public class PropagationProcessPathData {
         return alpha_atmo;
     }
 
+    /**
+     * @return New array of the wave length in meters for each frequency band, according to the sound celerity
+     */
+    public double[] getWavelengths() {
+        double[] freqLambda = new double[freq_lvl.size()];
+        for (int idf = 0; idf < freqLambda.length; idf++) {
+            if (freq_lvl.get(idf) > 0) {
+                freqLambda[idf] = celerity / freq_lvl.get(idf);
+            } else {
+                freqLambda[idf] = 1;
+            }
+        }
+        return freqLambda;
+    }
+
     /**
      * get the atmospheric attenuation coefficient in dB/km at the nominal centre frequency for each frequency band, in accordance with ISO 9613-1.
      * @return alpha_atmo
@@ -5,9 +5,12 @@ import com.fasterxml.jackson.databind.json.JsonMapper;
 import org.junit.Test;
 import org.noise_planet.noisemodelling.pathfinder.PointPath;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.pathfinder.SegmentPath;
 
 import java.io.IOException;
+import java.util.Arrays;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
 
 public class RayAttenuationTest {
@@ -32,4 +35,71 @@ public class RayAttenuationTest {
             assertFalse(Double.isNaN(value));
         }
     }
+
+    @Test
+    public void testEvaluatorReuse() throws IOException {
+        JsonMapper.Builder builder = JsonMapper.builder();
+        JsonMapper mapper = builder.build();
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+        PropagationPath path = mapper.readValue(
+                RayAttenuationTest.class.getResourceAsStream("special_ray.json"), PropagationPath.class);
+        PropagationProcessPathData propagationProcessPathData = new PropagationProcessPathData(false);
+        AttenuationCnossosEvaluator evaluator = new AttenuationCnossosEvaluator(propagationProcessPathData);
+        double[] expected = new AttenuationCnossosEvaluator(propagationProcessPathData).evaluate(path,
+                new double[evaluator.getFrequencyCount()]);
+        double[] result = new double[evaluator.getFrequencyCount()];
+        // scratch buffers must not leak values from one evaluation to the next one
+        for(int i = 0; i < 3; i++) {
+            evaluator.evaluate(path, result);
+            assertArrayEquals(expected, result, 0.0);
+        }
+        for(double value : result) {
+            assertFalse(Double.isNaN(value));
+        }
+    }
+
+    @Test
+    public void testEvaluatorDataChange() throws IOException {
+        JsonMapper.Builder builder = JsonMapper.builder();
+        JsonMapper mapper = builder.build();
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+        PropagationPath path = mapper.readValue(
+                RayAttenuationTest.class.getResourceAsStream("special_ray.json"), PropagationPath.class);
+        PropagationProcessPathData propagationProcessPathData = new PropagationProcessPathData(false);
+        AttenuationCnossosEvaluator evaluator = new AttenuationCnossosEvaluator(propagationProcessPathData);
+        double[] before = evaluator.evaluate(path, new double[evaluator.getFrequencyCount()]);
+        // the evaluator must see the changes of the data made after its creation
+        propagationProcessPathData.setTemperature(-10).setHumidity(20);
+        double[] windRose = new double[PropagationProcessPathData.DEFAULT_WIND_ROSE.length];
+        Arrays.fill(windRose, 1);
+        propagationProcessPathData.setWindRose(windRose);
+        double[] expected = new AttenuationCnossosEvaluator(propagationProcessPathData).evaluate(path,
+                new double[evaluator.getFrequencyCount()]);
+        assertFalse(Arrays.equals(before, expected));
+        assertArrayEquals(expected, evaluator.evaluate(path, new double[evaluator.getFrequencyCount()]), 0.0);
+        assertArrayEquals(propagationProcessPathData.getWavelengths(), evaluator.getWavelengths(), 0.0);
+    }
+
+    @Test
+    public void testDeltaDifBuffer() {
+        PropagationProcessPathData propagationProcessPathData = new PropagationProcessPathData(false);
+        AttenuationCnossosEvaluator evaluator = new AttenuationCnossosEvaluator(propagationProcessPathData);
+        SegmentPath segmentPath = new SegmentPath();
+        segmentPath.setDelta(0.25);
+        segmentPath.eLength = 2.0;
+        double[] deltaDif = new double[evaluator.getFrequencyCount()];
+        EvaluateAttenuationCnossos.getDeltaDif(segmentPath, evaluator.getWavelengths(), deltaDif);
+        assertArrayEquals(EvaluateAttenuationCnossos.getDeltaDif(segmentPath, propagationProcessPathData),
+                deltaDif, 0.0);
+    }
 }
@@ -29,6 +29,7 @@ import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProgressMetric;
 import org.noise_planet.noisemodelling.pathfinder.utils.ReceiverStatsMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.VisibilityStatsMetric;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -166,6 +167,7 @@ class Main {
         profilerThread.addMetric(new ProgressMetric(progressLogger));
         profilerThread.addMetric(new JVMMemoryMetric());
         profilerThread.addMetric(new ReceiverStatsMetric());
+        profilerThread.addMetric(new VisibilityStatsMetric());
         profilerThread.setWriteInterval(60);
         profilerThread.setFlushInterval(60);
         pointNoiseMap.setProfilerThread(profilerThread);
@@ -128,6 +128,14 @@ inputs = [
                              '<li> <b> LW63, LW125, LW250, LW500, LW1000, LW2000, LW4000, LW8000 </b>: attenuation levels in dB for each octave or third octave (FLOAT) </li> </ul> ' ,
                 min        : 0, max: 1, type: String.class
         ],
+        confDirectivityResolution : [
+                name       : 'Directivity grid resolution',
+                title      : 'Directivity grid resolution',
+                description: 'Angular step of the directivity grids (FLOAT, in degrees). </br> </br>' +
+                             'The directivity spheres are resampled into regular grids before the computation, the attenuation of each ray is interpolated from the grid. </br>' +
+                             '&#128736; Default value: <b>0 </b> (directivity spheres are evaluated for each ray)',
+                min        : 0, max: 1, type: String.class
+        ],
         paramWallAlpha          : [
                 name       : 'wallAlpha',
                 title      : 'Wall absorption coefficient',
@@ -169,6 +177,18 @@ inputs = [
                              '&#128736; Default value: <b>0 </b>',
                 min        : 0, max: 1, type: String.class
         ],
+        confBalancedCells       : [
+                name       : 'Balanced computation cells',
+                title      : 'Balanced computation cells',
+                description: 'Number of computation cells of similar cost (INTEGER). </br> </br>' +
+                             'The computation area is split according to the density of receivers, sources and buildings ' +
+                             'instead of a uniform grid, each cell contains at most ' +
+                             PointNoiseMap.DEFAULT_MAXIMUM_CELL_RECEIVERS + ' receivers.</br>' +
+                             'If it is set to 0, use the uniform grid.</br> </br>' +
+                             '&#128736; Default value: <b>0 </b>',
+                min        : 0, max: 1,
+                type       : String.class
+        ],
         confDiffVertical        : [
                 name       : 'Diffraction on vertical edges',
                 title      : 'Diffraction on vertical edges',
@@ -527,6 +547,11 @@ def exec(Connection connection, input) {
         n_thread = Integer.valueOf(input['confThreadNumber'])
     }
 
+    int balanced_cells = 0
+    if (input['confBalancedCells']) {
+        balanced_cells = Integer.valueOf(input['confBalancedCells'])
+    }
+
     boolean compute_vertical_diffraction = false
     if (input['confDiffVertical']) {
         compute_vertical_diffraction = input['confDiffVertical']
@@ -619,6 +644,9 @@ def exec(Connection connection, input) {
         ldenProcessing.directionAttributes = DirectivityTableLoader.loadTable(connection, tableSourceDirectivity, 1)
         logger.info(String.format(Locale.ROOT, "Loaded %d directivity from %s table", ldenProcessing.directionAttributes.size(), tableSourceDirectivity))
     }
+    if (input['confDirectivityResolution']) {
+        ldenProcessing.setDirectivityResolution(Math.toRadians(Double.valueOf(input['confDirectivityResolution'] as String)))
+    }
     pointNoiseMap.setComputeHorizontalDiffraction(compute_vertical_diffraction)
     pointNoiseMap.setComputeVerticalDiffraction(compute_horizontal_diffraction)
     pointNoiseMap.setSoundReflectionOrder(reflexion_order)
@@ -717,16 +745,19 @@ def exec(Connection connection, input) {
         new Thread(profilerThread).start();
         // Iterate over computation areas
         int k = 0
-        Map cells = pointNoiseMap.searchPopulatedCells(connection);
+        Map cells
+        if (balanced_cells > 0) {
+            cells = pointNoiseMap.searchBalancedCells(connection, balanced_cells)
+        } else {
+            cells = pointNoiseMap.searchPopulatedCells(connection)
+        }
         ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
-        new TreeSet<>(cells.keySet()).each { cellIndex ->
-            Envelope cellEnvelope = pointNoiseMap.getCellEnv(pointNoiseMap.getMainEnvelope(),
-                    cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), pointNoiseMap.getCellWidth(),
-                    pointNoiseMap.getCellHeight());
-            logger.info("Compute domain is " + new GeometryFactory().toGeometry(cellEnvelope))
-            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * k++ / cells.size(), cells.get(cellIndex)))
-            // Run ray propagation
-            IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers)
+        // Fetch the data of the next cells while the rays of the current cell are computed
+        PointNoiseMapPipeline pipeline = new PointNoiseMapPipeline(pointNoiseMap)
+        pipeline.run(connection, new TreeSet<>(cells.keySet()), progressVisitor, receivers, { cellIndex, out ->
+            Envelope cellEnvelope = pointNoiseMap.getCellEnvelope(cellIndex);
+            logger.info("Computed domain is " + new GeometryFactory().toGeometry(cellEnvelope))
+            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * ++k / cells.size(), cells.get(cellIndex)))
             // Export as a Google Earth 3d scene
             if (out instanceof ComputeRaysOutAttenuation && folderExportKML != null) {
                 ComputeRaysOutAttenuation cellStorage = (ComputeRaysOutAttenuation) out;
@@ -735,8 +766,7 @@ def exec(Connection connection, input) {
                                 cellIndex.getLongitudeIndex())).getPath(),
                 cellStorage.inputData.profileBuilder, cellStorage, sridSources)
             }
-
-        }
+        } as PointNoiseMapPipeline.CellComputedListener)
     } finally {
         profilerThread.stop();
         ldenProcessing.stop()
@@ -169,6 +169,18 @@ inputs = [
                 min        : 0, max: 1,
                 type       : String.class
         ],
+        confBalancedCells       : [
+                name       : 'Balanced computation cells',
+                title      : 'Balanced computation cells',
+                description: 'Number of computation cells of similar cost (INTEGER). </br> </br>' +
+                             'The computation area is split according to the density of receivers, sources and buildings ' +
+                             'instead of a uniform grid, each cell contains at most ' +
+                             PointNoiseMap.DEFAULT_MAXIMUM_CELL_RECEIVERS + ' receivers.</br>' +
+                             'If it is set to 0, use the uniform grid.</br> </br>' +
+                             '&#128736; Default value: <b>0 </b>',
+                min        : 0, max: 1,
+                type       : String.class
+        ],
         confDiffVertical        : [
                 name       : 'Diffraction on vertical edges',
                 title      : 'Diffraction on vertical edges',
@@ -520,6 +532,11 @@ def exec(Connection connection, input) {
         n_thread = Integer.valueOf(input['confThreadNumber'])
     }
 
+    int balanced_cells = 0
+    if (input['confBalancedCells']) {
+        balanced_cells = Integer.valueOf(input['confBalancedCells'])
+    }
+
     boolean compute_vertical_diffraction = false
     if (input['confDiffVertical']) {
         compute_vertical_diffraction = input['confDiffVertical']
@@ -701,12 +718,17 @@ def exec(Connection connection, input) {
         new Thread(profilerThread).start();
         // Iterate over computation areas
         int k = 0
-        Map cells = pointNoiseMap.searchPopulatedCells(connection)
+        Map cells
+        if (balanced_cells > 0) {
+            cells = pointNoiseMap.searchBalancedCells(connection, balanced_cells)
+        } else {
+            cells = pointNoiseMap.searchPopulatedCells(connection)
+        }
         ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size())
-        new TreeSet<>(cells.keySet()).each { cellIndex ->
-            // Run ray propagation
-            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * k++ / cells.size(), cells.get(cellIndex)))
-            IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers)
+        // Fetch the data of the next cells while the rays of the current cell are computed
+        PointNoiseMapPipeline pipeline = new PointNoiseMapPipeline(pointNoiseMap)
+        pipeline.run(connection, new TreeSet<>(cells.keySet()), progressVisitor, receivers, { cellIndex, out ->
+            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * ++k / cells.size(), cells.get(cellIndex)))
             // Export as a Google Earth 3d scene
             if (out instanceof ComputeRaysOutAttenuation && folderExportKML != null) {
                 ComputeRaysOutAttenuation cellStorage = (ComputeRaysOutAttenuation) out;
@@ -715,7 +737,7 @@ def exec(Connection connection, input) {
                                 cellIndex.getLongitudeIndex())).getPath(),
                         cellStorage.inputData.profileBuilder, cellStorage, sridSources)
             }
-        }
+        } as PointNoiseMapPipeline.CellComputedListener)
     } catch(IllegalArgumentException | IllegalStateException ex) {
         System.err.println(ex);
         throw ex;
@@ -47,10 +47,17 @@ description = '&#10145;&#65039; Compute road traffic probabilistic modeling</br>
               'The user can indicate the number of iterations he wants the model to calculate.</br> </br>' +
               '&#x2705; The first output table is called: <b>L_PROBA_GEOM </b> and contain the following columns:' +
               '<ul>' +
-              '<li> <b> I </b>: The i iteration (INTEGER)</li>' +
+              '<li> <b> IT </b>: The i iteration (INTEGER)</li>' +
               '<li> <b> IDRECEIVER </b>: an identifier (INTEGER, PRIMARY KEY)</li>' +
               '<li> <b> THE_GEOM </b>: the 3D geometry of the receivers (POINT)</li> ' +
-              '<li> <b> Hz63, Hz125, Hz250, Hz500, Hz1000,Hz2000, Hz4000, Hz8000 </b>: 8 columns giving the day emission sound level for each octave band (FLOAT)</li></ul>'
+              '<li> <b> Hz63, Hz125, Hz250, Hz500, Hz1000,Hz2000, Hz4000, Hz8000 </b>: 8 columns giving the day emission sound level for each octave band (FLOAT)</li></ul>' +
+              'If <b>confStatistics</b> is set, L_PROBA_GEOM contains one row by receiver instead of one row by iteration:' +
+              '<ul>' +
+              '<li> <b> IDRECEIVER </b>: an identifier (INTEGER, PRIMARY KEY)</li>' +
+              '<li> <b> THE_GEOM </b>: the 3D geometry of the receivers (POINT)</li> ' +
+              '<li> <b> Hz63, Hz125, Hz250, Hz500, Hz1000,Hz2000, Hz4000, Hz8000 </b>: 8 columns giving the equivalent sound level over the iterations for each octave band (FLOAT)</li>' +
+              '<li> <b> LAEQ </b>: the A weighted equivalent sound level over the iterations (FLOAT)</li>' +
+              '<li> <b> LA10, LA50, LA90 </b>: the A weighted sound levels exceeded during 10 %, 50 % and 90 % of the iterations (FLOAT)</li></ul>'
 
 inputs = [
         tableBuilding     : [
@@ -159,6 +166,20 @@ inputs = [
                              '&#128736; Default value : <b>100 </b>',
                 min        : 0, max: 1, 
                 type: Integer.class],
+        confStatistics    : [
+                name       : 'Statistics output',
+                title      : 'Statistics output',
+                description: 'Write the statistics of each receiver over the iterations (equivalent levels, LA10, LA50, LA90) instead of the levels of each iteration.</br> </br>' +
+                             '&#128736; Default value: <b>false </b>',
+                min        : 0, max: 1,
+                type: Boolean.class],
+        confEnergeticSum  : [
+                name       : 'Energetic sum of the vehicles',
+                title      : 'Energetic sum of the vehicles',
+                description: 'Sound power of a source computed as the energetic sum of the present vehicles. If false, half of the energetic sum of the light and heavy vehicles levels, with 0 dB for an absent vehicle.</br> </br>' +
+                             '&#128736; Default value: <b>false </b>',
+                min        : 0, max: 1,
+                type: Boolean.class],
 ]
 
 outputs = [
@@ -221,6 +242,16 @@ def exec(Connection connection, input) {
         nIterations = Integer.valueOf(input['nIterations'] as String)
     }
 
+    boolean statisticsOutput = false
+    if (input['confStatistics']) {
+        statisticsOutput = input['confStatistics']
+    }
+
+    boolean energeticSum = false
+    if (input['confEnergeticSum']) {
+        energeticSum = input['confEnergeticSum']
+    }
+
     String sources_table_name = input['tableRoads']
     // do it case-insensitive
     sources_table_name = sources_table_name.toUpperCase()
@@ -434,74 +465,36 @@ def exec(Connection connection, input) {
     System.out.println('Intermediate  time : ' + TimeCategory.minus(new Date(), start))
     System.out.println("Export data to table")
 
-    sql.execute("drop table if exists L_PROBA;")
-    sql.execute("create table L_PROBA(IT integer, IDRECEIVER integer, Hz63 double precision, Hz125 double precision, Hz250 double precision, Hz500 double precision, Hz1000 double precision, Hz2000 double precision, Hz4000 double precision, Hz8000 double precision);")
-    def qry = 'INSERT INTO L_PROBA(IT , IDRECEIVER,Hz63, Hz125, Hz250, Hz500, Hz1000,Hz2000, Hz4000, Hz8000) VALUES (?,?,?,?,?,?,?,?,?,?);'
-
-    k = 0
-    for (int it = 1; it < nIterations; it++) {
-        // Iterate over attenuation matrix
-        Map<Integer, double[]> soundLevels = new HashMap<>()
-        Map<Integer, double[]> sourceLev = new HashMap<>()
-
-        for (int i = 0; i < allLevels.size(); i++) {
-            k++
-
-            // get attenuation matrix value
-            double[] soundLevel = allLevels.get(i).value
-
-            //get id from receiver and sound sources
-            int idReceiver = (Integer) allLevels.get(i).receiverId
-            int idSource = (Integer) allLevels.get(i).sourceId
-
-            // get source SoundLevel
-            if (!sourceLev.containsKey(idSource)) {
-                double[] carsLevel = probabilisticProcessData.getCarsLevel(idSource)
-                sourceLev.put(idSource, carsLevel)
-            }
-
-            if (sourceLev.get(idSource)[0] > 0) {
-                // if any attenuation matrix value is set to NaN
-                if (!Double.isNaN(soundLevel[0]) && !Double.isNaN(soundLevel[1])
-                        && !Double.isNaN(soundLevel[2]) && !Double.isNaN(soundLevel[3])
-                        && !Double.isNaN(soundLevel[4]) && !Double.isNaN(soundLevel[5])
-                        && !Double.isNaN(soundLevel[6]) && !Double.isNaN(soundLevel[7])) {
-
-                    if (soundLevels.containsKey(idReceiver)) {
-                        // add Leq value to the pre-existing sound level on this receiver
-                        double[] sumArray = tools.invokeMethod("sumArraySR", [soundLevel, sourceLev.get(idSource)])
-                        soundLevel = ComputeRays.sumDbArray(sumArray, soundLevels.get(idReceiver))
-                        soundLevels.replace(idReceiver, soundLevel)
-                    } else {
-                        // apply A ponderation
-                        //soundLevel = DBToDBA(soundLevel)
-                        // add a new Leq value on this receiver
-                        double[] sumArray =  tools.invokeMethod("sumArraySR", [soundLevel, sourceLev.get(idSource)])
-                        soundLevels.put(idReceiver, sumArray)
-                    }
-                }
-            }
-        }
-
-        sql.withBatch(100, qry) { ps ->
-            for (Map.Entry<Integer, double[]> s : soundLevels.entrySet()) {
-
-                ps.addBatch(it as Integer, s.key as Integer,
-                        s.value[0] as Double, s.value[1] as Double, s.value[2] as Double,
-                        s.value[3] as Double, s.value[4] as Double, s.value[5] as Double,
-                        s.value[6] as Double, s.value[7] as Double)
-
-            }
-        }
+    // Monte-Carlo iterations
+    TrafficMonteCarlo monteCarlo = new TrafficMonteCarlo(allLevels, ProbabilisticProcessData.FREQUENCIES)
+    monteCarlo.setThreadCount(n_thread)
+    if (energeticSum) {
+        monteCarlo.setVehicleCombination(TrafficMonteCarlo.VehicleCombination.ENERGETIC_SUM)
+    }
+    for (Integer idSource : probabilisticProcessData.LV.keySet()) {
+        monteCarlo.setSource(idSource, probabilisticProcessData.LV.get(idSource),
+                probabilisticProcessData.getVehicleLevel(idSource, "1"),
+                probabilisticProcessData.HV.get(idSource),
+                probabilisticProcessData.getVehicleLevel(idSource, "3"))
+    }
+    if (statisticsOutput) {
+        // only the statistics of each receiver are kept
+        List<TrafficMonteCarlo.ReceiverStatistics> statistics = monteCarlo.run(nIterations, progressLogger)
+        monteCarlo.exportStatistics(connection, "L_PROBA", statistics)
+    } else {
+        monteCarlo.exportIterationLevels(connection, "L_PROBA", nIterations, progressLogger)
     }
-
 
     // Drop table LDEN_GEOM if exists
     sql.execute("drop table if exists L_PROBA_GEOM;")
     // Associate Geometry column to the table LDEN
-    sql.execute("CREATE INDEX ON L_PROBA(IDRECEIVER);")
     sql.execute("CREATE INDEX ON RECEIVERS(PK);")
-    sql.execute("create table L_PROBA_GEOM  as select a.IT,a.IDRECEIVER, b.THE_GEOM, a.Hz63, a.Hz125, a.Hz250, a.Hz500, a.Hz1000, a.Hz2000, a.Hz4000, a.Hz8000  FROM L_PROBA a LEFT JOIN  RECEIVERS b  ON a.IDRECEIVER = b.PK;")
+    if (statisticsOutput) {
+        sql.execute("create table L_PROBA_GEOM  as select a.IDRECEIVER, b.THE_GEOM, a.Hz63, a.Hz125, a.Hz250, a.Hz500, a.Hz1000, a.Hz2000, a.Hz4000, a.Hz8000, a.LAEQ, a.LA10, a.LA50, a.LA90  FROM L_PROBA a LEFT JOIN  RECEIVERS b  ON a.IDRECEIVER = b.PK;")
+    } else {
+        sql.execute("CREATE INDEX ON L_PROBA(IDRECEIVER);")
+        sql.execute("create table L_PROBA_GEOM  as select a.IT,a.IDRECEIVER, b.THE_GEOM, a.Hz63, a.Hz125, a.Hz250, a.Hz500, a.Hz1000, a.Hz2000, a.Hz4000, a.Hz8000  FROM L_PROBA a LEFT JOIN  RECEIVERS b  ON a.IDRECEIVER = b.PK;")
+    }
 
 
     resultString = "Calculation Done ! The table L_PROBA_GEOM has been created."
@@ -835,82 +828,33 @@ class WpsPropagationProcessDataProbaFactory implements PointNoiseMap.Propagation
  *
  */
 class ProbabilisticProcessData {
+    static final int[] FREQUENCIES = [63, 125, 250, 500, 1000, 2000, 4000, 8000]
 
     Map<Integer, Double> SPEED_LV = new HashMap<>()
     Map<Integer, Double> SPEED_HV = new HashMap<>()
     Map<Integer, Double> LV = new HashMap<>()
     Map<Integer, Double> HV = new HashMap<>()
 
-    double[] getCarsLevel(int idSource) throws SQLException {
-        double[] res_d = [0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0]
-        double[] res_LV = [0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0]
-        double[] res_HV = [0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0]
-        def list = [63, 125, 250, 500, 1000, 2000, 4000, 8000]
-        // memes valeurs d e et n
-
-
-        def random = Math.random()
-        if (random < LV.get(idSource)) {
-            int kk = 0
-            for (f in list) {
-
-                double speed = SPEED_LV.get(idSource)
-                int acc = 0
-                int FreqParam = f
-                double Temperature = 20
-                String RoadSurface = "DEF"
-                boolean Stud = true
-                double Junc_dist = 200
-                int Junc_type = 1
-                String veh_type = "1"
-                int acc_type = 1
-                double LwStd = 1
-                int VehId = 10
-
-                RoadVehicleCnossosvarParameters rsParameters = new RoadVehicleCnossosvarParameters(speed, acc, veh_type, acc_type, FreqParam, Temperature, RoadSurface, Stud, Junc_dist, Junc_type, LwStd, VehId)
-                rsParameters.setSlopePercentage(0)
-
-                res_LV[kk] = RoadVehicleCnossosvar.evaluate(rsParameters)
-                kk++
-            }
-
-        }
-        if (random < HV.get(idSource)) {
-            int kk = 0
-            for (f in list) {
-                double speed = SPEED_HV.get(idSource)
-                int acc = 0
-                int FreqParam = f
-                double Temperature = 20
-                String RoadSurface = "DEF"
-                boolean Stud = true
-                double Junc_dist = 200
-                int Junc_type = 1
-                String veh_type = "3"
-                int acc_type = 1
-                double LwStd = 1
-                int VehId = 10
-
-                RoadVehicleCnossosvarParameters rsParameters = new RoadVehicleCnossosvarParameters(speed, acc, veh_type, acc_type, FreqParam, Temperature, RoadSurface, Stud, Junc_dist, Junc_type, LwStd, VehId)
-                rsParameters.setSlopePercentage(0)
-
-                res_HV[kk] = RoadVehicleCnossosvar.evaluate(rsParameters)
-                kk++
-            }
-        }
-        int kk = 0
-        for (f in list) {
-            res_d[kk] = 10 * Math.log10(
-                    (1.0 / 2.0) *
-                            (Math.pow(10, (10 * Math.log10(Math.pow(10, res_LV[kk] / 10))) / 10)
-                                    + Math.pow(10, (10 * Math.log10(Math.pow(10, res_HV[kk] / 10))) / 10)
-                            )
-            )
-            kk++
+    /**
+     * Sound power of one vehicle on a source
+     * @param idSource Source identifier
+     * @param vehType Vehicle type ("1" light vehicle, "3" heavy vehicle)
+     * @return Sound power of each octave band (dB)
+     */
+    double[] getVehicleLevel(int idSource, String vehType) throws IOException {
+        double[] res = new double[FREQUENCIES.length]
+        double speed = vehType == "1" ? SPEED_LV.get(idSource) : SPEED_HV.get(idSource)
+        for (int kk = 0; kk < FREQUENCIES.length; kk++) {
+            RoadVehicleCnossosvarParameters rsParameters = new RoadVehicleCnossosvarParameters(speed, 0, vehType, 1, true, 1, 10)
+            rsParameters.setFrequency(FREQUENCIES[kk])
+            rsParameters.setTemperature(20)
+            rsParameters.setRoadSurface("DEF")
+            rsParameters.setJunc_dist(200)
+            rsParameters.setJunc_type(1)
+            rsParameters.setSlopePercentage(0)
+            res[kk] = RoadVehicleCnossosvar.evaluate(rsParameters)
         }
-
-
-        return res_d
+        return res
     }
 
     void setProbaTable(String tablename, Sql sql) {